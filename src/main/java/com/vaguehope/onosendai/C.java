@@ -12,6 +12,8 @@ public final class C {
 	public static final String CONFIG_FILE_NAME = "deck.conf";
 
 	public static final int MAX_MEMORY_IMAGE_CACHE = 20 * 1024 * 1024;
+	public static final int MAX_MEMORY_IMAGE_POOL = 8 * 1024 * 1024;
+	public static final int AVATAR_SIZE_DIP = 48;
 	public static final int DB_CONNECT_TIMEOUT_SECONDS = 5;
 
 	public static final int TWEET_FETCH_PAGE_SIZE = 20;
@@ -21,7 +23,17 @@ public final class C {
 	public static final int TWITTER_LIST_MAX_FETCH = TWEET_FETCH_PAGE_SIZE * 5;
 	public static final int TWITTER_SEARCH_MAX_FETCH = TWEET_FETCH_PAGE_SIZE * 5;
 
-	public static final String DATA_TW_MAX_COL_ENTRIES = "500";
+	public static final int DATA_TW_MAX_COL_ENTRIES = 500;
+	public static final int DATA_TW_STORAGE_BUDGET_ROWS = 10000;
+	public static final int DATA_TW_STORE_QUEUE_SIZE = 20;
+	public static final long DATA_TW_STORE_WINDOW_MILLIS = 250L;
+	public static final int DATA_TW_LIST_CACHE_HEAP_DIVISOR = 32;
+	public static final long DATA_TW_NOTIFY_WINDOW_MILLIS = 300L;
+	public static final int DB_HOUSEKEEP_CHUNK_ROWS = 500;
+	public static final int DB_HOUSEKEEP_VACUUM_PAGES = 64;
+	public static final long DB_HOUSEKEEP_BUDGET_MILLIS = 1000L;
+	public static final long DB_HOUSEKEEP_PAUSE_MILLIS = 5000L;
+	public static final int DB_HOUSEKEEP_MAX_CALLS = 60;
 
 	// Sending and receiving.
 	public static final int UPDATER_MIN_COLUMS_TO_USE_THREADPOOL = 2;
@@ -33,16 +45,25 @@ public final class C {
 	public static final int NET_MAX_THREADS = 2;
 
 	// Tweet Lists.
+	public static final int TWEET_LIST_PAGE_SIZE = 30;
+	public static final int TWEET_LIST_PAGE_PREFETCH_MARGIN = 10;
+	public static final int TWEET_LIST_LAZY_MIN_ROWS = TWEET_LIST_PAGE_SIZE * 4;
+	public static final int TWEET_LIST_LAZY_WINDOW = 40;
+	public static final int LOCAL_SEARCH_MAX_RESULTS = 200;
+	public static final int LOCAL_SEARCH_SNIPPET_TOKENS = 16;
 	public static final long SCROLL_TIME_LABEL_TIMEOUT_MILLIS = 3000L;
 
+	// Conversations.
+	public static final int CONVERSATION_MAX_TWEETS = 200;
+	public static final int CONVERSATION_MAX_FETCH_ROUNDS = 10;
+
 	// Updates.
 	public static final float MIN_BAT_UPDATE = 0.30f;
 	public static final float MIN_BAT_SEND = 0.20f;
 	public static final float MIN_BAT_CLEANUP = 0.50f;
 
 	// Disc caches.
-	public static final long IMAGE_DISC_CACHE_TOUCH_AFTER_MILLIS = TimeUnit.DAYS.toMillis(5);
-	public static final long IMAGE_DISC_CACHE_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(10);
+	public static final long IMAGE_DISC_CACHE_MAX_BYTES = 50L * 1024 * 1024;
 	public static final long TMP_SCALED_IMG_EXPIRY_MILLIS = TimeUnit.DAYS.toMillis(7);
 
 }
@@ -1,6 +1,8 @@
 package com.vaguehope.onosendai;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.acra.ACRA;
 import org.acra.ReportField;
@@ -10,6 +12,8 @@ import org.acra.annotation.ReportsCrashes;
 import android.app.Application;
 import android.util.Log;
 
+import com.vaguehope.onosendai.storage.ColumnExcludesSync;
+import com.vaguehope.onosendai.storage.SharedDb;
 import com.vaguehope.onosendai.util.IoHelper;
 
 @ReportsCrashes(formKey = "" /* not used */,
@@ -37,13 +41,40 @@ import com.vaguehope.onosendai.util.IoHelper;
 		})
 public class Onosendai extends Application {
 
+	private static final AtomicBoolean FIRST_ROWS_SHOWN = new AtomicBoolean(false);
+	private static volatile long startNanos = 0L;
+
+	private ColumnExcludesSync columnExcludesSync;
+
 	@Override
 	public void onCreate () {
+		startNanos = System.nanoTime();
 		super.onCreate();
 		ACRA.init(this);
+		openDb();
 		addBuildNumberToCrashReport();
 	}
 
+	/**
+	 * Start opening the DB now so it is likely ready by the time the first
+	 * column wants it. Column excludes are given to it once it is open and
+	 * again whenever columns are saved.
+	 */
+	protected void openDb () {
+		SharedDb.open(this);
+		this.columnExcludesSync = new ColumnExcludesSync(this);
+		this.columnExcludesSync.start();
+	}
+
+	/**
+	 * Startup tracing: logs how long after process start the first rows
+	 * were put on screen.
+	 */
+	public static void firstRowsShown () {
+		if (startNanos == 0L || !FIRST_ROWS_SHOWN.compareAndSet(false, true)) return;
+		Log.i(C.TAG, "First rows shown " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " millis after start.");
+	}
+
 	private void addBuildNumberToCrashReport () {
 		try {
 			final String buildNumber = IoHelper.toString(getClass().getResourceAsStream("/build_number"));
@@ -29,6 +29,7 @@ public class Column implements Titleable {
 	private static final String KEY_NOTIFY = "notify";
 	private static final String KEY_INLINE_MEDIA = "inline_media";
 	private static final String KEY_HD_MEDIA = "hd_media";
+	private static final String KEY_RETENTION = "retention";
 
 	private static final LogWrapper LOG = new LogWrapper("COL");
 
@@ -41,17 +42,18 @@ public class Column implements Titleable {
 	private final NotificationStyle notificationStyle;
 	private final boolean inlineMedia;
 	private final boolean hdMedia;
+	private final Retention retention;
 
 	public Column (final int id, final Column c) {
-		this(id, c.getTitle(), c.getAccountId(), c.getResource(), c.getRefreshIntervalMins(), c.getExcludeColumnIds(), c.getNotificationStyle(), c.isInlineMedia(), c.isHdMedia());
+		this(id, c.getTitle(), c.getAccountId(), c.getResource(), c.getRefreshIntervalMins(), c.getExcludeColumnIds(), c.getNotificationStyle(), c.isInlineMedia(), c.isHdMedia(), c.getRetention());
 	}
 
 	public Column (final Account newAccount, final Column c) {
-		this(c.getId(), c.getTitle(), newAccount.getId(), c.getResource(), c.getRefreshIntervalMins(), c.getExcludeColumnIds(), c.getNotificationStyle(), c.isInlineMedia(), c.isHdMedia());
+		this(c.getId(), c.getTitle(), newAccount.getId(), c.getResource(), c.getRefreshIntervalMins(), c.getExcludeColumnIds(), c.getNotificationStyle(), c.isInlineMedia(), c.isHdMedia(), c.getRetention());
 	}
 
 	public Column (final Set<Integer> newExcludeColumnIds, final Column c) {
-		this(c.getId(), c.getTitle(), c.getAccountId(), c.getResource(), c.getRefreshIntervalMins(), newExcludeColumnIds, c.getNotificationStyle(), c.isInlineMedia(), c.isHdMedia());
+		this(c.getId(), c.getTitle(), c.getAccountId(), c.getResource(), c.getRefreshIntervalMins(), newExcludeColumnIds, c.getNotificationStyle(), c.isInlineMedia(), c.isHdMedia(), c.getRetention());
 	}
 
 	public Column (
@@ -63,7 +65,8 @@ public class Column implements Titleable {
 			final Set<Integer> excludeColumnIds,
 			final NotificationStyle notificationStyle,
 			final boolean inlineMedia,
-			final boolean hdMedia) {
+			final boolean hdMedia,
+			final Retention retention) {
 		this.id = id;
 		this.title = title;
 		this.accountId = accountId;
@@ -73,6 +76,7 @@ public class Column implements Titleable {
 		this.notificationStyle = notificationStyle;
 		this.inlineMedia = inlineMedia;
 		this.hdMedia = hdMedia;
+		this.retention = retention;
 	}
 
 	@Override
@@ -86,6 +90,7 @@ public class Column implements Titleable {
 		result = prime * result + this.refreshIntervalMins;
 		result = prime * result + ((this.excludeColumnIds == null) ? 0 : this.title.hashCode());
 		result = prime * result + (this.notificationStyle == null ? 0 : this.notificationStyle.hashCode());
+		result = prime * result + (this.retention == null ? 0 : this.retention.hashCode());
 		return result;
 	}
 
@@ -103,7 +108,8 @@ public class Column implements Titleable {
 				EqualHelper.equal(this.excludeColumnIds, that.excludeColumnIds) &&
 				EqualHelper.equal(this.notificationStyle, that.notificationStyle) &&
 				EqualHelper.equal(this.inlineMedia, that.inlineMedia) &&
-				EqualHelper.equal(this.hdMedia, that.hdMedia);
+				EqualHelper.equal(this.hdMedia, that.hdMedia) &&
+				EqualHelper.equal(this.retention, that.retention);
 	}
 
 	@Override
@@ -125,6 +131,7 @@ public class Column implements Titleable {
 				.append(",").append(this.notificationStyle)
 				.append(",").append(this.inlineMedia)
 				.append(",").append(this.hdMedia)
+				.append(",").append(this.retention)
 				.append("}");
 		return s.toString();
 	}
@@ -165,6 +172,13 @@ public class Column implements Titleable {
 		return this.hdMedia;
 	}
 
+	/**
+	 * Null means Retention.DEFAULT.
+	 */
+	public Retention getRetention () {
+		return this.retention;
+	}
+
 	public static List<String> titles (final Collection<Column> columns) {
 		if (columns == null) return null;
 		final List<String> ret = new ArrayList<String>(columns.size());
@@ -185,6 +199,7 @@ public class Column implements Titleable {
 		json.put(KEY_NOTIFY, getNotificationStyle() != null ? getNotificationStyle().toJson() : null);
 		json.put(KEY_INLINE_MEDIA, isInlineMedia());
 		json.put(KEY_HD_MEDIA, isHdMedia());
+		json.put(KEY_RETENTION, getRetention() != null ? getRetention().toJson() : null);
 		return json;
 	}
 
@@ -215,7 +230,8 @@ public class Column implements Titleable {
 		final NotificationStyle notificationStyle = NotificationStyle.parseJson(json.opt(KEY_NOTIFY));
 		final boolean inlineMedia = json.optBoolean(KEY_INLINE_MEDIA, false);
 		final boolean hdMedia = json.optBoolean(KEY_HD_MEDIA, false);
-		return new Column(id, title, account, resource, refreshIntervalMins, excludeColumnIds, notificationStyle, inlineMedia, hdMedia);
+		final Retention retention = Retention.parseJson(json.opt(KEY_RETENTION));
+		return new Column(id, title, account, resource, refreshIntervalMins, excludeColumnIds, notificationStyle, inlineMedia, hdMedia, retention);
 	}
 
 	private static int parseFeedRefreshInterval (final String refreshRaw, final String account, final String title) {
@@ -4,10 +4,37 @@ import java.util.Locale;
 
 public enum InternalColumnType {
 
-	LATER();
+	LATER(),
+	/**
+	 * Resource is "LOCAL_SEARCH/" followed by search terms, matched against
+	 * tweets already stored rather than fetched.
+	 */
+	LOCAL_SEARCH() {
+		@Override
+		public boolean matchesResource (final String res) {
+			return res != null && res.toUpperCase(Locale.UK).startsWith(resourcePrefix());
+		}
+	};
 
 	public boolean matchesColumn(final Column col) {
-		return name().equalsIgnoreCase(col.getResource());
+		return matchesResource(col.getResource());
+	}
+
+	public boolean matchesResource (final String res) {
+		return name().equalsIgnoreCase(res);
+	}
+
+	public String resourcePrefix () {
+		return name() + "/";
+	}
+
+	/**
+	 * @return the part of the resource after the prefix, or null if it does
+	 *         not match.
+	 */
+	public String resourceArg (final Column col) {
+		if (!matchesColumn(col)) return null;
+		return col.getResource().substring(resourcePrefix().length());
 	}
 
 	public static InternalColumnType parse (final String s) {
@@ -125,6 +125,13 @@ public class Prefs {
 		return KEY_COLUMN_PREFIX + id;
 	}
 
+	/**
+	 * True for the keys column config is stored under.
+	 */
+	public static boolean isColumnKey (final String key) {
+		return key != null && key.startsWith(KEY_COLUMN_PREFIX); // Includes KEY_COLUMN_IDS.
+	}
+
 	private static int parseColumnId (final String id) {
 		if (!id.startsWith(KEY_COLUMN_PREFIX)) throw new IllegalArgumentException("Column id '" + id + "' does not start with '" + KEY_COLUMN_PREFIX + "'.");
 		return Integer.parseInt(id.substring(KEY_COLUMN_PREFIX.length()));
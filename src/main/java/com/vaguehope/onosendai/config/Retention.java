@@ -0,0 +1,134 @@
+package com.vaguehope.onosendai.config;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.util.EqualHelper;
+
+/**
+ * How much of a column to keep. Any of max rows, max age and a percentage
+ * share of C.DATA_TW_STORAGE_BUDGET_ROWS may be set and the tightest wins.
+ * If neither rows nor share is set the column keeps
+ * C.DATA_TW_MAX_COL_ENTRIES rows.
+ */
+public class Retention {
+
+	public static final Retention DEFAULT = new Retention(0, 0, 0);
+
+	private static final String KEY_ROWS = "rows";
+	private static final String KEY_AGE = "age";
+	private static final String KEY_SHARE = "share";
+	private static final int MAX_SHARE = 100;
+
+	private final int maxRows;
+	private final int maxAgeMins;
+	private final int sharePercent;
+
+	/**
+	 * 0 means not set.
+	 */
+	public Retention (final int maxRows, final int maxAgeMins, final int sharePercent) {
+		if (maxRows < 0) throw new IllegalArgumentException("maxRows can not be negative: " + maxRows);
+		if (maxAgeMins < 0) throw new IllegalArgumentException("maxAgeMins can not be negative: " + maxAgeMins);
+		if (sharePercent < 0 || sharePercent > MAX_SHARE) throw new IllegalArgumentException("sharePercent must be 0 to 100: " + sharePercent);
+		this.maxRows = maxRows;
+		this.maxAgeMins = maxAgeMins;
+		this.sharePercent = sharePercent;
+	}
+
+	public int getMaxRows () {
+		return this.maxRows;
+	}
+
+	public int getMaxAgeMins () {
+		return this.maxAgeMins;
+	}
+
+	public int getSharePercent () {
+		return this.sharePercent;
+	}
+
+	/**
+	 * The most rows the column should keep.
+	 */
+	public int getRowLimit () {
+		int limit = Integer.MAX_VALUE;
+		if (this.maxRows > 0) limit = this.maxRows;
+		if (this.sharePercent > 0) limit = Math.min(limit, (int) ((long) C.DATA_TW_STORAGE_BUDGET_ROWS * this.sharePercent / MAX_SHARE));
+		return limit < Integer.MAX_VALUE ? limit : C.DATA_TW_MAX_COL_ENTRIES;
+	}
+
+	public JSONObject toJson () throws JSONException {
+		final JSONObject json = new JSONObject();
+		if (this.maxRows > 0) json.put(KEY_ROWS, this.maxRows);
+		if (this.maxAgeMins > 0) json.put(KEY_AGE, this.maxAgeMins + "mins");
+		if (this.sharePercent > 0) json.put(KEY_SHARE, this.sharePercent);
+		return json;
+	}
+
+	@Override
+	public int hashCode () {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + this.maxRows;
+		result = prime * result + this.maxAgeMins;
+		result = prime * result + this.sharePercent;
+		return result;
+	}
+
+	@Override
+	public boolean equals (final Object o) {
+		if (o == null) return false;
+		if (o == this) return true;
+		if (!(o instanceof Retention)) return false;
+		final Retention that = (Retention) o;
+		return EqualHelper.equal(this.maxRows, that.maxRows) &&
+				EqualHelper.equal(this.maxAgeMins, that.maxAgeMins) &&
+				EqualHelper.equal(this.sharePercent, that.sharePercent);
+	}
+
+	@Override
+	public String toString () {
+		return new StringBuilder().append("Retention{")
+				.append(this.maxRows)
+				.append(",").append(this.maxAgeMins)
+				.append(",").append(this.sharePercent)
+				.append("}").toString();
+	}
+
+	/**
+	 * A plain number is read as max rows.
+	 */
+	public static Retention parseJson (final Object obj) throws JSONException {
+		if (obj == null) return null;
+		if (obj instanceof Number) return new Retention(checkNotNegative(KEY_ROWS, ((Number) obj).intValue()), 0, 0);
+		if (obj instanceof String) return parseJson((String) obj);
+		if (obj instanceof JSONObject) return parseJson((JSONObject) obj);
+		throw new IllegalArgumentException("Unexpected object type " + obj.getClass() + ": " + obj);
+	}
+
+	public static Retention parseJson (final String json) throws JSONException {
+		if (json == null) return null;
+		final Object obj = new JSONTokener(json).nextValue();
+		if (obj instanceof String) throw new JSONException("Invalid retention: '" + json + "'.");
+		return parseJson(obj);
+	}
+
+	public static Retention parseJson (final JSONObject json) throws JSONException {
+		if (json == null) throw new IllegalArgumentException("json can not be null.");
+		final String ageRaw = json.optString(KEY_AGE, null);
+		final int maxAgeMins = TimeParser.parseDuration(ageRaw);
+		if (maxAgeMins < 0) throw new JSONException("Invalid retention age: '" + ageRaw + "'.");
+		final int sharePercent = checkNotNegative(KEY_SHARE, json.optInt(KEY_SHARE, 0));
+		if (sharePercent > MAX_SHARE) throw new JSONException("Retention share must be 0 to 100: " + sharePercent);
+		return new Retention(checkNotNegative(KEY_ROWS, json.optInt(KEY_ROWS, 0)), maxAgeMins, sharePercent);
+	}
+
+	private static int checkNotNegative (final String key, final int value) throws JSONException {
+		if (value < 0) throw new JSONException("Retention " + key + " can not be negative: " + value);
+		return value;
+	}
+
+}
@@ -0,0 +1,224 @@
+package com.vaguehope.onosendai.images;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.graphics.Bitmap;
+
+/**
+ * Bitmaps that are neither in the memory cache nor held by anything else,
+ * kept by size and config so a later decode of the same size can reuse one
+ * through inBitmap instead of allocating. Oldest are dropped first when over
+ * size.
+ * <p>
+ * A reused bitmap is overwritten in place, so the pool is told who still has
+ * each bitmap: the memory cache through cached() and uncached(), and loads
+ * and ImageViews through hold() and release(). A bitmap is only pooled once
+ * it is not cached and its last holder has released it. Holds that are never
+ * released only stop that bitmap being reused.
+ */
+public class BitmapPool {
+
+	private final int maxSizeBytes;
+	private final Map<Bitmap, Use> uses = new WeakHashMap<Bitmap, Use>();
+	private final Map<String, LinkedList<Bitmap>> buckets = new HashMap<String, LinkedList<Bitmap>>();
+	private final LinkedList<Bitmap> oldestFirst = new LinkedList<Bitmap>();
+	private int sizeBytes;
+	private long takes;
+	private int hits;
+	private int misses;
+
+	/**
+	 * @param maxSizeBytes
+	 *            0 to track use but never pool.
+	 */
+	public BitmapPool (final int maxSizeBytes) {
+		this.maxSizeBytes = maxSizeBytes;
+	}
+
+	/**
+	 * Call before reading a bitmap from the memory cache and pass to hold()
+	 * once read, so that a bitmap reused in between is not held.
+	 */
+	public synchronized long ticket () {
+		return this.takes;
+	}
+
+	/**
+	 * Call before bmp is put in the memory cache.
+	 */
+	public synchronized void cached (final Bitmap bmp) {
+		if (bmp == null) return;
+		use(bmp).cached = true;
+	}
+
+	/**
+	 * Call once bmp is no longer in the memory cache, however it was removed.
+	 */
+	public synchronized void uncached (final Bitmap bmp) {
+		final Use use = bmp != null ? this.uses.get(bmp) : null;
+		if (use == null) return;
+		use.cached = false;
+		poolIfUnused(bmp, use);
+	}
+
+	/**
+	 * For a bitmap just decoded, or one already held by the caller.
+	 */
+	public synchronized void hold (final Bitmap bmp) {
+		if (bmp == null) return;
+		hold(bmp, use(bmp));
+	}
+
+	/**
+	 * @param ticket
+	 *            from ticket(), taken before bmp was read from the memory
+	 *            cache.
+	 * @return false if bmp has been taken for reuse since ticket, so may no
+	 *         longer hold the image it was read for.
+	 */
+	public synchronized boolean hold (final Bitmap bmp, final long ticket) {
+		if (bmp == null) return false;
+		final Use use = use(bmp);
+		if (use.takenAt > ticket) return false;
+		hold(bmp, use);
+		return true;
+	}
+
+	public synchronized void release (final Bitmap bmp) {
+		final Use use = bmp != null ? this.uses.get(bmp) : null;
+		if (use == null || use.holders < 1) return;
+		use.holders -= 1;
+		poolIfUnused(bmp, use);
+	}
+
+	/**
+	 * The bitmap returned is no longer pooled and may be decoded into. Hold
+	 * it before caching it again.
+	 * @return null if none of exactly this size and config are pooled.
+	 */
+	public synchronized Bitmap take (final int width, final int height, final Bitmap.Config config) {
+		final String key = bucketKey(width, height, config);
+		final LinkedList<Bitmap> bucket = this.buckets.get(key);
+		if (bucket == null || bucket.isEmpty()) {
+			this.misses += 1;
+			return null;
+		}
+		final Bitmap bmp = bucket.getLast();
+		final Use use = use(bmp);
+		unpool(bmp, use);
+		this.takes += 1;
+		use.takenAt = this.takes;
+		this.hits += 1;
+		return bmp;
+	}
+
+	public synchronized void clear () {
+		while (!this.oldestFirst.isEmpty()) {
+			final Bitmap bmp = this.oldestFirst.getFirst();
+			unpool(bmp, use(bmp));
+		}
+	}
+
+	public synchronized int size () {
+		return this.oldestFirst.size();
+	}
+
+	public synchronized int sizeBytes () {
+		return this.sizeBytes;
+	}
+
+	public synchronized int hitCount () {
+		return this.hits;
+	}
+
+	public synchronized int missCount () {
+		return this.misses;
+	}
+
+	@Override
+	public synchronized String toString () {
+		return new StringBuilder("BitmapPool{").append(this.oldestFirst.size()).append(" bitmaps")
+				.append(", ").append(this.sizeBytes).append(" of ").append(this.maxSizeBytes).append(" bytes")
+				.append(", ").append(this.hits).append(" hits")
+				.append(", ").append(this.misses).append(" misses}")
+				.toString();
+	}
+
+	private Use use (final Bitmap bmp) {
+		Use use = this.uses.get(bmp);
+		if (use == null) {
+			use = new Use();
+			this.uses.put(bmp, use);
+		}
+		return use;
+	}
+
+	private void hold (final Bitmap bmp, final Use use) {
+		use.holders += 1;
+		if (use.pooled) unpool(bmp, use);
+	}
+
+	/**
+	 * Bitmaps that are not mutable or too large are not pooled.
+	 */
+	private void poolIfUnused (final Bitmap bmp, final Use use) {
+		if (use.cached || use.holders > 0 || use.pooled) return;
+		if (bmp.isRecycled() || !bmp.isMutable()) return;
+		final int bytes = sizeOf(bmp);
+		if (bytes > this.maxSizeBytes) return;
+
+		final String key = bucketKey(bmp.getWidth(), bmp.getHeight(), bmp.getConfig());
+		LinkedList<Bitmap> bucket = this.buckets.get(key);
+		if (bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			this.buckets.put(key, bucket);
+		}
+		bucket.add(bmp);
+		this.oldestFirst.add(bmp);
+		use.pooled = true;
+		this.sizeBytes += bytes;
+		trimToSize();
+	}
+
+	private void unpool (final Bitmap bmp, final Use use) {
+		final String key = bucketKey(bmp.getWidth(), bmp.getHeight(), bmp.getConfig());
+		final LinkedList<Bitmap> bucket = this.buckets.get(key);
+		if (bucket != null) {
+			bucket.remove(bmp);
+			if (bucket.isEmpty()) this.buckets.remove(key);
+		}
+		this.oldestFirst.remove(bmp);
+		use.pooled = false;
+		this.sizeBytes -= sizeOf(bmp);
+	}
+
+	private void trimToSize () {
+		while (this.sizeBytes > this.maxSizeBytes && !this.oldestFirst.isEmpty()) {
+			final Bitmap bmp = this.oldestFirst.getFirst();
+			unpool(bmp, use(bmp));
+		}
+	}
+
+	private static String bucketKey (final int width, final int height, final Bitmap.Config config) {
+		return new StringBuilder().append(width).append('x').append(height).append(config).toString();
+	}
+
+	static int sizeOf (final Bitmap bmp) {
+		return bmp.getRowBytes() * bmp.getHeight(); // Backwards compatible equivalent of getByteCount().
+	}
+
+	private static class Use {
+
+		boolean cached;
+		int holders;
+		boolean pooled;
+		long takenAt;
+
+		public Use () {}
+
+	}
+
+}
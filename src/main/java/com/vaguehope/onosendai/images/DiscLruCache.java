@@ -0,0 +1,345 @@
+package com.vaguehope.onosendai.images;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+import com.vaguehope.onosendai.util.IoHelper;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Files kept up to a byte budget, least recently used removed first as
+ * writes go over it. Which files are present, their sizes and their order
+ * are held in memory and recorded in an append only journal that is read
+ * back on open, so a lookup never touches the file system. Files are
+ * written to a temp file and renamed into place so a reader never sees a
+ * partial file.
+ * <p>
+ * The journal is a header followed by one line per operation:
+ *
+ * <pre>
+ * CLEAN key bytes
+ * READ key
+ * REMOVE key
+ * </pre>
+ */
+public class DiscLruCache {
+
+	static final String JOURNAL = "journal";
+	private static final String JOURNAL_TMP = "journal.tmp";
+	private static final String MAGIC = "onosendai.DiscLruCache";
+	private static final String VERSION = "1";
+	private static final String CLEAN = "CLEAN";
+	private static final String READ = "READ";
+	private static final String REMOVE = "REMOVE";
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,64}");
+	private static final int COMPACT_AFTER_REDUNDANT_OPS = 2000;
+	private static final LogWrapper LOG = new LogWrapper("DLC");
+
+	private final File dir;
+	private final long maxSizeBytes;
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(0, 0.75f, true); // NOSONAR not a magic number.
+	private long sizeBytes;
+	private int redundantOps;
+	private Writer journal;
+
+	/**
+	 * Nothing is read until first used.
+	 */
+	public DiscLruCache (final File dir, final long maxSizeBytes) {
+		this.dir = dir;
+		this.maxSizeBytes = maxSizeBytes;
+	}
+
+	/**
+	 * Only checks the in memory index.
+	 * @return null if not cached.
+	 */
+	public synchronized File get (final String key) throws IOException {
+		checkKey(key);
+		ensureOpen();
+		if (this.entries.get(key) == null) return null;
+		this.journal.write(READ + " " + key + "\n"); // Not flushed, losing a read only affects order.
+		this.redundantOps += 1;
+		return fileFor(key);
+	}
+
+	/**
+	 * Copies is to a temp file and renames it into place.
+	 * @return the cached file.
+	 */
+	public File put (final String key, final InputStream is) throws IOException {
+		checkKey(key);
+		synchronized (this) {
+			ensureOpen();
+		}
+		final File tmp = File.createTempFile(key + ".dl", TMP_SUFFIX, this.dir);
+		final long bytes;
+		try {
+			bytes = IoHelper.copy(is, tmp);
+			if (bytes < 1L) throw new IOException(String.format("%s bytes written.", bytes));
+		}
+		catch (final IOException e) {
+			if (!tmp.delete()) LOG.w("Failed to delete incomplete file '%s'.", tmp.getAbsolutePath());
+			throw e;
+		}
+		return commit(key, tmp, bytes);
+	}
+
+	private synchronized File commit (final String key, final File tmp, final long bytes) throws IOException {
+		final File file = fileFor(key);
+		if (!tmp.renameTo(file)) {
+			if (!tmp.delete()) LOG.w("Failed to delete '%s'.", tmp.getAbsolutePath());
+			throw new IOException("Failed to rename '" + tmp.getAbsolutePath() + "' to '" + file.getAbsolutePath() + "'.");
+		}
+		final Long prev = this.entries.put(key, Long.valueOf(bytes));
+		if (prev != null) {
+			this.sizeBytes -= prev.longValue();
+			this.redundantOps += 1;
+		}
+		this.sizeBytes += bytes;
+		this.journal.write(CLEAN + " " + key + " " + bytes + "\n");
+		trimToSize();
+		this.journal.flush();
+		compactIfNeeded();
+		return file;
+	}
+
+	public synchronized void remove (final String key) throws IOException {
+		checkKey(key);
+		ensureOpen();
+		if (removeEntry(key)) this.journal.flush();
+	}
+
+	public synchronized void flush () throws IOException {
+		if (this.journal != null) this.journal.flush();
+	}
+
+	public synchronized void close () throws IOException {
+		if (this.journal == null) return;
+		this.journal.close();
+		this.journal = null;
+		this.entries.clear();
+		this.sizeBytes = 0;
+		this.redundantOps = 0;
+	}
+
+	public synchronized long sizeBytes () throws IOException {
+		ensureOpen();
+		return this.sizeBytes;
+	}
+
+	public synchronized int count () throws IOException {
+		ensureOpen();
+		return this.entries.size();
+	}
+
+	@Override
+	public synchronized String toString () {
+		return new StringBuilder("DiscLruCache{").append(this.entries.size()).append(" files")
+				.append(", ").append(this.sizeBytes).append(" of ").append(this.maxSizeBytes).append(" bytes}")
+				.toString();
+	}
+
+	private File fileFor (final String key) {
+		return new File(this.dir, key);
+	}
+
+	private void trimToSize () throws IOException {
+		final Iterator<Entry<String, Long>> ittr = this.entries.entrySet().iterator();
+		while (this.sizeBytes > this.maxSizeBytes && ittr.hasNext()) {
+			final Entry<String, Long> e = ittr.next();
+			ittr.remove();
+			deleteFile(e.getKey(), e.getValue().longValue());
+		}
+	}
+
+	private boolean removeEntry (final String key) throws IOException {
+		final Long bytes = this.entries.remove(key);
+		if (bytes == null) return false;
+		deleteFile(key, bytes.longValue());
+		return true;
+	}
+
+	private void deleteFile (final String key, final long bytes) throws IOException {
+		final File file = fileFor(key);
+		if (!file.delete() && file.exists()) LOG.w("Failed to delete '%s'.", file.getAbsolutePath());
+		this.sizeBytes -= bytes;
+		this.redundantOps += 2;
+		this.journal.write(REMOVE + " " + key + "\n");
+	}
+
+	private void ensureOpen () throws IOException {
+		if (this.journal != null) return;
+		final long startTime = System.nanoTime();
+		if (!this.dir.exists() && !this.dir.mkdirs()) throw new IOException("Failed to create cache directory: " + this.dir.getAbsolutePath());
+		deleteTempFiles();
+
+		final File journalFile = new File(this.dir, JOURNAL);
+		if (!journalFile.exists()) {
+			adoptExistingFiles();
+		}
+		final boolean rewrite = !journalFile.exists() || !readJournal(journalFile);
+		if (rewrite) {
+			writeCompactJournal();
+		}
+		else {
+			this.journal = openJournalForAppend();
+		}
+		trimToSize();
+		this.journal.flush();
+		LOG.i("Opened %s in %d millis.", this, (System.nanoTime() - startTime) / 1000000L); // NOSONAR not a magic number.
+	}
+
+	/**
+	 * @return false if the journal was not complete and should be rewritten.
+	 */
+	private boolean readJournal (final File journalFile) throws IOException {
+		final BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+		try {
+			if (!MAGIC.equals(r.readLine()) || !VERSION.equals(r.readLine())) {
+				LOG.w("Unknown journal header, reading directory instead: '%s'.", journalFile.getAbsolutePath());
+				adoptExistingFiles();
+				return false;
+			}
+			String line;
+			while ((line = r.readLine()) != null) {
+				if (!readJournalLine(line)) {
+					LOG.w("Ignoring journal from bad line: '%s'.", line);
+					return false;
+				}
+			}
+			return true;
+		}
+		finally {
+			IoHelper.closeQuietly(r);
+		}
+	}
+
+	private boolean readJournalLine (final String line) {
+		final String[] parts = line.split(" ");
+		if (parts.length < 2 || !KEY_PATTERN.matcher(parts[1]).matches()) return false;
+		final String key = parts[1];
+		if (CLEAN.equals(parts[0]) && parts.length == 3) { // NOSONAR not a magic number.
+			final long bytes;
+			try {
+				bytes = Long.parseLong(parts[2]);
+			}
+			catch (final NumberFormatException e) {
+				return false;
+			}
+			final Long prev = this.entries.put(key, Long.valueOf(bytes));
+			if (prev != null) this.sizeBytes -= prev.longValue();
+			this.sizeBytes += bytes;
+		}
+		else if (READ.equals(parts[0]) && parts.length == 2) {
+			this.entries.get(key);
+		}
+		else if (REMOVE.equals(parts[0]) && parts.length == 2) {
+			final Long prev = this.entries.remove(key);
+			if (prev != null) this.sizeBytes -= prev.longValue();
+		}
+		else {
+			return false;
+		}
+		this.redundantOps += 1;
+		return true;
+	}
+
+	/**
+	 * For a directory from before there was a journal: takes in any files
+	 * already there, least recently modified first.
+	 */
+	private void adoptExistingFiles () {
+		final File[] files = this.dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept (final File d, final String name) {
+				return KEY_PATTERN.matcher(name).matches() && !name.startsWith(JOURNAL);
+			}
+		});
+		if (files == null || files.length < 1) return;
+		final Map<File, Long> modified = new HashMap<File, Long>();
+		for (final File f : files) {
+			modified.put(f, Long.valueOf(f.lastModified()));
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare (final File a, final File b) {
+				return modified.get(a).compareTo(modified.get(b));
+			}
+		});
+		for (final File f : files) {
+			final long bytes = f.length();
+			this.entries.put(f.getName(), Long.valueOf(bytes));
+			this.sizeBytes += bytes;
+		}
+		LOG.i("Adopted %d existing files.", this.entries.size());
+	}
+
+	private void deleteTempFiles () {
+		final File[] tmpFiles = this.dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept (final File d, final String name) {
+				return name.endsWith(TMP_SUFFIX);
+			}
+		});
+		if (tmpFiles == null) return;
+		for (final File f : tmpFiles) {
+			if (!f.delete()) LOG.w("Failed to delete '%s'.", f.getAbsolutePath());
+		}
+	}
+
+	private void compactIfNeeded () throws IOException {
+		if (this.redundantOps < COMPACT_AFTER_REDUNDANT_OPS || this.redundantOps < this.entries.size()) return;
+		writeCompactJournal();
+	}
+
+	/**
+	 * Writes just the current entries, oldest first, to a temp journal and
+	 * renames it over the old one.
+	 */
+	private void writeCompactJournal () throws IOException {
+		if (this.journal != null) this.journal.close();
+		final File tmp = new File(this.dir, JOURNAL_TMP);
+		final Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+		try {
+			w.write(MAGIC + "\n" + VERSION + "\n");
+			for (final Entry<String, Long> e : this.entries.entrySet()) {
+				w.write(CLEAN + " " + e.getKey() + " " + e.getValue() + "\n");
+			}
+		}
+		finally {
+			w.close();
+		}
+		final File journalFile = new File(this.dir, JOURNAL);
+		if (!tmp.renameTo(journalFile)) throw new IOException("Failed to rename '" + tmp.getAbsolutePath() + "' to '" + journalFile.getAbsolutePath() + "'.");
+		this.journal = openJournalForAppend();
+		this.redundantOps = 0;
+	}
+
+	private Writer openJournalForAppend () throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(this.dir, JOURNAL), true), "UTF-8"));
+	}
+
+	private static void checkKey (final String key) {
+		if (key == null || !KEY_PATTERN.matcher(key).matches()) throw new IllegalArgumentException("Invalid key: " + key);
+	}
+
+}
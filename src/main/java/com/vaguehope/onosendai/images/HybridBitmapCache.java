@@ -1,10 +1,8 @@
 package com.vaguehope.onosendai.images;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -14,136 +12,189 @@ import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.R;
 import com.vaguehope.onosendai.util.HashHelper;
 import com.vaguehope.onosendai.util.HttpHelper.HttpStreamHandler;
-import com.vaguehope.onosendai.util.IoHelper;
 import com.vaguehope.onosendai.util.LogWrapper;
-import com.vaguehope.onosendai.util.SyncMgr;
 
 public class HybridBitmapCache {
 
 	private static final int BASE_HEX = 16;
+	private static final String MIME_JPEG = "image/jpeg";
+	private static final String MIME_PNG = "image/png";
 	static final LogWrapper LOG = new LogWrapper("HC");
 
+	private static DiscLruCache sharedDiscCache;
+
 	private final Context context;
+	private final BitmapPool pool;
 	private final MemoryBitmapCache<String> memCache;
-	private final File baseDir;
-	private final SyncMgr syncMgr;
+	private final DiscLruCache discCache;
+	private final InFlightFetches inFlight;
 
-	public HybridBitmapCache (final Context context, final int maxMemorySizeBytes) {
+	/**
+	 * Bitmaps are handed out held in the pool, so they are not decoded into
+	 * while in use. Pass each one on to the ImageLoadScheduler that shows it,
+	 * or release() it.
+	 * @param maxPoolSizeBytes
+	 *            0 to not reuse bitmaps.
+	 */
+	public HybridBitmapCache (final Context context, final int maxMemorySizeBytes, final int maxPoolSizeBytes) {
 		this.context = context;
-		this.memCache = new MemoryBitmapCache<String>(maxMemorySizeBytes);
-		this.baseDir = getBaseDir(context);
-		if (!this.baseDir.exists() && !this.baseDir.mkdirs()) throw new IllegalStateException("Failed to create cache directory: " + this.baseDir.getAbsolutePath());
-		this.syncMgr = new SyncMgr();
+		this.pool = new BitmapPool(maxPoolSizeBytes);
+		this.memCache = new MemoryBitmapCache<String>(maxMemorySizeBytes, this.pool);
+		this.discCache = sharedDiscCache(context);
+		this.inFlight = new InFlightFetches();
 	}
 
-	public Bitmap quickGet (final String key) {
-		return this.memCache.get(key);
+	/**
+	 * Memory cache only.
+	 * @return null if image is not in memory, else held.
+	 */
+	public Bitmap quickGet (final ImageLoadRequest req) {
+		final long ticket = this.pool.ticket();
+		final Bitmap bmp = this.memCache.get(req.getCacheKey());
+		if (bmp != null && this.pool.hold(bmp, ticket)) return bmp;
+		return null;
 	}
 
 	/**
-	 * @return null if image is not in cache.
+	 * @return null if image is not in cache, else held.
 	 * @throws UnrederableException
 	 *             if image is in cache but can not be rendered.
+	 * @throws IOException
+	 *             if the disc cache could not be read.
 	 */
-	public Bitmap get (final String key) throws UnrederableException {
-		Bitmap bmp = this.memCache.get(key);
-		if (bmp == null) bmp = getFromDisc(key);
+	public Bitmap get (final ImageLoadRequest req) throws IOException {
+		Bitmap bmp = quickGet(req);
+		if (bmp == null) bmp = getFromDisc(req);
 		return bmp;
 	}
 
-	public HttpStreamHandler<Bitmap, RuntimeException> fromHttp (final String key) {
-		return new DiscCacheHandler(this, key);
+	/**
+	 * For a bitmap from this cache that will not be shown after all.
+	 */
+	public void release (final Bitmap bmp) {
+		this.pool.release(bmp);
+	}
+
+	BitmapPool getPool () {
+		return this.pool;
+	}
+
+	public HttpStreamHandler<Bitmap, RuntimeException> fromHttp (final ImageLoadRequest req) {
+		return new DiscCacheHandler(this, req);
 	}
 
 	public void clean () {
+		LOG.i("Clean: %s", this.pool);
 		this.memCache.evictAll();
+		this.pool.clear();
+		try {
+			this.discCache.flush();
+		}
+		catch (final IOException e) {
+			LOG.w("Failed to flush disc cache journal: %s", e.toString());
+		}
 	}
 
-	protected Bitmap getFromDisc (final String key) throws UnrederableException {
-		if (key == null) return null;
-		final File file = keyToFile(key);
-		if (!file.exists()) return null;
-		final Bitmap bmp = BitmapFactory.decodeFile(file.getAbsolutePath());
+	/**
+	 * The file is stored once per URL, the memory cache holds it decoded per
+	 * size class.
+	 * @return held, as get().
+	 */
+	protected Bitmap getFromDisc (final ImageLoadRequest req) throws IOException {
+		if (req == null) return null;
+		final String discKey = discKey(req.getUrl());
+		final File file = this.discCache.get(discKey);
+		if (file == null) return null;
+		final Bitmap bmp = decodeFile(file, req);
 		if (bmp == null) {
-			this.memCache.put(key, BitmapFactory.decodeResource(this.context.getResources(), R.drawable.exclamation_red));
+			if (!file.exists()) { // Evicted since get() or removed by the system.
+				this.discCache.remove(discKey);
+				return null;
+			}
+			this.memCache.put(req.getCacheKey(), BitmapFactory.decodeResource(this.context.getResources(), R.drawable.exclamation_red));
 			throw new UnrederableException(file);
 		}
-		this.memCache.put(key, bmp);
-		refreshFileTimestamp(file);
+		this.pool.hold(bmp); // Before cached so it can not be pooled in between.
+		this.pool.cached(bmp);
+		this.memCache.put(req.getCacheKey(), bmp);
 		return bmp;
 	}
 
-	protected File keyToFile (final String key) {
-		return new File(this.baseDir, HashHelper.md5String(key).toString(BASE_HEX));
+	/**
+	 * Reads just the bounds first so the image is only decoded as large as
+	 * the request needs, and into a pooled bitmap if one fits.
+	 */
+	private Bitmap decodeFile (final File file, final ImageLoadRequest req) {
+		final String path = file.getAbsolutePath();
+		final BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, opts);
+		if (opts.outWidth < 1 || opts.outHeight < 1) return null;
+		opts.inJustDecodeBounds = false;
+		opts.inSampleSize = ImageLoaderUtils.sampleSize(opts.outWidth, opts.outHeight, req.getReqWidth(), req.getReqHeight());
+		if (req.getOpaqueConfig() != null && MIME_JPEG.equals(opts.outMimeType)) {
+			opts.inPreferredConfig = req.getOpaqueConfig();
+			opts.inDither = true;
+		}
+		opts.inMutable = true; // So it can be reused once done with.
+
+		final Bitmap reusable = takeReusable(opts);
+		if (reusable != null) {
+			opts.inBitmap = reusable;
+			try {
+				final Bitmap bmp = BitmapFactory.decodeFile(path, opts);
+				if (bmp != null) return bmp;
+			}
+			catch (final IllegalArgumentException e) {
+				LOG.w("Failed to decode '%s' into pooled bitmap: %s", path, e.toString());
+			}
+			opts.inBitmap = null;
+		}
+		return BitmapFactory.decodeFile(path, opts);
 	}
 
-	public SyncMgr getSyncMgr () {
-		return this.syncMgr;
+	/**
+	 * Follows the rules inBitmap has before API 19: only JPEG and PNG, not
+	 * sampled, and exactly the same size and config.
+	 */
+	private Bitmap takeReusable (final BitmapFactory.Options opts) {
+		if (opts.inSampleSize != 1) return null;
+		if (!MIME_JPEG.equals(opts.outMimeType) && !MIME_PNG.equals(opts.outMimeType)) return null;
+		return this.pool.take(opts.outWidth, opts.outHeight, opts.inPreferredConfig);
 	}
 
-	private static void refreshFileTimestamp (final File f) {
-		final long now = System.currentTimeMillis();
-		final long lastModified = f.lastModified();
-		if (lastModified != 0) {
-			if (now - lastModified > C.IMAGE_DISC_CACHE_TOUCH_AFTER_MILLIS && !f.setLastModified(now)) {
-				LOG.w("Failed to update last modified date for '%s'.", f.getAbsolutePath());
-			}
-		}
-		else {
-			LOG.w("Failed to read last modified date for '%s'.", f.getAbsolutePath());
-		}
+	private static String discKey (final String url) {
+		return HashHelper.md5String(url).toString(BASE_HEX);
 	}
 
-	public static void cleanCacheDir (final Context context) {
-		final File dir = getBaseDir(context);
-		long bytesFreed = 0L;
-		if (dir.exists()) {
-			final long now = System.currentTimeMillis();
-			for (final File f : dir.listFiles()) {
-				if (now - f.lastModified() > C.IMAGE_DISC_CACHE_EXPIRY_MILLIS) {
-					final long fLength = f.length();
-					if (f.delete()) {
-						bytesFreed += fLength;
-					}
-					else {
-						LOG.w("Failed to delete expired file: '%s'.", f.getAbsolutePath());
-					}
-				}
-			}
-		}
-		LOG.i("Freed %s bytes of cached image files.", bytesFreed);
+	public InFlightFetches getInFlight () {
+		return this.inFlight;
 	}
 
-	private static File getBaseDir (final Context context) {
-		return new File(context.getCacheDir(), "images");
+	/**
+	 * One per process as the journal must only have one writer.
+	 */
+	private static synchronized DiscLruCache sharedDiscCache (final Context context) {
+		if (sharedDiscCache == null) {
+			sharedDiscCache = new DiscLruCache(new File(context.getCacheDir(), "images"), C.IMAGE_DISC_CACHE_MAX_BYTES);
+		}
+		return sharedDiscCache;
 	}
 
 	private static class DiscCacheHandler implements HttpStreamHandler<Bitmap, RuntimeException> {
 
 		private final HybridBitmapCache cache;
-		private final String key;
+		private final ImageLoadRequest req;
 
-		public DiscCacheHandler (final HybridBitmapCache cache, final String key) {
+		public DiscCacheHandler (final HybridBitmapCache cache, final ImageLoadRequest req) {
 			this.cache = cache;
-			this.key = key;
+			this.req = req;
 		}
 
 		@Override
 		public Bitmap handleStream (final InputStream is, final int contentLength) throws IOException {
-			final File f = this.cache.keyToFile(this.key);
-			final OutputStream os = new FileOutputStream(f);
-			try {
-				final long bytesCopied = IoHelper.copy(is, os);
-				if (bytesCopied < 1L) throw new IOException(String.format("%s bytes returned.", bytesCopied));
-			}
-			catch (final IOException e) {
-				if (!f.delete()) LOG.e("Failed to delete incomplete download '" + f.getAbsolutePath() + "': " + e.toString());
-				throw e;
-			}
-			finally {
-				os.close();
-			}
-			return this.cache.getFromDisc(this.key);
+			this.cache.discCache.put(discKey(this.req.getUrl()), is);
+			return this.cache.getFromDisc(this.req);
 		}
 
 	}
@@ -1,6 +1,8 @@
 package com.vaguehope.onosendai.images;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.client.HttpResponseException;
 
@@ -14,16 +16,22 @@ import com.vaguehope.onosendai.util.StringHelper;
 import com.vaguehope.onosendai.util.exec.ExecutorEventListener;
 import com.vaguehope.onosendai.util.exec.TrackingAsyncTask;
 
-public class ImageFetcherTask extends TrackingAsyncTask<Void, Void, ImageFetchResult> {
+/**
+ * Downloads one URL and completes every request waiting on it in the
+ * cache's in-flight fetches, each decoded at its own size.
+ */
+public class ImageFetcherTask extends TrackingAsyncTask<Void, Void, List<ImageFetchResult>> {
 
 	private static final LogWrapper LOG = new LogWrapper("IF");
 
 	private final HybridBitmapCache cache;
+	private final ImageLoadScheduler scheduler;
 	private final ImageLoadRequest req;
 
-	public ImageFetcherTask (final ExecutorEventListener eventListener, final HybridBitmapCache cache, final ImageLoadRequest req) {
+	public ImageFetcherTask (final ExecutorEventListener eventListener, final HybridBitmapCache cache, final ImageLoadScheduler scheduler, final ImageLoadRequest req) {
 		super(eventListener);
 		this.cache = cache;
+		this.scheduler = scheduler;
 		this.req = req;
 	}
 
@@ -33,44 +41,81 @@ public class ImageFetcherTask extends TrackingAsyncTask<Void, Void, ImageFetchRe
 	}
 
 	@Override
-	protected ImageFetchResult doInBackgroundWithTracking (final Void... unused) {
-		if (!this.req.isRequired()) return null;
+	protected List<ImageFetchResult> doInBackgroundWithTracking (final Void... unused) {
+		final String url = this.req.getUrl();
+		if (this.cache.getInFlight().abandonIfNoneRequired(url)) return null;
+		Bitmap bmp = null;
+		Exception error = null;
 		try {
-			final String url = this.req.getUrl();
-			Bitmap bmp = this.cache.get(url);
-			if (bmp == null) {
-				final Object sync = this.cache.getSyncMgr().getSync(url);
+			bmp = this.cache.get(this.req); // May have been written since this fetch was queued.
+			if (bmp == null) bmp = fetchImage(url);
+		}
+		catch (Exception e) { // NOSONAR To report errors.
+			error = e;
+		}
+		try {
+			return completeWaiting(this.cache.getInFlight().complete(url), bmp, error);
+		}
+		finally {
+			this.cache.release(bmp); // Each result holds its own.
+		}
+	}
+
+	/**
+	 * Each successful result holds its bitmap.
+	 */
+	private List<ImageFetchResult> completeWaiting (final List<ImageLoadRequest> waiting, final Bitmap bmp, final Exception error) {
+		final List<ImageFetchResult> ret = new ArrayList<ImageFetchResult>(waiting.size());
+		for (final ImageLoadRequest w : waiting) {
+			if (!w.isRequired()) continue;
+			if (error != null) {
+				ret.add(new ImageFetchResult(w, error));
+			}
+			else if (bmp != null && w.getCacheKey().equals(this.req.getCacheKey())) {
+				this.cache.getPool().hold(bmp);
+				ret.add(new ImageFetchResult(w, bmp));
+			}
+			else {
 				try {
-					synchronized (sync) {
-						bmp = this.cache.get(url);
-						if (bmp == null) bmp = fetchImage(url);
-					}
+					ret.add(new ImageFetchResult(w, this.cache.get(w)));
 				}
-				finally {
-					this.cache.getSyncMgr().returnSync(url);
+				catch (Exception e) { // NOSONAR To report errors.
+					ret.add(new ImageFetchResult(w, e));
 				}
 			}
-			return new ImageFetchResult(this.req, bmp);
-		}
-		catch (Exception e) { // NOSONAR To report errors.
-			return new ImageFetchResult(this.req, e);
 		}
+		return ret;
 	}
 
 	private Bitmap fetchImage (final String url) throws IOException {
 		LOG.d("Fetching image: '%s'...", url);
-		return HttpHelper.get(url, this.cache.fromHttp(url));
+		return HttpHelper.get(url, this.cache.fromHttp(this.req));
 	}
 
 	@Override
-	protected void onPostExecute (final ImageFetchResult result) {
-		if (result == null) return; // Request was no longer required.
-		if (result.isSuccess()) {
-			result.getRequest().setImageBitmapIfRequired(result.getBmp());
+	protected void onCancelled (final List<ImageFetchResult> results) {
+		if (results == null) return;
+		for (final ImageFetchResult result : results) {
+			if (result.isSuccess()) this.cache.release(result.getBmp());
 		}
-		else {
-			LOG.w("Failed to fetch image '%s': %s", result.getRequest().getUrl(), result.getEmsg());
-			result.getRequest().setImageUnavailableIfRequired();
+	}
+
+	@Override
+	protected void onPostExecute (final List<ImageFetchResult> results) {
+		if (results == null) return; // Requests were no longer required.
+		for (final ImageFetchResult result : results) {
+			if (result.isSuccess()) {
+				if (result.getRequest().setImageBitmapIfRequired(result.getBmp())) {
+					this.scheduler.shown(this.cache, result.getRequest(), result.getBmp());
+				}
+				else {
+					this.cache.release(result.getBmp());
+				}
+			}
+			else {
+				LOG.w("Failed to fetch image '%s': %s", result.getRequest().getUrl(), result.getEmsg());
+				if (result.getRequest().setImageUnavailableIfRequired()) this.scheduler.shown(result.getRequest());
+			}
 		}
 	}
 
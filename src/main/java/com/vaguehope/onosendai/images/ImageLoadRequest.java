@@ -9,32 +9,96 @@ public class ImageLoadRequest {
 
 	private final String url;
 	private final ImageView imageView;
+	private final int reqWidth;
+	private final int reqHeight;
+	private final Bitmap.Config opaqueConfig;
 	private final ImageLoadListener listener;
+	private final String cacheKey;
 
 	public ImageLoadRequest (final String url, final ImageView imageView) {
 		this(url, imageView, null);
 	}
 
 	public ImageLoadRequest (final String url, final ImageView imageView, final ImageLoadListener listener) {
+		this(url, imageView, 0, 0, null, listener);
+	}
+
+	public ImageLoadRequest (final String url, final ImageView imageView, final int reqWidth, final int reqHeight, final Bitmap.Config opaqueConfig) {
+		this(url, imageView, reqWidth, reqHeight, opaqueConfig, null);
+	}
+
+	/**
+	 * @param reqWidth
+	 *            pixels the image is shown at, the image is decoded no
+	 *            smaller than this. 0 for not limited.
+	 * @param reqHeight
+	 *            as reqWidth.
+	 * @param opaqueConfig
+	 *            config for images that can not have alpha (JPEGs), e.g.
+	 *            RGB_565. Null for the default.
+	 */
+	public ImageLoadRequest (final String url, final ImageView imageView, final int reqWidth, final int reqHeight, final Bitmap.Config opaqueConfig, final ImageLoadListener listener) {
 		if (url == null) throw new IllegalArgumentException("Missing arg: url.");
 		if (imageView == null) throw new IllegalArgumentException("Missing arg: imageView.");
+		if (reqWidth < 0 || reqHeight < 0) throw new IllegalArgumentException("Negative size: " + reqWidth + "x" + reqHeight);
 		this.url = url;
 		this.imageView = imageView;
+		this.reqWidth = ImageLoaderUtils.sizeClass(reqWidth);
+		this.reqHeight = ImageLoaderUtils.sizeClass(reqHeight);
+		this.opaqueConfig = opaqueConfig;
 		this.listener = listener;
+		this.cacheKey = makeCacheKey(url, this.reqWidth, this.reqHeight, opaqueConfig);
 	}
 
 	public String getUrl () {
 		return this.url;
 	}
 
+	ImageView getImageView () {
+		return this.imageView;
+	}
+
+	/**
+	 * Rounded up to its size class so that requests for about the same size
+	 * share a decode. 0 for not limited.
+	 */
+	public int getReqWidth () {
+		return this.reqWidth;
+	}
+
+	/**
+	 * As getReqWidth().
+	 */
+	public int getReqHeight () {
+		return this.reqHeight;
+	}
+
+	/**
+	 * May be null.
+	 */
+	public Bitmap.Config getOpaqueConfig () {
+		return this.opaqueConfig;
+	}
+
+	/**
+	 * Memory cache key: the URL plus size class and config if not full size.
+	 */
+	public String getCacheKey () {
+		return this.cacheKey;
+	}
+
 	public void setImagePending () {
 		this.imageView.setImageResource(R.drawable.question_blue);
 		this.imageView.setTag(this.url);
 	}
 
-	public void setImageUnavailableIfRequired () {
-		if (!isRequired()) return;
+	/**
+	 * @return true if set.
+	 */
+	public boolean setImageUnavailableIfRequired () {
+		if (!isRequired()) return false;
 		this.imageView.setImageResource(R.drawable.exclamation_red);
+		return true;
 	}
 
 	public void setImageBitmap (final Bitmap bmp) {
@@ -43,16 +107,28 @@ public class ImageLoadRequest {
 		if (this.listener != null) this.listener.imageLoaded(this);
 	}
 
-	public void setImageBitmapIfRequired (final Bitmap bmp) {
-		if (!isRequired()) return;
+	/**
+	 * @return true if set.
+	 */
+	public boolean setImageBitmapIfRequired (final Bitmap bmp) {
+		if (!isRequired()) return false;
 		this.imageView.setImageBitmap(bmp);
 		if (this.listener != null) this.listener.imageLoaded(this);
+		return true;
 	}
 
 	public boolean isRequired () {
 		return this.url.equals(this.imageView.getTag());
 	}
 
+	static String makeCacheKey (final String url, final int reqWidth, final int reqHeight, final Bitmap.Config opaqueConfig) {
+		if (reqWidth < 1 && reqHeight < 1 && opaqueConfig == null) return url;
+		return new StringBuilder(url).append('#')
+				.append(reqWidth).append('x').append(reqHeight)
+				.append(opaqueConfig != null ? opaqueConfig.name() : "")
+				.toString();
+	}
+
 	public interface ImageLoadListener {
 		/**
 		 * Called only after the image has been successfully loaded.
@@ -0,0 +1,206 @@
+package com.vaguehope.onosendai.images;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Bitmap;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.ImageView;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.util.LogWrapper;
+import com.vaguehope.onosendai.util.exec.ExecutorEventListener;
+import com.vaguehope.onosendai.util.exec.LifoExecutor;
+
+/**
+ * Runs image loads newest first so rows just scrolled to are loaded before
+ * ones already scrolled past, cancels the previous load for an ImageView
+ * when it is given a new image, and can hold loads back while a list is
+ * flung.
+ * <p>
+ * After a pause it times how long until every ImageView on screen that was
+ * waiting when loading resumed has its image, and logs it.
+ * <p>
+ * Each ImageView holds the cached bitmap it shows until it is given another
+ * image, so the bitmap is not reused for another image while on screen.
+ * <p>
+ * Other than the executors, for use on the UI thread only.
+ */
+public class ImageLoadScheduler {
+
+	private static final LogWrapper LOG = new LogWrapper("ILS");
+
+	private final LifoExecutor localEs;
+	private final LifoExecutor netEs;
+	private final ExecutorEventListener eventListener;
+	private final Map<ImageView, ImageLoaderTask> loading = new HashMap<ImageView, ImageLoaderTask>();
+	private final Map<ImageView, String> waitingFor = new WeakHashMap<ImageView, String>();
+	private final Map<ImageView, Bound> bound = new WeakHashMap<ImageView, Bound>();
+	private final Set<ImageView> awaitedAfterPause = Collections.newSetFromMap(new WeakHashMap<ImageView, Boolean>());
+	private long resumedNanos = 0L;
+	private long lastShownAfterPauseMillis = -1L;
+
+	public ImageLoadScheduler (final Executor localEs, final Executor netEs, final ExecutorEventListener eventListener) {
+		this.localEs = new LifoExecutor(localEs, C.LOCAL_MAX_THREADS);
+		this.netEs = new LifoExecutor(netEs, C.NET_MAX_THREADS);
+		this.eventListener = eventListener;
+	}
+
+	/**
+	 * Replaces any load already scheduled for req's ImageView. Call once the
+	 * view shows its pending image.
+	 */
+	public void load (final HybridBitmapCache cache, final ImageLoadRequest req) {
+		unbind(req.getImageView());
+		cancel(req.getImageView());
+		final ImageLoaderTask task = new ImageLoaderTask(this.eventListener, cache, this, req);
+		this.loading.put(req.getImageView(), task);
+		this.waitingFor.put(req.getImageView(), req.getUrl());
+		task.executeOnExecutor(this.localEs);
+	}
+
+	/**
+	 * Call when task is done with, however it ended, so it no longer holds
+	 * its ImageView. The view may still be waiting on a fetch.
+	 */
+	void finished (final ImageLoaderTask task, final ImageLoadRequest req) {
+		final ImageView view = req.getImageView();
+		if (this.loading.get(view) == task) this.loading.remove(view);
+	}
+
+	/**
+	 * Call when bmp, held from cache, has been put in req's ImageView, or in
+	 * place of load() when it was already in memory. The view takes over
+	 * the hold.
+	 */
+	public void shown (final HybridBitmapCache cache, final ImageLoadRequest req, final Bitmap bmp) {
+		final Bound prev = this.bound.put(req.getImageView(), new Bound(cache, bmp));
+		if (prev != null) prev.release();
+		shownImage(req);
+	}
+
+	/**
+	 * Call when req's ImageView has been given an image not from the cache,
+	 * e.g. to show it could not be loaded.
+	 */
+	public void shown (final ImageLoadRequest req) {
+		unbind(req.getImageView());
+		shownImage(req);
+	}
+
+	private void shownImage (final ImageLoadRequest req) {
+		final ImageView view = req.getImageView();
+		cancel(view); // Any earlier load still queued for this view.
+		this.waitingFor.remove(view);
+		if (this.awaitedAfterPause.remove(view) && this.awaitedAfterPause.isEmpty()) {
+			this.lastShownAfterPauseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.resumedNanos);
+			LOG.i("Images shown %d millis after loading resumed.", this.lastShownAfterPauseMillis);
+		}
+	}
+
+	/**
+	 * Holds back loads not yet started, e.g. while a list is flung.
+	 */
+	public void pause () {
+		this.localEs.pause();
+		this.netEs.pause();
+	}
+
+	/**
+	 * @param visible
+	 *            only ImageViews within this that are still waiting for their
+	 *            image are timed. Null to not time.
+	 */
+	public void resume (final View visible) {
+		if (!this.localEs.isPaused()) return;
+		this.awaitedAfterPause.clear();
+		if (visible != null) {
+			for (final Entry<ImageView, String> e : this.waitingFor.entrySet()) {
+				final ImageView view = e.getKey();
+				if (view != null && e.getValue().equals(view.getTag()) && isWithin(view, visible)) this.awaitedAfterPause.add(view);
+			}
+		}
+		this.resumedNanos = System.nanoTime();
+		this.localEs.resume();
+		this.netEs.resume();
+	}
+
+	public boolean isPaused () {
+		return this.localEs.isPaused();
+	}
+
+	/**
+	 * Millis from the last resume() until every ImageView that was then
+	 * waiting had its image. -1 if not yet known.
+	 */
+	public long getLastShownAfterPauseMillis () {
+		return this.lastShownAfterPauseMillis;
+	}
+
+	/**
+	 * Number of ImageViews with a load not yet finished.
+	 */
+	public int loadingCount () {
+		return this.loading.size();
+	}
+
+	/**
+	 * For fetches, may be called from any thread.
+	 */
+	Executor getNetEs () {
+		return this.netEs;
+	}
+
+	/**
+	 * Number of ImageViews holding a bitmap from a cache.
+	 */
+	int boundCount () {
+		return this.bound.size();
+	}
+
+	private void unbind (final ImageView view) {
+		final Bound prev = this.bound.remove(view);
+		if (prev != null) prev.release();
+	}
+
+	private void cancel (final ImageView view) {
+		final ImageLoaderTask prev = this.loading.remove(view);
+		if (prev != null) prev.cancel(false);
+	}
+
+	/**
+	 * Recycled list rows are detached, so are not within the list.
+	 */
+	private static boolean isWithin (final View view, final View ancestor) {
+		ViewParent p = view.getParent();
+		while (p != null) {
+			if (p == ancestor) return true;
+			p = p.getParent();
+		}
+		return false;
+	}
+
+	private static class Bound {
+
+		private final HybridBitmapCache cache;
+		private final Bitmap bmp;
+
+		public Bound (final HybridBitmapCache cache, final Bitmap bmp) {
+			this.cache = cache;
+			this.bmp = bmp;
+		}
+
+		public void release () {
+			this.cache.release(this.bmp);
+		}
+
+	}
+
+}
@@ -1,7 +1,5 @@
 package com.vaguehope.onosendai.images;
 
-import java.util.concurrent.Executor;
-
 import android.graphics.Bitmap;
 
 import com.vaguehope.onosendai.images.ImageFetcherTask.ImageFetchResult;
@@ -15,13 +13,13 @@ public class ImageLoaderTask extends TrackingAsyncTask<Void, Void, ImageFetchRes
 	private static final LogWrapper LOG = new LogWrapper("IL");
 
 	private final HybridBitmapCache cache;
-	private final Executor netEs;
+	private final ImageLoadScheduler scheduler;
 	private final ImageLoadRequest req;
 
-	public ImageLoaderTask (final ExecutorEventListener eventListener, final HybridBitmapCache cache, final Executor netEs, final ImageLoadRequest req) {
+	public ImageLoaderTask (final ExecutorEventListener eventListener, final HybridBitmapCache cache, final ImageLoadScheduler scheduler, final ImageLoadRequest req) {
 		super(eventListener);
 		this.cache = cache;
-		this.netEs = netEs;
+		this.scheduler = scheduler;
 		this.req = req;
 	}
 
@@ -34,10 +32,9 @@ public class ImageLoaderTask extends TrackingAsyncTask<Void, Void, ImageFetchRes
 	protected ImageFetchResult doInBackgroundWithTracking (final Void... unused) {
 		if (!this.req.isRequired()) return null;
 		try {
-			final String url = this.req.getUrl();
-			final Bitmap bmp = this.cache.get(url);
+			final Bitmap bmp = this.cache.get(this.req);
 			if (bmp != null) return new ImageFetchResult(this.req, bmp);
-			new ImageFetcherTask(getEventListener(), this.cache, this.req).executeOnExecutor(this.netEs);
+			if (this.cache.getInFlight().attach(this.req)) startFetch();
 			return null;
 		}
 		catch (final Exception e) { // NOSONAR To report errors.
@@ -45,15 +42,37 @@ public class ImageLoaderTask extends TrackingAsyncTask<Void, Void, ImageFetchRes
 		}
 	}
 
+	private void startFetch () {
+		try {
+			new ImageFetcherTask(getEventListener(), this.cache, this.scheduler, this.req).executeOnExecutor(this.scheduler.getNetEs());
+		}
+		catch (final RuntimeException e) {
+			this.cache.getInFlight().complete(this.req.getUrl()); // So later requests are not left attached to nothing.
+			throw e;
+		}
+	}
+
+	@Override
+	protected void onCancelled (final ImageFetchResult result) {
+		this.scheduler.finished(this, this.req);
+		if (result != null && result.isSuccess()) this.cache.release(result.getBmp());
+	}
+
 	@Override
 	protected void onPostExecute (final ImageFetchResult result) {
-		if (result == null) return; // Request was no longer required.
+		this.scheduler.finished(this, this.req);
+		if (result == null) return; // No longer required or waiting on a fetch.
 		if (result.isSuccess()) {
-			result.getRequest().setImageBitmapIfRequired(result.getBmp());
+			if (result.getRequest().setImageBitmapIfRequired(result.getBmp())) {
+				this.scheduler.shown(this.cache, result.getRequest(), result.getBmp());
+			}
+			else {
+				this.cache.release(result.getBmp());
+			}
 		}
 		else {
 			LOG.w("Failed to load image '%s': %s", result.getRequest().getUrl(), result.getEmsg());
-			result.getRequest().setImageUnavailableIfRequired();
+			if (result.getRequest().setImageUnavailableIfRequired()) this.scheduler.shown(result.getRequest());
 		}
 	}
 
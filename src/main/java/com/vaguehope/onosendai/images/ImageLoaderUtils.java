@@ -1,14 +1,15 @@
 package com.vaguehope.onosendai.images;
 
-import java.util.concurrent.Executor;
-
 import android.app.Activity;
 import android.graphics.Bitmap;
+import android.view.View;
 
-import com.vaguehope.onosendai.util.exec.ExecutorEventListener;
+import com.vaguehope.onosendai.C;
 
 public final class ImageLoaderUtils {
 
+	private static final int SIZE_CLASS_STEP_PIXELS = 32;
+
 	private ImageLoaderUtils () {
 		throw new AssertionError();
 	}
@@ -18,21 +19,60 @@ public final class ImageLoaderUtils {
 		return (ImageLoader) activity;
 	}
 
-	public static void loadImage (final HybridBitmapCache cache, final ImageLoadRequest req, final Executor es) {
-		loadImage(cache, req, es, es, null);
-	}
-
-	public static void loadImage (final HybridBitmapCache cache, final ImageLoadRequest req, final Executor localEs, final Executor netEs, final ExecutorEventListener eventListener) {
-		if (localEs == null) throw new IllegalArgumentException("Must specificy a local executor.");
-		if (netEs == null) throw new IllegalArgumentException("Must specificy a network executor.");
-		final Bitmap bmp = cache.quickGet(req.getUrl());
+	public static void loadImage (final HybridBitmapCache cache, final ImageLoadRequest req, final ImageLoadScheduler scheduler) {
+		if (scheduler == null) throw new IllegalArgumentException("Must specificy a scheduler.");
+		final Bitmap bmp = cache.quickGet(req);
 		if (bmp != null) {
 			req.setImageBitmap(bmp);
+			scheduler.shown(cache, req, bmp);
 		}
 		else {
 			req.setImagePending();
-			new ImageLoaderTask(eventListener, cache, netEs, req).executeOnExecutor(localEs);
+			scheduler.load(cache, req);
 		}
 	}
 
+	/**
+	 * Pixels an avatar is shown at in view's display.
+	 */
+	public static int avatarSizePixels (final View view) {
+		return (int) Math.ceil(C.AVATAR_SIZE_DIP * view.getResources().getDisplayMetrics().density);
+	}
+
+	/**
+	 * For images shown the full width of the screen. The larger side, so it
+	 * still holds after rotating.
+	 */
+	public static int screenWidthPixels (final View view) {
+		final int w = view.getResources().getDisplayMetrics().widthPixels;
+		final int h = view.getResources().getDisplayMetrics().heightPixels;
+		return Math.max(w, h);
+	}
+
+	/**
+	 * Rounds up to a multiple of SIZE_CLASS_STEP_PIXELS, so that requests for
+	 * about the same size share a decode. 0 stays 0, meaning not limited.
+	 */
+	static int sizeClass (final int px) {
+		if (px < 1) return 0;
+		return ((px + SIZE_CLASS_STEP_PIXELS - 1) / SIZE_CLASS_STEP_PIXELS) * SIZE_CLASS_STEP_PIXELS;
+	}
+
+	/**
+	 * Largest power of two the image can be shrunk by and still be no smaller
+	 * than the required size. A required size of 0 does not limit that side.
+	 */
+	static int sampleSize (final int width, final int height, final int reqWidth, final int reqHeight) {
+		if (reqWidth < 1 && reqHeight < 1) return 1;
+		int sample = 1;
+		while (fits(width / (sample * 2), reqWidth) && fits(height / (sample * 2), reqHeight)) {
+			sample *= 2;
+		}
+		return sample;
+	}
+
+	private static boolean fits (final int sampled, final int req) {
+		return sampled > 0 && sampled >= req;
+	}
+
 }
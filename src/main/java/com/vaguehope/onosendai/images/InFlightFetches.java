@@ -0,0 +1,67 @@
+package com.vaguehope.onosendai.images;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * URLs being downloaded and the requests waiting on each. Only the first
+ * request for a URL starts a download, later ones are attached to it and
+ * all are completed together when it finishes, so nothing blocks waiting
+ * for another thread's download.
+ */
+public class InFlightFetches {
+
+	private final Map<String, List<ImageLoadRequest>> waiting = new HashMap<String, List<ImageLoadRequest>>();
+
+	/**
+	 * @return true if req is the first for its URL and the caller should
+	 *         start the download, false if it is attached to one already
+	 *         running.
+	 */
+	public synchronized boolean attach (final ImageLoadRequest req) {
+		final List<ImageLoadRequest> reqs = this.waiting.get(req.getUrl());
+		if (reqs != null) {
+			reqs.add(req);
+			return false;
+		}
+		final List<ImageLoadRequest> newReqs = new ArrayList<ImageLoadRequest>();
+		newReqs.add(req);
+		this.waiting.put(req.getUrl(), newReqs);
+		return true;
+	}
+
+	/**
+	 * Call once the download has finished, successfully or not.
+	 * @return every request that was waiting on url, in the order they
+	 *         attached. No more can attach to this download after this.
+	 */
+	public synchronized List<ImageLoadRequest> complete (final String url) {
+		final List<ImageLoadRequest> reqs = this.waiting.remove(url);
+		if (reqs == null) return Collections.emptyList();
+		return reqs;
+	}
+
+	/**
+	 * Drops url if none of its requests still need the image, e.g. because
+	 * their rows have been scrolled away and reused.
+	 * @return true if dropped and the download should not be started.
+	 */
+	public synchronized boolean abandonIfNoneRequired (final String url) {
+		final List<ImageLoadRequest> reqs = this.waiting.get(url);
+		if (reqs != null) {
+			for (final ImageLoadRequest req : reqs) {
+				if (req.isRequired()) return false;
+			}
+		}
+		this.waiting.remove(url);
+		return true;
+	}
+
+	public synchronized int size () {
+		return this.waiting.size();
+	}
+
+}
@@ -5,13 +5,30 @@ import android.support.v4.util.LruCache;
 
 public class MemoryBitmapCache<K> extends LruCache<K, Bitmap> {
 
+	private final BitmapPool pool;
+
 	public MemoryBitmapCache (final int maxSizeBytes) {
+		this(maxSizeBytes, null);
+	}
+
+	/**
+	 * @param pool
+	 *            told when a bitmap leaves the cache, however it left. Tell it
+	 *            before putting a bitmap in. May be null.
+	 */
+	public MemoryBitmapCache (final int maxSizeBytes, final BitmapPool pool) {
 		super(maxSizeBytes);
+		this.pool = pool;
 	}
 
 	@Override
 	protected int sizeOf (final K key, final Bitmap value) {
-		return value.getRowBytes() * value.getHeight(); // Backwards compatible equivalent of getByteCount().
+		return BitmapPool.sizeOf(value);
+	}
+
+	@Override
+	protected void entryRemoved (final boolean evicted, final K key, final Bitmap oldValue, final Bitmap newValue) {
+		if (this.pool != null && oldValue != newValue) this.pool.uncached(oldValue);
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package com.vaguehope.onosendai.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * A tweet with what it is in reply to and what replies to it, as far as
+ * they are stored. Links to tweets that are not stored are kept so only
+ * those need fetching.
+ */
+public class Conversation {
+
+	private final String sid;
+	private final Map<String, String> parents;
+	private final Map<String, Tweet> tweets;
+
+	/**
+	 * @param parents
+	 *            child SID to the SID it is in reply to.
+	 * @param tweets
+	 *            SID to the stored tweet, SIDs not stored are left out.
+	 */
+	public Conversation (final String sid, final Map<String, String> parents, final Map<String, Tweet> tweets) {
+		this.sid = sid;
+		this.parents = Collections.unmodifiableMap(new HashMap<String, String>(parents));
+		this.tweets = Collections.unmodifiableMap(new HashMap<String, Tweet>(tweets));
+	}
+
+	public String getSid () {
+		return this.sid;
+	}
+
+	/**
+	 * Null if not stored.
+	 */
+	public Tweet getTweet (final String tweetSid) {
+		return this.tweets.get(tweetSid);
+	}
+
+	/**
+	 * Stored tweets this one is in reply to, nearest first. Stops at the
+	 * first that is not stored.
+	 */
+	public List<Tweet> getAncestors () {
+		final List<Tweet> ret = new ArrayList<Tweet>();
+		final Set<String> seen = new HashSet<String>();
+		seen.add(this.sid);
+		String parent = this.parents.get(this.sid);
+		while (parent != null && seen.add(parent)) {
+			final Tweet tweet = this.tweets.get(parent);
+			if (tweet == null) break;
+			ret.add(tweet);
+			parent = this.parents.get(parent);
+		}
+		return ret;
+	}
+
+	/**
+	 * Stored tweets that reply to this one, directly or not, newest first.
+	 */
+	public List<Tweet> getReplies () {
+		final Set<String> descendants = new LinkedHashSet<String>();
+		descendants.add(this.sid);
+		boolean more = true;
+		while (more) {
+			more = false;
+			for (final Entry<String, String> e : this.parents.entrySet()) {
+				if (descendants.contains(e.getValue()) && descendants.add(e.getKey())) more = true;
+			}
+		}
+		descendants.remove(this.sid);
+
+		final List<Tweet> ret = new ArrayList<Tweet>();
+		for (final String s : descendants) {
+			final Tweet tweet = this.tweets.get(s);
+			if (tweet != null) ret.add(tweet);
+		}
+		Collections.sort(ret, NEWEST_FIRST);
+		return ret;
+	}
+
+	/**
+	 * This SID if it is not stored, and SIDs that something stored is in
+	 * reply to but that are not stored themselves. These are all that need
+	 * fetching to fill the gaps.
+	 */
+	public Set<String> getMissingSids () {
+		final Set<String> ret = new LinkedHashSet<String>();
+		if (!this.tweets.containsKey(this.sid)) ret.add(this.sid);
+		for (final String parent : this.parents.values()) {
+			if (!this.tweets.containsKey(parent)) ret.add(parent);
+		}
+		return ret;
+	}
+
+	public int size () {
+		return this.tweets.size();
+	}
+
+	@Override
+	public String toString () {
+		return new StringBuilder("Conversation{").append(this.sid)
+				.append(", ").append(this.tweets.size()).append(" stored")
+				.append(", ").append(this.parents.size()).append(" links}")
+				.toString();
+	}
+
+	private static final Comparator<Tweet> NEWEST_FIRST = new Comparator<Tweet>() {
+		@Override
+		public int compare (final Tweet a, final Tweet b) {
+			final long at = a.getTime();
+			final long bt = b.getTime();
+			return at > bt ? -1 : (at == bt ? 0 : 1);
+		}
+	};
+
+}
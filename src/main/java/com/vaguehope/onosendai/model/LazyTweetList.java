@@ -0,0 +1,195 @@
+package com.vaguehope.onosendai.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * A column's rows held as just their uid and time, newest first. Tweets are
+ * only read, a window at a time, when a row is asked for, and only the
+ * recently used windows are kept. Memory per row is two longs however long
+ * the column is.
+ * <p>
+ * On the UI thread use peekTweet() and requestWindow(), and read requested
+ * windows elsewhere with loadRequestedWindow().
+ */
+public class LazyTweetList {
+
+	private static final int WINDOWS_KEPT = 3;
+
+	private final long[] uids;
+	private final long[] times;
+	private final int count;
+	private final TweetLoader loader;
+	private final int windowSize;
+	private final LruCache<Long, Tweet> loaded;
+	private final Set<Long> missing = new HashSet<Long>();
+	private final Set<Integer> requestedWindows = new HashSet<Integer>();
+
+	/**
+	 * @param uids
+	 *            tw._id of each row, newest first. Not copied.
+	 * @param times
+	 *            time of each row. Not copied.
+	 */
+	public LazyTweetList (final long[] uids, final long[] times, final int count, final TweetLoader loader, final int windowSize) {
+		if (uids.length < count || times.length < count) throw new IllegalArgumentException("Arrays shorter than count.");
+		if (windowSize < 1) throw new IllegalArgumentException("windowSize must be positive.");
+		this.uids = uids;
+		this.times = times;
+		this.count = count;
+		this.loader = loader;
+		this.windowSize = windowSize;
+		this.loaded = new LruCache<Long, Tweet>(windowSize * WINDOWS_KEPT);
+	}
+
+	public int count () {
+		return this.count;
+	}
+
+	public int getWindowSize () {
+		return this.windowSize;
+	}
+
+	public long getUid (final int index) {
+		checkIndex(index);
+		return this.uids[index];
+	}
+
+	public long getTime (final int index) {
+		checkIndex(index);
+		return this.times[index];
+	}
+
+	/**
+	 * -1 if not found.
+	 */
+	public int indexOfUid (final long uid) {
+		for (int i = 0; i < this.count; i++) {
+			if (this.uids[i] == uid) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the window around index if the row is not already loaded, so not
+	 * for the UI thread.
+	 * @return null if the row has gone from the DB since the list was read.
+	 */
+	public Tweet getTweet (final int index) {
+		checkIndex(index);
+		final Tweet tweet = this.loaded.get(Long.valueOf(this.uids[index]));
+		if (tweet != null) return tweet;
+		final int start = Math.max(0, Math.min(index - (this.windowSize / 2), this.count - this.windowSize));
+		loadRange(start, Math.min(this.count, start + this.windowSize));
+		return this.loaded.get(Long.valueOf(this.uids[index]));
+	}
+
+	/**
+	 * Never reads.
+	 * @return null if the row is not loaded yet or has gone from the DB.
+	 */
+	public Tweet peekTweet (final int index) {
+		checkIndex(index);
+		return this.loaded.get(Long.valueOf(this.uids[index]));
+	}
+
+	/**
+	 * Marks the window holding index to be read if it has rows not yet read
+	 * and is not already marked.
+	 * @return true if the caller should now call loadRequestedWindow(index).
+	 *         False if index is out of range.
+	 */
+	public boolean requestWindow (final int index) {
+		if (index < 0 || index >= this.count) return false;
+		final Integer window = Integer.valueOf(index / this.windowSize);
+		synchronized (this.requestedWindows) {
+			if (this.requestedWindows.contains(window)) return false;
+			if (isRangeLoaded(windowStart(index), windowEnd(index))) return false;
+			this.requestedWindows.add(window);
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the window marked by requestWindow(index), so not for the UI
+	 * thread.
+	 */
+	public void loadRequestedWindow (final int index) {
+		checkIndex(index);
+		try {
+			loadRange(windowStart(index), windowEnd(index));
+		}
+		finally {
+			synchronized (this.requestedWindows) {
+				this.requestedWindows.remove(Integer.valueOf(index / this.windowSize));
+			}
+		}
+	}
+
+	/**
+	 * Number of rows read in so far.
+	 */
+	public int loadedCount () {
+		return this.loaded.size();
+	}
+
+	private int windowStart (final int index) {
+		return (index / this.windowSize) * this.windowSize;
+	}
+
+	private int windowEnd (final int index) {
+		return Math.min(this.count, windowStart(index) + this.windowSize);
+	}
+
+	/**
+	 * Rows gone from the DB count as loaded so they are not asked for again.
+	 */
+	private boolean isRangeLoaded (final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			final Long uid = Long.valueOf(this.uids[i]);
+			if (this.loaded.get(uid) == null && !isMissing(uid)) return false;
+		}
+		return true;
+	}
+
+	private boolean isMissing (final Long uid) {
+		synchronized (this.missing) {
+			return this.missing.contains(uid);
+		}
+	}
+
+	private void loadRange (final int start, final int end) {
+		final List<Long> toLoad = new ArrayList<Long>(end - start);
+		for (int i = start; i < end; i++) {
+			final Long uid = Long.valueOf(this.uids[i]);
+			if (this.loaded.get(uid) == null) toLoad.add(uid);
+		}
+		final List<Tweet> tweets = this.loader.loadTweets(toLoad);
+		if (tweets == null) return;
+		final Set<Long> notFound = new HashSet<Long>(toLoad);
+		for (final Tweet t : tweets) {
+			final Long uid = Long.valueOf(t.getUid());
+			this.loaded.put(uid, t);
+			notFound.remove(uid);
+		}
+		synchronized (this.missing) {
+			this.missing.addAll(notFound);
+		}
+	}
+
+	private void checkIndex (final int index) {
+		if (index < 0 || index >= this.count) throw new IndexOutOfBoundsException("Index " + index + " of " + this.count + ".");
+	}
+
+	public interface TweetLoader {
+		/**
+		 * Tweets without their metas. Any not found are left out.
+		 */
+		List<Tweet> loadTweets (List<Long> uids);
+	}
+
+}
@@ -67,9 +67,9 @@ public class ScrollState {
 
 		// Also search by time before giving up.
 		if (this.itemTime > 0L && adapter instanceof TweetListAdapter) {
-			final TweetList tweetList = ((TweetListAdapter) adapter).getInputData();
-			for (int i = 0; i < tweetList.count(); i++) {
-				if (tweetList.getTweet(i).getTime() <= this.itemTime) {
+			final TweetListAdapter tweetListAdapter = (TweetListAdapter) adapter;
+			for (int i = 0; i < tweetListAdapter.getCount(); i++) {
+				if (tweetListAdapter.getItemTime(i) <= this.itemTime) {
 					lv.setSelectionFromTop(i, 0);
 					return;
 				}
@@ -1,5 +1,6 @@
 package com.vaguehope.onosendai.model;
 
+import android.graphics.Bitmap;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -7,6 +8,7 @@ import android.widget.TextView;
 import com.vaguehope.onosendai.R;
 import com.vaguehope.onosendai.images.ImageLoadRequest;
 import com.vaguehope.onosendai.images.ImageLoader;
+import com.vaguehope.onosendai.images.ImageLoaderUtils;
 import com.vaguehope.onosendai.widget.PendingImage;
 
 public enum TweetLayout {
@@ -28,7 +30,8 @@ public enum TweetLayout {
 
 			final String avatarUrl = item.getAvatarUrl();
 			if (avatarUrl != null) {
-				imageLoader.loadImage(new ImageLoadRequest(avatarUrl, rowView.getAvatar()));
+				final int px = ImageLoaderUtils.avatarSizePixels(rowView.getAvatar());
+				imageLoader.loadImage(new ImageLoadRequest(avatarUrl, rowView.getAvatar(), px, px, Bitmap.Config.RGB_565));
 			}
 			else {
 				rowView.getAvatar().setImageResource(R.drawable.question_blue);
@@ -51,7 +54,8 @@ public enum TweetLayout {
 			MAIN.applyTweetTo(item, rowView, imageLoader);
 			final String inlineMediaUrl = item.getInlineMediaUrl();
 			if (inlineMediaUrl != null) {
-				imageLoader.loadImage(new ImageLoadRequest(inlineMediaUrl, rowView.getInlineMedia()));
+				imageLoader.loadImage(new ImageLoadRequest(inlineMediaUrl, rowView.getInlineMedia(),
+						ImageLoaderUtils.screenWidthPixels(rowView.getInlineMedia()), 0, null));
 			}
 			else {
 				rowView.getInlineMedia().setImageResource(R.drawable.question_blue);
@@ -1,5 +1,8 @@
 package com.vaguehope.onosendai.model;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,59 +17,189 @@ public class TweetListAdapter extends BaseAdapter {
 	private final ImageLoader imageLoader;
 	private final LayoutInflater layoutInflater;
 
+	private final int pageSize;
+	private final int pagePrefetchMargin;
+	private final PageRequestListener pageRequestListener;
+
 	private TweetList listData;
+	private LazyTweetList lazyData;
+	private boolean morePages = false;
+	private boolean pageRequested = false;
 
 	public TweetListAdapter (final Context context, final boolean showInlineMedia, final ImageLoader imageLoader) {
+		this(context, showInlineMedia, imageLoader, 0, 0, null);
+	}
+
+	/**
+	 * @param pageSize
+	 *            size of the pages passed to setInputData() and appendPage().
+	 *            A page shorter than this marks the end of the list.
+	 * @param pageRequestListener
+	 *            called when a row within pagePrefetchMargin of the end of the
+	 *            list is drawn and there may be more rows to load, and in lazy
+	 *            mode for windows of rows not yet read.
+	 */
+	public TweetListAdapter (final Context context, final boolean showInlineMedia, final ImageLoader imageLoader,
+			final int pageSize, final int pagePrefetchMargin, final PageRequestListener pageRequestListener) {
 		this.showInlineMedia = showInlineMedia;
 		this.imageLoader = imageLoader;
 		this.layoutInflater = LayoutInflater.from(context);
+		this.pageSize = pageSize;
+		this.pagePrefetchMargin = pagePrefetchMargin;
+		this.pageRequestListener = pageRequestListener;
 	}
 
 	public void setInputData (final TweetList data) {
 		this.listData = data;
+		this.lazyData = null;
+		this.morePages = isFullPage(data.count());
+		this.pageRequested = false;
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Show a whole column and only make Tweets for rows that are drawn. There
+	 * are no more pages to load in this mode.
+	 */
+	public void setLazyData (final LazyTweetList data) {
+		this.listData = null;
+		this.lazyData = data;
+		this.morePages = false;
+		this.pageRequested = false;
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Add a page of older tweets to the end of the list.
+	 */
+	public void appendPage (final List<Tweet> page) {
+		this.pageRequested = false;
+		if (this.lazyData != null) return;
+		this.morePages = isFullPage(page.size());
+		if (page.size() < 1) return;
+		final List<Tweet> all = new ArrayList<Tweet>(getCount() + page.size());
+		if (this.listData != null) all.addAll(this.listData.getTweets());
+		all.addAll(page);
+		this.listData = new TweetList(all);
 		notifyDataSetChanged();
 	}
 
+	/**
+	 * Call once a window requested from the PageRequestListener has been
+	 * read, whether or not it worked.
+	 */
+	public void windowLoaded (final LazyTweetList data) {
+		if (data == this.lazyData) notifyDataSetChanged();
+	}
+
+	/**
+	 * Call if a requested page failed to load so it can be requested again.
+	 */
+	public void pageRequestFailed () {
+		this.pageRequested = false;
+	}
+
+	private boolean isFullPage (final int count) {
+		return this.pageSize > 0 && count >= this.pageSize;
+	}
+
+	private void checkNeedsNextPage (final int position) {
+		if (this.pageRequestListener == null || !this.morePages || this.pageRequested) return;
+		if (position < getCount() - this.pagePrefetchMargin) return;
+		final Tweet last = getTweet(getCount() - 1);
+		if (last == null) return;
+		this.pageRequested = true;
+		this.pageRequestListener.requestPageAfter(last);
+	}
+
+	/**
+	 * Null if showing lazy data.
+	 */
 	public TweetList getInputData () {
 		return this.listData;
 	}
 
+	public boolean isLazy () {
+		return this.lazyData != null;
+	}
+
+	/**
+	 * False if the last page loaded was short, i.e. the whole column is
+	 * loaded.
+	 */
+	public boolean isMorePages () {
+		return this.morePages;
+	}
+
 	@Override
 	public int getCount () {
+		if (this.lazyData != null) return this.lazyData.count();
 		return this.listData == null ? 0 : this.listData.count();
 	}
 
+	@Override
+	public boolean hasStableIds () {
+		return true;
+	}
+
 	@Override
 	public Object getItem (final int position) {
 		return getTweet(position);
 	}
 
+	/**
+	 * The tweet's tw._id, without reading the tweet in lazy mode.
+	 */
 	@Override
 	public long getItemId (final int position) {
+		if (this.lazyData != null) return position < this.lazyData.count() ? this.lazyData.getUid(position) : -1;
 		final Tweet tweet = getTweet(position);
 		if (tweet == null) return -1;
 		return tweet.getUid();
 	}
 
+	/**
+	 * Without reading the tweet in lazy mode.  0 if no such row.
+	 */
+	public long getItemTime (final int position) {
+		if (this.lazyData != null) return position < this.lazyData.count() ? this.lazyData.getTime(position) : 0L;
+		final Tweet tweet = getTweet(position);
+		if (tweet == null) return 0L;
+		return tweet.getTime();
+	}
+
 	@Override
 	public int getViewTypeCount () {
 		return TweetLayout.values().length;
 	}
 
+	/**
+	 * Without reading the tweet in lazy mode, so a row not yet read is a
+	 * placeholder of the main layout.
+	 */
 	@Override
 	public int getItemViewType (final int position) {
-		return tweetLayoutType(this.listData.getTweet(position)).getIndex();
+		return tweetLayoutType(getTweetIfLoaded(position)).getIndex();
 	}
 
+	/**
+	 * In lazy mode reads the tweet if not already read, so not for drawing.
+	 */
 	public Tweet getTweet (final int position) {
+		if (this.lazyData != null) return position < this.lazyData.count() ? this.lazyData.getTweet(position) : null;
 		if (this.listData == null) return null;
 		if (position >= this.listData.count()) return null;
 		return this.listData.getTweet(position);
 	}
 
+	private Tweet getTweetIfLoaded (final int position) {
+		if (this.lazyData != null) return position < this.lazyData.count() ? this.lazyData.peekTweet(position) : null;
+		return getTweet(position);
+	}
+
 	@Override
 	public View getView (final int position, final View convertView, final ViewGroup parent) {
-		final Tweet item = this.listData.getTweet(position);
+		final Tweet item = getTweetIfLoaded(position);
 		final TweetLayout layoutType = tweetLayoutType(item);
 
 		View view = convertView;
@@ -80,13 +213,48 @@ public class TweetListAdapter extends BaseAdapter {
 			rowView = (TweetRowView) view.getTag();
 		}
 
-		layoutType.applyTweetTo(item, rowView, this.imageLoader);
+		if (item != null) {
+			layoutType.applyTweetTo(item, rowView, this.imageLoader);
+		}
+		else { // Not read yet, or gone from the DB since the lazy list was read and a refresh will follow.
+			rowView.getTweet().setText(null);
+			rowView.getName().setText(null);
+		}
+		checkNeedsWindows(position);
+		checkNeedsNextPage(position);
 
 		return view;
 	}
 
+	/**
+	 * The window drawn from and those either side, so scrolling finds rows
+	 * already read.
+	 */
+	private void checkNeedsWindows (final int position) {
+		if (this.lazyData == null || this.pageRequestListener == null) return;
+		final int windowSize = this.lazyData.getWindowSize();
+		for (final int p : new int[] { position, position + windowSize, position - windowSize }) {
+			if (this.lazyData.requestWindow(p)) this.pageRequestListener.requestWindow(this.lazyData, p);
+		}
+	}
+
 	private TweetLayout tweetLayoutType (final Tweet t) {
-		return this.showInlineMedia && t.getInlineMediaUrl() != null ? TweetLayout.INLINE_MEDIA : TweetLayout.MAIN;
+		return this.showInlineMedia && t != null && t.getInlineMediaUrl() != null ? TweetLayout.INLINE_MEDIA : TweetLayout.MAIN;
+	}
+
+	public interface PageRequestListener {
+		/**
+		 * Called on the UI thread. Respond by calling appendPage() or
+		 * pageRequestFailed().
+		 */
+		void requestPageAfter (Tweet lastTweet);
+
+		/**
+		 * Called on the UI thread. Respond by calling
+		 * data.loadRequestedWindow(position) off the UI thread and then
+		 * windowLoaded().
+		 */
+		void requestWindow (LazyTweetList data, int position);
 	}
 
 }
@@ -1,6 +1,9 @@
 package com.vaguehope.onosendai.notifications;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import android.app.Notification;
@@ -36,10 +39,17 @@ public final class Notifications {
 	}
 
 	public static void update (final Context context, final DbInterface db, final Collection<Column> columns) {
-		final NotificationManager nm = getManager(context);
+		final List<Column> notifyColumns = new ArrayList<Column>();
 		for (final Column col : columns) {
-			if (col.getNotificationStyle() == null) continue;
-			updateColumn(context, db, col, nm);
+			if (col.getNotificationStyle() != null) notifyColumns.add(col);
+		}
+		if (notifyColumns.size() < 1) return;
+
+		final Map<Integer, Integer> counts = db.getUnreadCounts(notifyColumns);
+		final NotificationManager nm = getManager(context);
+		for (final Column col : notifyColumns) {
+			final Integer count = counts.get(Integer.valueOf(col.getId()));
+			updateColumn(context, col, count != null ? count.intValue() : 0, nm);
 		}
 	}
 
@@ -51,9 +61,8 @@ public final class Notifications {
 		return (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
 	}
 
-	private static void updateColumn (final Context context, final DbInterface db, final Column col, final NotificationManager nm) {
+	private static void updateColumn (final Context context, final Column col, final int count, final NotificationManager nm) {
 		final int nId = idForColumn(col);
-		final int count = db.getUnreadCount(col);
 		if (count > 0) {
 			final Intent intent = new Intent(context, MainActivity.class)
 					.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP)
@@ -3,14 +3,16 @@ package com.vaguehope.onosendai.payload;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Executor;
+import java.util.Set;
 
 import twitter4j.TwitterException;
 import android.content.Context;
 
+import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.config.Account;
 import com.vaguehope.onosendai.config.Column;
 import com.vaguehope.onosendai.config.Config;
+import com.vaguehope.onosendai.model.Conversation;
 import com.vaguehope.onosendai.model.Meta;
 import com.vaguehope.onosendai.model.MetaType;
 import com.vaguehope.onosendai.model.MetaUtils;
@@ -34,32 +36,23 @@ public class InReplyToLoaderTask extends DbBindingAsyncTask<Void, Void, ReplyLoa
 	private final ProviderMgr provMgr;
 	private final PayloadListAdapter payloadListAdapter;
 	private final Tweet rootTweet;
-	private final Tweet threadTweet;
 	private final boolean hdMedia;
-	private final Executor es;
 	private final Payload placeholderPayload;
 
 	public InReplyToLoaderTask (final ExecutorEventListener eventListener, final Context context, final Config conf, final ProviderMgr provMgr,
-			final Tweet rootTweet, final boolean hdMedia, final PayloadListAdapter payloadListAdapter, final Executor es) {
-		this(eventListener, context, conf, provMgr, rootTweet, rootTweet, hdMedia, payloadListAdapter, es);
-	}
-
-	public InReplyToLoaderTask (final ExecutorEventListener eventListener, final Context context, final Config conf, final ProviderMgr provMgr,
-			final Tweet rootTweet, final Tweet threadTweet, final boolean hdMedia, final PayloadListAdapter payloadListAdapter, final Executor es) {
+			final Tweet rootTweet, final boolean hdMedia, final PayloadListAdapter payloadListAdapter) {
 		super(eventListener, context);
 		this.conf = conf;
 		this.provMgr = provMgr;
 		this.rootTweet = rootTweet;
-		this.threadTweet = threadTweet;
 		this.hdMedia = hdMedia;
 		this.payloadListAdapter = payloadListAdapter;
-		this.es = es;
 		this.placeholderPayload = new PlaceholderPayload(null, "Fetching conversation...", true);
 	}
 
 	@Override
 	public String toString () {
-		return "inReplyToLoader:" + this.threadTweet.getSid();
+		return "inReplyToLoader:" + this.rootTweet.getSid();
 	}
 
 	@Override
@@ -74,47 +67,55 @@ public class InReplyToLoaderTask extends DbBindingAsyncTask<Void, Void, ReplyLoa
 
 	@Override
 	protected ReplyLoaderResult doInBackgroundWithDb (final DbInterface db, final Void... unused) {
-		final Account account = MetaUtils.accountFromMeta(this.threadTweet, this.conf);
+		final Account account = MetaUtils.accountFromMeta(this.rootTweet, this.conf);
 		if (account != null) {
 			switch (account.getProvider()) {
 				case TWITTER:
-					return twitter(db, account, this.threadTweet);
+					return twitter(db, account, this.rootTweet);
 				case SUCCESSWHALE:
-					return successWhale(db, account, this.threadTweet);
+					return successWhale(db, account, this.rootTweet);
 				default:
 			}
 		}
-		return generic(db, this.threadTweet);
+		return generic(db, this.rootTweet);
 	}
 
+	/**
+	 * Reads what is stored of the conversation and then fetches only the
+	 * tweets it is missing. Each round can only find the next gap, as a
+	 * tweet's parent is not known until it is fetched, but all rounds are
+	 * done in this one task.
+	 */
 	private ReplyLoaderResult twitter (final DbInterface db, final Account account, final Tweet startingTweet) {
 		final Meta inReplyToMeta = startingTweet.getFirstMetaOfType(MetaType.INREPLYTO);
 		if (inReplyToMeta == null) return null;
 
-		final ReplyLoaderResult fromCache = fetchFromCache(db, startingTweet, inReplyToMeta.getData());
-		if (fromCache != null) return fromCache;
-
+		Conversation conv = db.getConversation(inReplyToMeta.getData());
 		try {
-			final Tweet inReplyToTweet = this.provMgr.getTwitterProvider().getTweet(account, inReplyToMeta.toLong(0L), this.hdMedia);
-			if (inReplyToTweet != null) {
-				cacheInReplyTos(db, Collections.singletonList(inReplyToTweet));
-				return new ReplyLoaderResult(new InReplyToPayload(startingTweet, inReplyToTweet), true);
+			Set<String> missing = conv.getMissingSids();
+			for (int i = 0; i < C.CONVERSATION_MAX_FETCH_ROUNDS && missing.size() > 0; i++) {
+				final List<Tweet> fetched = this.provMgr.getTwitterProvider().getTweets(account, toIds(missing), this.hdMedia);
+				if (fetched.size() < 1) break;
+				cacheInReplyTos(db, fetched);
+				conv = db.getConversation(inReplyToMeta.getData());
+				final Set<String> prevMissing = missing;
+				missing = conv.getMissingSids();
+				if (missing.equals(prevMissing)) break;
 			}
 		}
 		catch (final TwitterException e) {
 			LOG.w("Failed to retrieve tweet %s: %s", inReplyToMeta.getData(), e.toString());
-			return new ReplyLoaderResult("Error fetching tweet: " + e.getMessage(), startingTweet);
+			return new ReplyLoaderResult(threadPayloads(startingTweet, conv), "Error fetching tweet: " + e.getMessage(), startingTweet);
 		}
-
-		return null;
+		return fromConversation(startingTweet, conv);
 	}
 
 	private ReplyLoaderResult successWhale (final DbInterface db, final Account account, final Tweet startingTweet) {
 		final Meta inReplyToMeta = startingTweet.getFirstMetaOfType(MetaType.INREPLYTO);
 		if (inReplyToMeta == null) return fetchComments(account, startingTweet);
 
-		final ReplyLoaderResult fromCache = fetchFromCache(db, startingTweet, inReplyToMeta.getData());
-		if (fromCache != null) return fromCache;
+		final Conversation conv = db.getConversation(inReplyToMeta.getData());
+		if (conv.getMissingSids().size() < 1) return fromConversation(startingTweet, conv);
 
 		final Meta serviceMeta = startingTweet.getFirstMetaOfType(MetaType.SERVICE);
 		if (serviceMeta != null) {
@@ -122,32 +123,60 @@ public class InReplyToLoaderTask extends DbBindingAsyncTask<Void, Void, ReplyLoa
 				final TweetList thread = this.provMgr.getSuccessWhaleProvider().getThread(account, serviceMeta.getData(), startingTweet.getSid());
 				if (thread != null && thread.count() > 0) {
 					cacheInReplyTos(db, thread.getTweets());
-					return new ReplyLoaderResult(tweetListToReplyPayloads(startingTweet, thread), false);
+					return new ReplyLoaderResult(tweetListToReplyPayloads(startingTweet, thread));
 				}
 			}
 			catch (final SuccessWhaleException e) {
 				LOG.w("Failed to retrieve thread %s: %s", inReplyToMeta.getData(), e.toString());
-				return new ReplyLoaderResult("Error fetching thread: " + e.getMessage(), startingTweet);
+				return new ReplyLoaderResult(threadPayloads(startingTweet, conv), "Error fetching thread: " + e.getMessage(), startingTweet);
 			}
 		}
 
-		return null;
+		return fromConversation(startingTweet, conv);
 	}
 
 	private static ReplyLoaderResult generic (final DbInterface db, final Tweet startingTweet) {
 		final Meta inReplyToMeta = startingTweet.getFirstMetaOfType(MetaType.INREPLYTO);
 		if (inReplyToMeta == null) return null;
+		return fromConversation(startingTweet, db.getConversation(inReplyToMeta.getData()));
+	}
 
-		final ReplyLoaderResult fromCache = fetchFromCache(db, startingTweet, inReplyToMeta.getData());
-		if (fromCache != null) return fromCache;
+	/**
+	 * conv must be of the tweet startingTweet is in reply to.
+	 */
+	private static ReplyLoaderResult fromConversation (final Tweet startingTweet, final Conversation conv) {
+		final List<Payload> payloads = threadPayloads(startingTweet, conv);
+		if (payloads.size() < 1) return null;
+		return new ReplyLoaderResult(payloads);
+	}
 
-		return null;
+	/**
+	 * Nearest first, each owned by the tweet that replies to it.
+	 */
+	private static List<Payload> threadPayloads (final Tweet startingTweet, final Conversation conv) {
+		final List<Payload> ret = new ArrayList<Payload>();
+		final Tweet inReplyToTweet = conv.getTweet(conv.getSid());
+		if (inReplyToTweet == null) return ret;
+		ret.add(new InReplyToPayload(startingTweet, inReplyToTweet));
+		Tweet owner = inReplyToTweet;
+		for (final Tweet ancestor : conv.getAncestors()) {
+			ret.add(new InReplyToPayload(owner, ancestor));
+			owner = ancestor;
+		}
+		return ret;
 	}
 
-	private static ReplyLoaderResult fetchFromCache (final DbInterface db, final Tweet startingTweet, final String inReplyToSid) {
-		final Tweet inReplyToTweet = db.getTweetDetails(inReplyToSid);
-		if (inReplyToTweet != null) return new ReplyLoaderResult(new InReplyToPayload(startingTweet, inReplyToTweet), true);
-		return null;
+	private static List<Long> toIds (final Set<String> sids) {
+		final List<Long> ret = new ArrayList<Long>(sids.size());
+		for (final String sid : sids) {
+			try {
+				ret.add(Long.valueOf(sid));
+			}
+			catch (final NumberFormatException e) {
+				LOG.w("Not a tweet ID: %s", sid);
+			}
+		}
+		return ret;
 	}
 
 	private ReplyLoaderResult fetchComments (final Account account, final Tweet startingTweet) {
@@ -156,7 +185,7 @@ public class InReplyToLoaderTask extends DbBindingAsyncTask<Void, Void, ReplyLoa
 		if (serviceMeta != null && ServiceRef.parseServiceMeta(serviceMeta).getType() == NetworkType.FACEBOOK) {
 			try {
 				final TweetList thread = this.provMgr.getSuccessWhaleProvider().getThread(account, serviceMeta.getData(), startingTweet.getSid());
-				if (thread != null && thread.count() > 0) return new ReplyLoaderResult(tweetListToReplyPayloads(startingTweet, thread), false);
+				if (thread != null && thread.count() > 0) return new ReplyLoaderResult(tweetListToReplyPayloads(startingTweet, thread));
 				return new ReplyLoaderResult("No visible comments.", startingTweet);
 			}
 			catch (final SuccessWhaleException e) {
@@ -167,8 +196,8 @@ public class InReplyToLoaderTask extends DbBindingAsyncTask<Void, Void, ReplyLoa
 		return null;
 	}
 
-	private static List<InReplyToPayload> tweetListToReplyPayloads (final Tweet startingTweet, final TweetList thread) {
-		final List<InReplyToPayload> ret = new ArrayList<InReplyToPayload>();
+	private static List<Payload> tweetListToReplyPayloads (final Tweet startingTweet, final TweetList thread) {
+		final List<Payload> ret = new ArrayList<Payload>();
 		for (final Tweet tweet : thread.getTweets()) {
 			ret.add(new InReplyToPayload(startingTweet, tweet));
 		}
@@ -187,52 +216,34 @@ public class InReplyToLoaderTask extends DbBindingAsyncTask<Void, Void, ReplyLoa
 			return;
 		}
 		this.payloadListAdapter.replaceItem(this.placeholderPayload, result.getPayloads());
-		if (result.checkAgain()) {
-			new InReplyToLoaderTask(getEventListener(), getContext(), this.conf, this.provMgr, this.rootTweet, result.getFirstTweet(), this.hdMedia, this.payloadListAdapter, this.es).executeOnExecutor(this.es);
-		}
 	}
 
 	protected static class ReplyLoaderResult {
 
-		private final List<InReplyToPayload> payloads;
-		private final boolean checkAgain;
-		private final Payload fallback;
+		private final List<Payload> payloads;
 
 		public ReplyLoaderResult (final String msg, final Tweet ownerTweet) {
-			this.fallback = new PlaceholderPayload(ownerTweet, msg);
-			this.payloads = null;
-			this.checkAgain = false;
+			this(Collections.<Payload> emptyList(), msg, ownerTweet);
 		}
 
-		public ReplyLoaderResult (final InReplyToPayload inReplyToPayload, final boolean checkAgain) {
-			this(Collections.singletonList(inReplyToPayload), checkAgain);
+		/**
+		 * What was found before an error, then the error.
+		 */
+		public ReplyLoaderResult (final List<Payload> payloads, final String msg, final Tweet ownerTweet) {
+			this.payloads = new ArrayList<Payload>(payloads);
+			this.payloads.add(new PlaceholderPayload(ownerTweet, msg));
 		}
 
-		public ReplyLoaderResult (final List<InReplyToPayload> inReplyToPayloads, final boolean checkAgain) {
-			this.payloads = inReplyToPayloads;
-			this.checkAgain = checkAgain;
-			this.fallback = null;
+		public ReplyLoaderResult (final List<Payload> payloads) {
+			this.payloads = payloads;
 		}
 
 		public boolean hasResults () {
-			return (this.payloads != null && this.payloads.size() > 0) || this.fallback != null;
+			return this.payloads != null && this.payloads.size() > 0;
 		}
 
 		public List<? extends Payload> getPayloads () {
-			if (this.payloads != null) return this.payloads;
-			if (this.fallback != null) return Collections.singletonList(this.fallback);
-			return null;
-		}
-
-		public Tweet getFirstTweet () {
-			if (this.payloads == null || this.payloads.size() < 1) return null;
-			final InReplyToPayload payload = this.payloads.get(0);
-			if (payload == null) return null;
-			return payload.getInReplyToTweet();
-		}
-
-		public boolean checkAgain () {
-			return this.checkAgain;
+			return this.payloads;
 		}
 
 	}
@@ -1,5 +1,6 @@
 package com.vaguehope.onosendai.payload;
 
+import android.graphics.Bitmap;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -7,6 +8,7 @@ import android.widget.TextView;
 import com.vaguehope.onosendai.R;
 import com.vaguehope.onosendai.images.ImageLoadRequest;
 import com.vaguehope.onosendai.images.ImageLoader;
+import com.vaguehope.onosendai.images.ImageLoaderUtils;
 import com.vaguehope.onosendai.model.Tweet;
 import com.vaguehope.onosendai.util.EqualHelper;
 
@@ -48,7 +50,8 @@ public class InReplyToPayload extends Payload {
 
 		final String avatarUrl = this.inReplyToTweet.getAvatarUrl();
 		if (avatarUrl != null) {
-			imageLoader.loadImage(new ImageLoadRequest(avatarUrl, rowView.getImage()));
+			final int px = ImageLoaderUtils.avatarSizePixels(rowView.getImage());
+			imageLoader.loadImage(new ImageLoadRequest(avatarUrl, rowView.getImage(), px, px, Bitmap.Config.RGB_565));
 		}
 		else {
 			rowView.getImage().setImageResource(R.drawable.question_blue);
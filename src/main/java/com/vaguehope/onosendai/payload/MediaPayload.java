@@ -10,6 +10,7 @@ import com.vaguehope.onosendai.R;
 import com.vaguehope.onosendai.images.ImageLoadRequest;
 import com.vaguehope.onosendai.images.ImageLoadRequest.ImageLoadListener;
 import com.vaguehope.onosendai.images.ImageLoader;
+import com.vaguehope.onosendai.images.ImageLoaderUtils;
 import com.vaguehope.onosendai.model.Meta;
 import com.vaguehope.onosendai.model.Tweet;
 import com.vaguehope.onosendai.util.EqualHelper;
@@ -62,7 +63,8 @@ public class MediaPayload extends Payload {
 	@Override
 	public void applyTo (final PayloadRowView rowView, final ImageLoader imageLoader, final PayloadClickListener clickListener) {
 		super.applyTo(rowView, imageLoader, clickListener);
-		imageLoader.loadImage(new ImageLoadRequest(getUrl(), rowView.getImage(), new CaptionRemover(rowView)));
+		imageLoader.loadImage(new ImageLoadRequest(getUrl(), rowView.getImage(),
+				ImageLoaderUtils.screenWidthPixels(rowView.getImage()), 0, null, new CaptionRemover(rowView)));
 	}
 
 	@Override
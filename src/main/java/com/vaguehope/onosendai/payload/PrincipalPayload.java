@@ -4,6 +4,7 @@ import java.text.DateFormat;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 
+import android.graphics.Bitmap;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -11,6 +12,7 @@ import android.widget.TextView;
 import com.vaguehope.onosendai.R;
 import com.vaguehope.onosendai.images.ImageLoadRequest;
 import com.vaguehope.onosendai.images.ImageLoader;
+import com.vaguehope.onosendai.images.ImageLoaderUtils;
 import com.vaguehope.onosendai.model.Meta;
 import com.vaguehope.onosendai.model.MetaType;
 import com.vaguehope.onosendai.model.Tweet;
@@ -55,7 +57,8 @@ public class PrincipalPayload extends Payload {
 
 		final String avatarUrl = tweet.getAvatarUrl();
 		if (avatarUrl != null) {
-			imageLoader.loadImage(new ImageLoadRequest(avatarUrl, rowView.getImage()));
+			final int px = ImageLoaderUtils.avatarSizePixels(rowView.getImage());
+			imageLoader.loadImage(new ImageLoadRequest(avatarUrl, rowView.getImage(), px, px, Bitmap.Config.RGB_565));
 		}
 		else {
 			rowView.getImage().setImageResource(R.drawable.question_blue);
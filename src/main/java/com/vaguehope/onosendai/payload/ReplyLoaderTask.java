@@ -5,7 +5,6 @@ import java.util.List;
 
 import android.content.Context;
 
-import com.vaguehope.onosendai.model.MetaType;
 import com.vaguehope.onosendai.model.Tweet;
 import com.vaguehope.onosendai.storage.DbInterface;
 import com.vaguehope.onosendai.util.DialogHelper;
@@ -36,7 +35,7 @@ public class ReplyLoaderTask extends TrackingAsyncTask<Void, Void, Result<List<P
 	@Override
 	protected Result<List<Payload>> doInBackgroundWithTracking (final Void... unused) {
 		try {
-			final List<Tweet> replies = this.db.findTweetsWithMeta(MetaType.INREPLYTO, this.tweet.getSid(), 20);
+			final List<Tweet> replies = this.db.getConversation(this.tweet.getSid()).getReplies();
 			final List<Payload> replyPayloads = new ArrayList<Payload>();
 			for (Tweet reply : replies) {
 				replyPayloads.add(new InReplyToPayload(this.tweet, reply));
@@ -14,12 +14,12 @@ public final class TwitterColumnFactory {
 
 	public static Column homeTimeline (final int id, final Account account) {
 		checkAccount(account);
-		return new Column(id, "Home Timeline", account.getId(), MainFeeds.TIMELINE.name(), DEFAULT_REFRESH_MINS, null, null, false, false);
+		return new Column(id, "Home Timeline", account.getId(), MainFeeds.TIMELINE.name(), DEFAULT_REFRESH_MINS, null, null, false, false, null);
 	}
 
 	public static Column mentions (final int id, final Account account) {
 		checkAccount(account);
-		return new Column(id, "Mentions", account.getId(), MainFeeds.MENTIONS.name(), DEFAULT_REFRESH_MINS, null, null, false, false);
+		return new Column(id, "Mentions", account.getId(), MainFeeds.MENTIONS.name(), DEFAULT_REFRESH_MINS, null, null, false, false, null);
 	}
 
 	private static void checkAccount (final Account account) {
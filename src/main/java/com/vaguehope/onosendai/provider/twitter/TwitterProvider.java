@@ -3,6 +3,7 @@ package com.vaguehope.onosendai.provider.twitter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -67,6 +68,18 @@ public class TwitterProvider {
 		return TwitterUtils.convertTweet(account, t.showStatus(id), t.getId(), hdMedia);
 	}
 
+	/**
+	 * This API version has no bulk status lookup, so this is one call per ID.
+	 */
+	public List<Tweet> getTweets (final Account account, final Collection<Long> ids, final boolean hdMedia) throws TwitterException {
+		final Twitter t = getTwitter(account);
+		final List<Tweet> ret = new ArrayList<Tweet>(ids.size());
+		for (final Long id : ids) {
+			ret.add(TwitterUtils.convertTweet(account, t.showStatus(id.longValue()), t.getId(), hdMedia));
+		}
+		return ret;
+	}
+
 	public void post (final Account account, final String body, final long inReplyTo, final ImageMetadata media) throws TwitterException, IOException {
 		InputStream attachmentIs = null;
 		try {
@@ -1,59 +1,62 @@
 package com.vaguehope.onosendai.storage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import android.app.Service;
-import android.content.Intent;
-import android.os.Binder;
-import android.os.IBinder;
+import android.app.ActivityManager;
+import android.content.Context;
 
+import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.config.Column;
+import com.vaguehope.onosendai.model.Conversation;
+import com.vaguehope.onosendai.model.LazyTweetList;
 import com.vaguehope.onosendai.model.MetaType;
 import com.vaguehope.onosendai.model.OutboxTweet;
 import com.vaguehope.onosendai.model.OutboxTweet.OutboxTweetStatus;
 import com.vaguehope.onosendai.model.ScrollState;
 import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.util.LogWrapper;
 
-public class DbService extends Service implements DbInterface {
-//	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+/**
+ * DbAdapter with a TweetListCache in front of it. SharedDb holds the one
+ * instance each process uses. The cache's hits and misses are logged each
+ * housekeep.
+ */
+public class CachingDb implements DbInterface {
 
-	@Override
-	public void onCreate () {
-		super.onCreate();
-		dbStart();
-	}
+	private static final LogWrapper LOG = new LogWrapper("CDB");
 
-	@Override
-	public void onDestroy () {
-		dbStop();
-		super.onDestroy();
-	}
+	private final DbAdapter dbAdaptor;
+	private final TweetListCache tweetListCache;
 
-	@Override
-	public IBinder onBind (final Intent arg0) {
-		return this.mBinder;
+	public CachingDb (final Context context) {
+		this(context, listCacheBytes(context));
 	}
 
-	private final IBinder mBinder = new LocalBinder();
-
-	public class LocalBinder extends Binder {
-		public DbInterface getService () {
-			return DbService.this;
-		}
+	/**
+	 * @param listCacheBytes
+	 *            memory budget for cached column pages.
+	 */
+	public CachingDb (final Context context, final int listCacheBytes) {
+		this.dbAdaptor = new DbAdapter(context);
+		this.dbAdaptor.open();
+		this.tweetListCache = new TweetListCache(this.dbAdaptor, listCacheBytes);
+		this.dbAdaptor.addTweetWriteListener(this.tweetListCache);
+		LOG.i("%s", this.tweetListCache);
 	}
 
-//	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
-//	Data store.
-
-	private DbAdapter dbAdaptor;
-
-	private void dbStart () {
-		this.dbAdaptor = new DbAdapter(getApplicationContext());
-		this.dbAdaptor.open();
+	/**
+	 * A share of the heap this device gives each app.
+	 */
+	static int listCacheBytes (final Context context) {
+		final ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+		return am.getMemoryClass() * 1024 * 1024 / C.DATA_TW_LIST_CACHE_HEAP_DIVISOR;
 	}
 
-	private void dbStop () {
+	public void close () {
+		LOG.i("%s", this.tweetListCache);
 		this.dbAdaptor.close();
 	}
 
@@ -70,6 +73,16 @@ public class DbService extends Service implements DbInterface {
 		this.dbAdaptor.storeTweets(columnId, tweets);
 	}
 
+	@Override
+	public void queueTweets (final Column column, final List<Tweet> tweets) {
+		this.dbAdaptor.queueTweets(column, tweets);
+	}
+
+	@Override
+	public void flushTweets () {
+		this.dbAdaptor.flushTweets();
+	}
+
 	@Override
 	public void deleteTweet (final Column column, final Tweet tweet) {
 		this.dbAdaptor.deleteTweet(column, tweet);
@@ -80,14 +93,39 @@ public class DbService extends Service implements DbInterface {
 		this.dbAdaptor.deleteTweets(column);
 	}
 
+	@Override
+	public int pruneColumn (final Column column) {
+		return this.dbAdaptor.pruneColumn(column);
+	}
+
+	@Override
+	public void setColumnExcludes (final Collection<Column> columns) {
+		this.dbAdaptor.setColumnExcludes(columns);
+	}
+
 	@Override
 	public List<Tweet> getTweets (final int columnId, final int numberOf) {
-		return this.dbAdaptor.getTweets(columnId, numberOf);
+		return this.tweetListCache.getTweets(columnId, numberOf, null);
 	}
 
 	@Override
 	public List<Tweet> getTweets (final int columnId, final int numberOf, final Set<Integer> excludeColumnIds) {
-		return this.dbAdaptor.getTweets(columnId, numberOf, excludeColumnIds);
+		return this.tweetListCache.getTweets(columnId, numberOf, excludeColumnIds);
+	}
+
+	@Override
+	public List<Tweet> getTweetsBefore (final int columnId, final long time, final long uid, final int numberOf) {
+		return this.dbAdaptor.getTweetsBefore(columnId, time, uid, numberOf);
+	}
+
+	@Override
+	public List<Tweet> getTweetsBefore (final int columnId, final long time, final long uid, final int numberOf, final Set<Integer> excludeColumnIds) {
+		return this.dbAdaptor.getTweetsBefore(columnId, time, uid, numberOf, excludeColumnIds);
+	}
+
+	@Override
+	public LazyTweetList getLazyTweets (final int columnId, final Set<Integer> excludeColumnIds) {
+		return this.dbAdaptor.getLazyTweets(columnId, excludeColumnIds);
 	}
 
 	@Override
@@ -100,6 +138,16 @@ public class DbService extends Service implements DbInterface {
 		return this.dbAdaptor.findTweetsWithMeta(metaType, data, numberOf);
 	}
 
+	@Override
+	public Conversation getConversation (final String sid) {
+		return this.dbAdaptor.getConversation(sid);
+	}
+
+	@Override
+	public List<Tweet> searchTweets (final String query, final int numberOf) {
+		return this.dbAdaptor.searchTweets(query, numberOf);
+	}
+
 	@Override
 	public Tweet getTweetDetails (final int columnId, final Tweet tweet) {
 		return this.dbAdaptor.getTweetDetails(columnId, tweet);
@@ -120,6 +168,16 @@ public class DbService extends Service implements DbInterface {
 		return this.dbAdaptor.getTweetDetails(tweetUid);
 	}
 
+	@Override
+	public List<Tweet> getTweetDetails (final Collection<Long> tweetUids) {
+		return this.dbAdaptor.getTweetDetails(tweetUids);
+	}
+
+	@Override
+	public List<Tweet> getTweetDetailsSinceTime (final int columnId, final long earliestTime, final int numberOf) {
+		return this.dbAdaptor.getTweetDetailsSinceTime(columnId, earliestTime, numberOf);
+	}
+
 	@Override
 	public List<String> getUsernames (final int numberOf) {
 		return this.dbAdaptor.getUsernames(numberOf);
@@ -145,6 +203,11 @@ public class DbService extends Service implements DbInterface {
 		return this.dbAdaptor.getUnreadCount(columnId, excludeColumnIds, scroll);
 	}
 
+	@Override
+	public Map<Integer, Integer> getUnreadCounts (final Collection<Column> columns) {
+		return this.dbAdaptor.getUnreadCounts(columns);
+	}
+
 	@Override
 	public int getScrollUpCount (final Column column) {
 		return this.dbAdaptor.getScrollUpCount(column);
@@ -226,8 +289,20 @@ public class DbService extends Service implements DbInterface {
 	}
 
 	@Override
-	public void housekeep () {
-		this.dbAdaptor.housekeep();
+	public void storeValues (final Map<String, String> keyValues) {
+		this.dbAdaptor.storeValues(keyValues);
+	}
+
+	@Override
+	public HousekeepResult housekeep (final long budgetMillis) {
+		final HousekeepResult result = this.dbAdaptor.housekeep(budgetMillis);
+		LOG.i("Housekeep: %s", this.tweetListCache);
+		return result;
+	}
+
+	@Override
+	public boolean enableIncrementalVacuum () {
+		return this.dbAdaptor.enableIncrementalVacuum();
 	}
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
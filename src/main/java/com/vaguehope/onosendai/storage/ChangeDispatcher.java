@@ -0,0 +1,221 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.storage.DbInterface.ColumnState;
+import com.vaguehope.onosendai.storage.DbInterface.OutboxListener;
+import com.vaguehope.onosendai.storage.DbInterface.TwUpdateListener;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Tells TwUpdateListeners and OutboxListeners about changes on its own
+ * thread. Columns changed within DATA_TW_NOTIFY_WINDOW_MILLIS of each other
+ * are told about together, once each, with the rows added and removed.
+ * Listeners may be added and removed from any thread.
+ */
+final class ChangeDispatcher implements TweetWriteListener {
+
+	private static class Pending {
+
+		long afterUid = Long.MAX_VALUE;
+		boolean reload = false;
+		final Set<String> removedSids = new HashSet<String>();
+
+	}
+
+	private static final LogWrapper LOG = new LogWrapper("CD");
+
+	private final DbAdapter db;
+	private final List<TwUpdateListener> twUpdateListeners = new CopyOnWriteArrayList<TwUpdateListener>();
+	private final List<OutboxListener> outboxListeners = new CopyOnWriteArrayList<OutboxListener>();
+
+	private final Object lock = new Object();
+	private Map<Integer, Pending> pendingColumns = new LinkedHashMap<Integer, Pending>();
+	private boolean pendingOutbox = false;
+	private boolean scheduled = false;
+
+	private ScheduledExecutorService executor;
+
+	private final Runnable dispatch = new Runnable() {
+		@Override
+		public void run () {
+			dispatch();
+		}
+	};
+
+	public ChangeDispatcher (final DbAdapter db) {
+		this.db = db;
+	}
+
+	/**
+	 * Does nothing if already started.
+	 */
+	public void start () {
+		synchronized (this.lock) {
+			if (this.executor != null && !this.executor.isShutdown()) return;
+			this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread (final Runnable r) {
+					final Thread t = new Thread(r, "ChangeDispatcher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			this.scheduled = false; // Anything scheduled on a stopped executor was dropped.
+			if (!this.pendingColumns.isEmpty() || this.pendingOutbox) schedule();
+		}
+	}
+
+	public void stop () {
+		synchronized (this.lock) {
+			this.executor.shutdownNow();
+		}
+	}
+
+	public void addTwUpdateListener (final TwUpdateListener listener) {
+		this.twUpdateListeners.add(listener);
+	}
+
+	public void removeTwUpdateListener (final TwUpdateListener listener) {
+		this.twUpdateListeners.remove(listener);
+	}
+
+	public void addOutboxListener (final OutboxListener listener) {
+		this.outboxListeners.add(listener);
+	}
+
+	public void removeOutboxListener (final OutboxListener listener) {
+		this.outboxListeners.remove(listener);
+	}
+
+	/**
+	 * Status is not coalesced and is told on the calling thread.
+	 */
+	public void columnStatus (final int columnId, final ColumnState state) {
+		for (final TwUpdateListener l : this.twUpdateListeners) {
+			l.columnStatus(columnId, state);
+		}
+	}
+
+	public void outboxChanged () {
+		synchronized (this.lock) {
+			this.pendingOutbox = true;
+			schedule();
+		}
+	}
+
+	@Override
+	public void tweetsAdded (final int columnId, final long afterUid) {
+		synchronized (this.lock) {
+			final Pending p = pending(columnId);
+			p.afterUid = Math.min(p.afterUid, afterUid);
+			schedule();
+		}
+	}
+
+	@Override
+	public void tweetRemoved (final int columnId, final String sid) {
+		synchronized (this.lock) {
+			pending(columnId).removedSids.add(sid);
+			schedule();
+		}
+	}
+
+	@Override
+	public void columnInvalidated (final int columnId) {
+		synchronized (this.lock) {
+			pending(columnId).reload = true;
+			schedule();
+		}
+	}
+
+	/**
+	 * Dispatch anything pending now and wait for listeners to be told.
+	 */
+	public void flush () {
+		try {
+			this.executor.submit(this.dispatch).get();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (final ExecutionException e) {
+			LOG.e("Failed to dispatch changes.", e.getCause());
+		}
+	}
+
+	private Pending pending (final int columnId) {
+		final Integer key = Integer.valueOf(columnId);
+		Pending p = this.pendingColumns.get(key);
+		if (p == null) {
+			p = new Pending();
+			this.pendingColumns.put(key, p);
+		}
+		return p;
+	}
+
+	private void schedule () {
+		if (this.scheduled) return;
+		this.scheduled = true;
+		this.executor.schedule(this.dispatch, C.DATA_TW_NOTIFY_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void dispatch () {
+		final Map<Integer, Pending> columns;
+		final boolean outbox;
+		synchronized (this.lock) {
+			columns = this.pendingColumns;
+			outbox = this.pendingOutbox;
+			this.pendingColumns = new LinkedHashMap<Integer, Pending>();
+			this.pendingOutbox = false;
+			this.scheduled = false;
+		}
+
+		for (final Entry<Integer, Pending> e : columns.entrySet()) {
+			final int columnId = e.getKey().intValue();
+			final ColumnChange change = readChange(columnId, e.getValue());
+			for (final TwUpdateListener l : this.twUpdateListeners) {
+				l.columnChanged(columnId, change);
+			}
+		}
+
+		if (outbox) {
+			for (final OutboxListener l : this.outboxListeners) {
+				l.outboxChanged();
+			}
+		}
+	}
+
+	/**
+	 * Returns null if listeners should read the column again.
+	 */
+	private ColumnChange readChange (final int columnId, final Pending p) {
+		if (p.reload) return null;
+		if (p.afterUid == Long.MAX_VALUE) return new ColumnChange(Collections.<Tweet> emptyList(), Collections.<Long> emptySet(), p.removedSids);
+		try {
+			final List<Tweet> added = this.db.getTweetsAfterUid(columnId, p.afterUid, null);
+			final Set<Long> hidden = this.db.getHiddenUidsAfterUid(columnId, p.afterUid);
+			if (added == null || hidden == null) return null;
+			return new ColumnChange(added, hidden, p.removedSids);
+		}
+		catch (final RuntimeException e) { // NOSONAR listeners can still reload.
+			LOG.w("Failed to read changes to column %d: %s", columnId, e.toString());
+			return null;
+		}
+	}
+
+}
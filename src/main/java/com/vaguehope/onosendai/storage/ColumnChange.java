@@ -0,0 +1,94 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.vaguehope.onosendai.model.Tweet;
+
+/**
+ * Rows added to and removed from a column since listeners were last told.
+ */
+public final class ColumnChange {
+
+	private static final Comparator<Tweet> PAGE_ORDER = new Comparator<Tweet>() {
+		@Override
+		public int compare (final Tweet a, final Tweet b) {
+			if (a.getTime() != b.getTime()) return a.getTime() > b.getTime() ? -1 : 1;
+			if (a.getUid() != b.getUid()) return a.getUid() > b.getUid() ? -1 : 1;
+			return 0;
+		}
+	};
+
+	private final List<Tweet> added;
+	private final Set<Long> hiddenUids;
+	private final Set<String> removedSids;
+
+	/**
+	 * @param added
+	 *            newest first.
+	 * @param hiddenUids
+	 *            rows in added that a column with excludes does not show.
+	 */
+	public ColumnChange (final List<Tweet> added, final Set<Long> hiddenUids, final Set<String> removedSids) {
+		this.added = Collections.unmodifiableList(added);
+		this.hiddenUids = Collections.unmodifiableSet(hiddenUids);
+		this.removedSids = Collections.unmodifiableSet(removedSids);
+	}
+
+	/**
+	 * @param excluding
+	 *            true if the column is being read with excludes.
+	 */
+	public List<Tweet> getAdded (final boolean excluding) {
+		if (!excluding || this.hiddenUids.isEmpty()) return this.added;
+		final List<Tweet> ret = new ArrayList<Tweet>(this.added.size());
+		for (final Tweet t : this.added) {
+			if (!this.hiddenUids.contains(Long.valueOf(t.getUid()))) ret.add(t);
+		}
+		return ret;
+	}
+
+	public Set<String> getRemovedSids () {
+		return this.removedSids;
+	}
+
+	public boolean isEmpty () {
+		return this.added.isEmpty() && this.removedSids.isEmpty();
+	}
+
+	/**
+	 * Apply to tweets read newest first. If the list is only the newest page
+	 * of the column, added rows older than its last row are left out so the
+	 * list stays in order.
+	 */
+	public List<Tweet> applyTo (final List<Tweet> tweets, final boolean excluding, final boolean morePages) {
+		final Set<Long> uids = new HashSet<Long>();
+		final List<Tweet> ret = new ArrayList<Tweet>(tweets.size() + this.added.size());
+		for (final Tweet t : tweets) {
+			if (this.removedSids.contains(t.getSid())) continue;
+			uids.add(Long.valueOf(t.getUid()));
+			ret.add(t);
+		}
+		final Tweet oldest = morePages && tweets.size() > 0 ? tweets.get(tweets.size() - 1) : null;
+		for (final Tweet t : getAdded(excluding)) {
+			if (oldest != null && PAGE_ORDER.compare(t, oldest) > 0) continue;
+			if (uids.add(Long.valueOf(t.getUid()))) ret.add(t);
+		}
+		Collections.sort(ret, PAGE_ORDER);
+		return ret;
+	}
+
+	@Override
+	public String toString () {
+		return new StringBuilder("ColumnChange{")
+				.append(this.added.size()).append(" added, ")
+				.append(this.hiddenUids.size()).append(" hidden, ")
+				.append(this.removedSids.size()).append(" removed}")
+				.toString();
+	}
+
+}
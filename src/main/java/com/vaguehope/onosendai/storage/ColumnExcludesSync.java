@@ -0,0 +1,91 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.json.JSONException;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.config.Prefs;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Gives the DB the excludes in column config once at startup and again each
+ * time column config is saved, on its own thread. Changes made close
+ * together, e.g. writing over the whole config, are synced once.
+ */
+public class ColumnExcludesSync implements OnSharedPreferenceChangeListener {
+
+	private static final LogWrapper LOG = new LogWrapper("CXS");
+
+	private final Context context;
+	private final Prefs prefs;
+	private final AtomicBoolean pending = new AtomicBoolean(false);
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread (final Runnable r) {
+			final Thread t = new Thread(r, "ColumnExcludesSync");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final Runnable sync = new Runnable() {
+		@Override
+		public void run () {
+			sync();
+		}
+	};
+
+	public ColumnExcludesSync (final Context context) {
+		this.context = context.getApplicationContext();
+		this.prefs = new Prefs(this.context);
+	}
+
+	/**
+	 * Caller must keep a reference to this as SharedPreferences only keeps
+	 * a weak one.
+	 */
+	public void start () {
+		this.prefs.getSharedPreferences().registerOnSharedPreferenceChangeListener(this);
+		schedule();
+	}
+
+	@Override
+	public void onSharedPreferenceChanged (final SharedPreferences sharedPreferences, final String key) {
+		if (Prefs.isColumnKey(key)) schedule();
+	}
+
+	private void schedule () {
+		if (this.pending.compareAndSet(false, true)) this.executor.execute(this.sync);
+	}
+
+	private void sync () {
+		this.pending.set(false);
+		try {
+			final DbInterface db = SharedDb.await(this.context, C.DB_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			if (db == null) {
+				LOG.w("DB not open, column excludes not synced.");
+				return;
+			}
+			db.setColumnExcludes(this.prefs.readColumns());
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (final JSONException e) {
+			LOG.w("Failed to read columns, excludes not synced: %s", e.toString());
+		}
+		catch (final RuntimeException e) { // NOSONAR do not kill the thread.
+			LOG.e("Failed to sync column excludes.", e);
+		}
+	}
+
+}
@@ -1,29 +1,42 @@
 package com.vaguehope.onosendai.storage;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 
 import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.config.Column;
+import com.vaguehope.onosendai.config.Retention;
+import com.vaguehope.onosendai.model.Conversation;
+import com.vaguehope.onosendai.model.LazyTweetList;
 import com.vaguehope.onosendai.model.Meta;
 import com.vaguehope.onosendai.model.MetaType;
 import com.vaguehope.onosendai.model.OutboxTweet;
 import com.vaguehope.onosendai.model.OutboxTweet.OutboxTweetStatus;
 import com.vaguehope.onosendai.model.ScrollState;
 import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.util.ArrayHelper;
+import com.vaguehope.onosendai.util.HashHelper;
 import com.vaguehope.onosendai.util.IoHelper;
 import com.vaguehope.onosendai.util.LogWrapper;
 
@@ -31,7 +44,7 @@ public class DbAdapter implements DbInterface {
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
 	private static final String DB_NAME = "tweets";
-	private static final int DB_VERSION = 16;
+	private static final int DB_VERSION = 23;
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
@@ -42,8 +55,19 @@ public class DbAdapter implements DbInterface {
 	private SQLiteDatabase mDb;
 
 	private final Map<Integer, ColumnState> columnStates = new ConcurrentHashMap<Integer, ColumnState>();
-	private final List<TwUpdateListener> twUpdateListeners = new ArrayList<TwUpdateListener>();
-	private final List<OutboxListener> outboxListeners = new ArrayList<OutboxListener>();
+	private final Map<Integer, ScrollState> scrolls = new ConcurrentHashMap<Integer, ScrollState>();
+	private final UpCounters upCounters = new UpCounters();
+	private final TweetStoreQueue storeQueue = new TweetStoreQueue(new TweetStoreQueue.Writer() {
+		@Override
+		public void writeTweets (final List<TweetStoreQueue.Store> stores) {
+			DbAdapter.this.writeTweets(stores);
+		}
+	});
+	private final ChangeDispatcher changeDispatcher = new ChangeDispatcher(this);
+	private final List<TweetWriteListener> writeListeners = new CopyOnWriteArrayList<TweetWriteListener>();
+	private final Object kvLock = new Object();
+	private volatile boolean recursiveQueries = false;
+	private volatile Map<String, String> kvCache;
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
@@ -57,10 +81,17 @@ public class DbAdapter implements DbInterface {
 
 		@Override
 		public void onCreate (final SQLiteDatabase db) {
+			db.execSQL(TBL_TC_CREATE);
 			db.execSQL(TBL_TW_CREATE);
 			db.execSQL(TBL_TW_CREATE_INDEX);
+			db.execSQL(TBL_TW_CREATE_COLTIME_INDEX);
 			db.execSQL(TBL_TM_CREATE);
 			db.execSQL(TBL_TM_CREATE_INDEX);
+			db.execSQL(TBL_TM_CREATE_TYPE_INDEX);
+			db.execSQL(TBL_TR_CREATE);
+			db.execSQL(TBL_TR_CREATE_PARENT_INDEX);
+			db.execSQL(TBL_CX_CREATE);
+			addTweetSearch(db);
 			db.execSQL(TBL_SC_CREATE);
 			db.execSQL(TBL_OB_CREATE);
 			db.execSQL(TBL_KV_CREATE);
@@ -104,8 +135,29 @@ public class DbAdapter implements DbInterface {
 					if (!isTableExists(db, TBL_OB)) db.execSQL(TBL_OB_CREATE);
 				}
 				if (oldVersion < 16) { // NOSONAR not a magic number.
-					this.log.w("Adding column %s...", TBL_TW_INLINEMEDIA);
-					db.execSQL("ALTER TABLE " + TBL_TW + " ADD COLUMN " + TBL_TW_INLINEMEDIA + " text;");
+					this.log.w("Adding column %s...", TBL_TC_INLINEMEDIA);
+					db.execSQL("ALTER TABLE " + TBL_TW + " ADD COLUMN " + TBL_TC_INLINEMEDIA + " text;");
+				}
+				// 17 (indexes) and 18 (content hash) are rebuilt by 19.
+				if (oldVersion < 19) { // NOSONAR not a magic number.
+					this.log.w("Splitting %s into %s and %s...", TBL_TW, TBL_TC, TBL_TW);
+					splitTweetContent(db);
+				}
+				if (oldVersion < 20) { // NOSONAR not a magic number.
+					this.log.w("Adding column %s and table %s...", TBL_TW_HIDDEN, TBL_CX);
+					addTweetVisibility(db);
+				}
+				if (oldVersion < 21) { // NOSONAR not a magic number.
+					this.log.w("Creating table %s...", TBL_TF);
+					addTweetSearch(db);
+				}
+				if (oldVersion < 22) { // NOSONAR not a magic number.
+					this.log.w("Packing %s into %s.%s...", TBL_TM, TBL_TC, TBL_TC_METAS);
+					packMetas(db);
+				}
+				if (oldVersion < 23) { // NOSONAR not a magic number.
+					this.log.w("Moving %s metas from %s to %s...", MetaType.INREPLYTO, TBL_TM, TBL_TR);
+					addReplyEdges(db);
 				}
 			}
 		}
@@ -116,6 +168,10 @@ public class DbAdapter implements DbInterface {
 			if (!db.isReadOnly()) {
 				db.execSQL("PRAGMA foreign_keys=ON;");
 				this.log.i("foreign_keys=ON");
+				// WAL lets queries on other threads use pooled read connections
+				// instead of waiting for storeTweets() to end its transaction.
+				final boolean wal = db.enableWriteAheadLogging();
+				this.log.i("enableWriteAheadLogging=%s", wal);
 			}
 		}
 
@@ -133,22 +189,236 @@ public class DbAdapter implements DbInterface {
 
 	}
 
+	/**
+	 * Move from one tw row per column (with its own tm rows) to shared
+	 * content in tc and tm with tw as membership. Existing tw _ids are
+	 * kept so scroll positions still point at the right tweets. Content
+	 * is taken from the newest copy of each tweet.
+	 */
+	static void splitTweetContent (final SQLiteDatabase db) {
+		db.execSQL("CREATE TEMP TABLE mig AS SELECT _id AS twid, sid,"
+				+ " ifnull((SELECT data FROM tm WHERE tm.twid=tw._id AND tm.type=" + MetaType.ACCOUNT.getId() + " LIMIT 1), '') AS acct"
+				+ " FROM tw;");
+		db.execSQL("CREATE INDEX temp.mig_idx ON mig(sid, acct);");
+
+		db.execSQL(TBL_TC_CREATE);
+		db.execSQL("INSERT OR IGNORE INTO " + TBL_TC + " ("
+				+ TBL_TC_SID + "," + TBL_TC_ACCOUNT + "," + TBL_TC_TIME + "," + TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + ","
+				+ TBL_TC_BODY + "," + TBL_TC_AVATAR + "," + TBL_TC_INLINEMEDIA + ")"
+				+ " SELECT tw.sid, mig.acct,"
+				+ " ifnull((SELECT CAST(data AS integer) FROM tm WHERE tm.twid=tw._id AND tm.type=" + MetaType.POST_TIME.getId() + " LIMIT 1), tw.time),"
+				+ " tw.uname, tw.fname, tw.body, tw.avatar, tw.imedia"
+				+ " FROM tw INNER JOIN mig ON mig.twid=tw._id ORDER BY tw._id DESC;");
+
+		db.execSQL("CREATE TABLE tm_new ("
+				+ TBL_TM_ID + " integer primary key autoincrement,"
+				+ TBL_TM_TCID + " integer,"
+				+ TBL_TM_TYPE + " integer,"
+				+ TBL_TM_DATA + " text,"
+				+ TBL_TM_TITLE + " text,"
+				+ "FOREIGN KEY (" + TBL_TM_TCID + ") REFERENCES " + TBL_TC + " (" + TBL_TC_ID + ") ON DELETE CASCADE,"
+				+ "UNIQUE(" + TBL_TM_TCID + ", " + TBL_TM_TYPE + "," + TBL_TM_DATA + "," + TBL_TM_TITLE + ") ON CONFLICT IGNORE"
+				+ ");");
+		db.execSQL("INSERT OR IGNORE INTO tm_new (" + TBL_TM_TCID + "," + TBL_TM_TYPE + "," + TBL_TM_DATA + "," + TBL_TM_TITLE + ")"
+				+ " SELECT tc._id, tm.type, tm.data, tm.title FROM tc INNER JOIN tm"
+				+ " ON tm.twid=(SELECT max(twid) FROM mig WHERE mig.sid=tc.sid AND mig.acct=tc.acct)"
+				+ " WHERE tm.type!=" + MetaType.POST_TIME.getId() + ";");
+
+		db.execSQL("CREATE TABLE tw_new ("
+				+ TBL_TW_ID + " integer primary key autoincrement,"
+				+ TBL_TW_COLID + " integer,"
+				+ TBL_TW_TCID + " integer,"
+				+ TBL_TW_TIME + " integer,"
+				+ "FOREIGN KEY (" + TBL_TW_TCID + ") REFERENCES " + TBL_TC + " (" + TBL_TC_ID + ") ON DELETE CASCADE,"
+				+ "UNIQUE(" + TBL_TW_COLID + ", " + TBL_TW_TCID + ")"
+				+ ");");
+		db.execSQL("INSERT OR IGNORE INTO tw_new (" + TBL_TW_ID + "," + TBL_TW_COLID + "," + TBL_TW_TCID + "," + TBL_TW_TIME + ")"
+				+ " SELECT tw._id, tw.colid, tc._id, tw.time FROM tw"
+				+ " INNER JOIN mig ON mig.twid=tw._id"
+				+ " INNER JOIN tc ON tc.sid=mig.sid AND tc.acct=mig.acct;");
+
+		db.execSQL("DROP TABLE tm;");
+		db.execSQL("DROP TABLE tw;");
+		db.execSQL("DROP TABLE mig;");
+		db.execSQL("ALTER TABLE tw_new RENAME TO " + TBL_TW + ";");
+		db.execSQL("ALTER TABLE tm_new RENAME TO " + TBL_TM + ";");
+		db.execSQL(TBL_TW_CREATE_INDEX);
+		db.execSQL(TBL_TM_CREATE_INDEX);
+		db.execSQL(TBL_TM_CREATE_TYPE_INDEX);
+	}
+
+	/**
+	 * Add the hidden marker to tw, and cx to track which columns hide which.
+	 * Markers are computed the first time each column is read with its
+	 * excludes.
+	 */
+	static void addTweetVisibility (final SQLiteDatabase db) {
+		db.execSQL("ALTER TABLE " + TBL_TW + " ADD COLUMN " + TBL_TW_HIDDEN + " integer NOT NULL DEFAULT 0;");
+		db.execSQL("DROP INDEX IF EXISTS " + TBL_TW_COLTIME_INDEX + ";");
+		db.execSQL(TBL_TW_CREATE_COLTIME_INDEX);
+		db.execSQL(TBL_CX_CREATE);
+	}
+	/**
+	 * Create the tf search index and its triggers and index existing content.
+	 */
+	static void addTweetSearch (final SQLiteDatabase db) {
+		db.execSQL(TBL_TF_CREATE);
+		db.execSQL(TBL_TF_CREATE_INSERT_TRIGGER);
+		db.execSQL(TBL_TF_CREATE_UPDATE_TRIGGER);
+		db.execSQL(TBL_TF_CREATE_DELETE_TRIGGER);
+		db.execSQL("INSERT INTO " + TBL_TF + " (" + TBL_TF_DOCID + "," + TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + "," + TBL_TC_BODY + ")"
+				+ " SELECT " + TBL_TC_ID + "," + TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + "," + TBL_TC_BODY + " FROM " + TBL_TC + ";");
+	}
+
+	/**
+	 * Move each tweet's metas from its tm rows into tc.metas and rebuild tm
+	 * as an index of only the types that are looked up.
+	 */
+	static void packMetas (final SQLiteDatabase db) {
+		if (!isColumnExists(db, TBL_TC, TBL_TC_METAS)) {
+			db.execSQL("ALTER TABLE " + TBL_TC + " ADD COLUMN " + TBL_TC_METAS + " blob;");
+		}
+
+		final SQLiteStatement update = db.compileStatement("UPDATE " + TBL_TC + " SET " + TBL_TC_METAS + "=? WHERE " + TBL_TC_ID + "=?");
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT " + TBL_TM_TCID + "," + TBL_TM_TYPE + "," + TBL_TM_DATA + "," + TBL_TM_TITLE
+					+ " FROM " + TBL_TM + " ORDER BY " + TBL_TM_TCID + "," + TBL_TM_ID, null);
+			if (c != null && c.moveToFirst()) {
+				boolean more;
+				do {
+					final long tcid = c.getLong(0);
+					final List<Meta> metas = new ArrayList<Meta>();
+					do {
+						metas.add(new Meta(MetaType.parseId(c.getInt(1)), c.getString(2), c.getString(3))); // NOSONAR not a magic number.
+						more = c.moveToNext();
+					}
+					while (more && c.getLong(0) == tcid);
+					update.bindBlob(1, MetaCodec.encode(metas));
+					update.bindLong(2, tcid);
+					update.executeUpdateDelete();
+				}
+				while (more);
+			}
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+			update.close();
+		}
+
+		db.execSQL("CREATE TEMP TABLE mig_tm AS SELECT " + TBL_TM_TCID + "," + TBL_TM_TYPE + "," + TBL_TM_DATA
+				+ " FROM " + TBL_TM + " WHERE " + TBL_TM_TYPE + " IN (" + indexedMetaTypeIds() + ") ORDER BY " + TBL_TM_ID + ";");
+		db.execSQL("DROP TABLE " + TBL_TM + ";");
+		db.execSQL(TBL_TM_CREATE);
+		db.execSQL("INSERT INTO " + TBL_TM + " (" + TBL_TM_TCID + "," + TBL_TM_TYPE + "," + TBL_TM_DATA + ")"
+				+ " SELECT " + TBL_TM_TCID + "," + TBL_TM_TYPE + "," + TBL_TM_DATA + " FROM mig_tm;");
+		db.execSQL("DROP TABLE mig_tm;");
+		db.execSQL(TBL_TM_CREATE_INDEX);
+		db.execSQL(TBL_TM_CREATE_TYPE_INDEX);
+	}
+
+	/**
+	 * Fill tr from the INREPLYTO metas in tc.metas, which has them all
+	 * whatever version tm was built by, and drop them from tm.
+	 */
+	static void addReplyEdges (final SQLiteDatabase db) {
+		db.execSQL(TBL_TR_CREATE);
+		final SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TBL_TR + " (" + TBL_TR_TCID + "," + TBL_TR_PARENT + ") VALUES (?,?)");
+		Cursor c = null;
+		try {
+			c = db.rawQuery("SELECT " + TBL_TC_ID + "," + TBL_TC_METAS + " FROM " + TBL_TC + " WHERE " + TBL_TC_METAS + " NOT NULL", null);
+			if (c != null && c.moveToFirst()) {
+				do {
+					final String parent;
+					try {
+						parent = firstInReplyTo(MetaCodec.decode(c.getBlob(1)));
+					}
+					catch (final IllegalArgumentException e) {
+						continue;
+					}
+					if (parent == null) continue;
+					insert.bindLong(1, c.getLong(0));
+					insert.bindString(2, parent);
+					insert.executeInsert();
+				}
+				while (c.moveToNext());
+			}
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+			insert.close();
+		}
+		db.execSQL(TBL_TR_CREATE_PARENT_INDEX);
+		db.execSQL("DELETE FROM " + TBL_TM + " WHERE " + TBL_TM_TYPE + "=" + MetaType.INREPLYTO.getId() + ";");
+	}
+
+	private static boolean isColumnExists (final SQLiteDatabase db, final String table, final String column) {
+		Cursor c = null;
+		try {
+			c = db.rawQuery("PRAGMA table_info(" + table + ");", null);
+			if (c != null && c.moveToFirst()) {
+				final int colName = c.getColumnIndex("name");
+				do {
+					if (column.equals(c.getString(colName))) return true;
+				}
+				while (c.moveToNext());
+			}
+			return false;
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+	}
+
+
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
 	public DbAdapter (final Context ctx) {
 		this.mCtx = ctx;
+		this.writeListeners.add(this.changeDispatcher);
 	}
 
 	public void open () {
 		this.mDbHelper = new DatabaseHelper(this.mCtx);
 		this.mDb = this.mDbHelper.getWritableDatabase();
+		this.recursiveQueries = isSqliteVersionAtLeast(DatabaseUtils.stringForQuery(this.mDb, "SELECT sqlite_version()", null), 3, 8, 3); // NOSONAR not a magic number.
+		this.log.i("sqlite_version supports WITH RECURSIVE=%s", this.recursiveQueries);
+		this.changeDispatcher.start();
+		this.storeQueue.start();
 	}
 
 	public void close () {
+		this.storeQueue.stop();
+		this.changeDispatcher.stop();
 		this.mDb.close();
 		this.mDbHelper.close();
 	}
 
+	/**
+	 * False if version can not be parsed.
+	 */
+	static boolean isSqliteVersionAtLeast (final String version, final int... min) {
+		if (version == null) return false;
+		final String[] parts = version.trim().split("\\.");
+		try {
+			for (int i = 0; i < min.length; i++) {
+				final int part = i < parts.length ? Integer.parseInt(parts[i]) : 0;
+				if (part != min[i]) return part > min[i];
+			}
+			return true;
+		}
+		catch (final NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Exposed for tests that need to inspect the schema and query plans.
+	 */
+	SQLiteDatabase getDb () {
+		return this.mDb;
+	}
+
 	public boolean checkDbOpen () {
 		if (this.mDb == null) {
 			this.log.e("aborting because mDb==null.");
@@ -166,52 +436,246 @@ public class DbAdapter implements DbInterface {
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 //	Tweets.
 
+	/*
+	 * Tweet content (tc) is stored once per service SID and account, with its
+	 * metas packed by MetaCodec. Metas that are looked up by value are also
+	 * indexed in tm. Columns (tw) hold a lightweight membership row per tweet.
+	 * The membership _id is the Tweet uid and its time is the time the column
+	 * sorts by, which for read later is when the tweet was added.
+	 */
+
+	private static final String TBL_TC = "tc";
+	private static final String TBL_TC_ID = "_id";
+	private static final String TBL_TC_SID = "sid";
+	private static final String TBL_TC_ACCOUNT = "acct";
+	private static final String TBL_TC_TIME = "time";
+	private static final String TBL_TC_USERNAME = "uname";
+	private static final String TBL_TC_FULLNAME = "fname";
+	private static final String TBL_TC_BODY = "body";
+	private static final String TBL_TC_AVATAR = "avatar";
+	private static final String TBL_TC_INLINEMEDIA = "imedia";
+	private static final String TBL_TC_HASH = "hash";
+	private static final String TBL_TC_METAS = "metas";
+
+	/**
+	 * acct is the ACCOUNT meta, or '' if there is not one, as the same tweet
+	 * fetched by two accounts does not have the same metas.
+	 */
+	private static final String TBL_TC_CREATE = "create table " + TBL_TC + " ("
+			+ TBL_TC_ID + " integer primary key autoincrement,"
+			+ TBL_TC_SID + " text,"
+			+ TBL_TC_ACCOUNT + " text,"
+			+ TBL_TC_TIME + " integer,"
+			+ TBL_TC_USERNAME + " text,"
+			+ TBL_TC_FULLNAME + " text,"
+			+ TBL_TC_BODY + " text,"
+			+ TBL_TC_AVATAR + " text,"
+			+ TBL_TC_INLINEMEDIA + " text,"
+			+ TBL_TC_HASH + " integer,"
+			+ TBL_TC_METAS + " blob,"
+			+ "UNIQUE(" + TBL_TC_SID + ", " + TBL_TC_ACCOUNT + ")"
+			+ ");";
+
+	/**
+	 * Full text index over tc, docid is tc._id. Maintained by triggers so
+	 * every way tc is written or pruned keeps it in step.
+	 */
+	private static final String TBL_TF = "tf";
+	private static final String TBL_TF_DOCID = "docid";
+	private static final int TBL_TF_BODY_COL = 2; // For snippet().
+
+	private static final String TBL_TF_CREATE = "CREATE VIRTUAL TABLE " + TBL_TF + " USING fts4("
+			+ TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + "," + TBL_TC_BODY
+			+ ");";
+
+	private static final String TBL_TF_CREATE_INSERT_TRIGGER = "CREATE TRIGGER " + TBL_TF + "_insert AFTER INSERT ON " + TBL_TC + " BEGIN"
+			+ " INSERT INTO " + TBL_TF + " (" + TBL_TF_DOCID + "," + TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + "," + TBL_TC_BODY + ")"
+			+ " VALUES (new." + TBL_TC_ID + ",new." + TBL_TC_USERNAME + ",new." + TBL_TC_FULLNAME + ",new." + TBL_TC_BODY + ");"
+			+ " END;";
+
+	private static final String TBL_TF_CREATE_UPDATE_TRIGGER = "CREATE TRIGGER " + TBL_TF + "_update AFTER UPDATE OF "
+			+ TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + "," + TBL_TC_BODY + " ON " + TBL_TC + " BEGIN"
+			+ " UPDATE " + TBL_TF + " SET " + TBL_TC_USERNAME + "=new." + TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + "=new." + TBL_TC_FULLNAME
+			+ "," + TBL_TC_BODY + "=new." + TBL_TC_BODY + " WHERE " + TBL_TF_DOCID + "=old." + TBL_TC_ID + ";"
+			+ " END;";
+
+	private static final String TBL_TF_CREATE_DELETE_TRIGGER = "CREATE TRIGGER " + TBL_TF + "_delete AFTER DELETE ON " + TBL_TC + " BEGIN"
+			+ " DELETE FROM " + TBL_TF + " WHERE " + TBL_TF_DOCID + "=old." + TBL_TC_ID + ";"
+			+ " END;";
+
 	private static final String TBL_TW = "tw";
 	private static final String TBL_TW_ID = "_id";
 	private static final String TBL_TW_COLID = "colid";
-	private static final String TBL_TW_SID = "sid";
+	private static final String TBL_TW_TCID = "tcid";
 	private static final String TBL_TW_TIME = "time";
-	private static final String TBL_TW_USERNAME = "uname";
-	private static final String TBL_TW_FULLNAME = "fname";
-	private static final String TBL_TW_BODY = "body";
-	private static final String TBL_TW_AVATAR = "avatar";
-	private static final String TBL_TW_INLINEMEDIA = "imedia";
+	private static final String TBL_TW_HIDDEN = "hidden";
 
+	/**
+	 * hidden is 1 if the tweet is also in a column this column excludes (see
+	 * cx), so exclusions do not need working out on every read.
+	 */
 	private static final String TBL_TW_CREATE = "create table " + TBL_TW + " ("
 			+ TBL_TW_ID + " integer primary key autoincrement,"
 			+ TBL_TW_COLID + " integer,"
-			+ TBL_TW_SID + " text,"
+			+ TBL_TW_TCID + " integer,"
 			+ TBL_TW_TIME + " integer,"
-			+ TBL_TW_USERNAME + " text,"
-			+ TBL_TW_FULLNAME + " text,"
-			+ TBL_TW_BODY + " text,"
-			+ TBL_TW_AVATAR + " text,"
-			+ TBL_TW_INLINEMEDIA + " text,"
-			+ "UNIQUE(" + TBL_TW_COLID + ", " + TBL_TW_SID + ") ON CONFLICT REPLACE"
+			+ TBL_TW_HIDDEN + " integer NOT NULL DEFAULT 0,"
+			+ "FOREIGN KEY (" + TBL_TW_TCID + ") REFERENCES " + TBL_TC + " (" + TBL_TC_ID + ") ON DELETE CASCADE,"
+			+ "UNIQUE(" + TBL_TW_COLID + ", " + TBL_TW_TCID + ")"
 			+ ");";
 
 	private static final String TBL_TW_INDEX = TBL_TW + "_idx";
-	private static final String TBL_TW_CREATE_INDEX = "CREATE INDEX " + TBL_TW_INDEX + " ON " + TBL_TW + "(" + TBL_TW_SID + "," + TBL_TW_TIME + ");";
+	private static final String TBL_TW_CREATE_INDEX = "CREATE INDEX " + TBL_TW_INDEX + " ON " + TBL_TW + "(" + TBL_TW_TCID + ");";
+
+	/**
+	 * Column reads filter on colid and order by time (then _id), so this
+	 * serves the list, paging, up count and prune queries without a sort.
+	 * hidden is last so it can be filtered on without leaving the index.
+	 */
+	private static final String TBL_TW_COLTIME_INDEX = TBL_TW + "_coltime_idx";
+	private static final String TBL_TW_CREATE_COLTIME_INDEX = "CREATE INDEX " + TBL_TW_COLTIME_INDEX + " ON " + TBL_TW + "(" + TBL_TW_COLID + "," + TBL_TW_TIME + "," + TBL_TW_ID + "," + TBL_TW_HIDDEN + ");";
+
+	/**
+	 * Column colid excludes tweets that are also in column excolid.
+	 */
+	private static final String TBL_CX = "cx";
+	private static final String TBL_CX_ID = "_id";
+	private static final String TBL_CX_COLID = "colid";
+	private static final String TBL_CX_EXCOLID = "excolid";
+
+	private static final String TBL_CX_CREATE = "create table " + TBL_CX + " ("
+			+ TBL_CX_ID + " integer primary key autoincrement,"
+			+ TBL_CX_COLID + " integer,"
+			+ TBL_CX_EXCOLID + " integer,"
+			+ "UNIQUE(" + TBL_CX_COLID + ", " + TBL_CX_EXCOLID + ") ON CONFLICT IGNORE"
+			+ ");";
+
+	/**
+	 * What hidden should be for a tw row.
+	 */
+	private static final String TW_HIDDEN_EXISTS = "EXISTS (SELECT 1 FROM "
+			+ TBL_TW + " t INNER JOIN " + TBL_CX + " ON t." + TBL_TW_COLID + "=" + TBL_CX + "." + TBL_CX_EXCOLID
+			+ " WHERE " + TBL_CX + "." + TBL_CX_COLID + "=" + TBL_TW + "." + TBL_TW_COLID
+			+ " AND t." + TBL_TW_TCID + "=" + TBL_TW + "." + TBL_TW_TCID + ")";
+
+	/**
+	 * Recalculates hidden for a set of tw rows.
+	 */
+	private static final String TW_UPDATE_HIDDEN = "UPDATE " + TBL_TW + " SET " + TBL_TW_HIDDEN + "=" + TW_HIDDEN_EXISTS;
+
+	/**
+	 * Shows hidden tw rows that no longer have a reason to be hidden.
+	 */
+	private static final String TW_UPDATE_UNHIDDEN = "UPDATE " + TBL_TW + " SET " + TBL_TW_HIDDEN + "=0"
+			+ " WHERE " + TBL_TW_HIDDEN + "=1 AND NOT " + TW_HIDDEN_EXISTS;
+
+	/**
+	 * Tie break on _id so that keyset paging is stable when tweets share a time.
+	 */
+	private static final String TWEET_PAGE_ORDER = TBL_TW + "." + TBL_TW_TIME + " desc, " + TBL_TW + "." + TBL_TW_ID + " desc";
 
 	private static final String TBL_TM = "tm";
 	private static final String TBL_TM_ID = "_id";
-	private static final String TBL_TM_TWID = "twid";
+	private static final String TBL_TM_TCID = "tcid";
 	private static final String TBL_TM_TYPE = "type";
 	private static final String TBL_TM_DATA = "data";
+	/**
+	 * Only in schemas before 22.
+	 */
 	private static final String TBL_TM_TITLE = "title";
 
+	/**
+	 * The only meta types with rows in tm. INREPLYTO is looked up in tr.
+	 */
+	private static final Set<MetaType> INDEXED_META_TYPES = Collections.unmodifiableSet(EnumSet.of(MetaType.HASHTAG, MetaType.MENTION));
+
+	/**
+	 * Index of the metas in tc.metas that are looked up by value. The full
+	 * metas, titles and all, are only in tc.metas.
+	 */
 	private static final String TBL_TM_CREATE = "create table " + TBL_TM + " ("
-			+ TBL_TM_ID + " integer primary key autoincrement,"
-			+ TBL_TM_TWID + " integer,"
+			+ TBL_TM_ID + " integer primary key,"
+			+ TBL_TM_TCID + " integer NOT NULL,"
 			+ TBL_TM_TYPE + " integer,"
 			+ TBL_TM_DATA + " text,"
-			+ TBL_TM_TITLE + " text,"
-			+ "FOREIGN KEY (" + TBL_TM_TWID + ") REFERENCES " + TBL_TW + " (" + TBL_TW_ID + ") ON DELETE CASCADE,"
-			+ "UNIQUE(" + TBL_TM_TWID + ", " + TBL_TM_TYPE + "," + TBL_TM_DATA + "," + TBL_TM_TITLE + ") ON CONFLICT IGNORE"
+			+ "FOREIGN KEY (" + TBL_TM_TCID + ") REFERENCES " + TBL_TC + " (" + TBL_TC_ID + ") ON DELETE CASCADE"
 			+ ");";
 
 	private static final String TBL_TM_INDEX = TBL_TM + "_idx";
-	private static final String TBL_TM_CREATE_INDEX = "CREATE INDEX " + TBL_TM_INDEX + " ON " + TBL_TM + "(" + TBL_TM_TWID + ");";
+	private static final String TBL_TM_CREATE_INDEX = "CREATE INDEX " + TBL_TM_INDEX + " ON " + TBL_TM + "(" + TBL_TM_TCID + ");";
+
+	/**
+	 * Covers meta lookups by (type, data) that only need the owning tweet.
+	 */
+	private static final String TBL_TM_TYPE_INDEX = TBL_TM + "_type_idx";
+	private static final String TBL_TM_CREATE_TYPE_INDEX = "CREATE INDEX " + TBL_TM_TYPE_INDEX + " ON " + TBL_TM + "(" + TBL_TM_TYPE + "," + TBL_TM_DATA + "," + TBL_TM_TCID + ");";
+
+	/**
+	 * Reply edges: content tcid is in reply to the tweet with SID parent,
+	 * which need not be stored. Taken from the first INREPLYTO meta at
+	 * ingest so conversations can be walked without decoding metas.
+	 */
+	private static final String TBL_TR = "tr";
+	private static final String TBL_TR_TCID = "tcid";
+	private static final String TBL_TR_PARENT = "parent";
+
+	private static final String TBL_TR_CREATE = "create table " + TBL_TR + " ("
+			+ TBL_TR_TCID + " integer primary key,"
+			+ TBL_TR_PARENT + " text NOT NULL,"
+			+ "FOREIGN KEY (" + TBL_TR_TCID + ") REFERENCES " + TBL_TC + " (" + TBL_TC_ID + ") ON DELETE CASCADE"
+			+ ");";
+
+	/**
+	 * Finds replies to a SID. Walking up uses tc's sid index and the tr
+	 * primary key.
+	 */
+	private static final String TBL_TR_PARENT_INDEX = TBL_TR + "_parent_idx";
+	private static final String TBL_TR_CREATE_PARENT_INDEX = "CREATE INDEX " + TBL_TR_PARENT_INDEX + " ON " + TBL_TR + "(" + TBL_TR_PARENT + "," + TBL_TR_TCID + ");";
+
+	private static final String TW_JOIN_TC = TBL_TW + " INNER JOIN " + TBL_TC + " ON " + TBL_TW + "." + TBL_TW_TCID + "=" + TBL_TC + "." + TBL_TC_ID;
+
+	private static final String[] TWEET_COLUMNS = new String[] {
+			TBL_TW + "." + TBL_TW_ID, TBL_TW + "." + TBL_TW_TIME,
+			TBL_TW + "." + TBL_TW_TCID, TBL_TC + "." + TBL_TC_TIME + " AS p" + TBL_TC_TIME,
+			TBL_TC + "." + TBL_TC_SID, TBL_TC + "." + TBL_TC_USERNAME, TBL_TC + "." + TBL_TC_FULLNAME,
+			TBL_TC + "." + TBL_TC_BODY, TBL_TC + "." + TBL_TC_AVATAR, TBL_TC + "." + TBL_TC_INLINEMEDIA };
+	private static final int TWEET_COL_UID = 0;
+	private static final int TWEET_COL_TIME = 1;
+	private static final int TWEET_COL_TCID = 2;
+	private static final int TWEET_COL_POST_TIME = 3;
+	private static final int TWEET_COL_SID = 4;
+	private static final int TWEET_COL_USERNAME = 5;
+	private static final int TWEET_COL_FULLNAME = 6;
+	private static final int TWEET_COL_BODY = 7;
+	private static final int TWEET_COL_AVATAR = 8;
+	private static final int TWEET_COL_INLINEMEDIA = 9;
+
+	/**
+	 * TWEET_COLUMNS then the packed metas, for reading tweets with their
+	 * details. Metas are null if a tweet has none.
+	 */
+	private static final String[] TWEET_DETAIL_COLUMNS = ArrayHelper.joinArrays(String.class, TWEET_COLUMNS, new String[] {
+			TBL_TC + "." + TBL_TC_METAS });
+	private static final int TWEET_COL_METAS = 10;
+
+	/**
+	 * Null if there is not one.
+	 */
+	private static String firstInReplyTo (final List<Meta> metas) {
+		for (final Meta meta : metas) {
+			if (meta.getType() == MetaType.INREPLYTO && meta.getData() != null) return meta.getData();
+		}
+		return null;
+	}
+
+	private static String indexedMetaTypeIds () {
+		final StringBuilder s = new StringBuilder();
+		for (final MetaType t : INDEXED_META_TYPES) {
+			if (s.length() > 0) s.append(',');
+			s.append(t.getId());
+		}
+		return s.toString();
+	}
 
 	@Override
 	public void storeTweets (final Column column, final List<Tweet> tweets) {
@@ -220,195 +684,1091 @@ public class DbAdapter implements DbInterface {
 
 	@Override
 	public void storeTweets (final int columnId, final List<Tweet> tweets) {
-		// Clear old data.
+		if (this.storeQueue.isWriterThread()) {
+			writeTweets(Collections.singletonList(new TweetStoreQueue.Store(columnId, tweets, false)));
+		}
+		else {
+			this.storeQueue.addAndWait(columnId, tweets);
+		}
+	}
+
+	@Override
+	public void queueTweets (final Column column, final List<Tweet> tweets) {
+		this.storeQueue.add(column.getId(), tweets);
+	}
+
+	@Override
+	public void flushTweets () {
+		this.storeQueue.flush();
+	}
+
+	/**
+	 * Store all columns in one transaction, then notify each changed column
+	 * once. Pruning is left to pruneColumn() so it does not slow down
+	 * ingest.
+	 */
+	private void writeTweets (final List<TweetStoreQueue.Store> stores) {
+		final Set<Integer> changedColumnIds = new LinkedHashSet<Integer>();
+		final Set<Integer> staleColumnIds = new HashSet<Integer>();
+		final Set<Integer> hiddenColumnIds = new HashSet<Integer>();
+		final long afterUid = DatabaseUtils.longForQuery(this.mDb, "SELECT ifnull(max(" + TBL_TW_ID + "),0) FROM " + TBL_TW, null);
+		final TweetWriter writer = new TweetWriter(this.mDb, this.upCounters);
+		int stored = 0;
+		boolean success = false;
 		this.mDb.beginTransaction();
 		try {
-			final int n = this.mDb.delete(TBL_TW,
-					TBL_TW_COLID + "=? AND " + TBL_TW_ID + " NOT IN (SELECT " + TBL_TW_ID + " FROM " + TBL_TW +
-							" WHERE " + TBL_TW_COLID + "=?" +
-							" ORDER BY " + TBL_TW_TIME +
-							" DESC LIMIT " + C.DATA_TW_MAX_COL_ENTRIES + ")",
-					new String[] { String.valueOf(columnId), String.valueOf(columnId) });
+			for (final TweetStoreQueue.Store store : stores) {
+				final int insertedBefore = writer.getInserted();
+				final int updatedBefore = writer.getUpdated();
+				final int hiddenBefore = writer.getHidden();
+				for (final Tweet tweet : store.tweets) {
+					writer.write(store.columnId, tweet);
+				}
+				stored += store.tweets.size();
+				if (writer.getInserted() > insertedBefore) changedColumnIds.add(store.columnId);
+				if (writer.getUpdated() > updatedBefore) staleColumnIds.add(store.columnId);
+				if (writer.getHidden() > hiddenBefore) hiddenColumnIds.add(store.columnId);
+			}
+			staleColumnIds.addAll(readColumnIdsOfContent(writer.getContentUpdatedIds()));
+			this.mDb.setTransactionSuccessful();
+			success = true;
+		}
+		finally {
+			this.mDb.endTransaction();
+			writer.close();
+			if (!success) this.upCounters.invalidateAll();
+		}
+		this.log.d("Stored %d tweets in %d columns: %d new, %d changed.", stored, stores.size(), writer.getInserted(), writer.getUpdated());
+
+		for (final Integer columnId : hiddenColumnIds) {
+			for (final Integer excludingColumnId : readExcludingColumns(columnId.intValue())) {
+				this.upCounters.invalidate(excludingColumnId.intValue());
+				staleColumnIds.add(excludingColumnId);
+			}
+		}
+		changedColumnIds.addAll(staleColumnIds);
+		for (final Integer columnId : changedColumnIds) {
+			for (final TweetWriteListener l : this.writeListeners) {
+				if (staleColumnIds.contains(columnId)) {
+					l.columnInvalidated(columnId.intValue());
+				}
+				else {
+					l.tweetsAdded(columnId.intValue(), afterUid);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes tweets and their metas using statements compiled once per batch.
+	 * Content shared with other columns is written once and only rewritten if
+	 * its hash has changed. Existing membership rows keep their uid. Must be
+	 * used within a transaction.
+	 */
+	private static class TweetWriter {
+
+		private final SQLiteStatement findContent;
+		private final SQLiteStatement insertContent;
+		private final SQLiteStatement updateContent;
+		private final SQLiteStatement deleteMetaIndex;
+		private final SQLiteStatement insertMetaIndex;
+		private final SQLiteStatement deleteReplyEdge;
+		private final SQLiteStatement insertReplyEdge;
+		private final SQLiteStatement findMembership;
+		private final SQLiteStatement findHidden;
+		private final SQLiteStatement insertMembership;
+		private final SQLiteStatement updateMembership;
+		private final SQLiteStatement hideInExcludingColumns;
+
+		private int inserted = 0;
+		private int updated = 0;
+		private int hidden = 0;
+		private final Set<Long> contentUpdatedIds = new HashSet<Long>();
+
+		private final UpCounters upCounters;
+
+		public TweetWriter (final SQLiteDatabase db, final UpCounters upCounters) {
+			this.upCounters = upCounters;
+			this.findContent = db.compileStatement("SELECT " + TBL_TC_ID + " FROM " + TBL_TC
+					+ " WHERE " + TBL_TC_SID + "=? AND " + TBL_TC_ACCOUNT + "=?");
+			this.insertContent = db.compileStatement("INSERT INTO " + TBL_TC + " ("
+					+ TBL_TC_TIME + "," + TBL_TC_USERNAME + "," + TBL_TC_FULLNAME + "," + TBL_TC_BODY + ","
+					+ TBL_TC_AVATAR + "," + TBL_TC_INLINEMEDIA + "," + TBL_TC_HASH + "," + TBL_TC_METAS + ","
+					+ TBL_TC_SID + "," + TBL_TC_ACCOUNT
+					+ ") VALUES (?,?,?,?,?,?,?,?,?,?)");
+			this.updateContent = db.compileStatement("UPDATE " + TBL_TC + " SET "
+					+ TBL_TC_TIME + "=?," + TBL_TC_USERNAME + "=?," + TBL_TC_FULLNAME + "=?," + TBL_TC_BODY + "=?,"
+					+ TBL_TC_AVATAR + "=?," + TBL_TC_INLINEMEDIA + "=?," + TBL_TC_HASH + "=?," + TBL_TC_METAS + "=?"
+					+ " WHERE " + TBL_TC_ID + "=? AND (" + TBL_TC_HASH + " IS NULL OR " + TBL_TC_HASH + "!=?)");
+			this.deleteMetaIndex = db.compileStatement("DELETE FROM " + TBL_TM + " WHERE " + TBL_TM_TCID + "=?");
+			this.insertMetaIndex = db.compileStatement("INSERT INTO " + TBL_TM + " ("
+					+ TBL_TM_TCID + "," + TBL_TM_TYPE + "," + TBL_TM_DATA
+					+ ") VALUES (?,?,?)");
+			this.deleteReplyEdge = db.compileStatement("DELETE FROM " + TBL_TR + " WHERE " + TBL_TR_TCID + "=?");
+			this.insertReplyEdge = db.compileStatement("INSERT OR REPLACE INTO " + TBL_TR + " ("
+					+ TBL_TR_TCID + "," + TBL_TR_PARENT
+					+ ") VALUES (?,?)");
+			this.findMembership = db.compileStatement("SELECT " + TBL_TW_ID + " FROM " + TBL_TW
+					+ " WHERE " + TBL_TW_COLID + "=? AND " + TBL_TW_TCID + "=?");
+			this.findHidden = db.compileStatement("SELECT EXISTS (SELECT 1 FROM " + TBL_TW + " INNER JOIN " + TBL_CX
+					+ " ON " + TBL_TW + "." + TBL_TW_COLID + "=" + TBL_CX + "." + TBL_CX_EXCOLID
+					+ " WHERE " + TBL_CX + "." + TBL_CX_COLID + "=? AND " + TBL_TW + "." + TBL_TW_TCID + "=?)");
+			this.insertMembership = db.compileStatement("INSERT INTO " + TBL_TW + " ("
+					+ TBL_TW_COLID + "," + TBL_TW_TCID + "," + TBL_TW_TIME + "," + TBL_TW_HIDDEN
+					+ ") VALUES (?,?,?,?)");
+			this.hideInExcludingColumns = db.compileStatement("UPDATE " + TBL_TW + " SET " + TBL_TW_HIDDEN + "=1"
+					+ " WHERE " + TBL_TW_TCID + "=? AND " + TBL_TW_HIDDEN + "=0 AND " + TBL_TW_COLID + " IN (SELECT "
+					+ TBL_CX_COLID + " FROM " + TBL_CX + " WHERE " + TBL_CX_EXCOLID + "=?)");
+			this.updateMembership = db.compileStatement("UPDATE " + TBL_TW + " SET " + TBL_TW_TIME + "=?"
+					+ " WHERE " + TBL_TW_ID + "=? AND " + TBL_TW_TIME + "!=?");
+		}
+
+		public void write (final int columnId, final Tweet tweet) {
+			final TweetContent content = new TweetContent(tweet);
+			final long tcid = writeContent(content);
+
+			final long uid = simpleQueryForLong(this.findMembership, columnId, tcid);
+			if (uid < 0) {
+				final boolean isHidden = simpleQueryForLong(this.findHidden, columnId, tcid) > 0;
+				this.insertMembership.bindLong(1, columnId);
+				this.insertMembership.bindLong(2, tcid);
+				this.insertMembership.bindLong(3, tweet.getTime()); // NOSONAR not a magic number.
+				this.insertMembership.bindLong(4, isHidden ? 1 : 0); // NOSONAR not a magic number.
+				this.insertMembership.executeInsert();
+				this.upCounters.added(columnId, tweet.getTime(), isHidden);
+				this.hideInExcludingColumns.bindLong(1, tcid);
+				this.hideInExcludingColumns.bindLong(2, columnId);
+				this.hidden += this.hideInExcludingColumns.executeUpdateDelete();
+				this.inserted++;
+			}
+			else {
+				this.updateMembership.bindLong(1, tweet.getTime());
+				this.updateMembership.bindLong(2, uid);
+				this.updateMembership.bindLong(3, tweet.getTime()); // NOSONAR not a magic number.
+				if (this.updateMembership.executeUpdateDelete() > 0) {
+					this.upCounters.invalidate(columnId);
+					this.updated++;
+				}
+			}
+		}
+
+		private long writeContent (final TweetContent content) {
+			final Tweet tweet = content.getTweet();
+			this.findContent.bindString(1, tweet.getSid());
+			this.findContent.bindString(2, content.getAccount());
+			final long existingTcid = simpleQueryForLong(this.findContent);
+			if (existingTcid < 0) {
+				bindContent(this.insertContent, content);
+				bindStringOrNull(this.insertContent, 9, tweet.getSid()); // NOSONAR not a magic number.
+				this.insertContent.bindString(10, content.getAccount()); // NOSONAR not a magic number.
+				final long tcid = this.insertContent.executeInsert();
+				writeMetaIndex(tcid, content.getMetas());
+				return tcid;
+			}
+
+			bindContent(this.updateContent, content);
+			this.updateContent.bindLong(9, existingTcid); // NOSONAR not a magic number.
+			this.updateContent.bindLong(10, content.getHash()); // NOSONAR not a magic number.
+			if (this.updateContent.executeUpdateDelete() > 0) {
+				this.deleteMetaIndex.bindLong(1, existingTcid);
+				this.deleteMetaIndex.executeUpdateDelete();
+				this.deleteReplyEdge.bindLong(1, existingTcid);
+				this.deleteReplyEdge.executeUpdateDelete();
+				writeMetaIndex(existingTcid, content.getMetas());
+				this.updated++;
+				this.contentUpdatedIds.add(Long.valueOf(existingTcid));
+			}
+			return existingTcid;
+		}
+
+		private static void bindContent (final SQLiteStatement st, final TweetContent content) {
+			final Tweet tweet = content.getTweet();
+			st.bindLong(1, content.getPostTime());
+			bindStringOrNull(st, 2, tweet.getUsername());
+			bindStringOrNull(st, 3, tweet.getFullname()); // NOSONAR not a magic number.
+			bindStringOrNull(st, 4, tweet.getBody()); // NOSONAR not a magic number.
+			bindStringOrNull(st, 5, tweet.getAvatarUrl()); // NOSONAR not a magic number.
+			bindStringOrNull(st, 6, tweet.getInlineMediaUrl()); // NOSONAR not a magic number.
+			st.bindLong(7, content.getHash()); // NOSONAR not a magic number.
+			final byte[] metas = content.getPackedMetas();
+			if (metas != null) {
+				st.bindBlob(8, metas); // NOSONAR not a magic number.
+			}
+			else {
+				st.bindNull(8); // NOSONAR not a magic number.
+			}
+		}
+
+		private void writeMetaIndex (final long tcid, final List<Meta> metas) {
+			final Set<String> written = new HashSet<String>();
+			for (final Meta meta : metas) {
+				if (!INDEXED_META_TYPES.contains(meta.getType())) continue;
+				if (!written.add(meta.getType().getId() + "\0" + meta.getData())) continue;
+				this.insertMetaIndex.bindLong(1, tcid);
+				this.insertMetaIndex.bindLong(2, meta.getType().getId());
+				bindStringOrNull(this.insertMetaIndex, 3, meta.getData()); // NOSONAR not a magic number.
+				this.insertMetaIndex.executeInsert();
+			}
+			final String parent = firstInReplyTo(metas);
+			if (parent != null) {
+				this.insertReplyEdge.bindLong(1, tcid);
+				this.insertReplyEdge.bindString(2, parent);
+				this.insertReplyEdge.executeInsert();
+			}
+		}
+
+		private static long simpleQueryForLong (final SQLiteStatement st, final long... args) {
+			for (int i = 0; i < args.length; i++) {
+				st.bindLong(i + 1, args[i]);
+			}
+			try {
+				return st.simpleQueryForLong();
+			}
+			catch (final SQLiteDoneException e) {
+				return -1L;
+			}
+		}
+
+		private static void bindStringOrNull (final SQLiteStatement st, final int index, final String value) {
+			if (value != null) {
+				st.bindString(index, value);
+			}
+			else {
+				st.bindNull(index);
+			}
+		}
+
+		/**
+		 * Rows in other columns hidden because their tweet is now also in this
+		 * column.
+		 */
+		public int getHidden () {
+			return this.hidden;
+		}
 
-			this.log.d("Deleted %d rows from %s column %d.", n, TBL_TW, columnId);
+		/**
+		 * tcids of content rewritten, which may be shared with other columns.
+		 */
+		public Set<Long> getContentUpdatedIds () {
+			return this.contentUpdatedIds;
+		}
+
+		public int getInserted () {
+			return this.inserted;
+		}
+
+		public int getUpdated () {
+			return this.updated;
+		}
+
+		public void close () {
+			this.findContent.close();
+			this.insertContent.close();
+			this.updateContent.close();
+			this.deleteMetaIndex.close();
+			this.insertMetaIndex.close();
+			this.deleteReplyEdge.close();
+			this.insertReplyEdge.close();
+			this.findMembership.close();
+			this.findHidden.close();
+			this.insertMembership.close();
+			this.updateMembership.close();
+			this.hideInExcludingColumns.close();
+		}
+
+	}
+
+	/**
+	 * The parts of a tweet that are shared between columns. A POST_TIME meta
+	 * (added by retweets and by copying to read later) becomes the content
+	 * time and is not stored as a meta; it is put back on read if the column
+	 * time differs. Duplicate metas are stored once.
+	 */
+	private static class TweetContent {
+
+		private final Tweet tweet;
+		private final String account;
+		private final long postTime;
+		private final List<Meta> metas;
+		private final byte[] packedMetas;
+		private final long hash;
+
+		public TweetContent (final Tweet tweet) {
+			this.tweet = tweet;
+
+			String acct = "";
+			long pTime = tweet.getTime();
+			final Set<Meta> m = new LinkedHashSet<Meta>();
+			if (tweet.getMetas() != null) {
+				for (final Meta meta : tweet.getMetas()) {
+					if (meta.getType() == MetaType.POST_TIME) {
+						pTime = meta.toLong(pTime);
+						continue;
+					}
+					if (meta.getType() == MetaType.ACCOUNT && acct.length() < 1 && meta.getData() != null) acct = meta.getData();
+					m.add(meta);
+				}
+			}
+			this.account = acct;
+			this.postTime = pTime;
+			this.metas = new ArrayList<Meta>(m);
+			this.packedMetas = MetaCodec.encode(this.metas);
+			this.hash = contentHash(tweet, pTime, this.metas);
+		}
+
+		public Tweet getTweet () {
+			return this.tweet;
+		}
+
+		public String getAccount () {
+			return this.account;
+		}
+
+		public long getPostTime () {
+			return this.postTime;
+		}
+
+		public List<Meta> getMetas () {
+			return this.metas;
+		}
+
+		/**
+		 * Null if there are no metas.
+		 */
+		public byte[] getPackedMetas () {
+			return this.packedMetas;
+		}
+
+		public long getHash () {
+			return this.hash;
+		}
+
+		/**
+		 * Hash of everything stored for the content, so a re-fetched tweet
+		 * can be skipped if nothing about it has changed.
+		 */
+		private static long contentHash (final Tweet tweet, final long postTime, final List<Meta> metas) {
+			final StringBuilder s = new StringBuilder()
+					.append(tweet.getSid()).append('\0')
+					.append(postTime).append('\0')
+					.append(tweet.getUsername()).append('\0')
+					.append(tweet.getFullname()).append('\0')
+					.append(tweet.getBody()).append('\0')
+					.append(tweet.getAvatarUrl()).append('\0')
+					.append(tweet.getInlineMediaUrl());
+			for (final Meta meta : metas) {
+				s.append('\0').append(meta.getType().getId())
+						.append('\0').append(meta.getData())
+						.append('\0').append(meta.getTitle());
+			}
+			return HashHelper.md5Long(s.toString());
+		}
+
+	}
+
+	/**
+	 * Every column with a row for any of the tcids.
+	 */
+	private Set<Integer> readColumnIdsOfContent (final Set<Long> tcids) {
+		final Set<Integer> ret = new HashSet<Integer>();
+		if (tcids.size() < 1) return ret;
+		final StringBuilder in = new StringBuilder();
+		for (final Long tcid : tcids) {
+			if (in.length() > 0) in.append(",");
+			in.append(tcid.longValue());
+		}
+		Cursor c = null;
+		try {
+			c = this.mDb.rawQuery("SELECT DISTINCT " + TBL_TW_COLID + " FROM " + TBL_TW
+					+ " WHERE " + TBL_TW_TCID + " IN (" + in + ")", null);
+			if (c != null && c.moveToFirst()) {
+				do {
+					ret.add(Integer.valueOf(c.getInt(0)));
+				}
+				while (c.moveToNext());
+			}
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+		return ret;
+	}
+
+	/**
+	 * Delete membership rows, update what they were hiding and then remove
+	 * any content no longer in any column. Columns that excluded the deleted
+	 * rows, and so may now show rows they hid, are added to staleColumnIds.
+	 * Must be called within a transaction.
+	 */
+	private int deleteMemberships (final String where, final String[] whereArgs, final Set<Integer> staleColumnIds) {
+		final List<Long> tcids = new ArrayList<Long>();
+		final Set<Integer> colIds = new HashSet<Integer>();
+		Cursor c = null;
+		try {
+			c = this.mDb.query(TBL_TW, new String[] { TBL_TW_TCID, TBL_TW_COLID, TBL_TW_TIME, TBL_TW_HIDDEN }, where, whereArgs, null, null, null);
+			if (c != null && c.moveToFirst()) {
+				do {
+					tcids.add(Long.valueOf(c.getLong(0)));
+					colIds.add(Integer.valueOf(c.getInt(1)));
+					this.upCounters.removed(c.getInt(1), c.getLong(2), c.getInt(3) != 0); // NOSONAR not a magic number.
+				}
+				while (c.moveToNext());
+			}
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+		if (tcids.size() < 1) return 0;
+
+		final int n = this.mDb.delete(TBL_TW, where, whereArgs);
+
+		final SQLiteStatement updateHidden = this.mDb.compileStatement(TW_UPDATE_UNHIDDEN + " AND " + TBL_TW_TCID + "=?");
+		final SQLiteStatement deleteOrphan = this.mDb.compileStatement("DELETE FROM " + TBL_TC
+				+ " WHERE " + TBL_TC_ID + "=? AND NOT EXISTS (SELECT 1 FROM " + TBL_TW + " WHERE " + TBL_TW_TCID + "=?)");
+		boolean unhid = false;
+		try {
+			for (final Long tcid : tcids) {
+				updateHidden.bindLong(1, tcid.longValue());
+				if (updateHidden.executeUpdateDelete() > 0) {
+					this.upCounters.invalidateAll();
+					unhid = true;
+				}
+				deleteOrphan.bindLong(1, tcid.longValue());
+				deleteOrphan.bindLong(2, tcid.longValue());
+				deleteOrphan.executeUpdateDelete();
+			}
+		}
+		finally {
+			updateHidden.close();
+			deleteOrphan.close();
+		}
+		if (unhid) {
+			for (final Integer colId : colIds) {
+				staleColumnIds.addAll(readExcludingColumns(colId.intValue()));
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public void deleteTweet (final Column column, final Tweet tweet) {
+		final Set<Integer> staleColumnIds = new HashSet<Integer>();
+		this.mDb.beginTransaction();
+		try {
+			deleteMemberships(TBL_TW_COLID + "=? AND " + TBL_TW_TCID + " IN (SELECT " + TBL_TC_ID + " FROM " + TBL_TC + " WHERE " + TBL_TC_SID + "=?)",
+					new String[] { String.valueOf(column.getId()), String.valueOf(tweet.getSid()) }, staleColumnIds);
+			this.log.d("Deleted tweet %s from %s column %d.", tweet.getSid(), TBL_TW, column.getId());
 			this.mDb.setTransactionSuccessful();
 		}
 		finally {
 			this.mDb.endTransaction();
 		}
+		for (final TweetWriteListener l : this.writeListeners) {
+			l.tweetRemoved(column.getId(), tweet.getSid());
+		}
+		notifyColumnsInvalidated(staleColumnIds);
+	}
 
+	@Override
+	public int pruneColumn (final Column column) {
+		final Retention retention = column.getRetention() != null ? column.getRetention() : Retention.DEFAULT;
+		final String colId = String.valueOf(column.getId());
+		final Set<Integer> staleColumnIds = new HashSet<Integer>();
+		int pruned = 0;
 		this.mDb.beginTransaction();
 		try {
-			final ContentValues values = new ContentValues();
-			for (final Tweet tweet : tweets) {
-				values.clear();
-				values.put(TBL_TW_COLID, columnId);
-				values.put(TBL_TW_SID, tweet.getSid());
-				values.put(TBL_TW_TIME, tweet.getTime());
-				values.put(TBL_TW_USERNAME, tweet.getUsername());
-				values.put(TBL_TW_FULLNAME, tweet.getFullname());
-				values.put(TBL_TW_BODY, tweet.getBody());
-				values.put(TBL_TW_AVATAR, tweet.getAvatarUrl());
-				values.put(TBL_TW_INLINEMEDIA, tweet.getInlineMediaUrl());
-				final long uid = this.mDb.insertWithOnConflict(TBL_TW, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-
-				final List<Meta> metas = tweet.getMetas();
-				if (metas != null) {
-					for (final Meta meta : metas) {
-						values.clear();
-						values.put(TBL_TM_TWID, uid);
-						values.put(TBL_TM_TYPE, meta.getType().getId());
-						values.put(TBL_TM_DATA, meta.getData());
-						if (meta.getTitle() != null) values.put(TBL_TM_TITLE, meta.getTitle());
-						this.mDb.insertWithOnConflict(TBL_TM, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-					}
-				}
+			pruned += deleteMemberships(TBL_TW_COLID + "=? AND " + TBL_TW_ID + " NOT IN (SELECT " + TBL_TW_ID + " FROM " + TBL_TW +
+					" WHERE " + TBL_TW_COLID + "=?" +
+					" ORDER BY " + TBL_TW_TIME +
+					" DESC LIMIT " + retention.getRowLimit() + ")",
+					new String[] { colId, colId }, staleColumnIds);
+			if (retention.getMaxAgeMins() > 0) {
+				final long oldestTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) - TimeUnit.MINUTES.toSeconds(retention.getMaxAgeMins());
+				pruned += deleteMemberships(TBL_TW_COLID + "=? AND " + TBL_TW_TIME + "<?",
+						new String[] { colId, String.valueOf(oldestTime) }, staleColumnIds);
 			}
 			this.mDb.setTransactionSuccessful();
 		}
 		finally {
 			this.mDb.endTransaction();
 		}
+		this.log.d("Pruned %d rows from %s column %d to %s.", pruned, TBL_TW, column.getId(), retention);
+		if (pruned > 0) staleColumnIds.add(Integer.valueOf(column.getId()));
+		notifyColumnsInvalidated(staleColumnIds);
+		return pruned;
+	}
+
+	@Override
+	public void deleteTweets (final Column column) {
+		final Set<Integer> staleColumnIds = new HashSet<Integer>();
+		staleColumnIds.add(column.getId());
+		this.mDb.beginTransaction();
+		try {
+			deleteMemberships(TBL_TW_COLID + "=?", new String[] { String.valueOf(column.getId()) }, staleColumnIds);
+			this.log.d("Deleted tweets from %s column %d.", TBL_TW, column.getId());
+			this.mDb.setTransactionSuccessful();
+		}
+		finally {
+			this.mDb.endTransaction();
+		}
+		notifyColumnsInvalidated(staleColumnIds);
+	}
+
+	private void notifyColumnsInvalidated (final Set<Integer> columnIds) {
+		for (final Integer columnId : columnIds) {
+			for (final TweetWriteListener l : this.writeListeners) {
+				l.columnInvalidated(columnId.intValue());
+			}
+		}
+	}
+
+	void addTweetWriteListener (final TweetWriteListener listener) {
+		this.writeListeners.add(listener);
+	}
+
+	/**
+	 * Tell listeners about changes now rather than at the end of the window.
+	 * Exposed for tests.
+	 */
+	void flushNotifications () {
+		this.changeDispatcher.flush();
+	}
+
+	/**
+	 * Rows with uid greater than afterUid, newest first.
+	 */
+	List<Tweet> getTweetsAfterUid (final int columnId, final long afterUid, final Set<Integer> excludeColumnIds) {
+		final StringBuilder where = new StringBuilder()
+				.append(TBL_TW).append(".").append(TBL_TW_COLID).append("=? AND ")
+				.append(TBL_TW).append(".").append(TBL_TW_ID).append(">?");
+		appendExcludeColumns(where, excludeColumnIds);
+		return getTweets(where.toString(), new String[] { String.valueOf(columnId), String.valueOf(afterUid) }, TWEET_PAGE_ORDER, -1);
+	}
+
+	/**
+	 * UIDs of rows with uid greater than afterUid that are hidden by excludes.
+	 */
+	Set<Long> getHiddenUidsAfterUid (final int columnId, final long afterUid) {
+		if (!checkDbOpen()) return null;
+		final Set<Long> ret = new HashSet<Long>();
+		Cursor c = null;
+		try {
+			c = this.mDb.query(TBL_TW, new String[] { TBL_TW_ID },
+					TBL_TW_COLID + "=? AND " + TBL_TW_ID + ">? AND " + TBL_TW_HIDDEN + "=1",
+					new String[] { String.valueOf(columnId), String.valueOf(afterUid) }, null, null, null);
+			if (c != null && c.moveToFirst()) {
+				do {
+					ret.add(Long.valueOf(c.getLong(0)));
+				}
+				while (c.moveToNext());
+			}
+			return ret;
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+	}
 
-		notifyTwListenersColumnChanged(columnId);
+	@Override
+	public List<Tweet> getTweets (final int columnId, final int numberOf) {
+		return getTweets(columnId, numberOf, null);
 	}
 
 	@Override
-	public void deleteTweet (final Column column, final Tweet tweet) {
+	public List<Tweet> getTweets (final int columnId, final int numberOf, final Set<Integer> excludeColumnIds) {
+		final StringBuilder where = new StringBuilder().append(TBL_TW).append(".").append(TBL_TW_COLID).append("=?");
+		final List<String> whereArgs = new ArrayList<String>();
+		whereArgs.add(String.valueOf(columnId));
+		appendExcludeColumns(where, excludeColumnIds);
+		return getTweets(where.toString(), whereArgs.toArray(new String[whereArgs.size()]), TWEET_PAGE_ORDER, numberOf);
+	}
+
+	@Override
+	public List<Tweet> getTweetsBefore (final int columnId, final long time, final long uid, final int numberOf) {
+		return getTweetsBefore(columnId, time, uid, numberOf, null);
+	}
+
+	@Override
+	public List<Tweet> getTweetsBefore (final int columnId, final long time, final long uid, final int numberOf, final Set<Integer> excludeColumnIds) {
+		final StringBuilder where = new StringBuilder()
+				.append(TBL_TW).append(".").append(TBL_TW_COLID).append("=?")
+				.append(" AND (").append(TBL_TW).append(".").append(TBL_TW_TIME).append("<?")
+				.append(" OR (").append(TBL_TW).append(".").append(TBL_TW_TIME).append("=? AND ")
+				.append(TBL_TW).append(".").append(TBL_TW_ID).append("<?))");
+		final List<String> whereArgs = new ArrayList<String>();
+		whereArgs.add(String.valueOf(columnId));
+		whereArgs.add(String.valueOf(time));
+		whereArgs.add(String.valueOf(time));
+		whereArgs.add(String.valueOf(uid));
+		appendExcludeColumns(where, excludeColumnIds);
+		return getTweets(where.toString(), whereArgs.toArray(new String[whereArgs.size()]), TWEET_PAGE_ORDER, numberOf);
+	}
+
+	/**
+	 * Rows are hidden by what is in cx, which setColumnExcludes() keeps in
+	 * step with column config. excludeColumnIds only says whether to leave
+	 * them out, reads never write.
+	 */
+	private static void appendExcludeColumns (final StringBuilder where, final Set<Integer> excludeColumnIds) {
+		if (excludeColumnIds == null || excludeColumnIds.size() < 1) return;
+		where.append(" AND ").append(TBL_TW).append(".").append(TBL_TW_HIDDEN).append("=0");
+	}
+
+	/**
+	 * Column config is not known to the DB, so cx is written from it here.
+	 * Columns whose excludes changed have hidden recalculated and are
+	 * invalidated. Excludes of columns not given are removed.
+	 */
+	@Override
+	public void setColumnExcludes (final Collection<Column> columns) {
+		if (!checkDbOpen()) return;
+		final Map<Integer, Set<Integer>> wanted = new HashMap<Integer, Set<Integer>>();
+		for (final Column column : columns) {
+			final Set<Integer> excl = column.getExcludeColumnIds();
+			wanted.put(Integer.valueOf(column.getId()), excl != null ? excl : Collections.<Integer> emptySet());
+		}
+		final Set<Integer> changedColumnIds = new HashSet<Integer>();
 		this.mDb.beginTransaction();
 		try {
-			this.mDb.delete(TBL_TW, TBL_TW_COLID + "=? AND " + TBL_TW_SID + "=?",
-					new String[] { String.valueOf(column.getId()), String.valueOf(tweet.getSid()) });
-			this.log.d("Deleted tweet %s from %s column %d.", tweet.getSid(), TBL_TW, column.getId());
+			final Map<Integer, Set<Integer>> stored = readAllColumnExcludes();
+			final Set<Integer> columnIds = new HashSet<Integer>(stored.keySet());
+			columnIds.addAll(wanted.keySet());
+			for (final Integer columnId : columnIds) {
+				final Set<Integer> excl = wanted.containsKey(columnId) ? wanted.get(columnId) : Collections.<Integer> emptySet();
+				final Set<Integer> was = stored.containsKey(columnId) ? stored.get(columnId) : Collections.<Integer> emptySet();
+				if (excl.equals(was)) continue;
+				writeColumnExcludes(columnId.intValue(), excl);
+				changedColumnIds.add(columnId);
+			}
 			this.mDb.setTransactionSuccessful();
 		}
 		finally {
-			this.mDb.endTransaction();
+			this.mDb.endTransaction();
+			for (final Integer columnId : changedColumnIds) {
+				this.upCounters.invalidate(columnId.intValue());
+			}
+		}
+		for (final Integer columnId : changedColumnIds) {
+			this.log.i("Column %d now excludes %s.", columnId, wanted.get(columnId));
+		}
+		notifyColumnsInvalidated(changedColumnIds);
+	}
+
+	/**
+	 * Must be called within a transaction.
+	 */
+	private void writeColumnExcludes (final int columnId, final Set<Integer> excludeColumnIds) {
+		final String[] colArg = new String[] { String.valueOf(columnId) };
+		this.mDb.delete(TBL_CX, TBL_CX_COLID + "=?", colArg);
+		final ContentValues values = new ContentValues();
+		for (final Integer exId : excludeColumnIds) {
+			values.clear();
+			values.put(TBL_CX_COLID, columnId);
+			values.put(TBL_CX_EXCOLID, exId);
+			this.mDb.insert(TBL_CX, null, values);
+		}
+		this.mDb.execSQL(TW_UPDATE_HIDDEN + " WHERE " + TBL_TW_COLID + "=?", colArg);
+	}
+
+	private Map<Integer, Set<Integer>> readAllColumnExcludes () {
+		final Map<Integer, Set<Integer>> ret = new HashMap<Integer, Set<Integer>>();
+		Cursor c = null;
+		try {
+			c = this.mDb.query(TBL_CX, new String[] { TBL_CX_COLID, TBL_CX_EXCOLID }, null, null, null, null, null);
+			if (c != null && c.moveToFirst()) {
+				do {
+					final Integer columnId = Integer.valueOf(c.getInt(0));
+					Set<Integer> excl = ret.get(columnId);
+					if (excl == null) {
+						excl = new HashSet<Integer>();
+						ret.put(columnId, excl);
+					}
+					excl.add(Integer.valueOf(c.getInt(1)));
+				}
+				while (c.moveToNext());
+			}
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+		return ret;
+	}
+
+	private Set<Integer> readExcludingColumns (final int columnId) {
+		return readCx(TBL_CX_COLID, TBL_CX_EXCOLID, columnId);
+	}
+
+	private Set<Integer> readCx (final String selectCol, final String whereCol, final int columnId) {
+		final Set<Integer> ret = new HashSet<Integer>();
+		Cursor c = null;
+		try {
+			c = this.mDb.query(TBL_CX, new String[] { selectCol },
+					whereCol + "=?", new String[] { String.valueOf(columnId) },
+					null, null, null);
+			if (c != null && c.moveToFirst()) {
+				do {
+					ret.add(Integer.valueOf(c.getInt(0)));
+				}
+				while (c.moveToNext());
+			}
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+		return ret;
+	}
+
+	@Override
+	public List<Tweet> getTweetsSinceTime (final int columnId, final long earliestTime, final int numberOf) {
+		return getTweets(new StringBuilder()
+				.append(TBL_TW).append(".").append(TBL_TW_COLID).append("=?")
+				.append(" AND ").append(TBL_TW).append(".").append(TBL_TW_TIME).append(">?").toString(),
+				new String[] { String.valueOf(columnId), String.valueOf(earliestTime) },
+				TBL_TW + "." + TBL_TW_TIME + " asc",
+				numberOf);
+	}
+
+	/**
+	 * Only reads the uid and time of each row. Tweets, without metas, are
+	 * read as the list asks for them.
+	 */
+	@Override
+	public LazyTweetList getLazyTweets (final int columnId, final Set<Integer> excludeColumnIds) {
+		if (!checkDbOpen()) return null;
+		final StringBuilder where = new StringBuilder().append(TBL_TW).append(".").append(TBL_TW_COLID).append("=?");
+		appendExcludeColumns(where, excludeColumnIds);
+		Cursor c = null;
+		try {
+			c = this.mDb.query(TBL_TW, new String[] { TBL_TW + "." + TBL_TW_ID, TBL_TW + "." + TBL_TW_TIME },
+					where.toString(), new String[] { String.valueOf(columnId) },
+					null, null, TWEET_PAGE_ORDER);
+			final int count = c.getCount();
+			final long[] uids = new long[count];
+			final long[] times = new long[count];
+			int i = 0;
+			while (c.moveToNext() && i < count) {
+				uids[i] = c.getLong(0);
+				times[i] = c.getLong(1);
+				i++;
+			}
+			return new LazyTweetList(uids, times, i, this.lazyTweetLoader, C.TWEET_LIST_LAZY_WINDOW);
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+	}
+
+	private final LazyTweetList.TweetLoader lazyTweetLoader = new LazyTweetList.TweetLoader() {
+		@Override
+		public List<Tweet> loadTweets (final List<Long> uids) {
+			if (uids.size() < 1) return Collections.EMPTY_LIST;
+			return inUidOrder(uids, getTweets(uidsWhere(uids), null, null, uids.size()));
+		}
+	};
+
+	private List<Tweet> getTweets (final String where, final String[] whereArgs, final String orderBy, final int numberOf) {
+		return getTweets(TW_JOIN_TC, where, whereArgs, orderBy, numberOf);
+	}
+
+	private List<Tweet> getTweets (final String tables, final String where, final String[] whereArgs, final String orderBy, final int numberOf) {
+		if (!checkDbOpen()) return null;
+		Cursor c = null;
+		try {
+			// Not distinct: rows are already unique by _id and DISTINCT stops the index satisfying the ORDER BY.
+			c = this.mDb.query(false, tables, TWEET_COLUMNS,
+					where, whereArgs,
+					null, null,
+					orderBy, String.valueOf(numberOf));
+			return readTweets(c);
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+	}
+
+	/**
+	 * Cursor must be over TWEET_COLUMNS.
+	 */
+	private static List<Tweet> readTweets (final Cursor c) {
+		if (c != null && c.moveToFirst()) {
+			final List<Tweet> ret = new ArrayList<Tweet>();
+			do {
+				ret.add(readTweet(c, null));
+			}
+			while (c.moveToNext());
+			return ret;
+		}
+		return Collections.EMPTY_LIST;
+	}
+
+	private static Tweet readTweet (final Cursor c, final List<Meta> metas) {
+		final long uid = c.getLong(TWEET_COL_UID);
+		final String sid = c.getString(TWEET_COL_SID);
+		final String username = c.getString(TWEET_COL_USERNAME);
+		final String fullname = c.getString(TWEET_COL_FULLNAME);
+		final String body = c.getString(TWEET_COL_BODY);
+		final long time = c.getLong(TWEET_COL_TIME);
+		final String avatar = c.getString(TWEET_COL_AVATAR);
+		final String inlineMedia = c.getString(TWEET_COL_INLINEMEDIA);
+		return new Tweet(uid, sid, username, fullname, body, time, avatar, inlineMedia, metas);
+	}
+
+	private static Tweet withMetas (final Tweet t, final List<Meta> metas) {
+		return new Tweet(t.getUid(), t.getSid(), t.getUsername(), t.getFullname(), t.getBody(), t.getTime(), t.getAvatarUrl(), t.getInlineMediaUrl(), metas);
+	}
+
+	/**
+	 * Only HASHTAG and MENTION metas are indexed in tm, INREPLYTO is found
+	 * through tr.
+	 */
+	@Override
+	public List<Tweet> findTweetsWithMeta (final MetaType metaType, final String data, final int numberOf) {
+		final String tables;
+		final String where;
+		if (metaType == MetaType.INREPLYTO) {
+			tables = TW_JOIN_TC + " INNER JOIN " + TBL_TR + " ON " + TBL_TC + "." + TBL_TC_ID + "=" + TBL_TR + "." + TBL_TR_TCID;
+			where = TBL_TR + "." + TBL_TR_PARENT + "=?";
+		}
+		else if (INDEXED_META_TYPES.contains(metaType)) {
+			tables = TW_JOIN_TC + " INNER JOIN " + TBL_TM + " ON " + TBL_TC + "." + TBL_TC_ID + "=" + TBL_TM + "." + TBL_TM_TCID;
+			where = TBL_TM_TYPE + "=" + metaType.getId() + " AND " + TBL_TM_DATA + "=?";
+		}
+		else {
+			throw new IllegalArgumentException("Metas of type " + metaType + " are not indexed.");
+		}
+		if (!checkDbOpen()) return null;
+		Cursor c = null;
+		try {
+			c = this.mDb.query(false, tables, TWEET_COLUMNS, where,
+					new String[] { data },
+					TBL_TC_SID, null, TBL_TW + "." + TBL_TW_TIME + " desc", String.valueOf(numberOf));
+			return readTweets(c);
+		}
+		finally {
+			IoHelper.closeQuietly(c);
 		}
-		notifyTwListenersColumnChanged(column.getId());
 	}
 
+	/**
+	 * SQLite before 3.8.3, which is Android before 5.0, can not do WITH
+	 * RECURSIVE, so there the conversation is walked a level per query.
+	 */
 	@Override
-	public void deleteTweets (final Column column) {
-		this.mDb.beginTransaction();
+	public Conversation getConversation (final String sid) {
+		return getConversation(sid, this.recursiveQueries);
+	}
+
+	Conversation getConversation (final String sid, final boolean recursive) {
+		if (!checkDbOpen()) return null;
+		final String sql;
+		final String[] args;
+		if (recursive) {
+			sql = CONVERSATION_RECURSIVE + CONVERSATION_LINKS + " WHERE " + TBL_TC + "." + TBL_TC_SID + " IN ("
+					+ "SELECT sid FROM up UNION SELECT sid FROM down"
+					+ ") GROUP BY " + TBL_TC + "." + TBL_TC_SID;
+			args = new String[] { sid, sid };
+		}
+		else {
+			final Set<String> sids = walkConversation(sid);
+			sql = CONVERSATION_LINKS + " WHERE " + TBL_TC + "." + TBL_TC_SID + " IN (" + placeholders(sids.size())
+					+ ") GROUP BY " + TBL_TC + "." + TBL_TC_SID;
+			args = sids.toArray(new String[sids.size()]);
+		}
+
+		final Map<String, String> parents = new HashMap<String, String>();
+		final List<Long> uids = new ArrayList<Long>();
+		Cursor c = null;
 		try {
-			this.mDb.delete(TBL_TW, TBL_TW_COLID + "=?", new String[] { String.valueOf(column.getId()) });
-			this.log.d("Deleted tweets from %s column %d.", TBL_TW, column.getId());
-			this.mDb.setTransactionSuccessful();
+			c = this.mDb.rawQuery(sql, args);
+			if (c != null && c.moveToFirst()) {
+				do {
+					if (!c.isNull(1)) parents.put(c.getString(0), c.getString(1));
+					uids.add(Long.valueOf(c.getLong(2)));
+				}
+				while (c.moveToNext());
+			}
 		}
 		finally {
-			this.mDb.endTransaction();
+			IoHelper.closeQuietly(c);
 		}
-		notifyTwListenersColumnChanged(column.getId());
-	}
 
-	@Override
-	public List<Tweet> getTweets (final int columnId, final int numberOf) {
-		return getTweets(TBL_TW_COLID + "=?", new String[] { String.valueOf(columnId) }, TBL_TW_TIME + " desc", numberOf);
+		final Map<String, Tweet> tweets = new HashMap<String, Tweet>();
+		for (final Tweet tweet : getTweetDetails(uids)) {
+			tweets.put(tweet.getSid(), tweet);
+		}
+		return new Conversation(sid, parents, tweets);
 	}
 
-	@Override
-	public List<Tweet> getTweets (final int columnId, final int numberOf, final Set<Integer> excludeColumnIds) {
-		if (excludeColumnIds == null || excludeColumnIds.size() < 1) return getTweets(columnId, numberOf);
+	/**
+	 * up is the SID and what it is in reply to, including the first SID
+	 * that is not stored. down is the SID and everything that replies to
+	 * it. UNION stops reply loops going round.
+	 */
+	private static final String CONVERSATION_RECURSIVE = "WITH RECURSIVE"
+			+ " up(sid) AS (SELECT ? UNION SELECT " + TBL_TR + "." + TBL_TR_PARENT + " FROM up"
+			+ " INNER JOIN " + TBL_TC + " ON " + TBL_TC + "." + TBL_TC_SID + "=up.sid"
+			+ " INNER JOIN " + TBL_TR + " ON " + TBL_TR + "." + TBL_TR_TCID + "=" + TBL_TC + "." + TBL_TC_ID
+			+ " LIMIT " + C.CONVERSATION_MAX_TWEETS + "),"
+			+ " down(sid) AS (SELECT ? UNION SELECT " + TBL_TC + "." + TBL_TC_SID + " FROM down"
+			+ " INNER JOIN " + TBL_TR + " ON " + TBL_TR + "." + TBL_TR_PARENT + "=down.sid"
+			+ " INNER JOIN " + TBL_TC + " ON " + TBL_TC + "." + TBL_TC_ID + "=" + TBL_TR + "." + TBL_TR_TCID
+			+ " LIMIT " + C.CONVERSATION_MAX_TWEETS + ") ";
 
-		final StringBuilder where = new StringBuilder()
-				.append(TBL_TW_COLID).append("=?")
-				.append(" AND ").append(TBL_TW_SID)
-				.append(" NOT IN (SELECT ").append(TBL_TW_SID)
-				.append(" FROM ").append(TBL_TW)
-				.append(" WHERE ");
-		final String[] whereArgs = new String[1 + excludeColumnIds.size()];
-		whereArgs[0] = String.valueOf(columnId);
+	/**
+	 * Per stored SID: what it is in reply to and the uid of a column row
+	 * for it. Needs a WHERE on tc.sid and GROUP BY tc.sid.
+	 */
+	private static final String CONVERSATION_LINKS = "SELECT " + TBL_TC + "." + TBL_TC_SID
+			+ ", max(" + TBL_TR + "." + TBL_TR_PARENT + "), max(" + TBL_TW + "." + TBL_TW_ID + ")"
+			+ " FROM " + TW_JOIN_TC
+			+ " LEFT JOIN " + TBL_TR + " ON " + TBL_TR + "." + TBL_TR_TCID + "=" + TBL_TC + "." + TBL_TC_ID;
 
-		int i = 0;
-		for (final Integer id : excludeColumnIds) {
-			if (i > 0) where.append(" OR ");
-			where.append(TBL_TW_COLID).append("=?");
-			whereArgs[1 + i] = String.valueOf(id);
-			i++;
+	/**
+	 * The SIDs getConversation() would find, read without WITH RECURSIVE.
+	 */
+	private Set<String> walkConversation (final String sid) {
+		final Set<String> sids = new LinkedHashSet<String>();
+		sids.add(sid);
+		String child = sid;
+		while (sids.size() < C.CONVERSATION_MAX_TWEETS) {
+			final String parent = readInReplyTo(child);
+			if (parent == null || !sids.add(parent)) break;
+			child = parent;
 		}
-		where.append(")");
-		return getTweets(where.toString(), whereArgs, TBL_TW_TIME + " desc", numberOf);
-	}
 
-	@Override
-	public List<Tweet> getTweetsSinceTime (final int columnId, final long earliestTime, final int numberOf) {
-		return getTweets(new StringBuilder()
-				.append(TBL_TW_COLID).append("=?")
-				.append(" AND ").append(TBL_TW_TIME).append(">?").toString(),
-				new String[] { String.valueOf(columnId), String.valueOf(earliestTime) },
-				TBL_TW_TIME + " asc",
-				numberOf);
+		List<String> level = Collections.singletonList(sid);
+		final int maxSids = sids.size() + C.CONVERSATION_MAX_TWEETS;
+		while (level.size() > 0 && sids.size() < maxSids) {
+			final List<String> nextLevel = new ArrayList<String>();
+			Cursor c = null;
+			try {
+				c = this.mDb.rawQuery("SELECT DISTINCT " + TBL_TC + "." + TBL_TC_SID + " FROM " + TBL_TR
+						+ " INNER JOIN " + TBL_TC + " ON " + TBL_TC + "." + TBL_TC_ID + "=" + TBL_TR + "." + TBL_TR_TCID
+						+ " WHERE " + TBL_TR + "." + TBL_TR_PARENT + " IN (" + placeholders(level.size()) + ")",
+						level.toArray(new String[level.size()]));
+				if (c != null && c.moveToFirst()) {
+					do {
+						final String reply = c.getString(0);
+						if (sids.size() < maxSids && sids.add(reply)) nextLevel.add(reply);
+					}
+					while (c.moveToNext());
+				}
+			}
+			finally {
+				IoHelper.closeQuietly(c);
+			}
+			level = nextLevel;
+		}
+		return sids;
 	}
 
-	private List<Tweet> getTweets (final String where, final String[] whereArgs, final String orderBy, final int numberOf) {
-		if (!checkDbOpen()) return null;
+	/**
+	 * Null if sid is not stored or is not a reply.
+	 */
+	private String readInReplyTo (final String sid) {
 		Cursor c = null;
 		try {
-			c = this.mDb.query(true, TBL_TW,
-					new String[] { TBL_TW_ID, TBL_TW_SID, TBL_TW_USERNAME, TBL_TW_FULLNAME, TBL_TW_BODY, TBL_TW_TIME, TBL_TW_AVATAR, TBL_TW_INLINEMEDIA },
-					where, whereArgs,
-					null, null,
-					orderBy, String.valueOf(numberOf));
-			return readTweets(c);
+			c = this.mDb.rawQuery("SELECT " + TBL_TR + "." + TBL_TR_PARENT + " FROM " + TBL_TC
+					+ " INNER JOIN " + TBL_TR + " ON " + TBL_TR + "." + TBL_TR_TCID + "=" + TBL_TC + "." + TBL_TC_ID
+					+ " WHERE " + TBL_TC + "." + TBL_TC_SID + "=? LIMIT 1", new String[] { sid });
+			if (c != null && c.moveToFirst()) return c.getString(0);
+			return null;
 		}
 		finally {
 			IoHelper.closeQuietly(c);
 		}
 	}
 
-	private static List<Tweet> readTweets (final Cursor c) {
-		if (c != null && c.moveToFirst()) {
-			final int colId = c.getColumnIndex(TBL_TW_ID);
-			final int colSid = c.getColumnIndex(TBL_TW_SID);
-			final int colUesrname = c.getColumnIndex(TBL_TW_USERNAME);
-			final int colFullname = c.getColumnIndex(TBL_TW_FULLNAME);
-			final int colBody = c.getColumnIndex(TBL_TW_BODY);
-			final int colTime = c.getColumnIndex(TBL_TW_TIME);
-			final int colAvatar = c.getColumnIndex(TBL_TW_AVATAR);
-			final int colInlineMedia = c.getColumnIndex(TBL_TW_INLINEMEDIA);
-
-			final List<Tweet> ret = new ArrayList<Tweet>();
-			do {
-				final long uid = c.getLong(colId);
-				final String sid = c.getString(colSid);
-				final String username = c.getString(colUesrname);
-				final String fullname = c.getString(colFullname);
-				final String body = c.getString(colBody);
-				final long time = c.getLong(colTime);
-				final String avatar = c.getString(colAvatar);
-				final String inlineMedia = c.getString(colInlineMedia);
-				ret.add(new Tweet(uid, sid, username, fullname, body, time, avatar, inlineMedia, null));
-			}
-			while (c.moveToNext());
-			return ret;
+	private static String placeholders (final int n) {
+		final StringBuilder s = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			if (i > 0) s.append(',');
+			s.append('?');
 		}
-		return Collections.EMPTY_LIST;
+		return s.toString();
 	}
 
+	/**
+	 * Tweets with the most hits first, then newest. Each tweet is returned
+	 * once, as its newest column entry, with its body cut to a snippet()
+	 * around the hits. Matches are ranked and limited in SQL so only the
+	 * results returned are read or get a snippet.
+	 */
 	@Override
-	public List<Tweet> findTweetsWithMeta (final MetaType metaType, final String data, final int numberOf) {
+	public List<Tweet> searchTweets (final String query, final int numberOf) {
 		if (!checkDbOpen()) return null;
+		final String match = toMatchQuery(query);
+		if (match == null) return Collections.EMPTY_LIST;
+
+		final StringBuilder sql = new StringBuilder("SELECT ");
+		for (final String col : TWEET_COLUMNS) {
+			sql.append(col).append(",");
+		}
+		sql.append("snippet(").append(TBL_TF).append(",'','','...',").append(TBL_TF_BODY_COL).append(",").append(C.LOCAL_SEARCH_SNIPPET_TOKENS).append(")")
+				.append(" FROM ").append(TBL_TF)
+				.append(" INNER JOIN ").append(TBL_TC).append(" ON ").append(TBL_TC).append(".").append(TBL_TC_ID).append("=").append(TBL_TF).append(".").append(TBL_TF_DOCID)
+				.append(" INNER JOIN ").append(TBL_TW).append(" ON ").append(TBL_TW).append(".").append(TBL_TW_TCID).append("=").append(TBL_TC).append(".").append(TBL_TC_ID)
+				.append(" WHERE ").append(TBL_TF).append(" MATCH ?")
+				.append(" AND ").append(TBL_TF).append(".").append(TBL_TF_DOCID).append(" IN (SELECT h.").append(TBL_TF_DOCID)
+				.append(" FROM ").append(TBL_TF).append(" h INNER JOIN ").append(TBL_TC).append(" r ON r.").append(TBL_TC_ID).append("=h.").append(TBL_TF_DOCID)
+				.append(" WHERE h.").append(TBL_TF).append(" MATCH ?")
+				.append(" ORDER BY ").append(searchHits("h." + TBL_TF)).append(" DESC, r.").append(TBL_TC_TIME).append(" DESC")
+				.append(" LIMIT ").append(numberOf).append(")")
+				.append(" AND ").append(TBL_TW).append(".").append(TBL_TW_ID).append("=(SELECT max(t.").append(TBL_TW_ID)
+				.append(") FROM ").append(TBL_TW).append(" t WHERE t.").append(TBL_TW_TCID).append("=").append(TBL_TC).append(".").append(TBL_TC_ID).append(")")
+				.append(" ORDER BY ").append(searchHits(TBL_TF)).append(" DESC, ").append(TBL_TC).append(".").append(TBL_TC_TIME).append(" DESC");
+
 		Cursor c = null;
 		try {
-			final SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
-			qb.setTables(TBL_TW + " INNER JOIN " + TBL_TM + " ON " + TBL_TW + "." + TBL_TW_ID + " = " + TBL_TM_TWID);
-			qb.setDistinct(true);
-			c = qb.query(this.mDb,
-					new String[] { TBL_TW + "." + TBL_TW_ID, TBL_TW_SID, TBL_TW_USERNAME, TBL_TW_FULLNAME, TBL_TW_BODY, TBL_TW_TIME, TBL_TW_AVATAR, TBL_TW_INLINEMEDIA },
-					TBL_TW + "." + TBL_TW_ID + "=" + TBL_TM_TWID + " AND " + TBL_TM_TYPE + "=" + metaType.getId() + " AND " + TBL_TM_DATA + "=?",
-					new String[] { data },
-					TBL_TW_SID, null, TBL_TW_TIME + " desc", String.valueOf(numberOf));
-			return readTweets(c);
+			c = this.mDb.rawQuery(sql.toString(), new String[] { match, match });
+			if (c != null && c.moveToFirst()) {
+				final int colSnippet = TWEET_COLUMNS.length;
+				final List<Tweet> ret = new ArrayList<Tweet>();
+				do {
+					final Tweet t = readTweet(c, null);
+					ret.add(new Tweet(t.getUid(), t.getSid(), t.getUsername(), t.getFullname(), c.getString(colSnippet),
+							t.getTime(), t.getAvatarUrl(), t.getInlineMediaUrl(), null));
+				}
+				while (c.moveToNext());
+				return ret;
+			}
+			return Collections.EMPTY_LIST;
 		}
 		finally {
 			IoHelper.closeQuietly(c);
 		}
 	}
 
+	/**
+	 * offsets() lists four numbers per hit, separated by spaces, so hits are
+	 * a quarter of one more than the spaces. Tweets are short so having FTS
+	 * re-tokenise each match for this costs less than reading every match.
+	 */
+	private static String searchHits (final String ftsColumn) {
+		final String offsets = "offsets(" + ftsColumn + ")";
+		return "((length(" + offsets + ")-length(replace(" + offsets + ",' ',''))+1)/4)";
+	}
+
+	/**
+	 * User input is not trusted to be valid MATCH syntax, so each word becomes
+	 * a quoted prefix term and all must match.
+	 * @return null if there is nothing to search for.
+	 */
+	static String toMatchQuery (final String query) {
+		if (query == null) return null;
+		final StringBuilder ret = new StringBuilder();
+		for (final String word : query.split("\\s+")) {
+			final String term = word.replace("\"", "").replace("*", "");
+			if (term.length() < 1) continue;
+			if (ret.length() > 0) ret.append(" ");
+			ret.append("\"").append(term).append("*\"");
+		}
+		return ret.length() > 0 ? ret.toString() : null;
+	}
+
 	@Override
 	public Tweet getTweetDetails (final String tweetSid) {
-		return getTweetDetails(TBL_TW_SID + "=?", new String[] { tweetSid });
+		return getTweetDetails(TBL_TC_SID + "=?", new String[] { tweetSid });
 	}
 
 	@Override
@@ -418,103 +1778,129 @@ public class DbAdapter implements DbInterface {
 
 	@Override
 	public Tweet getTweetDetails (final int columnId, final String tweetSid) {
-		return getTweetDetails(TBL_TW_COLID + "=? AND " + TBL_TW_SID + "=?",
+		return getTweetDetails(TBL_TW + "." + TBL_TW_COLID + "=? AND " + TBL_TC_SID + "=?",
 				new String[] { String.valueOf(columnId), tweetSid });
 	}
 
 	@Override
 	public Tweet getTweetDetails (final long tweetUid) {
-		return getTweetDetails(TBL_TW_ID + "=?", new String[] { String.valueOf(tweetUid) });
+		return getTweetDetails(TBL_TW + "." + TBL_TW_ID + "=?", new String[] { String.valueOf(tweetUid) });
 	}
 
 	private Tweet getTweetDetails (final String selection, final String[] selectionArgs) {
+		final List<Tweet> ret = getTweetDetails(TBL_TW + "." + TBL_TW_ID + " IN (SELECT " + TBL_TW + "." + TBL_TW_ID
+				+ " FROM " + TW_JOIN_TC + " WHERE " + selection + " LIMIT 1)", selectionArgs, null);
+		return ret != null && ret.size() > 0 ? ret.get(0) : null;
+	}
+
+	@Override
+	public List<Tweet> getTweetDetails (final Collection<Long> tweetUids) {
+		if (tweetUids.size() < 1) return Collections.EMPTY_LIST;
+		return inUidOrder(tweetUids, getTweetDetails(uidsWhere(tweetUids), null, null));
+	}
+
+	private static String uidsWhere (final Collection<Long> tweetUids) {
+		final StringBuilder where = new StringBuilder().append(TBL_TW).append(".").append(TBL_TW_ID).append(" IN (");
+		boolean first = true;
+		for (final Long uid : tweetUids) {
+			if (!first) where.append(",");
+			where.append(uid.longValue());
+			first = false;
+		}
+		return where.append(")").toString();
+	}
+
+	private static List<Tweet> inUidOrder (final Collection<Long> tweetUids, final List<Tweet> tweets) {
+		if (tweets == null) return null;
+		final Map<Long, Tweet> byUid = new HashMap<Long, Tweet>();
+		for (final Tweet tweet : tweets) {
+			byUid.put(Long.valueOf(tweet.getUid()), tweet);
+		}
+		final List<Tweet> ret = new ArrayList<Tweet>(tweets.size());
+		for (final Long uid : tweetUids) {
+			final Tweet tweet = byUid.get(uid);
+			if (tweet != null) ret.add(tweet);
+		}
+		return ret;
+	}
+
+	@Override
+	public List<Tweet> getTweetDetailsSinceTime (final int columnId, final long earliestTime, final int numberOf) {
+		return getTweetDetails(TBL_TW + "." + TBL_TW_ID + " IN (SELECT " + TBL_TW_ID + " FROM " + TBL_TW
+				+ " WHERE " + TBL_TW_COLID + "=? AND " + TBL_TW_TIME + ">?"
+				+ " ORDER BY " + TBL_TW_TIME + " asc LIMIT " + numberOf + ")",
+				new String[] { String.valueOf(columnId), String.valueOf(earliestTime) },
+				TBL_TW + "." + TBL_TW_TIME + " asc");
+	}
+
+	/**
+	 * Tweets and their metas in one query.
+	 * @param where
+	 *            selection of tw rows, it is not limited so should limit
+	 *            itself.
+	 * @param orderBy
+	 *            order of the tweets, may be null.
+	 */
+	private List<Tweet> getTweetDetails (final String where, final String[] whereArgs, final String orderBy) {
 		if (!checkDbOpen()) return null;
-		Tweet ret = null;
 		Cursor c = null;
-		Cursor d = null;
 		try {
-			c = this.mDb.query(true, TBL_TW,
-					new String[] { TBL_TW_ID, TBL_TW_SID, TBL_TW_USERNAME, TBL_TW_FULLNAME, TBL_TW_BODY, TBL_TW_TIME, TBL_TW_AVATAR, TBL_TW_INLINEMEDIA },
-					selection, selectionArgs,
-					null, null, null, null);
-
+			c = this.mDb.query(false, TW_JOIN_TC, TWEET_DETAIL_COLUMNS,
+					where, whereArgs,
+					null, null,
+					(orderBy != null ? orderBy + ", " : "") + TBL_TW + "." + TBL_TW_ID,
+					null);
+			final List<Tweet> ret = new ArrayList<Tweet>();
 			if (c != null && c.moveToFirst()) {
-				final int colId = c.getColumnIndex(TBL_TW_ID);
-				final int colSid = c.getColumnIndex(TBL_TW_SID);
-				final int colUesrname = c.getColumnIndex(TBL_TW_USERNAME);
-				final int colFullname = c.getColumnIndex(TBL_TW_FULLNAME);
-				final int colBody = c.getColumnIndex(TBL_TW_BODY);
-				final int colTime = c.getColumnIndex(TBL_TW_TIME);
-				final int colAvatar = c.getColumnIndex(TBL_TW_AVATAR);
-				final int colInlineMedia = c.getColumnIndex(TBL_TW_INLINEMEDIA);
-
-				final long uid = c.getLong(colId);
-				final String sid = c.getString(colSid);
-				final String username = c.getString(colUesrname);
-				final String fullname = c.getString(colFullname);
-				final String body = c.getString(colBody);
-				final long time = c.getLong(colTime);
-				final String avatar = c.getString(colAvatar);
-				final String inlineMedia = c.getString(colInlineMedia);
-
-				List<Meta> metas = null;
-				try {
-					d = this.mDb.query(true, TBL_TM,
-							new String[] { TBL_TM_TYPE, TBL_TM_DATA, TBL_TM_TITLE },
-							TBL_TM_TWID + "=?",
-							new String[] { String.valueOf(uid) },
-							null, null, null, null);
-
-					if (d != null && d.moveToFirst()) {
-						final int colType = d.getColumnIndex(TBL_TM_TYPE);
-						final int colData = d.getColumnIndex(TBL_TM_DATA);
-						final int colTitle = d.getColumnIndex(TBL_TM_TITLE);
-
-						metas = new ArrayList<Meta>();
-						do {
-							final int typeId = d.getInt(colType);
-							final String data = d.getString(colData);
-							final String title = d.getString(colTitle);
-							metas.add(new Meta(MetaType.parseId(typeId), data, title));
-						}
-						while (d.moveToNext());
-					}
-				}
-				finally {
-					IoHelper.closeQuietly(d);
+				do {
+					final long postTime = c.getLong(TWEET_COL_POST_TIME);
+					final long time = c.getLong(TWEET_COL_TIME);
+					final Tweet tweet = readTweet(c, null);
+					final List<Meta> metas = new ArrayList<Meta>(readMetas(c, tweet));
+					if (postTime != time) metas.add(new Meta(MetaType.POST_TIME, String.valueOf(postTime)));
+					ret.add(metas.size() > 0 ? withMetas(tweet, metas) : tweet);
 				}
-
-				ret = new Tweet(uid, sid, username, fullname, body, time, avatar, inlineMedia, metas);
+				while (c.moveToNext());
 			}
+			return ret;
 		}
 		finally {
 			IoHelper.closeQuietly(c);
 		}
-		return ret;
+	}
+
+	private List<Meta> readMetas (final Cursor c, final Tweet tweet) {
+		try {
+			return MetaCodec.decode(c.getBlob(TWEET_COL_METAS));
+		}
+		catch (final IllegalArgumentException e) {
+			this.log.w("Unreadable metas for sid=%s: %s", tweet.getSid(), e.toString());
+			return Collections.emptyList();
+		}
 	}
 
 	@Override
 	public List<String> getUsernames (final int numberOf) {
-		return getUsernames(TBL_TW_USERNAME + " NOT NULL", null, TBL_TW_TIME + " desc", numberOf);
+		return getUsernames(TBL_TC_USERNAME + " NOT NULL", null, TBL_TC_TIME + " desc", numberOf);
 	}
 
 	@Override
 	public List<String> getUsernames (final String prefix, final int numberOf) {
-		return getUsernames(TBL_TW_USERNAME + " LIKE ? ESCAPE ? COLLATE NOCASE",
+		return getUsernames(TBL_TC_USERNAME + " LIKE ? ESCAPE ? COLLATE NOCASE",
 				new String[] { escapeSearch(prefix).concat("%"), SEARCH_ESC },
-				TBL_TW_USERNAME + " asc", numberOf);
+				TBL_TC_USERNAME + " asc", numberOf);
 	}
 
 	private List<String> getUsernames (final String where, final String[] whereArgs, final String orderBy, final int numberOf) {
 		if (!checkDbOpen()) return null;
 		Cursor c = null;
 		try {
-			c = this.mDb.query(true, TBL_TW,
-					new String[] { TBL_TW_USERNAME },
+			c = this.mDb.query(true, TBL_TC,
+					new String[] { TBL_TC_USERNAME },
 					where, whereArgs,
 					null, null,
 					orderBy, String.valueOf(numberOf));
-			return columnToStringList(c, TBL_TW_USERNAME);
+			return columnToStringList(c, TBL_TC_USERNAME);
 		}
 		finally {
 			IoHelper.closeQuietly(c);
@@ -567,6 +1953,15 @@ public class DbAdapter implements DbInterface {
 		return getUpCount(UpCountType.UNREAD, columnId, excludeColumnIds, scroll);
 	}
 
+	@Override
+	public Map<Integer, Integer> getUnreadCounts (final Collection<Column> columns) {
+		final Map<Integer, Integer> ret = new HashMap<Integer, Integer>();
+		for (final Column column : columns) {
+			ret.put(Integer.valueOf(column.getId()), Integer.valueOf(getUnreadCount(column)));
+		}
+		return ret;
+	}
+
 	@Override
 	public int getScrollUpCount (final Column column) {
 		return getUpCount(UpCountType.SCROLL, column);
@@ -577,7 +1972,7 @@ public class DbAdapter implements DbInterface {
 		return getUpCount(UpCountType.SCROLL, columnId, excludeColumnIds, scroll);
 	}
 
-	private static enum UpCountType {
+	static enum UpCountType {
 		UNREAD {
 			@Override
 			public long getTime (final ScrollState ss) {
@@ -597,54 +1992,53 @@ public class DbAdapter implements DbInterface {
 		return getUpCount(type, column.getId(), column.getExcludeColumnIds(), null);
 	}
 
+	/**
+	 * Row times are kept by upCounters, so this only goes to tw the first time
+	 * a column is asked about or after something the counters could not
+	 * follow. Moving the scroll does not need tw to be read again.
+	 */
 	public int getUpCount (final UpCountType type, final int columnId, final Set<Integer> excludeColumnIds, final ScrollState scroll) {
 		if (!checkDbOpen()) return -1;
 
-		final StringBuilder where = new StringBuilder()
-				.append(TBL_TW_COLID).append("=?")
-				.append(" AND ").append(TBL_TW_TIME).append(">?");
-
-		final String[] whereArgs = new String[2 + (excludeColumnIds != null ? excludeColumnIds.size() : 0)];
-		whereArgs[0] = String.valueOf(columnId);
-
-		// TODO integrate into query?
 		final ScrollState fscroll = scroll != null ? scroll : getScroll(columnId);
 		if (fscroll == null) return 0; // Columns is probably empty.
 		final long time = type.getTime(fscroll);
 		if (time < 1L) return 0;
-		whereArgs[1] = String.valueOf(time);
 
-		if (excludeColumnIds != null && excludeColumnIds.size() > 0) {
-			where.append(" AND ").append(TBL_TW_SID)
-					.append(" NOT IN (SELECT ").append(TBL_TW_SID)
-					.append(" FROM ").append(TBL_TW)
-					.append(" WHERE ");
-
-			int i = 0;
-			for (final Integer id : excludeColumnIds) {
-				if (i > 0) where.append(" OR ");
-				where.append(TBL_TW_COLID).append("=?");
-				whereArgs[2 + i] = String.valueOf(id);
-				i++;
-			}
-			where.append(")");
-		}
+		final boolean excludeHidden = excludeColumnIds != null && excludeColumnIds.size() > 0;
+		final Integer known = this.upCounters.countAfter(columnId, time, excludeHidden);
+		if (known != null) return known.intValue();
 
-		return (int) DatabaseUtils.queryNumEntries(this.mDb, TBL_TW, where.toString(), whereArgs);
+		final long version = this.upCounters.getVersion();
+		final UpCounters.ColumnTimes times = readColumnTimes(columnId);
+		this.upCounters.put(columnId, times, version);
+		return times.countAfter(time, excludeHidden);
 	}
 
-	private void notifyTwListenersColumnChanged (final int columnId) {
-		for (final TwUpdateListener l : this.twUpdateListeners) {
-			l.columnChanged(columnId);
+	private UpCounters.ColumnTimes readColumnTimes (final int columnId) {
+		final UpCounters.ColumnTimes times = new UpCounters.ColumnTimes();
+		Cursor c = null;
+		try {
+			c = this.mDb.query(TBL_TW, new String[] { TBL_TW_TIME, TBL_TW_HIDDEN },
+					TBL_TW_COLID + "=?", new String[] { String.valueOf(columnId) },
+					null, null, null, null);
+			if (c != null && c.moveToFirst()) {
+				do {
+					times.add(c.getLong(0), c.getInt(1) != 0);
+				}
+				while (c.moveToNext());
+			}
 		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+		return times;
 	}
 
 	@Override
 	public void notifyTwListenersColumnState (final int columnId, final ColumnState state) {
 		this.columnStates.put(Integer.valueOf(columnId), state);
-		for (final TwUpdateListener l : this.twUpdateListeners) {
-			l.columnStatus(columnId, state);
-		}
+		this.changeDispatcher.columnStatus(columnId, state);
 	}
 
 	@Override
@@ -652,12 +2046,12 @@ public class DbAdapter implements DbInterface {
 		for (final Entry<Integer, ColumnState> e : this.columnStates.entrySet()) {
 			listener.columnStatus(e.getKey().intValue(), e.getValue());
 		}
-		this.twUpdateListeners.add(listener);
+		this.changeDispatcher.addTwUpdateListener(listener);
 	}
 
 	@Override
 	public void removeTwUpdateListener (final TwUpdateListener listener) {
-		this.twUpdateListeners.remove(listener);
+		this.changeDispatcher.removeTwUpdateListener(listener);
 	}
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -699,13 +2093,15 @@ public class DbAdapter implements DbInterface {
 		finally {
 			this.mDb.endTransaction();
 		}
+		this.scrolls.put(Integer.valueOf(columnId), state);
 		this.log.d("Stored scroll for col %d: %s", columnId, state);
 	}
 
 	@Override
 	public ScrollState getScroll (final int columnId) {
 		if (!checkDbOpen()) return null;
-		ScrollState ret = null;
+		ScrollState ret = this.scrolls.get(Integer.valueOf(columnId));
+		if (ret != null) return ret;
 		Cursor c = null;
 		try {
 			c = this.mDb.query(true, TBL_SC,
@@ -730,6 +2126,7 @@ public class DbAdapter implements DbInterface {
 			IoHelper.closeQuietly(c);
 		}
 
+		if (ret != null) this.scrolls.put(Integer.valueOf(columnId), ret);
 		this.log.d("Read scroll for col %d: %s", columnId, ret);
 		return ret;
 	}
@@ -781,7 +2178,7 @@ public class DbAdapter implements DbInterface {
 			this.mDb.endTransaction();
 		}
 		this.log.d("Stored in outbox: %s", ot);
-		notifyOutboxListeners();
+		this.changeDispatcher.outboxChanged();
 	}
 
 	@Override
@@ -808,7 +2205,7 @@ public class DbAdapter implements DbInterface {
 			this.mDb.endTransaction();
 		}
 		this.log.d("Updated in outbox: %s", ot);
-		notifyOutboxListeners();
+		this.changeDispatcher.outboxChanged();
 	}
 
 	@Override
@@ -881,23 +2278,17 @@ public class DbAdapter implements DbInterface {
 		finally {
 			this.mDb.endTransaction();
 		}
-		notifyOutboxListeners();
-	}
-
-	private void notifyOutboxListeners () {
-		for (final OutboxListener l : this.outboxListeners) {
-			l.outboxChanged();
-		}
+		this.changeDispatcher.outboxChanged();
 	}
 
 	@Override
 	public void addOutboxListener (final OutboxListener listener) {
-		this.outboxListeners.add(listener);
+		this.changeDispatcher.addOutboxListener(listener);
 	}
 
 	@Override
 	public void removeOutboxListener (final OutboxListener listener) {
-		this.outboxListeners.remove(listener);
+		this.changeDispatcher.removeOutboxListener(listener);
 	}
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -917,80 +2308,223 @@ public class DbAdapter implements DbInterface {
 	private static final String TBL_KV_INDEX = TBL_KV + "_idx";
 	private static final String TBL_KV_CREATE_INDEX = "CREATE INDEX " + TBL_KV_INDEX + " ON " + TBL_KV + "(" + TBL_KV_KEY + ");";
 
+	/**
+	 * Write-through: stored values go to kv and the cache together.
+	 */
 	@Override
 	public void storeValue (final String key, final String value) {
-		this.mDb.beginTransaction();
-		try {
-			final ContentValues values = new ContentValues();
-			values.put(TBL_KV_KEY, key);
-			values.put(TBL_KV_VAL, value);
-			this.mDb.insertWithOnConflict(TBL_KV, null, values, SQLiteDatabase.CONFLICT_REPLACE);
-			this.mDb.setTransactionSuccessful();
-		}
-		finally {
-			this.mDb.endTransaction();
-		}
-		if (value == null) {
-			this.log.d("Stored KV: '%s' = null.", key);
-		}
-		else {
-			this.log.d("Stored KV: '%s' = '%s'.", key, value);
+		storeValues(Collections.singletonMap(key, value));
+	}
+
+	/**
+	 * All values are written in one transaction. Values that are already
+	 * stored are not written again.
+	 */
+	@Override
+	public void storeValues (final Map<String, String> keyValues) {
+		if (!checkDbOpen()) return;
+		synchronized (this.kvLock) {
+			final Map<String, String> cache = kvCache();
+			final Map<String, String> changed = new HashMap<String, String>();
+			for (final Entry<String, String> e : keyValues.entrySet()) {
+				if (!equal(cache.get(e.getKey()), e.getValue())) changed.put(e.getKey(), e.getValue());
+			}
+			if (changed.size() < 1) return;
+
+			this.mDb.beginTransaction();
+			try {
+				final ContentValues values = new ContentValues();
+				for (final Entry<String, String> e : changed.entrySet()) {
+					values.put(TBL_KV_KEY, e.getKey());
+					values.put(TBL_KV_VAL, e.getValue());
+					this.mDb.insertWithOnConflict(TBL_KV, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+				}
+				this.mDb.setTransactionSuccessful();
+			}
+			finally {
+				this.mDb.endTransaction();
+			}
+
+			for (final Entry<String, String> e : changed.entrySet()) {
+				if (e.getValue() == null) {
+					cache.remove(e.getKey());
+				}
+				else {
+					cache.put(e.getKey(), e.getValue());
+				}
+			}
+			this.log.d("Stored KV: %s.", changed);
 		}
 	}
 
 	@Override
 	public String getValue (final String key) {
 		if (!checkDbOpen()) return null;
-		String ret = null;
-		Cursor c = null;
-		try {
-			c = this.mDb.query(true, TBL_KV,
-					new String[] { TBL_KV_VAL },
-					TBL_KV_KEY + "=?", new String[] { key },
-					null, null, null, null);
+		return kvCache().get(key);
+	}
 
-			if (c != null && c.moveToFirst()) {
-				final int colVal = c.getColumnIndex(TBL_KV_VAL);
-				ret = c.getString(colVal);
+	private Map<String, String> kvCache () {
+		return this.kvCache != null ? this.kvCache : loadKvCache();
+	}
+
+	/**
+	 * The kv table is small so it is read whole the first time any value is
+	 * needed.
+	 */
+	private Map<String, String> loadKvCache () {
+		synchronized (this.kvLock) {
+			if (this.kvCache != null) return this.kvCache;
+			final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+			Cursor c = null;
+			try {
+				c = this.mDb.query(TBL_KV,
+						new String[] { TBL_KV_KEY, TBL_KV_VAL },
+						TBL_KV_VAL + " NOT NULL", null,
+						null, null, null, null);
+				if (c != null && c.moveToFirst()) {
+					final int colKey = c.getColumnIndex(TBL_KV_KEY);
+					final int colVal = c.getColumnIndex(TBL_KV_VAL);
+					do {
+						cache.put(c.getString(colKey), c.getString(colVal));
+					}
+					while (c.moveToNext());
+				}
 			}
+			finally {
+				IoHelper.closeQuietly(c);
+			}
+			this.log.d("Read %d KV.", cache.size());
+			this.kvCache = cache;
+			return cache;
 		}
-		finally {
-			IoHelper.closeQuietly(c);
-		}
-		if (ret == null) {
-			this.log.d("Read KV: '%s' = null.", key);
-		}
-		else {
-			this.log.d("Read KV: '%s' = '%s'.", key, ret);
-		}
-		return ret;
+	}
+
+	private static boolean equal (final String a, final String b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
+	/**
+	 * Where housekeeping got to, as "phase:afterId".
+	 */
+	private static final String KV_HOUSEKEEP_CURSOR = "HOUSEKEEP_CURSOR";
+	private static final int HOUSEKEEP_PRUNE_TC = 0;
+	private static final int HOUSEKEEP_PRUNE_TM = 1;
+	private static final int HOUSEKEEP_VACUUM = 2;
+	private static final int HOUSEKEEP_DONE = 3;
+
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+	/**
+	 * Removes content no column refers to, a chunk at a time, then gives
+	 * free pages back to the file system a few at a time, until budgetMillis
+	 * is used up. At least one step is always done. The next call carries on
+	 * from where this one stopped. Free pages are only given back once
+	 * enableIncrementalVacuum() has been done.
+	 */
 	@Override
-	public void housekeep () {
-		if (!checkDbOpen()) return;
-		pruneMetadataTable();
-		vacuum();
+	public HousekeepResult housekeep (final long budgetMillis) {
+		if (!checkDbOpen()) return null;
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+		final long pagesBefore = DatabaseUtils.longForQuery(this.mDb, "PRAGMA page_count;", null);
+		final boolean canVacuum = isIncrementalVacuum();
+
+		int phase = HOUSEKEEP_PRUNE_TC;
+		long afterId = 0L;
+		final String cursor = getValue(KV_HOUSEKEEP_CURSOR);
+		if (cursor != null) {
+			final int x = cursor.indexOf(':');
+			phase = Integer.parseInt(cursor.substring(0, x));
+			afterId = Long.parseLong(cursor.substring(x + 1));
+		}
+
+		int pruned = 0;
+		do {
+			if (phase == HOUSEKEEP_VACUUM) {
+				if (!canVacuum || !incrementalVacuum()) phase = HOUSEKEEP_DONE;
+			}
+			else {
+				final String table = phase == HOUSEKEEP_PRUNE_TC ? TBL_TC : TBL_TM;
+				final long chunkEnd = DatabaseUtils.longForQuery(this.mDb, "SELECT ifnull(max(_id),0) FROM (SELECT _id FROM " + table
+						+ " WHERE _id>? ORDER BY _id LIMIT " + C.DB_HOUSEKEEP_CHUNK_ROWS + ")", new String[] { String.valueOf(afterId) });
+				if (chunkEnd > 0) {
+					pruned += pruneOrphans(phase, afterId, chunkEnd);
+					afterId = chunkEnd;
+				}
+				else {
+					phase++;
+					afterId = 0L;
+				}
+			}
+		}
+		while (phase < HOUSEKEEP_DONE && System.nanoTime() < deadline);
+
+		storeValue(KV_HOUSEKEEP_CURSOR, phase < HOUSEKEEP_DONE ? phase + ":" + afterId : null);
+
+		final long pageSize = DatabaseUtils.longForQuery(this.mDb, "PRAGMA page_size;", null);
+		final long pagesAfter = DatabaseUtils.longForQuery(this.mDb, "PRAGMA page_count;", null);
+		final HousekeepResult result = new HousekeepResult(pruned, Math.max(0L, (pagesBefore - pagesAfter) * pageSize),
+				housekeepProgress(phase, afterId), phase == HOUSEKEEP_DONE);
+		this.log.i("Housekeep: %s", result);
+		return result;
 	}
 
-	private void pruneMetadataTable () {
-		this.mDb.beginTransaction();
+	/**
+	 * Incremental vacuum needs one full VACUUM to turn on. Android creates
+	 * android_metadata before onCreate(), too late to set it there, so every
+	 * database needs this once.
+	 */
+	@Override
+	public boolean enableIncrementalVacuum () {
+		if (!checkDbOpen()) return false;
+		if (isIncrementalVacuum()) return false;
+		this.mDb.execSQL("PRAGMA auto_vacuum=INCREMENTAL;");
+		this.mDb.execSQL("VACUUM;");
+		this.log.i("Vacuumed to enable incremental vacuum.");
+		return true;
+	}
+
+	private boolean isIncrementalVacuum () {
+		return DatabaseUtils.longForQuery(this.mDb, "PRAGMA auto_vacuum;", null) == AUTO_VACUUM_INCREMENTAL;
+	}
+
+	/**
+	 * Removes rows in (afterId, toId] that no tw row (for tc) or tc row (for
+	 * tm) refers to. Removing tc rows also removes their tm and tf rows.
+	 */
+	private int pruneOrphans (final int phase, final long afterId, final long toId) {
+		final String[] args = new String[] { String.valueOf(afterId), String.valueOf(toId) };
+		if (phase == HOUSEKEEP_PRUNE_TC) {
+			return this.mDb.delete(TBL_TC, TBL_TC_ID + ">? AND " + TBL_TC_ID + "<=?"
+					+ " AND NOT EXISTS (SELECT 1 FROM " + TBL_TW + " WHERE " + TBL_TW + "." + TBL_TW_TCID + "=" + TBL_TC + "." + TBL_TC_ID + ")", args);
+		}
+		return this.mDb.delete(TBL_TM, TBL_TM_ID + ">? AND " + TBL_TM_ID + "<=?"
+				+ " AND NOT EXISTS (SELECT 1 FROM " + TBL_TC + " WHERE " + TBL_TC + "." + TBL_TC_ID + "=" + TBL_TM + "." + TBL_TM_TCID + ")", args);
+	}
+
+	/**
+	 * Returns false if there were no free pages left.
+	 */
+	private boolean incrementalVacuum () {
+		if (DatabaseUtils.longForQuery(this.mDb, "PRAGMA freelist_count;", null) < 1) return false;
+		Cursor c = null;
 		try {
-			this.mDb.execSQL("DELETE FROM " + TBL_TM + " WHERE " + TBL_TM_TWID +
-					" NOT IN (SELECT " + TBL_TW + "." + TBL_TW_ID + " FROM " + TBL_TW + ");");
-			this.mDb.setTransactionSuccessful();
-			this.log.i("Pruned table '%s'.", TBL_TM);
+			// Each row stepped frees one page.
+			c = this.mDb.rawQuery("PRAGMA incremental_vacuum(" + C.DB_HOUSEKEEP_VACUUM_PAGES + ");", null);
+			c.getCount();
 		}
 		finally {
-			this.mDb.endTransaction();
+			IoHelper.closeQuietly(c);
 		}
+		return true;
 	}
 
-	private void vacuum () {
-		this.mDb.execSQL("VACUUM");
-		this.log.i("Vacuumed.");
+	private float housekeepProgress (final int phase, final long afterId) {
+		if (phase >= HOUSEKEEP_VACUUM) return phase / (float) HOUSEKEEP_DONE;
+		final long maxId = DatabaseUtils.longForQuery(this.mDb, "SELECT ifnull(max(_id),0) FROM " + (phase == HOUSEKEEP_PRUNE_TC ? TBL_TC : TBL_TM), null);
+		final float phaseDone = maxId > 0 ? Math.min(1f, afterId / (float) maxId) : 1f;
+		return (phase + phaseDone) / HOUSEKEEP_DONE;
 	}
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -1,6 +1,5 @@
 package com.vaguehope.onosendai.storage;
 
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
@@ -13,8 +12,6 @@ import com.vaguehope.onosendai.util.LogWrapper;
 public abstract class DbBindingAsyncTask<Params, Progress, Result> extends TrackingAsyncTask<Params, Progress, Result> { // NOSONAR Ignore generic names must match pattern '^[A-Z]$' to copy Android SDK.
 
 	private final Context context;
-	private final CountDownLatch dbReadyLatch = new CountDownLatch(1);
-	private DbClient bndDb;
 
 	public DbBindingAsyncTask (final Context context) {
 		this(null, context);
@@ -25,54 +22,24 @@ public abstract class DbBindingAsyncTask<Params, Progress, Result> extends Track
 		this.context = context;
 	}
 
-	private void connectDb () {
-		getLog().d("Binding DB service...");
-		final CountDownLatch latch = this.dbReadyLatch;
-		this.bndDb = new DbClient(this.context, getLog().getPrefix(), new Runnable() {
-			@Override
-			public void run () {
-				latch.countDown();
-				getLog().d("DB service bound.");
-			}
-		});
-	}
-
-	private void disposeDb () {
-		if (this.bndDb != null) this.bndDb.dispose();
-	}
-
-	private boolean waitForDbReady () {
-		boolean dbReady = false;
-		try {
-			dbReady = this.dbReadyLatch.await(C.DB_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-		}
-		catch (InterruptedException e) {/**/}
-		if (!dbReady) getLog().e("Time out waiting for DB service to connect.");
-		return dbReady;
-	}
-
-	private DbInterface getDb () {
-		final DbClient d = this.bndDb;
-		if (d == null) return null;
-		return d.getDb();
-	}
-
 	protected Context getContext () {
 		return this.context;
 	}
 
 	@Override
 	protected Result doInBackgroundWithTracking (final Params... params) {
-		connectDb();
-		if (!waitForDbReady()) return null;
+		final DbInterface db;
 		try {
-			final DbInterface db = getDb();
-			if (db == null) throw new IllegalStateException("DB was not bound.");
-			return doInBackgroundWithDb(db, params);
+			db = SharedDb.await(this.context, C.DB_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+		catch (final InterruptedException e) {
+			return null;
 		}
-		finally {
-			disposeDb();
+		if (db == null) {
+			getLog().e("Time out waiting for DB to open.");
+			return null;
 		}
+		return doInBackgroundWithDb(db, params);
 	}
 
 	protected abstract LogWrapper getLog ();
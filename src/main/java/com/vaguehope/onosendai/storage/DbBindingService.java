@@ -1,6 +1,5 @@
 package com.vaguehope.onosendai.storage;
 
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import android.app.IntentService;
@@ -15,8 +14,7 @@ import com.vaguehope.onosendai.util.LogWrapper;
 public abstract class DbBindingService extends IntentService {
 
 	private final LogWrapper log;
-	private final CountDownLatch dbReadyLatch = new CountDownLatch(1);
-	private DbClient bndDb;
+	private volatile DbInterface db;
 
 	public DbBindingService (final String name, final LogWrapper log) {
 		super(name);
@@ -26,13 +24,7 @@ public abstract class DbBindingService extends IntentService {
 	@Override
 	public void onCreate () {
 		super.onCreate();
-		connectDb();
-	}
-
-	@Override
-	public void onDestroy () {
-		disconnectDb();
-		super.onDestroy();
+		SharedDb.open(this);
 	}
 
 	@Override
@@ -52,37 +44,17 @@ public abstract class DbBindingService extends IntentService {
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
-	private void connectDb () {
-		this.log.d("Binding DB service...");
-		final CountDownLatch latch = this.dbReadyLatch;
-		this.bndDb = new DbClient(getApplicationContext(), this.log.getPrefix(), new Runnable() {
-			@Override
-			public void run () {
-				latch.countDown();
-				getLog().d("DB service bound.");
-			}
-		});
-	}
-
-	private void disconnectDb () {
-		this.bndDb.dispose();
-		this.log.d("DB service rebound.");
-	}
-
 	protected boolean waitForDbReady () {
-		boolean dbReady = false;
 		try {
-			dbReady = this.dbReadyLatch.await(C.DB_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			this.db = SharedDb.await(getApplicationContext(), C.DB_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 		}
 		catch (final InterruptedException e) {/**/}
-		if (!dbReady) this.log.e("Aborting: Time out waiting for DB service to connect.");
-		return dbReady;
+		if (this.db == null) this.log.e("Aborting: Time out waiting for DB to open.");
+		return this.db != null;
 	}
 
 	protected DbInterface getDb () {
-		final DbClient d = this.bndDb;
-		if (d == null) return null;
-		return d.getDb();
+		return this.db;
 	}
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -1,20 +1,24 @@
 package com.vaguehope.onosendai.storage;
 
-import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.ServiceConnection;
-import android.os.IBinder;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.vaguehope.onosendai.util.LogWrapper;
 
+/**
+ * Hands the process' SharedDb to UI code. The ready listener is always
+ * called on the UI thread after the constructor has returned, as it was
+ * when this bound to a service.
+ */
 public class DbClient {
 
 	private final LogWrapper log = new LogWrapper();
 	private final Context context;
-	private Runnable dbIsReady = null;
-	private DbInterface boundDbService;
-	private boolean boundToService = false;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private volatile Runnable dbIsReady = null;
+	private volatile DbInterface db;
+	private volatile boolean disposed = false;
 
 	public DbClient (final Context context, final String name) {
 		this(context, name, null);
@@ -24,18 +28,13 @@ public class DbClient {
 		this.context = context;
 		this.log.setPrefix(name);
 		this.dbIsReady = dbIsReady;
-		bindDbService();
+		connectDb();
 	}
 
 	public void dispose () {
 		clearReadyListener();
-		unbindDbService();
-	}
-
-	@Override
-	protected void finalize () throws Throwable { // NOSONAR finalize throws Throwable.
-		unbindDbService();
-		super.finalize();
+		this.disposed = true;
+		this.db = null;
 	}
 
 	public void clearReadyListener () {
@@ -43,7 +42,7 @@ public class DbClient {
 	}
 
 	public DbInterface getDb () {
-		return this.boundDbService;
+		return this.db;
 	}
 
 	protected LogWrapper getLog () {
@@ -51,51 +50,30 @@ public class DbClient {
 	}
 
 	protected void callDbReadyListener () {
-		if (this.dbIsReady != null) this.dbIsReady.run();
+		final Runnable r = this.dbIsReady;
+		if (r != null) r.run();
 	}
 
-	protected void setBoundDbService (final DbInterface boundDbService) {
-		this.boundDbService = boundDbService;
-	}
-
-	private final ServiceConnection mDbServiceConnection = new ServiceConnection() {
-
-		@Override
-		public void onServiceConnected (final ComponentName className, final IBinder service) {
-			setBoundDbService(((DbService.LocalBinder) service).getService());
-			if (getDb() == null) getLog().e("Got service call back, but mBoundDbService==null.  Expect more error messags!");
-			callDbReadyListener();
-		}
-
-		@Override
-		public void onServiceDisconnected (final ComponentName className) {
-			// This is called when the connection with the service has been
-			// unexpectedly disconnected -- that is, its process crashed.
-			// Because it is running in our same process, we should never
-			// see this happen.
-			setBoundDbService(null);
-			getLog().w("DbService unexpectadly disconnected.");
-		}
-
-	};
-
-	private void bindDbService () {
-		this.boundToService = this.context.bindService(new Intent(this.context, DbService.class), this.mDbServiceConnection, Context.BIND_AUTO_CREATE);
-		if (!this.boundToService) {
-			this.log.e("Failed to bind to DBService.  Expect further nasty errors.");
-		}
+	private void connectDb () {
+		this.db = SharedDb.get();
+		SharedDb.whenOpen(this.context, new Runnable() {
+			@Override
+			public void run () {
+				postDbReady();
+			}
+		});
 	}
 
-	private void unbindDbService () {
-		if (this.boundToService && this.boundDbService != null) {
-			try {
-				this.context.unbindService(this.mDbServiceConnection);
-			}
-			catch (Exception e) {
-				this.log.e("Exception caught in unbindDbService().", e);
+	private void postDbReady () {
+		this.handler.post(new Runnable() {
+			@Override
+			public void run () {
+				if (DbClient.this.disposed) return;
+				DbClient.this.db = SharedDb.get();
+				if (getDb() == null) getLog().e("DB ready but SharedDb.get()==null.  Expect more error messags!");
+				callDbReadyListener();
 			}
-		}
-		this.boundDbService = null;
+		});
 	}
 
 }
@@ -1,9 +1,13 @@
 package com.vaguehope.onosendai.storage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.vaguehope.onosendai.config.Column;
+import com.vaguehope.onosendai.model.Conversation;
+import com.vaguehope.onosendai.model.LazyTweetList;
 import com.vaguehope.onosendai.model.MetaType;
 import com.vaguehope.onosendai.model.OutboxTweet;
 import com.vaguehope.onosendai.model.OutboxTweet.OutboxTweetStatus;
@@ -14,26 +18,96 @@ public interface DbInterface extends KvStore {
 
 	void storeTweets(Column column, List<Tweet> tweets);
 	void storeTweets(int columnId, List<Tweet> tweets);
+
+	/**
+	 * Hand tweets to the writer thread and return without waiting. Stores
+	 * queued close together share a transaction.
+	 */
+	void queueTweets(Column column, List<Tweet> tweets);
+
+	/**
+	 * Wait for everything queued so far to be stored.
+	 */
+	void flushTweets();
+
 	void deleteTweet(Column column, Tweet tweet);
 	void deleteTweets(Column column);
 
+	/**
+	 * Remove rows the column's Retention no longer keeps.
+	 * @return number of rows removed.
+	 */
+	int pruneColumn(Column column);
+
+	/**
+	 * Store what each column excludes, as configured. Rows are hidden or
+	 * shown again to match. Call on startup and whenever column config is
+	 * saved: reads only leave out rows already hidden.
+	 */
+	void setColumnExcludes(Collection<Column> columns);
+
 	List<Tweet> getTweets(int columnId, int numberOf);
 	List<Tweet> getTweets(int columnId, int numberOf, Set<Integer> excludeColumnIds);
 
+	/**
+	 * Keyset paging: returns the page of tweets immediately older than the
+	 * tweet at (time, uid), newest first.
+	 */
+	List<Tweet> getTweetsBefore(int columnId, long time, long uid, int numberOf);
+	List<Tweet> getTweetsBefore(int columnId, long time, long uid, int numberOf, Set<Integer> excludeColumnIds);
+
+	/**
+	 * The whole column, read lazily. Tweets in it are without their metas.
+	 */
+	LazyTweetList getLazyTweets(int columnId, Set<Integer> excludeColumnIds);
+
 	List<Tweet> getTweetsSinceTime (final int columnId, final long earliestTime, final int numberOf);
+	/**
+	 * metaType must be HASHTAG, MENTION or INREPLYTO, other types are not
+	 * indexed.
+	 */
 	List<Tweet> findTweetsWithMeta (MetaType metaType, String data, final int numberOf);
 
+	/**
+	 * Everything stored that sid is in reply to and that replies to it, read
+	 * in one go, no network. Tweets that these are in reply to but that are
+	 * not stored are listed by Conversation.getMissingSids().
+	 */
+	Conversation getConversation (String sid);
+
+	/**
+	 * Full text search of tweets already stored, no network. Best matches
+	 * first, each with its body cut to the part around the matches. Read
+	 * details by uid for the full tweet.
+	 */
+	List<Tweet> searchTweets (String query, int numberOf);
+
 	Tweet getTweetDetails(int columnId, Tweet tweet);
 	Tweet getTweetDetails(int columnId, String tweetSid);
 	Tweet getTweetDetails(String tweetSid);
 	Tweet getTweetDetails(long tweetUid);
 
+	/**
+	 * Tweets with metas in the order of the UIDs given, skipping any not
+	 * found.
+	 */
+	List<Tweet> getTweetDetails(Collection<Long> tweetUids);
+
+	/**
+	 * As getTweetsSinceTime() but with metas.
+	 */
+	List<Tweet> getTweetDetailsSinceTime(int columnId, long earliestTime, int numberOf);
+
 	List<String> getUsernames(int numberOf);
 	List<String> getUsernames(String prefix, int numberOf);
 	List<String> getHashtags(String prefix, int numberOf);
 
 	int getUnreadCount(Column column);
 	int getUnreadCount(int columnId, Set<Integer> excludeColumnIds, ScrollState scroll);
+	/**
+	 * Column ID to unread count.
+	 */
+	Map<Integer, Integer> getUnreadCounts(Collection<Column> columns);
 	int getScrollUpCount(Column column);
 	int getScrollUpCount(int columnId, Set<Integer> excludeColumnIds, ScrollState scroll);
 
@@ -51,7 +125,15 @@ public interface DbInterface extends KvStore {
 	}
 
 	interface TwUpdateListener {
-		void columnChanged(int columnId);
+		/**
+		 * Called on a background thread. Changes close together are told
+		 * together.
+		 *
+		 * @param change
+		 *            rows added and removed, or null if the column should be
+		 *            read again.
+		 */
+		void columnChanged(int columnId, ColumnChange change);
 		void columnStatus(int columnId, ColumnState state);
 	}
 
@@ -68,6 +150,18 @@ public interface DbInterface extends KvStore {
 		void outboxChanged();
 	}
 
-	void housekeep ();
+	/**
+	 * Do up to budgetMillis of housekeeping. Call again until the result is
+	 * complete.
+	 */
+	HousekeepResult housekeep (long budgetMillis);
+
+	/**
+	 * One full VACUUM so that housekeep() can give free pages back. Not
+	 * budgeted: it rewrites the whole file and may take a while. Does nothing
+	 * once done.
+	 * @return true if the VACUUM was run.
+	 */
+	boolean enableIncrementalVacuum ();
 
 }
@@ -0,0 +1,52 @@
+package com.vaguehope.onosendai.storage;
+
+/**
+ * What one call to DbInterface.housekeep() got done. Housekeeping that ran
+ * out of time carries on from where it stopped next time it is called.
+ */
+public final class HousekeepResult {
+
+	private final int prunedRows;
+	private final long reclaimedBytes;
+	private final float progress;
+	private final boolean complete;
+
+	public HousekeepResult (final int prunedRows, final long reclaimedBytes, final float progress, final boolean complete) {
+		this.prunedRows = prunedRows;
+		this.reclaimedBytes = reclaimedBytes;
+		this.progress = progress;
+		this.complete = complete;
+	}
+
+	public int getPrunedRows () {
+		return this.prunedRows;
+	}
+
+	/**
+	 * How much smaller the database file is.
+	 */
+	public long getReclaimedBytes () {
+		return this.reclaimedBytes;
+	}
+
+	/**
+	 * 0 to 1, how far through a full housekeep this call got.
+	 */
+	public float getProgress () {
+		return this.progress;
+	}
+
+	/**
+	 * True if there is nothing left to do until more rows are removed.
+	 */
+	public boolean isComplete () {
+		return this.complete;
+	}
+
+	@Override
+	public String toString () {
+		return String.format("HousekeepResult{pruned=%d, reclaimed=%d bytes, progress=%.2f, complete=%b}",
+				this.prunedRows, this.reclaimedBytes, this.progress, this.complete);
+	}
+
+}
@@ -1,8 +1,11 @@
 package com.vaguehope.onosendai.storage;
 
+import java.util.Map;
+
 public interface KvStore {
 
 	void storeValue (String key, String value);
+	void storeValues (Map<String, String> keyValues);
 	String getValue (String key);
 
 }
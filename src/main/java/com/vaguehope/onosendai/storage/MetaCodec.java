@@ -0,0 +1,124 @@
+package com.vaguehope.onosendai.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vaguehope.onosendai.model.Meta;
+import com.vaguehope.onosendai.model.MetaType;
+
+/**
+ * Packs a tweet's metas into one blob for tc.metas:
+ * <pre>
+ * version byte, then per meta: type id, data, title
+ * </pre>
+ * Ids and lengths are unsigned varints. Strings are UTF-8 prefixed with
+ * their length plus one, so that 0 is null.
+ */
+final class MetaCodec {
+
+	private static final int VERSION = 1;
+	private static final String UTF8 = "UTF-8";
+
+	private MetaCodec () {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Returns null if there are no metas.
+	 */
+	public static byte[] encode (final List<Meta> metas) {
+		if (metas == null || metas.size() < 1) return null;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(metas.size() * 32); // NOSONAR not a magic number.
+		out.write(VERSION);
+		for (final Meta meta : metas) {
+			writeVarint(out, meta.getType().getId());
+			writeString(out, meta.getData());
+			writeString(out, meta.getTitle());
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns an empty list for null.
+	 * @throws IllegalArgumentException
+	 *             if the blob is not valid.
+	 */
+	public static List<Meta> decode (final byte[] blob) {
+		if (blob == null || blob.length < 1) return Collections.emptyList();
+		if (blob[0] != VERSION) throw new IllegalArgumentException("Unknown metas version: " + blob[0]);
+		final int[] pos = new int[] { 1 };
+		final List<Meta> ret = new ArrayList<Meta>();
+		try {
+			while (pos[0] < blob.length) {
+				final MetaType type = MetaType.parseId(readVarint(blob, pos));
+				final String data = readString(blob, pos);
+				final String title = readString(blob, pos);
+				ret.add(new Meta(type, data, title));
+			}
+		}
+		catch (final ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated metas at " + pos[0] + " of " + blob.length + " bytes.", e);
+		}
+		return ret;
+	}
+
+	private static void writeString (final ByteArrayOutputStream out, final String s) {
+		if (s == null) {
+			writeVarint(out, 0);
+			return;
+		}
+		final byte[] b = utf8(s);
+		writeVarint(out, b.length + 1);
+		out.write(b, 0, b.length);
+	}
+
+	private static String readString (final byte[] blob, final int[] pos) {
+		final int len = readVarint(blob, pos) - 1;
+		if (len < 0) return null;
+		if (pos[0] + len > blob.length) throw new ArrayIndexOutOfBoundsException(pos[0] + len);
+		try {
+			final String s = new String(blob, pos[0], len, UTF8);
+			pos[0] += len;
+			return s;
+		}
+		catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeVarint (final ByteArrayOutputStream out, final int value) {
+		int v = value;
+		while ((v & ~0x7F) != 0) { // NOSONAR not a magic number.
+			out.write((v & 0x7F) | 0x80); // NOSONAR not a magic number.
+			v >>>= 7; // NOSONAR not a magic number.
+		}
+		out.write(v);
+	}
+
+	private static int readVarint (final byte[] blob, final int[] pos) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (shift > 28) throw new IllegalArgumentException("Varint too long at " + pos[0] + "."); // NOSONAR not a magic number.
+			b = blob[pos[0]++];
+			value |= (b & 0x7F) << shift; // NOSONAR not a magic number.
+			shift += 7; // NOSONAR not a magic number.
+		}
+		while ((b & 0x80) != 0); // NOSONAR not a magic number.
+		return value;
+	}
+
+	private static byte[] utf8 (final String s) {
+		try {
+			return s.getBytes(UTF8);
+		}
+		catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
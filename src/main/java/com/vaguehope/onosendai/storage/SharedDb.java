@@ -0,0 +1,115 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import android.content.Context;
+
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * The one DB handle for the whole process. It is opened on its own thread as
+ * the application starts and then handed straight to whatever asks for it,
+ * so nothing has to bind to a service and wait for the call back first.
+ */
+public final class SharedDb {
+
+	private static final LogWrapper LOG = new LogWrapper("SDB");
+	private static final Object LOCK = new Object();
+	private static final List<Runnable> WHEN_OPEN = new ArrayList<Runnable>();
+
+	private static CachingDb db;
+	private static boolean opening = false;
+
+	private SharedDb () {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Start opening the DB in the background if it is not already open or
+	 * opening.
+	 */
+	public static void open (final Context context) {
+		final Context appContext = context.getApplicationContext();
+		synchronized (LOCK) {
+			if (db != null || opening) return;
+			opening = true;
+		}
+		final Thread t = new Thread(new Runnable() {
+			@Override
+			public void run () {
+				openNow(appContext);
+			}
+		}, "SharedDb");
+		t.start();
+	}
+
+	private static void openNow (final Context appContext) {
+		final long startTime = System.nanoTime();
+		final List<Runnable> toRun;
+		try {
+			final CachingDb newDb = new CachingDb(appContext);
+			synchronized (LOCK) {
+				db = newDb;
+				toRun = new ArrayList<Runnable>(WHEN_OPEN);
+				WHEN_OPEN.clear();
+			}
+		}
+		finally {
+			synchronized (LOCK) {
+				opening = false;
+				LOCK.notifyAll();
+			}
+		}
+		LOG.i("DB opened in %d millis.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+		for (final Runnable r : toRun) {
+			r.run();
+		}
+	}
+
+	/**
+	 * Null if not open yet.
+	 */
+	public static DbInterface get () {
+		synchronized (LOCK) {
+			return db;
+		}
+	}
+
+	/**
+	 * Runs r now if the DB is open, or else on the thread that opens it.
+	 */
+	public static void whenOpen (final Context context, final Runnable r) {
+		final boolean isOpen;
+		synchronized (LOCK) {
+			isOpen = db != null;
+			if (!isOpen) WHEN_OPEN.add(r);
+		}
+		if (isOpen) {
+			r.run();
+		}
+		else {
+			open(context);
+		}
+	}
+
+	/**
+	 * Open the DB if needed and wait for it. Must not be called on the UI
+	 * thread.
+	 * @return null if the DB did not open in time.
+	 */
+	public static DbInterface await (final Context context, final long timeout, final TimeUnit unit) throws InterruptedException {
+		open(context);
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (LOCK) {
+			while (db == null) {
+				final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remainingMillis <= 0) return null;
+				LOCK.wait(remainingMillis);
+			}
+			return db;
+		}
+	}
+
+}
@@ -0,0 +1,206 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.support.v4.util.LruCache;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.model.Tweet;
+
+/**
+ * The newest page of recently read columns, as returned by
+ * DbAdapter.getTweets(). New rows are merged in as they are stored, anything
+ * else that changes a cached column drops it. A read that raced with a write
+ * is not kept.
+ */
+final class TweetListCache implements TweetWriteListener {
+
+	private static final Comparator<Tweet> PAGE_ORDER = new Comparator<Tweet>() {
+		@Override
+		public int compare (final Tweet a, final Tweet b) {
+			if (a.getTime() != b.getTime()) return a.getTime() > b.getTime() ? -1 : 1;
+			if (a.getUid() != b.getUid()) return a.getUid() > b.getUid() ? -1 : 1;
+			return 0;
+		}
+	};
+
+	private static class Page {
+
+		final Set<Integer> excludeColumnIds;
+		final List<Tweet> tweets;
+		/**
+		 * True if this is every row in the column.
+		 */
+		final boolean complete;
+		final int bytes;
+
+		public Page (final Set<Integer> excludeColumnIds, final List<Tweet> tweets, final boolean complete) {
+			this.excludeColumnIds = excludeColumnIds;
+			this.tweets = tweets;
+			this.complete = complete;
+			int b = 0;
+			for (final Tweet t : tweets) {
+				b += estimateBytes(t);
+			}
+			this.bytes = b;
+		}
+
+		boolean matches (final Set<Integer> excl) {
+			return this.excludeColumnIds == null ? excl == null : this.excludeColumnIds.equals(excl);
+		}
+
+		boolean has (final int numberOf) {
+			return this.complete || this.tweets.size() >= numberOf;
+		}
+
+	}
+
+	private final DbAdapter db;
+	private final LruCache<Integer, Page> pages;
+	private long version = 0L;
+	private int hits = 0;
+	private int misses = 0;
+
+	public TweetListCache (final DbAdapter db, final int maxSizeBytes) {
+		this.db = db;
+		this.pages = new LruCache<Integer, Page>(maxSizeBytes) {
+			@Override
+			protected int sizeOf (final Integer key, final Page value) {
+				return value.bytes;
+			}
+		};
+	}
+
+	public List<Tweet> getTweets (final int columnId, final int numberOf, final Set<Integer> excludeColumnIds) {
+		final Integer key = Integer.valueOf(columnId);
+		final long countedAtVersion;
+		synchronized (this) {
+			final Page page = this.pages.get(key);
+			if (page != null && page.matches(excludeColumnIds) && page.has(numberOf)) {
+				this.hits++;
+				return new ArrayList<Tweet>(page.tweets.subList(0, Math.min(numberOf, page.tweets.size())));
+			}
+			this.misses++;
+			countedAtVersion = this.version;
+		}
+
+		final List<Tweet> tweets = this.db.getTweets(columnId, numberOf, excludeColumnIds);
+		if (tweets == null) return null;
+
+		synchronized (this) {
+			if (countedAtVersion == this.version) {
+				final Set<Integer> excl = excludeColumnIds != null ? new HashSet<Integer>(excludeColumnIds) : null;
+				this.pages.put(key, new Page(excl, new ArrayList<Tweet>(tweets), tweets.size() < numberOf));
+			}
+		}
+		return tweets;
+	}
+
+	@Override
+	public void tweetsAdded (final int columnId, final long afterUid) {
+		final Integer key = Integer.valueOf(columnId);
+		final Page page;
+		synchronized (this) {
+			this.version++;
+			page = this.pages.get(key);
+			if (page == null) return;
+		}
+
+		final List<Tweet> added = this.db.getTweetsAfterUid(columnId, afterUid, page.excludeColumnIds);
+
+		synchronized (this) {
+			if (this.pages.get(key) != page) return; // Changed while reading.
+			final Page merged = merge(page, added);
+			if (merged != null) {
+				this.pages.put(key, merged);
+			}
+			else {
+				this.pages.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns null if the page can no longer be trusted.
+	 */
+	private static Page merge (final Page page, final List<Tweet> added) {
+		if (added == null) return null;
+		if (added.size() < 1) return page;
+
+		final Set<Long> uids = new HashSet<Long>();
+		final List<Tweet> tweets = new ArrayList<Tweet>(page.tweets.size() + added.size());
+		for (final Tweet t : page.tweets) {
+			uids.add(Long.valueOf(t.getUid()));
+			tweets.add(t);
+		}
+		for (final Tweet t : added) {
+			if (uids.add(Long.valueOf(t.getUid()))) tweets.add(t);
+		}
+		Collections.sort(tweets, PAGE_ORDER);
+
+		// Anything older than the old page could have rows between it and the page that are not cached.
+		if (!page.complete && page.tweets.size() > 0) {
+			final Tweet oldest = page.tweets.get(page.tweets.size() - 1);
+			while (PAGE_ORDER.compare(tweets.get(tweets.size() - 1), oldest) > 0) {
+				tweets.remove(tweets.size() - 1);
+			}
+		}
+
+		// Do not let a cached page grow without bound between prunes.
+		if (tweets.size() >= C.DATA_TW_MAX_COL_ENTRIES) return null;
+
+		return new Page(page.excludeColumnIds, tweets, page.complete);
+	}
+
+	@Override
+	public synchronized void tweetRemoved (final int columnId, final String sid) {
+		this.version++;
+		final Integer key = Integer.valueOf(columnId);
+		final Page page = this.pages.get(key);
+		if (page == null) return;
+		final List<Tweet> tweets = new ArrayList<Tweet>(page.tweets.size());
+		for (final Tweet t : page.tweets) {
+			if (!sid.equals(t.getSid())) tweets.add(t);
+		}
+		this.pages.put(key, new Page(page.excludeColumnIds, tweets, page.complete));
+	}
+
+	@Override
+	public synchronized void columnInvalidated (final int columnId) {
+		this.version++;
+		this.pages.remove(Integer.valueOf(columnId));
+	}
+
+	public synchronized int getHitCount () {
+		return this.hits;
+	}
+
+	public synchronized int getMissCount () {
+		return this.misses;
+	}
+
+	@Override
+	public synchronized String toString () {
+		return String.format("TweetListCache{%d columns, %d/%d bytes, %d hits, %d misses}",
+				this.pages.snapshot().size(), this.pages.size(), this.pages.maxSize(), this.hits, this.misses);
+	}
+
+	/**
+	 * Rough heap size: object headers and fields plus 2 bytes per char.
+	 */
+	static int estimateBytes (final Tweet t) {
+		return 100 // NOSONAR not a magic number.
+				+ 2 * (length(t.getSid()) + length(t.getUsername()) + length(t.getFullname())
+						+ length(t.getBody()) + length(t.getAvatarUrl()) + length(t.getInlineMediaUrl()));
+	}
+
+	private static int length (final String s) {
+		return s != null ? s.length() : 0;
+	}
+
+}
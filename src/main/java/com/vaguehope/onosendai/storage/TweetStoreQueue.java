@@ -0,0 +1,203 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * The one thread that stores tweets. Stores queued within the same window
+ * (e.g. by concurrent fetchers) are handed to the writer together so they can
+ * share a transaction. The queue is bounded so fetchers wait if the writer
+ * falls behind.
+ */
+final class TweetStoreQueue implements Runnable {
+
+	interface Writer {
+		/**
+		 * Called on the writer thread.
+		 */
+		void writeTweets (List<Store> stores);
+	}
+
+	static final class Store {
+
+		final int columnId;
+		final List<Tweet> tweets;
+		final CountDownLatch done;
+		volatile RuntimeException error;
+
+		Store (final int columnId, final List<Tweet> tweets, final boolean waited) {
+			this.columnId = columnId;
+			this.tweets = tweets;
+			this.done = waited ? new CountDownLatch(1) : null;
+		}
+
+		boolean isFlush () {
+			return this.tweets == null;
+		}
+
+	}
+
+	private static final LogWrapper LOG = new LogWrapper("TSQ");
+
+	private final Writer writer;
+	private final BlockingQueue<Store> queue = new ArrayBlockingQueue<Store>(C.DATA_TW_STORE_QUEUE_SIZE);
+	private volatile Thread thread;
+
+	public TweetStoreQueue (final Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Does nothing if already started.
+	 */
+	public synchronized void start () {
+		if (this.thread != null) return;
+		final Thread t = new Thread(this, "TweetStore");
+		t.setDaemon(true);
+		this.thread = t;
+		t.start();
+	}
+
+	/**
+	 * Waits for queued stores to be written then stops the writer thread.
+	 */
+	public synchronized void stop () {
+		final Thread t = this.thread;
+		if (t == null) return;
+		flush();
+		this.thread = null;
+		t.interrupt();
+	}
+
+	public boolean isWriterThread () {
+		return Thread.currentThread() == this.thread;
+	}
+
+	/**
+	 * Returns as soon as the store is queued.
+	 */
+	public void add (final int columnId, final List<Tweet> tweets) {
+		put(new Store(columnId, tweets, false));
+	}
+
+	/**
+	 * Returns once the tweets are stored, rethrowing any error storing them.
+	 */
+	public void addAndWait (final int columnId, final List<Tweet> tweets) {
+		final Store store = new Store(columnId, tweets, true);
+		put(store);
+		await(store);
+		if (store.error != null) throw store.error;
+	}
+
+	/**
+	 * Returns once everything queued before this call has been stored.
+	 */
+	public void flush () {
+		if (isWriterThread()) return;
+		final Store store = new Store(-1, null, true);
+		put(store);
+		await(store);
+	}
+
+	private void put (final Store store) {
+		if (this.thread == null) throw new IllegalStateException("Tweet store is not running.");
+		try {
+			this.queue.put(store);
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted queueing tweets for column " + store.columnId + ".", e);
+		}
+	}
+
+	private static void await (final Store store) {
+		try {
+			store.done.await();
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run () {
+		final Thread self = Thread.currentThread();
+		final List<Store> batch = new ArrayList<Store>();
+		while (this.thread == self) {
+			try {
+				takeBatch(batch);
+			}
+			catch (final InterruptedException e) {
+				if (batch.isEmpty()) continue;
+			}
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Waits for a store then collects any others that arrive within the
+	 * window. Anything a caller is waiting on ends the window early.
+	 */
+	private void takeBatch (final List<Store> batch) throws InterruptedException {
+		Store store = this.queue.take();
+		batch.add(store);
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(C.DATA_TW_STORE_WINDOW_MILLIS);
+		while (store.done == null) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) break;
+			store = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+			if (store == null) break;
+			batch.add(store);
+		}
+		this.queue.drainTo(batch);
+	}
+
+	private void write (final List<Store> batch) {
+		final List<Store> stores = new ArrayList<Store>(batch.size());
+		for (final Store store : batch) {
+			if (!store.isFlush()) stores.add(store);
+		}
+		try {
+			if (stores.size() > 0) writeOrRetryEach(stores);
+		}
+		finally {
+			for (final Store store : batch) {
+				if (store.done != null) store.done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * If a batch fails, store each on its own so one bad store does not lose
+	 * the others.
+	 */
+	private void writeOrRetryEach (final List<Store> stores) {
+		try {
+			this.writer.writeTweets(stores);
+			return;
+		}
+		catch (final RuntimeException e) {
+			if (stores.size() < 2) {
+				LOG.e("Failed to store tweets for column " + stores.get(0).columnId + ".", e);
+				stores.get(0).error = e;
+				return;
+			}
+			LOG.w("Failed to store batch of %d, storing separately: %s", stores.size(), e.toString());
+		}
+		for (final Store store : stores) {
+			writeOrRetryEach(Collections.singletonList(store));
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package com.vaguehope.onosendai.storage;
+
+/**
+ * Told about tw changes after they commit, so anything derived from column
+ * reads can be updated rather than read again.
+ */
+interface TweetWriteListener {
+
+	/**
+	 * The only rows added to the column have uid greater than afterUid. Its
+	 * oldest rows may also have been pruned.
+	 */
+	void tweetsAdded (int columnId, long afterUid);
+
+	void tweetRemoved (int columnId, String sid);
+
+	/**
+	 * Any row in the column may have changed, including through content it
+	 * shares with a column that was written to.
+	 */
+	void columnInvalidated (int columnId);
+
+}
@@ -0,0 +1,136 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Times of the rows in each column, sorted and kept up to date as rows are
+ * added and removed, so unread and scroll-up counts can be read for any
+ * scroll time without counting tw rows. Moving the scroll needs no change
+ * here. Anything this can not follow exactly clears the column so its times
+ * are read again.
+ */
+final class UpCounters {
+
+	/**
+	 * All rows of one column, and those not hidden by its excludes.
+	 */
+	static class ColumnTimes {
+
+		private final SortedTimes all = new SortedTimes();
+		private final SortedTimes shown = new SortedTimes();
+
+		public void add (final long time, final boolean hidden) {
+			this.all.add(time);
+			if (!hidden) this.shown.add(time);
+		}
+
+		public void remove (final long time, final boolean hidden) {
+			this.all.remove(time);
+			if (!hidden) this.shown.remove(time);
+		}
+
+		/**
+		 * @return rows newer than time.
+		 */
+		public int countAfter (final long time, final boolean excludeHidden) {
+			return (excludeHidden ? this.shown : this.all).countAfter(time);
+		}
+
+	}
+
+	private static class SortedTimes {
+
+		private long[] times = new long[16];
+		private int size = 0;
+
+		public SortedTimes () {}
+
+		void add (final long time) {
+			if (this.size == this.times.length) this.times = Arrays.copyOf(this.times, this.size * 2);
+			final int i = firstAfter(time);
+			System.arraycopy(this.times, i, this.times, i + 1, this.size - i);
+			this.times[i] = time;
+			this.size++;
+		}
+
+		/**
+		 * Removes one of time, if present.
+		 */
+		void remove (final long time) {
+			final int i = firstAfter(time) - 1;
+			if (i < 0 || this.times[i] != time) return;
+			System.arraycopy(this.times, i + 1, this.times, i, this.size - i - 1);
+			this.size--;
+		}
+
+		int countAfter (final long time) {
+			return this.size - firstAfter(time);
+		}
+
+		private int firstAfter (final long time) {
+			int lo = 0;
+			int hi = this.size;
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if (this.times[mid] <= time) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+	}
+
+	private final Map<Integer, ColumnTimes> columns = new HashMap<Integer, ColumnTimes>();
+	private long version = 0L;
+
+	/**
+	 * @return null if the column's times are not known.
+	 */
+	public synchronized Integer countAfter (final int columnId, final long time, final boolean excludeHidden) {
+		final ColumnTimes times = this.columns.get(Integer.valueOf(columnId));
+		if (times == null) return null;
+		return Integer.valueOf(times.countAfter(time, excludeHidden));
+	}
+
+	/**
+	 * Read before reading a column's times and pass to put() so times that
+	 * raced with a change are not kept.
+	 */
+	public synchronized long getVersion () {
+		return this.version;
+	}
+
+	public synchronized void put (final int columnId, final ColumnTimes times, final long readAtVersion) {
+		if (readAtVersion != this.version) return;
+		this.columns.put(Integer.valueOf(columnId), times);
+	}
+
+	public synchronized void added (final int columnId, final long time, final boolean hidden) {
+		this.version++;
+		final ColumnTimes times = this.columns.get(Integer.valueOf(columnId));
+		if (times != null) times.add(time, hidden);
+	}
+
+	public synchronized void removed (final int columnId, final long time, final boolean hidden) {
+		this.version++;
+		final ColumnTimes times = this.columns.get(Integer.valueOf(columnId));
+		if (times != null) times.remove(time, hidden);
+	}
+
+	public synchronized void invalidate (final int columnId) {
+		this.version++;
+		this.columns.remove(Integer.valueOf(columnId));
+	}
+
+	public synchronized void invalidateAll () {
+		this.version++;
+		this.columns.clear();
+	}
+
+}
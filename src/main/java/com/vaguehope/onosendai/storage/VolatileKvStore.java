@@ -9,7 +9,19 @@ public class VolatileKvStore implements KvStore {
 
 	@Override
 	public void storeValue (final String key, final String value) {
-		this.m.put(key, value);
+		if (value == null) {
+			this.m.remove(key);
+		}
+		else {
+			this.m.put(key, value);
+		}
+	}
+
+	@Override
+	public void storeValues (final Map<String, String> keyValues) {
+		for (final Map.Entry<String, String> e : keyValues.entrySet()) {
+			storeValue(e.getKey(), e.getValue());
+		}
 	}
 
 	@Override
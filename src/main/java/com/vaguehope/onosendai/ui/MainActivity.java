@@ -27,6 +27,7 @@ import com.vaguehope.onosendai.config.InternalColumnType;
 import com.vaguehope.onosendai.config.Prefs;
 import com.vaguehope.onosendai.images.HybridBitmapCache;
 import com.vaguehope.onosendai.images.ImageLoadRequest;
+import com.vaguehope.onosendai.images.ImageLoadScheduler;
 import com.vaguehope.onosendai.images.ImageLoader;
 import com.vaguehope.onosendai.images.ImageLoaderUtils;
 import com.vaguehope.onosendai.model.ScrollState;
@@ -56,6 +57,7 @@ public class MainActivity extends FragmentActivity implements ImageLoader, OnSha
 	private ExecutorStatus executorStatus;
 	private ExecutorService localEs;
 	private ExecutorService netEs;
+	private ImageLoadScheduler imageLoadScheduler;
 
 	private SidebarAwareViewPager viewPager;
 	private VisiblePageSelectionListener pageSelectionListener;
@@ -85,7 +87,7 @@ public class MainActivity extends FragmentActivity implements ImageLoader, OnSha
 			return;
 		}
 
-		this.imageCache = new HybridBitmapCache(this, C.MAX_MEMORY_IMAGE_CACHE);
+		this.imageCache = new HybridBitmapCache(this, C.MAX_MEMORY_IMAGE_CACHE, C.MAX_MEMORY_IMAGE_POOL);
 
 		if (this.prefs.getSharedPreferences().getBoolean(AdvancedPrefFragment.KEY_THREAD_INSPECTOR, false)) {
 			final TextView jobStatus = (TextView) findViewById(R.id.jobStatus);
@@ -95,6 +97,7 @@ public class MainActivity extends FragmentActivity implements ImageLoader, OnSha
 
 		this.localEs = ExecUtils.newBoundedCachedThreadPool(C.LOCAL_MAX_THREADS, new LogWrapper("LES"), this.executorStatus);
 		this.netEs = ExecUtils.newBoundedCachedThreadPool(C.NET_MAX_THREADS, new LogWrapper("NES"), this.executorStatus);
+		this.imageLoadScheduler = new ImageLoadScheduler(this.localEs, this.netEs, this.executorStatus);
 
 		final float columnWidth = Float.parseFloat(getResources().getString(R.string.column_width));
 
@@ -210,6 +213,10 @@ public class MainActivity extends FragmentActivity implements ImageLoader, OnSha
 		return this.netEs;
 	}
 
+	public ImageLoadScheduler getImageLoadScheduler () {
+		return this.imageLoadScheduler;
+	}
+
 	ProviderMgr getProviderMgr () {
 		if (!waitForDbReady()) throw new IllegalStateException("DB not bound.");
 		return this.providerMgr;
@@ -221,7 +228,7 @@ public class MainActivity extends FragmentActivity implements ImageLoader, OnSha
 
 	@Override
 	public void loadImage (final ImageLoadRequest req) {
-		ImageLoaderUtils.loadImage(this.imageCache, req, this.localEs, this.netEs, this.executorStatus);
+		ImageLoaderUtils.loadImage(this.imageCache, req, this.imageLoadScheduler);
 	}
 
 	public boolean gotoPage (final int position) {
@@ -283,6 +290,7 @@ public class MainActivity extends FragmentActivity implements ImageLoader, OnSha
 			args.putInt(TweetListFragment.ARG_COLUMN_ID, col.getId());
 			args.putString(TweetListFragment.ARG_COLUMN_TITLE, col.getTitle());
 			args.putBoolean(TweetListFragment.ARG_COLUMN_IS_LATER, InternalColumnType.LATER.matchesColumn(col));
+			args.putString(TweetListFragment.ARG_COLUMN_LOCAL_SEARCH, InternalColumnType.LOCAL_SEARCH.resourceArg(col));
 			args.putBoolean(TweetListFragment.ARG_COLUMN_SHOW_INLINEMEDIA, col.isInlineMedia());
 			fragment.setArguments(args);
 			return fragment;
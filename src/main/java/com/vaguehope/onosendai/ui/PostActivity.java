@@ -18,6 +18,7 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
@@ -44,6 +45,7 @@ import com.vaguehope.onosendai.config.Config;
 import com.vaguehope.onosendai.config.Prefs;
 import com.vaguehope.onosendai.images.HybridBitmapCache;
 import com.vaguehope.onosendai.images.ImageLoadRequest;
+import com.vaguehope.onosendai.images.ImageLoadScheduler;
 import com.vaguehope.onosendai.images.ImageLoader;
 import com.vaguehope.onosendai.images.ImageLoaderUtils;
 import com.vaguehope.onosendai.model.Meta;
@@ -96,6 +98,7 @@ public class PostActivity extends Activity implements ImageLoader, DbProvider {
 	private DbClient bndDb;
 	private HybridBitmapCache imageCache;
 	private ExecutorService exec;
+	private ImageLoadScheduler imageLoadScheduler;
 	private Prefs prefs;
 
 	private AccountAdaptor accountAdaptor;
@@ -125,8 +128,9 @@ public class PostActivity extends Activity implements ImageLoader, DbProvider {
 			return;
 		}
 
-		this.imageCache = new HybridBitmapCache(getBaseContext(), C.MAX_MEMORY_IMAGE_CACHE);
+		this.imageCache = new HybridBitmapCache(getBaseContext(), C.MAX_MEMORY_IMAGE_CACHE, C.MAX_MEMORY_IMAGE_POOL);
 		this.exec = ExecUtils.newBoundedCachedThreadPool(C.NET_MAX_THREADS, LOG);
+		this.imageLoadScheduler = new ImageLoadScheduler(this.exec, this.exec, null);
 
 		this.intentExtras = getIntent().getExtras();
 		this.inReplyToUid = this.intentExtras.getLong(ARG_IN_REPLY_TO_UID);
@@ -173,7 +177,7 @@ public class PostActivity extends Activity implements ImageLoader, DbProvider {
 
 	@Override
 	public void loadImage (final ImageLoadRequest req) {
-		ImageLoaderUtils.loadImage(this.imageCache, req, this.exec);
+		ImageLoaderUtils.loadImage(this.imageCache, req, this.imageLoadScheduler);
 	}
 
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
@@ -347,7 +351,11 @@ public class PostActivity extends Activity implements ImageLoader, DbProvider {
 				}
 
 				((TextView) view.findViewById(R.id.tweetDetailBody)).setText(tweet.getBody());
-				if (tweet.getAvatarUrl() != null) loadImage(new ImageLoadRequest(tweet.getAvatarUrl(), (ImageView) view.findViewById(R.id.tweetDetailAvatar)));
+				if (tweet.getAvatarUrl() != null) {
+					final ImageView avatar = (ImageView) view.findViewById(R.id.tweetDetailAvatar);
+					final int px = ImageLoaderUtils.avatarSizePixels(avatar);
+					loadImage(new ImageLoadRequest(tweet.getAvatarUrl(), avatar, px, px, Bitmap.Config.RGB_565));
+				}
 				((TextView) view.findViewById(R.id.tweetDetailName)).setText(tweet.getFullname());
 				((TextView) view.findViewById(R.id.tweetDetailDate)).setText(DateFormat.getDateTimeInstance().format(new Date(TimeUnit.SECONDS.toMillis(tweet.getTime()))));
 			}
@@ -3,6 +3,7 @@ package com.vaguehope.onosendai.ui;
 import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
@@ -34,13 +35,16 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.Onosendai;
 import com.vaguehope.onosendai.R;
 import com.vaguehope.onosendai.config.Account;
 import com.vaguehope.onosendai.config.Column;
 import com.vaguehope.onosendai.config.Config;
 import com.vaguehope.onosendai.config.InternalColumnType;
+import com.vaguehope.onosendai.images.ImageLoadScheduler;
 import com.vaguehope.onosendai.images.ImageLoader;
 import com.vaguehope.onosendai.images.ImageLoaderUtils;
+import com.vaguehope.onosendai.model.LazyTweetList;
 import com.vaguehope.onosendai.model.Meta;
 import com.vaguehope.onosendai.model.MetaType;
 import com.vaguehope.onosendai.model.MetaUtils;
@@ -48,6 +52,7 @@ import com.vaguehope.onosendai.model.ScrollState;
 import com.vaguehope.onosendai.model.Tweet;
 import com.vaguehope.onosendai.model.TweetList;
 import com.vaguehope.onosendai.model.TweetListAdapter;
+import com.vaguehope.onosendai.model.TweetListAdapter.PageRequestListener;
 import com.vaguehope.onosendai.payload.InReplyToLoaderTask;
 import com.vaguehope.onosendai.payload.InReplyToPayload;
 import com.vaguehope.onosendai.payload.Payload;
@@ -61,6 +66,7 @@ import com.vaguehope.onosendai.provider.ProviderMgr;
 import com.vaguehope.onosendai.provider.RtTask;
 import com.vaguehope.onosendai.provider.RtTask.RtRequest;
 import com.vaguehope.onosendai.provider.ServiceRef;
+import com.vaguehope.onosendai.storage.ColumnChange;
 import com.vaguehope.onosendai.storage.DbClient;
 import com.vaguehope.onosendai.storage.DbInterface;
 import com.vaguehope.onosendai.storage.DbInterface.ColumnState;
@@ -91,6 +97,7 @@ public class TweetListFragment extends Fragment {
 	static final String ARG_COLUMN_POSITION = "column_pos";
 	static final String ARG_COLUMN_TITLE = "column_title";
 	static final String ARG_COLUMN_IS_LATER = "column_is_later";
+	static final String ARG_COLUMN_LOCAL_SEARCH = "column_local_search";
 	static final String ARG_COLUMN_SHOW_INLINEMEDIA = "column_show_inlinemedia";
 
 	private final LogWrapper log = new LogWrapper();
@@ -98,6 +105,7 @@ public class TweetListFragment extends Fragment {
 	private int columnId = -1;
 	private int columnPosition = -1;
 	private boolean isLaterColumn;
+	private String localSearchTerms;
 	private Config conf;
 	private RefreshUiHandler refreshUiHandler;
 
@@ -128,6 +136,7 @@ public class TweetListFragment extends Fragment {
 		this.columnId = getArguments().getInt(ARG_COLUMN_ID);
 		this.columnPosition = getArguments().getInt(ARG_COLUMN_POSITION);
 		this.isLaterColumn = getArguments().getBoolean(ARG_COLUMN_IS_LATER, false);
+		this.localSearchTerms = getArguments().getString(ARG_COLUMN_LOCAL_SEARCH);
 		this.log.setPrefix("C" + this.columnId);
 		this.log.d("onCreateView()");
 
@@ -172,7 +181,8 @@ public class TweetListFragment extends Fragment {
 		this.tweetListEmptyRefresh.setOnClickListener(this.refreshClickListener);
 
 		this.tweetList = (ListView) rootView.findViewById(R.id.tweetListList);
-		this.adapter = new TweetListAdapter(container.getContext(), getArguments().getBoolean(ARG_COLUMN_SHOW_INLINEMEDIA, false), imageLoader);
+		this.adapter = new TweetListAdapter(container.getContext(), getArguments().getBoolean(ARG_COLUMN_SHOW_INLINEMEDIA, false), imageLoader,
+				C.TWEET_LIST_PAGE_SIZE, C.TWEET_LIST_PAGE_PREFETCH_MARGIN, this.pageRequestListener);
 		this.tweetList.setAdapter(this.adapter);
 		this.tweetList.setOnItemClickListener(this.tweetItemClickedListener);
 		this.tweetList.setEmptyView(this.tweetListEmptyRefresh);
@@ -213,6 +223,7 @@ public class TweetListFragment extends Fragment {
 		saveScroll();
 		saveSavedScrollToDb();
 		suspendDb();
+		getImageLoadScheduler().resume(null); // In case paused mid fling.
 		this.mainActivity.onFragmentPaused(getColumnId());
 		super.onPause();
 	}
@@ -277,6 +288,10 @@ public class TweetListFragment extends Fragment {
 		return getMainActivity().getNetEs();
 	}
 
+	private ImageLoadScheduler getImageLoadScheduler () {
+		return getMainActivity().getImageLoadScheduler();
+	}
+
 	private ServiceRef findFullService (final Account account, final ServiceRef svc) {
 		final List<ServiceRef> accounts = getProviderMgr().getSuccessWhaleProvider().getPostToAccountsCached(account);
 		if (accounts == null) return null;
@@ -376,6 +391,11 @@ public class TweetListFragment extends Fragment {
 //	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
 	protected void scheduleRefresh (final boolean all) {
+		if (!all && this.localSearchTerms != null) { // Nothing to fetch, just search again.
+			refreshUi();
+			return;
+		}
+
 		if (!NetHelper.connectionPresent(getActivity())) {
 			DialogHelper.alert(getActivity(), "No internet connection available.");
 			return;
@@ -441,7 +461,23 @@ public class TweetListFragment extends Fragment {
 	private final OnItemClickListener tweetItemClickedListener = new OnItemClickListener() {
 		@Override
 		public void onItemClick (final AdapterView<?> parent, final View view, final int position, final long id) {
-			showTweetDetails(getAdapter().getInputData().getTweet(position));
+			showTweetDetails(getAdapter().getTweet(position));
+		}
+	};
+
+	private final PageRequestListener pageRequestListener = new PageRequestListener() {
+		@Override
+		public void requestPageAfter (final Tweet lastTweet) {
+			if (TweetListFragment.this.localSearchTerms == null && readLazily(getAdapter().getCount())) {
+				refreshUiOnUiThread(); // Will load the whole column lazily.
+				return;
+			}
+			new LoadTweetsPage(getExecutorEventListener(), TweetListFragment.this, lastTweet).executeOnExecutor(getLocalEs());
+		}
+
+		@Override
+		public void requestWindow (final LazyTweetList data, final int position) {
+			new LoadTweetsWindow(getExecutorEventListener(), TweetListFragment.this, data, position).executeOnExecutor(getLocalEs());
 		}
 	};
 
@@ -452,6 +488,12 @@ public class TweetListFragment extends Fragment {
 		@Override
 		public void onScrollStateChanged (final AbsListView view, final int newScrollState) {
 			this.scrolling = (newScrollState != OnScrollListener.SCROLL_STATE_IDLE);
+			if (newScrollState == OnScrollListener.SCROLL_STATE_FLING) {
+				getImageLoadScheduler().pause(); // Rows flung past are not worth loading.
+			}
+			else if (newScrollState == OnScrollListener.SCROLL_STATE_IDLE) {
+				getImageLoadScheduler().resume(view);
+			}
 		}
 
 		@Override
@@ -502,12 +544,14 @@ public class TweetListFragment extends Fragment {
 	}
 
 	protected void showTweetDetails (final Tweet listTweet) {
-		final Tweet dbTweet = getDb().getTweetDetails(this.columnId, listTweet);
+		final Tweet dbTweet = this.localSearchTerms != null
+				? getDb().getTweetDetails(listTweet.getUid())
+				: getDb().getTweetDetails(this.columnId, listTweet);
 		final Tweet tweet = dbTweet != null ? dbTweet : listTweet;
 		this.lstTweetPayloadAdaptor.setInput(getConf(), tweet);
 
 		new ReplyLoaderTask(getExecutorEventListener(), getActivity(), getDb(), tweet, this.lstTweetPayloadAdaptor).executeOnExecutor(getLocalEs());
-		new InReplyToLoaderTask(getExecutorEventListener(), getActivity().getApplicationContext(), getConf(), getProviderMgr(), tweet, getColumn().isHdMedia(), this.lstTweetPayloadAdaptor, getNetEs()).executeOnExecutor(getNetEs());
+		new InReplyToLoaderTask(getExecutorEventListener(), getActivity().getApplicationContext(), getConf(), getProviderMgr(), tweet, getColumn().isHdMedia(), this.lstTweetPayloadAdaptor).executeOnExecutor(getNetEs());
 
 		setReadLaterButton(tweet, this.isLaterColumn);
 		this.sidebar.openSidebar();
@@ -680,9 +724,18 @@ public class TweetListFragment extends Fragment {
 	private final TwUpdateListener guiUpdateListener = new TwUpdateListener() {
 
 		@Override
-		public void columnChanged (final int changeColumnId) {
+		public void columnChanged (final int changeColumnId, final ColumnChange change) {
+			if (TweetListFragment.this.localSearchTerms != null) {
+				refreshUi();
+				return;
+			}
 			if (changeColumnId != getColumnId()) return;
-			refreshUi();
+			if (change != null) {
+				applyChange(change);
+			}
+			else {
+				refreshUi();
+			}
 		}
 
 		@Override
@@ -697,11 +750,16 @@ public class TweetListFragment extends Fragment {
 	private static final int MSG_UPDATE_RUNNING = 2;
 	private static final int MSG_UPDATE_OVER = 3;
 	private static final int MSG_STILL_SCROLLING_CHECK = 4;
+	private static final int MSG_APPLY_CHANGE = 5;
 
 	protected void refreshUi () {
 		this.refreshUiHandler.sendEmptyMessage(MSG_REFRESH);
 	}
 
+	protected void applyChange (final ColumnChange change) {
+		this.refreshUiHandler.obtainMessage(MSG_APPLY_CHANGE, change).sendToTarget();
+	}
+
 	protected void statusChanged (final ColumnState state) {
 		switch (state) {
 			case UPDATE_RUNNING:
@@ -746,11 +804,15 @@ public class TweetListFragment extends Fragment {
 			case MSG_STILL_SCROLLING_CHECK:
 				checkIfTweetListStillScrolling();
 				break;
+			case MSG_APPLY_CHANGE:
+				applyChangeOnUiThread((ColumnChange) msg.obj);
+				break;
 			default:
 		}
 	}
 
 	private int progressIndicatorCounter = 0;
+	private int loadTweetsRunning = 0;
 
 	/**
 	 * Only call on UI thread.
@@ -766,9 +828,73 @@ public class TweetListFragment extends Fragment {
 		new LoadTweets(getExecutorEventListener(), this).executeOnExecutor(getLocalEs());
 	}
 
-	private static class LoadTweets extends TrackingAsyncTask<Void, Void, Result<TweetList>> {
+	/**
+	 * Add and remove changed rows without reading the column again. If
+	 * nothing is loaded yet, or a load is running that may not include the
+	 * change, read it again instead.
+	 */
+	private void applyChangeOnUiThread (final ColumnChange change) {
+		if (change.isEmpty()) return;
+		final TweetListAdapter adapter = getAdapter();
+		final TweetList data = adapter.getInputData();
+		if (data == null || this.loadTweetsRunning > 0) {
+			refreshUiOnUiThread();
+			return;
+		}
+		final Set<Integer> excl = getColumn().getExcludeColumnIds();
+		final List<Tweet> tweets = change.applyTo(data.getTweets(), excl != null && excl.size() > 0, adapter.isMorePages());
+		saveScrollIfNotSaved();
+		adapter.setInputData(new TweetList(tweets));
+		this.log.d("Applied %s.", change);
+		restoreScroll();
+	}
+
+	/**
+	 * True once another page would take the list past
+	 * C.TWEET_LIST_LAZY_MIN_ROWS.
+	 */
+	protected static boolean readLazily (final int rows) {
+		return rows + C.TWEET_LIST_PAGE_SIZE > C.TWEET_LIST_LAZY_MIN_ROWS;
+	}
+
+	/**
+	 * Either a list of tweets or, for long columns, a lazy one.
+	 */
+	private static class LoadedTweets {
+
+		private final TweetList tweets;
+		private final LazyTweetList lazyTweets;
+
+		public LoadedTweets (final TweetList tweets) {
+			this.tweets = tweets;
+			this.lazyTweets = null;
+		}
+
+		public LoadedTweets (final LazyTweetList lazyTweets) {
+			this.tweets = null;
+			this.lazyTweets = lazyTweets;
+		}
+
+		public int count () {
+			return this.lazyTweets != null ? this.lazyTweets.count() : this.tweets.count();
+		}
+
+		public void setOn (final TweetListAdapter adapter) {
+			if (this.lazyTweets != null) {
+				adapter.setLazyData(this.lazyTweets);
+			}
+			else {
+				adapter.setInputData(this.tweets);
+			}
+		}
+
+	}
+
+	private static class LoadTweets extends TrackingAsyncTask<Void, Void, Result<LoadedTweets>> {
 
 		private final TweetListFragment host;
+		private int loadedCount;
+		private ScrollState pendingScroll;
 
 		public LoadTweets (final ExecutorEventListener eventListener, final TweetListFragment host) {
 			super(eventListener);
@@ -782,43 +908,174 @@ public class TweetListFragment extends Fragment {
 
 		@Override
 		protected void onPreExecute () {
+			this.host.loadTweetsRunning++;
 			this.host.progressIndicator(true);
 			this.host.tweetListEmptyRefresh.setEnabled(false);
+			this.loadedCount = this.host.getAdapter().getCount();
+			this.pendingScroll = this.host.scrollState;
 		}
 
 		@Override
-		protected Result<TweetList> doInBackgroundWithTracking (final Void... params) {
+		protected Result<LoadedTweets> doInBackgroundWithTracking (final Void... params) {
 			try {
 				final DbInterface db = this.host.getDb();
 				if (db != null) {
-					final List<Tweet> tweets = db.getTweets(this.host.getColumnId(), 200, this.host.getColumn().getExcludeColumnIds()); // FIXME replace 200 with dynamic list.
-					return new Result<TweetList>(new TweetList(tweets));
+					final Column column = this.host.getColumn();
+					if (this.host.localSearchTerms != null) {
+						return new Result<LoadedTweets>(new LoadedTweets(new TweetList(db.searchTweets(this.host.localSearchTerms, C.LOCAL_SEARCH_MAX_RESULTS))));
+					}
+					final int rowsToLoad = rowsToLoad(db, column);
+					if (readLazily(rowsToLoad)) {
+						return new Result<LoadedTweets>(new LoadedTweets(readLazyTweets(db, column)));
+					}
+					final List<Tweet> tweets = db.getTweets(column.getId(), rowsToLoad, column.getExcludeColumnIds());
+					return new Result<LoadedTweets>(new LoadedTweets(new TweetList(tweets)));
 				}
-				return new Result<TweetList>(new IllegalStateException("Failed to refresh column as DB was not bound."));
+				return new Result<LoadedTweets>(new IllegalStateException("Failed to refresh column as DB was not bound."));
 			}
 			catch (final Exception e) { // NOSONAR needed to report errors.
-				return new Result<TweetList>(e);
+				return new Result<LoadedTweets>(e);
+			}
+		}
+
+		/**
+		 * Also reads in the rows around the scroll position to be restored, so
+		 * that first paint does not have to.
+		 */
+		private LazyTweetList readLazyTweets (final DbInterface db, final Column column) {
+			final LazyTweetList lazyTweets = db.getLazyTweets(column.getId(), column.getExcludeColumnIds());
+			if (lazyTweets.count() > 0) {
+				final int scrollIndex = this.pendingScroll != null ? lazyTweets.indexOfUid(this.pendingScroll.getItemId()) : -1;
+				lazyTweets.getTweet(Math.max(scrollIndex, 0));
+			}
+			return lazyTweets;
+		}
+
+		/**
+		 * A screenful for first paint, but do not drop pages already scrolled
+		 * into and make sure a scroll position waiting to be restored is
+		 * included.
+		 */
+		private int rowsToLoad (final DbInterface db, final Column column) {
+			int n = Math.max(C.TWEET_LIST_PAGE_SIZE, this.loadedCount);
+			if (this.pendingScroll != null && this.pendingScroll.getItemTime() > 0L) {
+				final int aboveScroll = db.getScrollUpCount(column.getId(), column.getExcludeColumnIds(), this.pendingScroll);
+				n = Math.max(n, aboveScroll + C.TWEET_LIST_PAGE_SIZE);
 			}
+			return n;
 		}
 
 		@Override
-		protected void onPostExecute (final Result<TweetList> result) {
+		protected void onPostExecute (final Result<LoadedTweets> result) {
 			if (result.isSuccess()) {
 				this.host.saveScrollIfNotSaved();
-				this.host.getAdapter().setInputData(result.getData());
+				result.getData().setOn(this.host.getAdapter());
 				this.host.getLog().d("Refreshed %d tweets.", result.getData().count());
+				if (result.getData().count() > 0) Onosendai.firstRowsShown();
 				this.host.restoreScroll();
 				this.host.redrawLastUpdateError();
 			}
 			else {
 				this.host.getLog().w("Failed to refresh column.", result.getE());
 			}
+			this.host.loadTweetsRunning--;
 			this.host.progressIndicator(false);
 			this.host.tweetListEmptyRefresh.setEnabled(true);
 		}
 
 	}
 
+	private static class LoadTweetsPage extends TrackingAsyncTask<Void, Void, Result<List<Tweet>>> {
+
+		private final TweetListFragment host;
+		private final Tweet lastTweet;
+
+		public LoadTweetsPage (final ExecutorEventListener eventListener, final TweetListFragment host, final Tweet lastTweet) {
+			super(eventListener);
+			this.host = host;
+			this.lastTweet = lastTweet;
+		}
+
+		@Override
+		public String toString () {
+			return "loadTweetsPage:" + this.host.getColumnPosition() + ":" + this.host.getColumn().getTitle();
+		}
+
+		@Override
+		protected Result<List<Tweet>> doInBackgroundWithTracking (final Void... params) {
+			try {
+				if (this.host.localSearchTerms != null) return new Result<List<Tweet>>(Collections.<Tweet> emptyList()); // All results already loaded.
+				final DbInterface db = this.host.getDb();
+				if (db != null) {
+					final Column column = this.host.getColumn();
+					return new Result<List<Tweet>>(db.getTweetsBefore(column.getId(),
+							this.lastTweet.getTime(), this.lastTweet.getUid(),
+							C.TWEET_LIST_PAGE_SIZE, column.getExcludeColumnIds()));
+				}
+				return new Result<List<Tweet>>(new IllegalStateException("Failed to load page as DB was not bound."));
+			}
+			catch (final Exception e) { // NOSONAR needed to report errors.
+				return new Result<List<Tweet>>(e);
+			}
+		}
+
+		@Override
+		protected void onPostExecute (final Result<List<Tweet>> result) {
+			final TweetListAdapter adapter = this.host.getAdapter();
+			final int count = adapter.getCount();
+			if (count < 1 || adapter.getItemId(count - 1) != this.lastTweet.getUid()) {
+				adapter.pageRequestFailed(); // List was refreshed while loading; page is stale.
+				return;
+			}
+			if (result.isSuccess()) {
+				adapter.appendPage(result.getData());
+				this.host.getLog().d("Loaded page of %d tweets.", result.getData().size());
+			}
+			else {
+				adapter.pageRequestFailed();
+				this.host.getLog().w("Failed to load page.", result.getE());
+			}
+		}
+
+	}
+
+	private static class LoadTweetsWindow extends TrackingAsyncTask<Void, Void, Exception> {
+
+		private final TweetListFragment host;
+		private final LazyTweetList data;
+		private final int position;
+
+		public LoadTweetsWindow (final ExecutorEventListener eventListener, final TweetListFragment host, final LazyTweetList data, final int position) {
+			super(eventListener);
+			this.host = host;
+			this.data = data;
+			this.position = position;
+		}
+
+		@Override
+		public String toString () {
+			return "loadTweetsWindow:" + this.host.getColumnPosition() + ":" + this.position;
+		}
+
+		@Override
+		protected Exception doInBackgroundWithTracking (final Void... params) {
+			try {
+				this.data.loadRequestedWindow(this.position);
+				return null;
+			}
+			catch (final Exception e) { // NOSONAR needed to report errors.
+				return e;
+			}
+		}
+
+		@Override
+		protected void onPostExecute (final Exception result) {
+			if (result != null) this.host.getLog().w("Failed to load window.", result);
+			this.host.getAdapter().windowLoaded(this.data);
+		}
+
+	}
+
 	private final OnClickListener refreshClickListener = new OnClickListener() {
 		@Override
 		public void onClick (final View v) {
@@ -840,9 +1097,9 @@ public class TweetListFragment extends Fragment {
 		this.lastScrollTime = now;
 		this.refreshUiHandler.sendEmptyMessageDelayed(MSG_STILL_SCROLLING_CHECK, C.SCROLL_TIME_LABEL_TIMEOUT_MILLIS);
 
-		final Tweet tweet = this.adapter.getTweet(position);
-		if (tweet != null) {
-			this.btnColumnTitle.setText(DateHelper.friendlyAbsoluteDate(getActivity(), now, TimeUnit.SECONDS.toMillis(tweet.getTime())));
+		final long time = this.adapter.getItemTime(position); // Does not read the row in lazy mode.
+		if (time > 0L) {
+			this.btnColumnTitle.setText(DateHelper.friendlyAbsoluteDate(getActivity(), now, TimeUnit.SECONDS.toMillis(time)));
 		}
 	}
 
@@ -2,6 +2,7 @@ package com.vaguehope.onosendai.ui.pref;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.List;
 
 import android.app.ProgressDialog;
@@ -14,6 +15,7 @@ import android.preference.Preference;
 import android.preference.Preference.OnPreferenceClickListener;
 import android.preference.PreferenceFragment;
 
+import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.config.Column;
 import com.vaguehope.onosendai.config.Config;
 import com.vaguehope.onosendai.config.ConfigBuilder;
@@ -23,6 +25,7 @@ import com.vaguehope.onosendai.model.Meta;
 import com.vaguehope.onosendai.model.Tweet;
 import com.vaguehope.onosendai.storage.DbBindingAsyncTask;
 import com.vaguehope.onosendai.storage.DbInterface;
+import com.vaguehope.onosendai.storage.HousekeepResult;
 import com.vaguehope.onosendai.update.CleanupService;
 import com.vaguehope.onosendai.util.DialogHelper;
 import com.vaguehope.onosendai.util.IoHelper;
@@ -254,11 +257,14 @@ public class AdvancedPrefFragment extends PreferenceFragment {
 		protected Exception doInBackgroundWithDb (final DbInterface db, final Void... params) {
 			final Column col = this.conf.findInternalColumn(InternalColumnType.LATER);
 			final List<Tweet> ts = db.getTweets(col.getId(), 500); // FIXME extract to constant.
+			final List<Long> uids = new ArrayList<Long>(ts.size());
+			for (final Tweet tw : ts) {
+				uids.add(Long.valueOf(tw.getUid()));
+			}
 			try {
 				final PrintWriter w = new PrintWriter(this.file, "UTF-8");
 				try {
-					for (final Tweet tw : ts) {
-						final Tweet t = db.getTweetDetails(col.getId(), tw);
+					for (final Tweet t : db.getTweetDetails(uids)) {
 						w.append(t.getSid()).append(":").append(String.valueOf(t.getTime())).println();
 						w.append(t.getUsername()).append(":").append(t.getFullname()).println();
 						w.append(t.getBody()).println();
@@ -292,7 +298,7 @@ public class AdvancedPrefFragment extends PreferenceFragment {
 
 	}
 
-	private static class Housekeep extends DbBindingAsyncTask<Void, Void, Exception> {
+	private static class Housekeep extends DbBindingAsyncTask<Void, Integer, Exception> {
 
 		private ProgressDialog dialog;
 
@@ -314,7 +320,12 @@ public class AdvancedPrefFragment extends PreferenceFragment {
 		protected Exception doInBackgroundWithDb (final DbInterface db, final Void... params) {
 			try {
 				CleanupService.clean(getContext());
-				db.housekeep();
+				HousekeepResult r;
+				do {
+					r = db.housekeep(C.DB_HOUSEKEEP_BUDGET_MILLIS);
+					publishProgress(Math.round(r.getProgress() * 100)); // NOSONAR not a magic number.
+				}
+				while (!r.isComplete());
 				return null;
 			}
 			catch (final Exception e) { // NOSONAR show user all errors.
@@ -322,6 +333,11 @@ public class AdvancedPrefFragment extends PreferenceFragment {
 			}
 		}
 
+		@Override
+		protected void onProgressUpdate (final Integer... values) {
+			this.dialog.setMessage(String.format("Please wait... %d%%", values[0]));
+		}
+
 		@Override
 		protected void onPostExecute (final Exception result) {
 			this.dialog.dismiss();
@@ -352,7 +352,8 @@ class ColumnDialog {
 				this.excludes.size() > 0 ? this.excludes : null,
 				this.notificationStyle,
 				this.chkInlineMedia.isChecked(),
-				this.chkHdMedia.isChecked());
+				this.chkHdMedia.isChecked(),
+				this.initialValue != null ? this.initialValue.getRetention() : null);
 	}
 
 	private static class Duration {
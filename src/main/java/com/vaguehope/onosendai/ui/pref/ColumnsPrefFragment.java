@@ -16,10 +16,12 @@ import android.preference.PreferenceFragment;
 import com.vaguehope.onosendai.config.Account;
 import com.vaguehope.onosendai.config.Column;
 import com.vaguehope.onosendai.config.Config;
+import com.vaguehope.onosendai.config.InternalColumnType;
 import com.vaguehope.onosendai.config.Prefs;
 import com.vaguehope.onosendai.storage.DbInterface;
 import com.vaguehope.onosendai.ui.pref.ColumnChooser.ColumnChoiceListener;
 import com.vaguehope.onosendai.util.DialogHelper;
+import com.vaguehope.onosendai.util.DialogHelper.Listener;
 
 public class ColumnsPrefFragment extends PreferenceFragment {
 
@@ -48,6 +50,12 @@ public class ColumnsPrefFragment extends PreferenceFragment {
 		pref.setOnPreferenceClickListener(new AddAcountClickListener(this));
 		getPreferenceScreen().addPreference(pref);
 
+		final Preference searchPref = new Preference(getActivity());
+		searchPref.setTitle("Add Local Search Column");
+		searchPref.setSummary("Search updates already downloaded");
+		searchPref.setOnPreferenceClickListener(new AddLocalSearchClickListener(this));
+		getPreferenceScreen().addPreference(searchPref);
+
 		try {
 			final Config config = getPrefs().asConfig();
 			for (final Column column : config.getColumns()) {
@@ -71,11 +79,24 @@ public class ColumnsPrefFragment extends PreferenceFragment {
 		this.columnChooser.promptAddColumn();
 	}
 
+	protected void promptAddLocalSearchColumn () {
+		DialogHelper.askString(getActivity(), "Search term:", new Listener<String>() {
+			@Override
+			public void onAnswer (final String answer) {
+				promptAddColumn(null, InternalColumnType.LOCAL_SEARCH.resourcePrefix() + answer, answer);
+			}
+		});
+	}
+
+	/**
+	 * @param account
+	 *            may only be null for local search columns.
+	 */
 	protected void promptAddColumn (final Account account, final String resource, final String title) {
-		if (account == null) throw new IllegalArgumentException("Account can not be null.");
+		if (account == null && !InternalColumnType.LOCAL_SEARCH.matchesResource(resource)) throw new IllegalArgumentException("Account can not be null.");
 
 		final int id = getPrefs().getNextColumnId();
-		final ColumnDialog dlg = new ColumnDialog(getActivity(), this.prefs, id, account.getId());
+		final ColumnDialog dlg = new ColumnDialog(getActivity(), this.prefs, id, account != null ? account.getId() : null);
 		if (resource != null) dlg.setResource(resource);
 		if (title != null) dlg.setTitle(title);
 
@@ -157,6 +178,21 @@ public class ColumnsPrefFragment extends PreferenceFragment {
 		}
 	}
 
+	private static class AddLocalSearchClickListener implements OnPreferenceClickListener {
+
+		private final ColumnsPrefFragment columnsPrefFragment;
+
+		public AddLocalSearchClickListener (final ColumnsPrefFragment columnsPrefFragment) {
+			this.columnsPrefFragment = columnsPrefFragment;
+		}
+
+		@Override
+		public boolean onPreferenceClick (final Preference preference) {
+			this.columnsPrefFragment.promptAddLocalSearchColumn();
+			return true;
+		}
+	}
+
 	private static <T> boolean setContains (final Set<T> set, final T item) {
 		if (set == null) return false;
 		return set.contains(item);
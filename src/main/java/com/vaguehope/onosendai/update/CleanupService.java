@@ -1,28 +1,32 @@
 package com.vaguehope.onosendai.update;
 
-import android.app.IntentService;
+import java.util.concurrent.TimeUnit;
+
 import android.content.Context;
 import android.content.Intent;
 
-import com.vaguehope.onosendai.images.HybridBitmapCache;
+import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.storage.AttachmentStorage;
+import com.vaguehope.onosendai.storage.DbBindingService;
+import com.vaguehope.onosendai.storage.HousekeepResult;
 import com.vaguehope.onosendai.util.LogWrapper;
 
 /*
  * TODO move this class?
  */
-public class CleanupService extends IntentService {
+public class CleanupService extends DbBindingService {
 
 	protected static final LogWrapper LOG = new LogWrapper("CS");
 
 	public CleanupService () {
-		super("OnosendaiCleanupService");
+		super("OnosendaiCleanupService", LOG);
 	}
 
 	@Override
-	protected final void onHandleIntent (final Intent i) {
+	protected void doWork (final Intent i) {
 		try {
 			clean(this);
+			housekeepDb();
 			LOG.i("Clean up complete.");
 		}
 		catch (final Exception e) { // NOSONAR want to log all errors.
@@ -32,7 +36,32 @@ public class CleanupService extends IntentService {
 
 	public static void clean (final Context context) {
 		AttachmentStorage.cleanTempOutputDir(context); // FIXME what if attachment in use in Outbox?
-		HybridBitmapCache.cleanCacheDir(context);
+	}
+
+	/**
+	 * Housekeep in short steps with pauses between so the UI and updates are
+	 * not kept waiting. Anything not done carries on next clean up. The
+	 * one-off VACUUM that lets housekeeping free pages is done first, on its
+	 * own, as it can not be split into steps.
+	 */
+	private void housekeepDb () throws InterruptedException {
+		if (!waitForDbReady()) return;
+		final long startTime = System.nanoTime();
+		if (getDb().enableIncrementalVacuum()) {
+			LOG.i("Enabled incremental vacuum in %d millis.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+		}
+		long reclaimed = 0L;
+		for (int n = 0; n < C.DB_HOUSEKEEP_MAX_CALLS; n++) {
+			if (n > 0) Thread.sleep(C.DB_HOUSEKEEP_PAUSE_MILLIS);
+			final HousekeepResult r = getDb().housekeep(C.DB_HOUSEKEEP_BUDGET_MILLIS);
+			if (r == null) return;
+			reclaimed += r.getReclaimedBytes();
+			if (r.isComplete()) {
+				LOG.i("Housekeep complete, reclaimed %d bytes.", reclaimed);
+				return;
+			}
+		}
+		LOG.i("Housekeep paused, reclaimed %d bytes.", reclaimed);
 	}
 
 }
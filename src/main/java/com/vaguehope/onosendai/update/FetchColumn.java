@@ -88,7 +88,7 @@ public class FetchColumn implements Callable<Void> {
 			if (existingTweets.size() > 0) sinceId = Long.parseLong(existingTweets.get(existingTweets.size() - 1).getSid());
 
 			final TweetList tweets = twitterProvider.getTweets(feed, account, sinceId, column.isHdMedia());
-			if (tweets.count() > 0) db.storeTweets(column, tweets.getTweets());
+			if (tweets.count() > 0) db.queueTweets(column, tweets.getTweets());
 
 			storeSuccess(db, column);
 			final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
@@ -112,7 +112,7 @@ public class FetchColumn implements Callable<Void> {
 			if (existingTweets.size() > 0) sinceId = existingTweets.get(existingTweets.size() - 1).getSid();
 
 			final TweetList tweets = successWhaleProvider.getTweets(feed, account, sinceId);
-			if (tweets.count() > 0) db.storeTweets(column, tweets.getTweets());
+			if (tweets.count() > 0) db.queueTweets(column, tweets.getTweets());
 
 			storeSuccess(db, column);
 			final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
@@ -133,12 +133,11 @@ public class FetchColumn implements Callable<Void> {
 			final long lastPushTime = lastPushTimeRaw != null ? Long.parseLong(lastPushTimeRaw) : 0L;
 
 			LOG.i("Looking for items since t=%s to push...", lastPushTime);
-			final List<Tweet> tweets = db.getTweetsSinceTime(column.getId(), lastPushTime, 10); // XXX Arbitrary limit.
+			final List<Tweet> tweets = db.getTweetDetailsSinceTime(column.getId(), lastPushTime, 10); // XXX Arbitrary limit.
 
 			LOG.i("Pushing %s items...", tweets.size());
 			for (final Tweet tweet : tweets) {
-				final Tweet fullTweet = db.getTweetDetails(column.getId(), tweet);
-				provider.add(account, fullTweet);
+				provider.add(account, tweet);
 				db.storeValue(KvKeys.KEY_PREFIX_COL_LAST_PUSH_TIME + column.getId(), String.valueOf(tweet.getTime()));
 				LOG.i("Pushed item sid=%s.", tweet.getSid());
 			}
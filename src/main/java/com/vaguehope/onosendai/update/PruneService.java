@@ -0,0 +1,48 @@
+package com.vaguehope.onosendai.update;
+
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+
+import android.content.Intent;
+
+import com.vaguehope.onosendai.config.Column;
+import com.vaguehope.onosendai.config.Config;
+import com.vaguehope.onosendai.config.Prefs;
+import com.vaguehope.onosendai.storage.DbBindingService;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Trims each column to its Retention. Runs after updates so that storing
+ * fetched tweets does not also have to wait for a prune.
+ */
+public class PruneService extends DbBindingService {
+
+	protected static final LogWrapper LOG = new LogWrapper("PS");
+
+	public PruneService () {
+		super("OnosendaiPruneService", LOG);
+	}
+
+	@Override
+	protected void doWork (final Intent i) {
+		final Config conf;
+		try {
+			conf = new Prefs(getBaseContext()).asConfig();
+		}
+		catch (final JSONException e) {
+			LOG.w("Can not prune: %s", e.toString());
+			return;
+		}
+		if (!waitForDbReady()) return;
+
+		final long startTime = System.nanoTime();
+		int pruned = 0;
+		for (final Column column : conf.getColumns()) {
+			pruned += getDb().pruneColumn(column);
+		}
+		final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		LOG.i("Pruned %d rows from %d columns in %d millis.", pruned, conf.getColumns().size(), durationMillis);
+	}
+
+}
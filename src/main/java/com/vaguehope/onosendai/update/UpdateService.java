@@ -2,6 +2,7 @@ package com.vaguehope.onosendai.update;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -21,6 +22,7 @@ import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.config.Account;
 import com.vaguehope.onosendai.config.Column;
 import com.vaguehope.onosendai.config.Config;
+import com.vaguehope.onosendai.config.InternalColumnType;
 import com.vaguehope.onosendai.config.Prefs;
 import com.vaguehope.onosendai.notifications.Notifications;
 import com.vaguehope.onosendai.provider.ProviderMgr;
@@ -83,7 +85,9 @@ public class UpdateService extends DbBindingService {
 
 		final Collection<Column> columns = columnsToFetch(conf, columnId, manual);
 		fetchColumns(conf, providerMgr, columns);
+		getDb().flushTweets(); // Fetchers only queue their tweets.
 		if (!manual) Notifications.update(getBaseContext(), getDb(), columns);
+		if (columns.size() > 0) startService(new Intent(this, PruneService.class));
 
 		final long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
 		LOG.i("Fetched %d columns in %d millis.", columns.size(), durationMillis);
@@ -100,10 +104,12 @@ public class UpdateService extends DbBindingService {
 
 		if (!manual) removeNotDue(columns);
 		// For now treating the configured interval as an 'attempt rate' not 'success rate' so write update time now.
-		final long now = System.currentTimeMillis();
+		final Map<String, String> refreshTimes = new HashMap<String, String>();
+		final String now = String.valueOf(System.currentTimeMillis());
 		for (final Column column : columns) {
-			getDb().storeValue(KvKeys.KEY_PREFIX_COL_LAST_REFRESH_TIME + column.getId(), String.valueOf(now));
+			refreshTimes.put(KvKeys.KEY_PREFIX_COL_LAST_REFRESH_TIME + column.getId(), now);
 		}
+		getDb().storeValues(refreshTimes);
 
 		return columns;
 	}
@@ -111,7 +117,9 @@ public class UpdateService extends DbBindingService {
 	private static Collection<Column> removeNotFetchable (final Collection<Column> columns) {
 		final List<Column> ret = new ArrayList<Column>();
 		for (final Column column : columns) {
-			if (column.getAccountId() != null) ret.add(column);
+			if (column.getAccountId() == null) continue;
+			if (InternalColumnType.LOCAL_SEARCH.matchesColumn(column)) continue; // Nothing to fetch.
+			ret.add(column);
 		}
 		return ret;
 	}
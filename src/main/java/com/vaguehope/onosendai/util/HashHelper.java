@@ -17,6 +17,19 @@ public final class HashHelper {
 		return new BigInteger(1, md.digest());
 	}
 
+	/**
+	 * First 64 bits of the MD5 of the whole UTF-8 string.
+	 */
+	public static long md5Long (final String s) {
+		final MessageDigest md = MD_MD5_FACTORY.get();
+		final byte[] d = md.digest(getBytes(s));
+		long l = 0L;
+		for (int i = 0; i < 8; i++) { // NOSONAR not a magic number.
+			l = (l << 8) | (d[i] & 0xff); // NOSONAR not a magic number.
+		}
+		return l;
+	}
+
 	private static byte[] getBytes (final String s) {
 		try {
 			return s.getBytes("UTF-8");
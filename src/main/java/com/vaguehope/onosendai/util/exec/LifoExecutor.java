@@ -0,0 +1,112 @@
+package com.vaguehope.onosendai.util.exec;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds work back from another executor and hands it on newest first, a few
+ * at a time, so that when work is added faster than it is done the most
+ * recently asked for is done first. Can be paused, e.g. while a list is
+ * flung, and work added meanwhile is handed on when resumed.
+ */
+public class LifoExecutor implements Executor {
+
+	private final Executor delegate;
+	private final int maxInFlight;
+	private final LinkedList<Runnable> pending = new LinkedList<Runnable>();
+	private int inFlight = 0;
+	private boolean paused = false;
+
+	/**
+	 * @param maxInFlight
+	 *            how many to have handed on at once, usually the delegate's
+	 *            thread count so nothing waits in its queue.
+	 */
+	public LifoExecutor (final Executor delegate, final int maxInFlight) {
+		if (delegate == null) throw new IllegalArgumentException("Missing arg: delegate.");
+		if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive.");
+		this.delegate = delegate;
+		this.maxInFlight = maxInFlight;
+	}
+
+	@Override
+	public void execute (final Runnable command) {
+		synchronized (this.pending) {
+			this.pending.addFirst(command);
+		}
+		drain();
+	}
+
+	public void pause () {
+		synchronized (this.pending) {
+			this.paused = true;
+		}
+	}
+
+	public void resume () {
+		synchronized (this.pending) {
+			this.paused = false;
+		}
+		drain();
+	}
+
+	public boolean isPaused () {
+		synchronized (this.pending) {
+			return this.paused;
+		}
+	}
+
+	/**
+	 * Not yet handed on.
+	 */
+	public int pendingCount () {
+		synchronized (this.pending) {
+			return this.pending.size();
+		}
+	}
+
+	private void drain () {
+		while (true) {
+			final Runnable next;
+			synchronized (this.pending) {
+				if (this.paused || this.inFlight >= this.maxInFlight || this.pending.isEmpty()) return;
+				next = this.pending.removeFirst();
+				this.inFlight += 1;
+			}
+			this.delegate.execute(new InFlightRunnable(next));
+		}
+	}
+
+	void done () {
+		synchronized (this.pending) {
+			this.inFlight -= 1;
+		}
+		drain();
+	}
+
+	private class InFlightRunnable implements Runnable {
+
+		private final Runnable command;
+
+		public InFlightRunnable (final Runnable command) {
+			this.command = command;
+		}
+
+		@Override
+		public void run () {
+			try {
+				this.command.run();
+			}
+			finally {
+				done();
+			}
+		}
+
+		@Override
+		public String toString () {
+			return this.command.toString();
+		}
+
+	}
+
+}
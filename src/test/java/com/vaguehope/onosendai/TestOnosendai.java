@@ -0,0 +1,13 @@
+package com.vaguehope.onosendai;
+
+/**
+ * Used by Robolectric in place of Onosendai. Tests open their own DBs.
+ */
+public class TestOnosendai extends Onosendai {
+
+	@Override
+	protected void openDb () {
+		// Not in tests.
+	}
+
+}
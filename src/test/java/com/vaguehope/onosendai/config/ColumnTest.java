@@ -9,13 +9,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
 
+import com.vaguehope.onosendai.C;
 import com.vaguehope.onosendai.util.CollectionHelper;
 
 public class ColumnTest {
 
 	@Test
 	public void itRoundTrips () throws Exception {
-		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false);
+		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false, null);
 		String j = c.toJson().toString(2);
 		Column c1 = Column.parseJson(j);
 		assertEquals(c, c1);
@@ -23,7 +24,7 @@ public class ColumnTest {
 
 	@Test
 	public void itClonesWithNewId () throws Exception {
-		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false);
+		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false, null);
 		Column c1 = new Column(89, c);
 		Column c2 = new Column(12, c1);
 		assertEquals(c, c2);
@@ -36,7 +37,7 @@ public class ColumnTest {
 		when(a1.getId()).thenReturn("accountid");
 		when(a2.getId()).thenReturn("newaccountid");
 
-		Column c = new Column(12, "title", a1.getId(), "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false);
+		Column c = new Column(12, "title", a1.getId(), "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false, null);
 		Column c1 = new Column(a2, c);
 		Column c2 = new Column(a1, c1);
 		assertEquals(c, c2);
@@ -44,7 +45,7 @@ public class ColumnTest {
 
 	@Test
 	public void itClonesWithNewExcludeColumnIds () throws Exception {
-		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false);
+		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false, null);
 		Column c1 = new Column(CollectionHelper.setOf(2), c);
 		Column c2 = new Column(CollectionHelper.setOf(1, 2), c1);
 		assertEquals(c, c2);
@@ -52,20 +53,56 @@ public class ColumnTest {
 
 	@Test
 	public void itEqualsChecksExcludes () throws Exception {
-		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false);
-		assertFalse(c.equals(new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 1), NotificationStyle.DEFAULT, false, false)));
+		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false, null);
+		assertFalse(c.equals(new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 1), NotificationStyle.DEFAULT, false, false, null)));
 	}
 
 	@Test
 	public void itEqualsChecksNotify () throws Exception {
-		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false);
-		assertFalse(c.equals(new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), null, false, false)));
+		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false, null);
+		assertFalse(c.equals(new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), null, false, false, null)));
+	}
+
+	@Test
+	public void itRoundTripsRetention () throws Exception {
+		Column c = new Column(12, "title", "accountid", "resource", 15, null, null, false, false, new Retention(2000, 90, 20));
+		Column c1 = Column.parseJson(c.toJson().toString(2));
+		assertEquals(c, c1);
+		assertEquals(new Retention(2000, 90, 20), c1.getRetention());
+	}
+
+	@Test
+	public void itParsesRetention () throws Exception {
+		assertEquals(null, parseRetention(null));
+		assertEquals(new Retention(100, 0, 0), parseRetention("100"));
+		assertEquals(new Retention(0, 48 * 60, 0), parseRetention("{\"age\": \"48hours\"}"));
+		assertEquals(new Retention(0, 0, 25), parseRetention("{\"share\": 25}"));
+	}
+
+	@Test(expected = JSONException.class)
+	public void itRejectsInvalidRetention () throws Exception {
+		parseRetention("{\"share\": 101}");
+	}
+
+	@Test
+	public void itLimitsRowsToTightestRetention () throws Exception {
+		assertEquals(C.DATA_TW_MAX_COL_ENTRIES, Retention.DEFAULT.getRowLimit());
+		assertEquals(C.DATA_TW_MAX_COL_ENTRIES, new Retention(0, 60, 0).getRowLimit());
+		assertEquals(2000, new Retention(2000, 0, 0).getRowLimit());
+		assertEquals(C.DATA_TW_STORAGE_BUDGET_ROWS / 10, new Retention(0, 0, 10).getRowLimit());
+		assertEquals(100, new Retention(100, 0, 10).getRowLimit());
+	}
+
+	private static Retention parseRetention (final String retention) throws JSONException {
+		final String json = "{\"id\": 1, \"title\": \"t\", \"resource\": \"r\""
+				+ (retention != null ? ", \"retention\": " + retention : "") + "}";
+		return Column.parseJson(json).getRetention();
 	}
 
 	@Test
 	public void itParsesComplexNotificationStyle () throws Exception {
 		NotificationStyle ns = new NotificationStyle(true, false, true);
-		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), ns, false, false);
+		Column c = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), ns, false, false, null);
 		String j = c.toJson().toString(2);
 		Column c1 = Column.parseJson(j);
 		assertEquals(c, c1);
@@ -74,7 +111,7 @@ public class ColumnTest {
 	@Test
 	public void itDoesNotAllowNegativeIdsWhenParsingJson () throws Exception {
 		try {
-			Column.parseJson(new Column(-1, "title", "accountid", "resource", 15, null, NotificationStyle.DEFAULT, false, false).toJson().toString(2));
+			Column.parseJson(new Column(-1, "title", "accountid", "resource", 15, null, NotificationStyle.DEFAULT, false, false, null).toJson().toString(2));
 		}
 		catch (JSONException e) {
 			assertEquals("Column ID must be positive a integer.", e.getMessage());
@@ -82,14 +119,14 @@ public class ColumnTest {
 	}
 
 	public void itDefaultsInlineMediaToFalse () throws Exception {
-		JSONObject j = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false).toJson();
+		JSONObject j = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, false, false, null).toJson();
 		assertEquals(false, j.remove("inline_media"));
 		Column c = Column.parseJson(j.toString(2));
 		assertEquals(false, c.isInlineMedia());
 	}
 
 	public void itRoundtripsInlineMediaEnabled () throws Exception {
-		JSONObject j = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, true, false).toJson();
+		JSONObject j = new Column(12, "title", "accountid", "resource", 15, CollectionHelper.setOf(1, 2), NotificationStyle.DEFAULT, true, false, null).toJson();
 		Column c = Column.parseJson(j.toString(2));
 		assertEquals(true, c.isInlineMedia());
 	}
@@ -0,0 +1,134 @@
+package com.vaguehope.onosendai.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.graphics.Bitmap;
+
+@RunWith(RobolectricTestRunner.class)
+public class BitmapPoolTest {
+
+	private static final int BMP_BYTES = 10 * 10 * 4;
+	private static final AtomicInteger BMP_COUNTER = new AtomicInteger(0);
+
+	private BitmapPool undertest;
+
+	@Before
+	public void before () throws Exception {
+		this.undertest = new BitmapPool(BMP_BYTES * 3);
+	}
+
+	@Test
+	public void itReusesBitmapsOfTheSameSizeAndConfig () throws Exception {
+		final Bitmap bmp = unused(mutableBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		assertNull(this.undertest.take(10, 10, Bitmap.Config.RGB_565));
+		assertNull(this.undertest.take(10, 20, Bitmap.Config.ARGB_8888));
+		assertSame(bmp, this.undertest.take(10, 10, Bitmap.Config.ARGB_8888));
+		assertNull(this.undertest.take(10, 10, Bitmap.Config.ARGB_8888));
+		assertEquals(1, this.undertest.hitCount());
+		assertEquals(3, this.undertest.missCount());
+		assertEquals(0, this.undertest.sizeBytes());
+	}
+
+	@Test
+	public void itDoesNotPoolBitmapsStillCachedOrHeld () throws Exception {
+		final Bitmap bmp = mutableBitmap(10, 10, Bitmap.Config.ARGB_8888);
+		this.undertest.hold(bmp);
+		this.undertest.hold(bmp);
+		this.undertest.cached(bmp);
+		this.undertest.uncached(bmp);
+		assertEquals(0, this.undertest.size());
+		this.undertest.release(bmp);
+		assertEquals(0, this.undertest.size());
+		this.undertest.release(bmp);
+		assertEquals(1, this.undertest.size());
+	}
+
+	@Test
+	public void itUnpoolsBitmapsHeldAgain () throws Exception {
+		final Bitmap bmp = unused(mutableBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		assertTrue(this.undertest.hold(bmp, this.undertest.ticket()));
+		assertEquals(0, this.undertest.size());
+		assertNull(this.undertest.take(10, 10, Bitmap.Config.ARGB_8888));
+	}
+
+	@Test
+	public void itDoesNotHoldBitmapsTakenSinceTicket () throws Exception {
+		final Bitmap bmp = unused(mutableBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		final long ticket = this.undertest.ticket();
+		assertSame(bmp, this.undertest.take(10, 10, Bitmap.Config.ARGB_8888));
+		assertFalse(this.undertest.hold(bmp, ticket));
+		assertTrue(this.undertest.hold(bmp, this.undertest.ticket()));
+	}
+
+	@Test
+	public void itIgnoresImmutableBitmaps () throws Exception {
+		unused(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		assertEquals(0, this.undertest.size());
+	}
+
+	@Test
+	public void itDropsOldestWhenFull () throws Exception {
+		final Bitmap first = unused(mutableBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		for (int i = 0; i < 3; i++) {
+			unused(mutableBitmap(10, 10, Bitmap.Config.ARGB_8888));
+		}
+		assertEquals(3, this.undertest.size());
+		assertEquals(BMP_BYTES * 3, this.undertest.sizeBytes());
+		for (int i = 0; i < 3; i++) {
+			final Bitmap b = this.undertest.take(10, 10, Bitmap.Config.ARGB_8888);
+			if (b == first) throw new AssertionError("Oldest was not dropped.");
+		}
+	}
+
+	@Test
+	public void itIsFedByMemoryCacheEvictionsOnceReleased () throws Exception {
+		final MemoryBitmapCache<String> cache = new MemoryBitmapCache<String>(BMP_BYTES, this.undertest);
+		final Bitmap a = cachedAndHeld(cache, "a");
+		final Bitmap b = cachedAndHeld(cache, "b");
+		assertEquals("Evicted but still held.", 0, this.undertest.size());
+
+		this.undertest.release(b);
+		assertEquals("Released but still cached.", 0, this.undertest.size());
+
+		this.undertest.release(a);
+		assertSame(a, this.undertest.take(10, 10, Bitmap.Config.ARGB_8888));
+	}
+
+	private Bitmap unused (final Bitmap bmp) {
+		this.undertest.hold(bmp);
+		this.undertest.release(bmp);
+		return bmp;
+	}
+
+	private Bitmap cachedAndHeld (final MemoryBitmapCache<String> cache, final String key) {
+		final Bitmap bmp = mutableBitmap(10, 10, Bitmap.Config.ARGB_8888);
+		this.undertest.hold(bmp);
+		this.undertest.cached(bmp);
+		cache.put(key, bmp);
+		return bmp;
+	}
+
+	/**
+	 * Shadow bitmaps are equal by size and description, so each is given its
+	 * own description.
+	 */
+	static Bitmap mutableBitmap (final int width, final int height, final Bitmap.Config config) {
+		final Bitmap bmp = Bitmap.createBitmap(width, height, config);
+		Robolectric.shadowOf(bmp).setMutable(true);
+		Robolectric.shadowOf(bmp).setDescription("bmp" + BMP_COUNTER.incrementAndGet());
+		return bmp;
+	}
+
+}
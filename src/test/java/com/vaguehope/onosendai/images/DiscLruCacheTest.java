@@ -0,0 +1,188 @@
+package com.vaguehope.onosendai.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import com.vaguehope.onosendai.util.IoHelper;
+
+@RunWith(RobolectricTestRunner.class)
+public class DiscLruCacheTest {
+
+	private static final int MAX_BYTES = 100;
+
+	@Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+	private File dir;
+	private DiscLruCache undertest;
+
+	@Before
+	public void before () throws Exception {
+		this.dir = this.tmp.newFolder("images");
+		this.undertest = new DiscLruCache(this.dir, MAX_BYTES);
+	}
+
+	@After
+	public void after () throws Exception {
+		this.undertest.close();
+	}
+
+	@Test
+	public void itStoresAndReturnsFiles () throws Exception {
+		assertNull(this.undertest.get("a"));
+		final File f = this.undertest.put("a", bytes(10));
+		assertEquals(f, this.undertest.get("a"));
+		assertEquals(10, f.length());
+		assertEquals(1, this.undertest.count());
+		assertEquals(10, this.undertest.sizeBytes());
+	}
+
+	@Test
+	public void itDoesNotLookAtFilesOnGet () throws Exception {
+		final File f = this.undertest.put("a", bytes(10));
+		assertTrue(f.delete());
+		assertNotNull("Expected index only lookup.", this.undertest.get("a"));
+	}
+
+	@Test
+	public void itReplacesFiles () throws Exception {
+		this.undertest.put("a", bytes(10));
+		this.undertest.put("a", bytes(20));
+		assertEquals(20, this.undertest.get("a").length());
+		assertEquals(20, this.undertest.sizeBytes());
+	}
+
+	@Test
+	public void itEvictsLeastRecentlyUsedWhenOverBudget () throws Exception {
+		this.undertest.put("a", bytes(40));
+		this.undertest.put("b", bytes(40));
+		this.undertest.get("a");
+		this.undertest.put("c", bytes(40));
+
+		assertNotNull(this.undertest.get("a"));
+		assertNull(this.undertest.get("b"));
+		assertNotNull(this.undertest.get("c"));
+		assertFalse(new File(this.dir, "b").exists());
+		assertEquals(80, this.undertest.sizeBytes());
+	}
+
+	@Test
+	public void itLeavesNoEntryOrTempFileForEmptyWrites () throws Exception {
+		try {
+			this.undertest.put("a", bytes(0));
+			fail("Expected IOException.");
+		}
+		catch (final IOException e) {
+			assertNull(this.undertest.get("a"));
+		}
+		assertEquals(1, this.dir.list().length); // Just the journal.
+	}
+
+	@Test
+	public void itRebuildsIndexFromJournal () throws Exception {
+		this.undertest.put("a", bytes(30));
+		this.undertest.put("b", bytes(30));
+		this.undertest.put("c", bytes(30));
+		this.undertest.remove("b");
+		this.undertest.get("a");
+		this.undertest.close();
+
+		final DiscLruCache reopened = new DiscLruCache(this.dir, MAX_BYTES);
+		assertEquals(2, reopened.count());
+		assertEquals(60, reopened.sizeBytes());
+		assertNull(reopened.get("b"));
+
+		reopened.put("d", bytes(30));
+		reopened.put("e", bytes(30));
+		assertNull("c was least recently used.", reopened.get("c"));
+		assertNotNull(reopened.get("a"));
+		reopened.close();
+	}
+
+	@Test
+	public void itKeepsWhatItCanOfATruncatedJournal () throws Exception {
+		this.undertest.put("a", bytes(10));
+		this.undertest.put("b", bytes(10));
+		this.undertest.close();
+		append(new File(this.dir, DiscLruCache.JOURNAL), "CLEAN c");
+
+		final DiscLruCache reopened = new DiscLruCache(this.dir, MAX_BYTES);
+		assertEquals(2, reopened.count());
+		assertNotNull(reopened.get("a"));
+		assertNotNull(reopened.get("b"));
+		reopened.close();
+	}
+
+	@Test
+	public void itAdoptsFilesFromBeforeTheJournal () throws Exception {
+		this.undertest.close();
+		writeFile(new File(this.dir, "0123abc"), 10, 1000L);
+		writeFile(new File(this.dir, "4567def"), 20, 2000L);
+		writeFile(new File(this.dir, "0123abc987.tmp"), 5, 3000L);
+
+		final DiscLruCache reopened = new DiscLruCache(this.dir, 25);
+		assertEquals("Oldest dropped to fit budget.", 1, reopened.count());
+		assertNotNull(reopened.get("4567def"));
+		assertFalse(new File(this.dir, "0123abc").exists());
+		assertFalse(new File(this.dir, "0123abc987.tmp").exists());
+		reopened.close();
+	}
+
+	@Test
+	public void itCompactsTheJournal () throws Exception {
+		this.undertest.put("a", bytes(10));
+		for (int i = 0; i < 5000; i++) {
+			this.undertest.get("a");
+		}
+		this.undertest.put("b", bytes(10));
+		this.undertest.close();
+		final String journal = IoHelper.fileToString(new File(this.dir, DiscLruCache.JOURNAL));
+		assertTrue(journal, journal.split("\n").length < 10);
+
+		final DiscLruCache reopened = new DiscLruCache(this.dir, MAX_BYTES);
+		assertEquals(2, reopened.count());
+		reopened.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void itRejectsKeysThatWouldBreakTheJournal () throws Exception {
+		this.undertest.put("a b", bytes(10));
+	}
+
+	private static ByteArrayInputStream bytes (final int length) {
+		return new ByteArrayInputStream(new byte[length]);
+	}
+
+	private static void writeFile (final File f, final int length, final long modified) throws IOException {
+		IoHelper.copy(bytes(length), f);
+		assertTrue(f.setLastModified(modified));
+	}
+
+	private static void append (final File f, final String s) throws IOException {
+		final OutputStream os = new FileOutputStream(f, true);
+		try {
+			os.write(s.getBytes("UTF-8"));
+		}
+		finally {
+			os.close();
+		}
+	}
+
+}
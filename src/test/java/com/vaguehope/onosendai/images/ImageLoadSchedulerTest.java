@@ -0,0 +1,151 @@
+package com.vaguehope.onosendai.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.graphics.Bitmap;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import com.vaguehope.onosendai.C;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImageLoadSchedulerTest {
+
+	private final Executor noop = new Executor() {
+		@Override
+		public void execute (final Runnable command) {/* Not run. */}
+	};
+
+	private HybridBitmapCache cache;
+	private ImageLoadScheduler undertest;
+
+	@Before
+	public void before () throws Exception {
+		Robolectric.getBackgroundScheduler().pause(); // Loads are scheduled but not run.
+		this.cache = new HybridBitmapCache(Robolectric.application, C.MAX_MEMORY_IMAGE_CACHE, C.MAX_MEMORY_IMAGE_POOL);
+		this.undertest = new ImageLoadScheduler(this.noop, this.noop, null);
+	}
+
+	@After
+	public void after () throws Exception {
+		Robolectric.getBackgroundScheduler().unPause();
+	}
+
+	@Test
+	public void itKeepsOneLoadPerImageView () throws Exception {
+		final ImageView view = imageView();
+		load("http://example.com/a.jpg", view);
+		load("http://example.com/b.jpg", view);
+		load("http://example.com/c.jpg", imageView());
+		assertEquals(2, this.undertest.loadingCount());
+	}
+
+	@Test
+	public void itForgetsLoadsOnceFinished () throws Exception {
+		final Executor now = new Executor() {
+			@Override
+			public void execute (final Runnable command) {
+				command.run();
+			}
+		};
+		this.undertest = new ImageLoadScheduler(now, this.noop, null);
+		final FrameLayout list = new FrameLayout(Robolectric.application);
+		this.undertest.pause();
+		final ImageLoadRequest a = load("http://example.com/a.jpg", imageView(list));
+		load("http://example.com/b.jpg", imageView(list)).getImageView().setTag(null); // Rebound, so its load returns nothing.
+		assertEquals(2, this.undertest.loadingCount());
+
+		this.undertest.resume(list);
+		assertEquals("Both loads finished, a is waiting on its fetch.", 0, this.undertest.loadingCount());
+		assertEquals(-1L, this.undertest.getLastShownAfterPauseMillis());
+		this.undertest.shown(a);
+		assertTrue(this.undertest.getLastShownAfterPauseMillis() >= 0L);
+	}
+
+	@Test
+	public void itTimesUntilVisibleViewsWaitingAtResumeAreShown () throws Exception {
+		this.undertest.pause();
+		final FrameLayout list = new FrameLayout(Robolectric.application);
+		final ImageView rebound = imageView(list);
+		load("http://example.com/old.jpg", rebound);
+		final ImageLoadRequest a = load("http://example.com/a.jpg", rebound);
+		final ImageLoadRequest b = load("http://example.com/b.jpg", imageView(list));
+		final ImageLoadRequest c = load("http://example.com/c.jpg", imageView(list));
+		load("http://example.com/offscreen.jpg", imageView());
+		load("http://example.com/unbound.jpg", imageView(list)).getImageView().setTag(null);
+		assertTrue(this.undertest.isPaused());
+
+		this.undertest.resume(list);
+		assertFalse(this.undertest.isPaused());
+		this.undertest.shown(b);
+		this.undertest.shown(c);
+		assertEquals(-1L, this.undertest.getLastShownAfterPauseMillis());
+
+		this.undertest.shown(a);
+		assertTrue(this.undertest.getLastShownAfterPauseMillis() >= 0L);
+	}
+
+	@Test
+	public void itDoesNotTimeWithoutAPause () throws Exception {
+		final ImageLoadRequest a = load("http://example.com/a.jpg", imageView());
+		this.undertest.resume(null);
+		this.undertest.shown(a);
+		assertEquals(-1L, this.undertest.getLastShownAfterPauseMillis());
+	}
+
+	@Test
+	public void itHoldsShownBitmapsUntilTheViewIsGivenAnother () throws Exception {
+		final BitmapPool pool = this.cache.getPool();
+		final ImageView view = imageView();
+		final Bitmap a = heldBitmap(pool);
+		final Bitmap b = heldBitmap(pool);
+
+		this.undertest.shown(this.cache, new ImageLoadRequest("http://example.com/a.jpg", view), a);
+		assertEquals(1, this.undertest.boundCount());
+		assertEquals(0, pool.size());
+
+		this.undertest.shown(this.cache, new ImageLoadRequest("http://example.com/b.jpg", view), b);
+		assertEquals(1, this.undertest.boundCount());
+		assertEquals("Only a was released.", 1, pool.size());
+
+		load("http://example.com/c.jpg", view);
+		assertEquals(0, this.undertest.boundCount());
+		assertEquals(2, pool.size());
+	}
+
+	private static Bitmap heldBitmap (final BitmapPool pool) {
+		final Bitmap bmp = BitmapPoolTest.mutableBitmap(10, 10, Bitmap.Config.ARGB_8888);
+		pool.hold(bmp);
+		return bmp;
+	}
+
+	private ImageLoadRequest load (final String url, final ImageView view) {
+		final ImageLoadRequest req = new ImageLoadRequest(url, view);
+		req.setImagePending();
+		this.undertest.load(this.cache, req);
+		return req;
+	}
+
+	private static ImageView imageView () {
+		return new ImageView(Robolectric.application);
+	}
+
+	private static ImageView imageView (final ViewGroup parent) {
+		final ImageView view = imageView();
+		parent.addView(view);
+		return view;
+	}
+
+}
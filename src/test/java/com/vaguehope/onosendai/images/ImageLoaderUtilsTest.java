@@ -0,0 +1,68 @@
+package com.vaguehope.onosendai.images;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+@RunWith(RobolectricTestRunner.class)
+public class ImageLoaderUtilsTest {
+
+	@Test
+	public void itRoundsSizesUpToTheirClass () throws Exception {
+		assertEquals(0, ImageLoaderUtils.sizeClass(0));
+		assertEquals(32, ImageLoaderUtils.sizeClass(1));
+		assertEquals(32, ImageLoaderUtils.sizeClass(32));
+		assertEquals(64, ImageLoaderUtils.sizeClass(33));
+		assertEquals(96, ImageLoaderUtils.sizeClass(72));
+	}
+
+	@Test
+	public void itDoesNotSampleWhenNotLimited () throws Exception {
+		assertEquals(1, ImageLoaderUtils.sampleSize(4000, 3000, 0, 0));
+	}
+
+	@Test
+	public void itSamplesDownToNoSmallerThanRequired () throws Exception {
+		assertEquals(4, ImageLoaderUtils.sampleSize(400, 400, 96, 96));
+		assertEquals(2, ImageLoaderUtils.sampleSize(400, 400, 101, 101));
+		assertEquals(1, ImageLoaderUtils.sampleSize(96, 96, 96, 96));
+		assertEquals(1, ImageLoaderUtils.sampleSize(50, 50, 96, 96));
+	}
+
+	@Test
+	public void itSamplesByTheLimitedSideOnly () throws Exception {
+		assertEquals(4, ImageLoaderUtils.sampleSize(4096, 100, 1024, 0));
+		assertEquals(2, ImageLoaderUtils.sampleSize(2000, 3000, 0, 1500));
+	}
+
+	@Test
+	public void itSamplesByTheSmallerRatio () throws Exception {
+		assertEquals(2, ImageLoaderUtils.sampleSize(800, 400, 96, 192));
+	}
+
+	@Test
+	public void itKeysFullSizeByUrl () throws Exception {
+		final ImageLoadRequest req = new ImageLoadRequest("http://example.com/a.jpg", imageView(), 0, 0, null, null);
+		assertEquals("http://example.com/a.jpg", req.getCacheKey());
+	}
+
+	@Test
+	public void itKeysBySizeClassAndConfig () throws Exception {
+		final ImageLoadRequest a = new ImageLoadRequest("http://example.com/a.jpg", imageView(), 72, 72, Bitmap.Config.RGB_565, null);
+		final ImageLoadRequest b = new ImageLoadRequest("http://example.com/a.jpg", imageView(), 90, 90, Bitmap.Config.RGB_565, null);
+		assertEquals("http://example.com/a.jpg#96x96RGB_565", a.getCacheKey());
+		assertEquals(a.getCacheKey(), b.getCacheKey());
+		assertEquals("http://example.com/a.jpg#1088x0", ImageLoadRequest.makeCacheKey("http://example.com/a.jpg", 1088, 0, null));
+	}
+
+	private static ImageView imageView () {
+		return new ImageView(Robolectric.application);
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.vaguehope.onosendai.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.widget.ImageView;
+
+@RunWith(RobolectricTestRunner.class)
+public class InFlightFetchesTest {
+
+	private static final String URL = "http://example.com/a.jpg";
+
+	private InFlightFetches undertest;
+
+	@Before
+	public void before () throws Exception {
+		this.undertest = new InFlightFetches();
+	}
+
+	@Test
+	public void itStartsOnlyTheFirstRequestForAUrl () throws Exception {
+		final ImageLoadRequest a = pendingRequest(URL);
+		final ImageLoadRequest b = pendingRequest(URL);
+		final ImageLoadRequest other = pendingRequest("http://example.com/b.jpg");
+
+		assertTrue(this.undertest.attach(a));
+		assertFalse(this.undertest.attach(b));
+		assertTrue(this.undertest.attach(other));
+		assertEquals(2, this.undertest.size());
+	}
+
+	@Test
+	public void itCompletesEveryWaitingRequestOnce () throws Exception {
+		final ImageLoadRequest a = pendingRequest(URL);
+		final ImageLoadRequest b = pendingRequest(URL);
+		this.undertest.attach(a);
+		this.undertest.attach(b);
+
+		assertEquals(Arrays.asList(a, b), this.undertest.complete(URL));
+		assertEquals(0, this.undertest.complete(URL).size());
+		assertTrue("Next request starts a new fetch.", this.undertest.attach(pendingRequest(URL)));
+	}
+
+	@Test
+	public void itKeepsAFetchWhileAnyRequestIsRequired () throws Exception {
+		final ImageLoadRequest a = pendingRequest(URL);
+		final ImageLoadRequest b = pendingRequest(URL);
+		this.undertest.attach(a);
+		this.undertest.attach(b);
+
+		a.setImageBitmap(null); // No longer waiting.
+		assertFalse(this.undertest.abandonIfNoneRequired(URL));
+
+		b.setImageBitmap(null);
+		assertTrue(this.undertest.abandonIfNoneRequired(URL));
+		assertEquals(0, this.undertest.size());
+	}
+
+	private static ImageLoadRequest pendingRequest (final String url) {
+		final ImageLoadRequest req = new ImageLoadRequest(url, new ImageView(Robolectric.application));
+		req.setImagePending();
+		return req;
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.vaguehope.onosendai.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.graphics.Bitmap;
+import android.widget.ImageView;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Scrolls through a column of recycled rows that each have an avatar and an
+ * inline image of one of a few common sizes. Images are shown through the
+ * ImageLoadScheduler as the list would, with and without a pool, and decoded
+ * the way HybridBitmapCache does: into a pooled bitmap if one fits, else a
+ * new one. Bitmaps are shadows here so the pixel bytes decodes would allocate
+ * are counted rather than measured. Reports to the log.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ScrollImagesBenchmarkTest {
+
+	private static final LogWrapper LOG = new LogWrapper("BM");
+
+	private static final int ROWS = 2000;
+	private static final int VISIBLE_ROWS = 6;
+	private static final int AUTHORS = 50;
+	private static final int AVATAR_PX = 96;
+	private static final int[][] MEDIA_SIZES = { { 600, 400 }, { 1024, 768 }, { 640, 640 }, { 1024, 576 } };
+
+	private final Executor noop = new Executor() {
+		@Override
+		public void execute (final Runnable command) {/* Decoded by scroll() instead. */}
+	};
+
+	@Before
+	public void before () throws Exception {
+		Robolectric.getBackgroundScheduler().pause();
+	}
+
+	@After
+	public void after () throws Exception {
+		Robolectric.getBackgroundScheduler().unPause();
+	}
+
+	@Test
+	public void itAllocatesLessWithAPool () throws Exception {
+		final Result without = scroll(0);
+		final Result with = scroll(C.MAX_MEMORY_IMAGE_POOL);
+
+		LOG.i("Scrolled %d rows without pool: %s", ROWS, without);
+		LOG.i("Scrolled %d rows with pool: %s", ROWS, with);
+
+		assertEquals(without.decodes, with.decodes);
+		assertEquals(0, without.poolHits);
+		assertEquals(with.poolHits, with.decodes - with.allocations);
+		assertEquals(with.decodes, with.poolHits + with.poolMisses);
+		assertTrue("Expected pool to halve bytes allocated.", with.bytesAllocated * 2 < without.bytesAllocated);
+	}
+
+	private Result scroll (final int maxPoolSizeBytes) {
+		final HybridBitmapCache hybridCache = new HybridBitmapCache(Robolectric.application, C.MAX_MEMORY_IMAGE_CACHE, maxPoolSizeBytes);
+		final BitmapPool pool = hybridCache.getPool();
+		final MemoryBitmapCache<String> memCache = new MemoryBitmapCache<String>(C.MAX_MEMORY_IMAGE_CACHE, pool);
+		final ImageLoadScheduler scheduler = new ImageLoadScheduler(this.noop, this.noop, null);
+		final Map<ImageView, Bitmap> onScreen = new HashMap<ImageView, Bitmap>();
+
+		final ImageView[] avatars = new ImageView[VISIBLE_ROWS];
+		final ImageView[] media = new ImageView[VISIBLE_ROWS];
+		for (int i = 0; i < VISIBLE_ROWS; i++) {
+			avatars[i] = new ImageView(Robolectric.application);
+			media[i] = new ImageView(Robolectric.application);
+		}
+
+		final Result result = new Result();
+		for (int row = 0; row < ROWS; row++) {
+			final int i = row % VISIBLE_ROWS; // Row scrolled off the top is recycled at the bottom.
+			show(hybridCache, memCache, scheduler, onScreen, result, avatars[i], "avatar" + (row % AUTHORS), AVATAR_PX, AVATAR_PX, Bitmap.Config.RGB_565);
+			final int[] size = MEDIA_SIZES[row % MEDIA_SIZES.length];
+			show(hybridCache, memCache, scheduler, onScreen, result, media[i], "media" + row, size[0], size[1], Bitmap.Config.ARGB_8888);
+		}
+		assertEquals(VISIBLE_ROWS * 2, scheduler.boundCount());
+
+		result.poolHits = pool.hitCount();
+		result.poolMisses = pool.missCount();
+		return result;
+	}
+
+	/**
+	 * As ImageLoaderUtils.loadImage() and HybridBitmapCache.getFromDisc().
+	 */
+	private static void show (final HybridBitmapCache hybridCache, final MemoryBitmapCache<String> memCache,
+			final ImageLoadScheduler scheduler, final Map<ImageView, Bitmap> onScreen, final Result result,
+			final ImageView view, final String url, final int width, final int height, final Bitmap.Config config) {
+		final BitmapPool pool = hybridCache.getPool();
+		final ImageLoadRequest req = new ImageLoadRequest(url, view);
+
+		final long ticket = pool.ticket();
+		Bitmap bmp = memCache.get(url);
+		if (bmp == null || !pool.hold(bmp, ticket)) {
+			req.setImagePending();
+			scheduler.load(hybridCache, req);
+			onScreen.remove(view);
+
+			result.decodes += 1;
+			bmp = pool.take(width, height, config);
+			if (bmp != null) {
+				assertFalse("Reused a bitmap still on screen.", onScreen.containsValue(bmp));
+			}
+			else {
+				bmp = BitmapPoolTest.mutableBitmap(width, height, config);
+				result.allocations += 1;
+				result.bytesAllocated += BitmapPool.sizeOf(bmp);
+			}
+			pool.hold(bmp);
+			pool.cached(bmp);
+			memCache.put(url, bmp);
+		}
+		req.setImageBitmap(bmp);
+		scheduler.shown(hybridCache, req, bmp);
+		onScreen.put(view, bmp);
+	}
+
+	private static class Result {
+
+		int decodes;
+		int allocations;
+		long bytesAllocated;
+		int poolHits;
+		int poolMisses;
+
+		public Result () {}
+
+		@Override
+		public String toString () {
+			return String.format("%s decodes, %s allocations, %s MB allocated, %s pool hits, %s pool misses.",
+					this.decodes, this.allocations, this.bytesAllocated / (1024 * 1024), this.poolHits, this.poolMisses);
+		}
+
+	}
+
+}
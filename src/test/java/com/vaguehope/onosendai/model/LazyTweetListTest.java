@@ -0,0 +1,135 @@
+package com.vaguehope.onosendai.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyTweetListTest {
+
+	private static final int ROWS = 1000;
+	private static final int WINDOW = 10;
+
+	private CountingLoader loader;
+	private LazyTweetList undertest;
+
+	@Before
+	public void before () throws Exception {
+		final long[] uids = new long[ROWS];
+		final long[] times = new long[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			uids[i] = ROWS - i;
+			times[i] = (ROWS - i) * 1000L;
+		}
+		this.loader = new CountingLoader();
+		this.undertest = new LazyTweetList(uids, times, ROWS, this.loader, WINDOW);
+	}
+
+	@Test
+	public void itReadsUidsAndTimesWithoutLoading () throws Exception {
+		assertEquals(ROWS, this.undertest.count());
+		assertEquals(ROWS, this.undertest.getUid(0));
+		assertEquals(1000L, this.undertest.getTime(ROWS - 1));
+		assertEquals(ROWS - 5, this.undertest.indexOfUid(5));
+		assertEquals(-1, this.undertest.indexOfUid(ROWS + 1));
+		assertEquals(0, this.loader.loads);
+	}
+
+	@Test
+	public void itLoadsAWindowAtATime () throws Exception {
+		assertEquals(500, this.undertest.getTweet(500).getUid());
+		assertEquals(1, this.loader.loads);
+		assertEquals(WINDOW, this.loader.loaded);
+		for (int i = 495; i < 505; i++) {
+			assertEquals(ROWS - i, this.undertest.getTweet(i).getUid());
+		}
+		assertEquals(1, this.loader.loads);
+	}
+
+	@Test
+	public void itKeepsAFewWindowsWhateverIsRead () throws Exception {
+		for (int i = 0; i < ROWS; i++) {
+			assertEquals(ROWS - i, this.undertest.getTweet(i).getUid());
+		}
+		assertTrue(this.undertest.loadedCount() <= WINDOW * 3);
+		assertEquals(1, this.undertest.getTweet(ROWS - 1).getTime() / 1000L);
+	}
+
+	@Test
+	public void itReturnsNullForRowsNoLongerInTheDb () throws Exception {
+		this.loader.missingUid = 7;
+		assertNull(this.undertest.getTweet(ROWS - 7));
+		assertEquals(8, this.undertest.getTweet(ROWS - 8).getUid());
+	}
+
+	@Test
+	public void itPeeksWithoutLoading () throws Exception {
+		assertNull(this.undertest.peekTweet(500));
+		assertEquals(0, this.loader.loads);
+		this.undertest.getTweet(500);
+		assertEquals(500, this.undertest.peekTweet(500).getUid());
+		assertEquals(1, this.loader.loads);
+	}
+
+	@Test
+	public void itLoadsEachRequestedWindowOnce () throws Exception {
+		assertTrue(this.undertest.requestWindow(503));
+		assertFalse("Already requested.", this.undertest.requestWindow(507));
+		assertFalse(this.undertest.requestWindow(-1));
+		assertFalse(this.undertest.requestWindow(ROWS));
+		assertEquals(0, this.loader.loads);
+
+		this.undertest.loadRequestedWindow(503);
+		assertEquals(1, this.loader.loads);
+		for (int i = 500; i < 510; i++) {
+			assertEquals(ROWS - i, this.undertest.peekTweet(i).getUid());
+		}
+		assertNull(this.undertest.peekTweet(510));
+		assertFalse("Already loaded.", this.undertest.requestWindow(509));
+		assertTrue(this.undertest.requestWindow(510));
+	}
+
+	@Test
+	public void itDoesNotRequestRowsNoLongerInTheDbAgain () throws Exception {
+		this.loader.missingUid = ROWS - 3;
+		assertTrue(this.undertest.requestWindow(3));
+		this.undertest.loadRequestedWindow(3);
+		assertNull(this.undertest.peekTweet(3));
+		assertFalse(this.undertest.requestWindow(3));
+		assertEquals(1, this.loader.loads);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void itChecksIndexes () throws Exception {
+		this.undertest.getTweet(ROWS);
+	}
+
+	private static class CountingLoader implements LazyTweetList.TweetLoader {
+
+		int loads = 0;
+		int loaded = 0;
+		long missingUid = -1;
+
+		public CountingLoader () {}
+
+		@Override
+		public List<Tweet> loadTweets (final List<Long> uids) {
+			this.loads++;
+			final List<Tweet> ret = new ArrayList<Tweet>();
+			for (final Long uid : uids) {
+				if (uid.longValue() == this.missingUid) continue;
+				ret.add(new Tweet(uid.longValue(), String.valueOf(uid), "user", "User", "body", uid.longValue() * 1000L, null, null, null));
+				this.loaded++;
+			}
+			return ret;
+		}
+
+	}
+
+}
@@ -0,0 +1,47 @@
+package com.vaguehope.onosendai.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaguehope.onosendai.model.Meta;
+import com.vaguehope.onosendai.model.MetaType;
+import com.vaguehope.onosendai.model.Tweet;
+
+/**
+ * Tweets and timing shared by the storage benchmarks.
+ */
+final class BenchmarkTweets {
+
+	static final int METAS_PER_TWEET = 6;
+
+	private BenchmarkTweets () {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Each with an account, service, mention, hashtag, URL and reply meta.
+	 */
+	static List<Tweet> makeTweets (final int firstSid, final int count) {
+		final List<Tweet> ret = new ArrayList<Tweet>();
+		for (int i = 0; i < count; i++) {
+			final List<Meta> metas = new ArrayList<Meta>();
+			metas.add(new Meta(MetaType.ACCOUNT, "t0"));
+			metas.add(new Meta(MetaType.SERVICE, "twitter:123"));
+			metas.add(new Meta(MetaType.MENTION, "user" + (i % 50), "User " + (i % 50)));
+			metas.add(new Meta(MetaType.HASHTAG, "tag" + (i % 20)));
+			metas.add(new Meta(MetaType.URL, "http://example.com/" + i, "example.com/" + i));
+			metas.add(new Meta(MetaType.INREPLYTO, String.valueOf(firstSid - 50000 + i)));
+			ret.add(new Tweet(String.valueOf(firstSid + i), "user" + (i % 50), "User " + (i % 50),
+					"Tweet body number " + i + " with some #tag" + (i % 20) + " text in it.",
+					1400000000L + i, "http://example.com/avatar/" + (i % 50) + ".png", null, metas));
+		}
+		return ret;
+	}
+
+	static long time (final Runnable r) {
+		final long start = System.nanoTime();
+		r.run();
+		return System.nanoTime() - start;
+	}
+
+}
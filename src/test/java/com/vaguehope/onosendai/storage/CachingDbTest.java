@@ -0,0 +1,63 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowLog.LogItem;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import com.vaguehope.onosendai.model.Tweet;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class CachingDbTest {
+
+	private CachingDb undertest;
+
+	@Before
+	public void before () throws Exception {
+		final ActivityManager am = (ActivityManager) Robolectric.application.getSystemService(Context.ACTIVITY_SERVICE);
+		Robolectric.shadowOf(am).setMemoryClass(64);
+		this.undertest = new CachingDb(Robolectric.application);
+	}
+
+	@After
+	public void after () throws Exception {
+		this.undertest.close();
+	}
+
+	@Test
+	public void itBudgetsTheListCacheByMemoryClass () throws Exception {
+		assertEquals(2 * 1024 * 1024, CachingDb.listCacheBytes(Robolectric.application));
+	}
+
+	@Test
+	public void itLogsListCacheHitsAndMissesOnHousekeep () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(new Tweet("1", "user", "User Name", "a", 1000L, null, null, null)));
+		this.undertest.getTweets(1, 10);
+		this.undertest.getTweets(1, 10);
+		this.undertest.housekeep(0L);
+		assertTrue(loggedContaining("TweetListCache{1 columns"));
+		assertTrue(loggedContaining("1 hits, 1 misses}"));
+	}
+
+	private static boolean loggedContaining (final String s) {
+		for (final LogItem item : ShadowLog.getLogs()) {
+			if (item.msg.contains(s)) return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,160 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.vaguehope.onosendai.config.Account;
+import com.vaguehope.onosendai.config.Column;
+import com.vaguehope.onosendai.model.OutboxTweet;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.provider.ServiceRef;
+import com.vaguehope.onosendai.storage.DbInterface.ColumnState;
+import com.vaguehope.onosendai.storage.DbInterface.OutboxListener;
+import com.vaguehope.onosendai.storage.DbInterface.TwUpdateListener;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class ChangeDispatcherTest {
+
+	private DbAdapter db;
+	private TwUpdateListener listener;
+
+	@Before
+	public void before () throws Exception {
+		this.db = new DbAdapter(Robolectric.application);
+		this.db.open();
+		this.listener = mock(TwUpdateListener.class);
+		this.db.addTwUpdateListener(this.listener);
+	}
+
+	@After
+	public void after () throws Exception {
+		this.db.close();
+	}
+
+	@Test
+	public void itDispatchesOffTheWritingThread () throws Exception {
+		final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+		this.db.addTwUpdateListener(new TwUpdateListener() {
+			@Override
+			public void columnChanged (final int columnId, final ColumnChange change) {
+				threads.add(Thread.currentThread());
+			}
+
+			@Override
+			public void columnStatus (final int columnId, final ColumnState state) {/**/}
+		});
+
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("1", 1000L)));
+		this.db.flushNotifications();
+		verify(this.listener).columnChanged(eq(1), any(ColumnChange.class));
+		assertEquals(1, threads.size());
+		assertTrue(threads.get(0) != Thread.currentThread());
+	}
+
+	@Test
+	public void itCoalescesChangesToTheSameColumn () throws Exception {
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("1", 1000L)));
+		this.db.storeTweets(2, Collections.singletonList(tweetAt("2", 2000L)));
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("3", 3000L)));
+		this.db.flushNotifications();
+
+		final ColumnChange change = captureChange(1);
+		assertEquals(Arrays.asList("3", "1"), sids(change.getAdded(false)));
+		assertEquals(Arrays.asList("2"), sids(captureChange(2).getAdded(false)));
+	}
+
+	@Test
+	public void itTellsListenersWhichRowsWereRemoved () throws Exception {
+		this.db.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L)));
+		this.db.flushNotifications();
+		this.db.deleteTweet(new Column(1, "c1", null, null, 0, null, null, false, false, null), tweetAt("1", 1000L));
+		this.db.flushNotifications();
+
+		final ArgumentCaptor<ColumnChange> cap = ArgumentCaptor.forClass(ColumnChange.class);
+		verify(this.listener, times(2)).columnChanged(eq(1), cap.capture());
+		final ColumnChange change = cap.getAllValues().get(1);
+		assertEquals(0, change.getAdded(false).size());
+		assertEquals(Collections.singleton("1"), change.getRemovedSids());
+	}
+
+	@Test
+	public void itMarksRowsHiddenByExcludes () throws Exception {
+		this.db.storeTweets(2, Collections.singletonList(tweetAt("1", 1000L)));
+		this.db.setColumnExcludes(Collections.singleton(new Column(1, "c1", null, null, 0, Collections.singleton(2), null, false, false, null)));
+		this.db.flushNotifications();
+		reset(this.listener);
+
+		this.db.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L)));
+		this.db.flushNotifications();
+
+		final ColumnChange change = captureChange(1);
+		assertEquals(Arrays.asList("2", "1"), sids(change.getAdded(false)));
+		assertEquals(Arrays.asList("2"), sids(change.getAdded(true)));
+	}
+
+	@Test
+	public void itAsksListenersToReloadWhenRowsChange () throws Exception {
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("1", 1000L)));
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("1", 1000L, "edited")));
+		this.db.flushNotifications();
+		assertNull(captureChange(1));
+	}
+
+	@Test
+	public void itCoalescesOutboxChanges () throws Exception {
+		final OutboxListener outboxListener = mock(OutboxListener.class);
+		this.db.addOutboxListener(outboxListener);
+		final Account account = new Account("a", null, null, null, null, null, null);
+		this.db.addPostToOutput(new OutboxTweet(account, new HashSet<ServiceRef>(), "a", null, null));
+		this.db.addPostToOutput(new OutboxTweet(account, new HashSet<ServiceRef>(), "b", null, null));
+		this.db.flushNotifications();
+		verify(outboxListener).outboxChanged();
+	}
+
+	private ColumnChange captureChange (final int columnId) {
+		final ArgumentCaptor<ColumnChange> cap = ArgumentCaptor.forClass(ColumnChange.class);
+		verify(this.listener).columnChanged(eq(columnId), cap.capture());
+		return cap.getValue();
+	}
+
+	private static List<String> sids (final List<Tweet> tweets) {
+		final List<String> ret = new ArrayList<String>();
+		for (final Tweet t : tweets) {
+			ret.add(t.getSid());
+		}
+		return ret;
+	}
+
+	private static Tweet tweetAt (final String sid, final long time) {
+		return tweetAt(sid, time, "body " + sid);
+	}
+
+	private static Tweet tweetAt (final String sid, final long time, final String body) {
+		return new Tweet(sid, "user", "User Name", body, time, "http://example.com/avatar.png", null, null);
+	}
+
+}
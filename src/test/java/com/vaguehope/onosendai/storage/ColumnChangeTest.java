@@ -0,0 +1,68 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vaguehope.onosendai.model.Tweet;
+
+public class ColumnChangeTest {
+
+	private final List<Tweet> page = Arrays.asList(tweet(3L, "c", 3000L), tweet(2L, "b", 2000L));
+
+	@Test
+	public void itAddsNewerTweetsInOrder () throws Exception {
+		final ColumnChange change = new ColumnChange(Arrays.asList(tweet(5L, "e", 5000L), tweet(4L, "d", 2500L)),
+				Collections.<Long> emptySet(), Collections.<String> emptySet());
+		assertEquals(Arrays.asList("e", "c", "d", "b"), sids(change.applyTo(this.page, false, true)));
+	}
+
+	@Test
+	public void itLeavesOutTweetsOlderThanAPartialPage () throws Exception {
+		final ColumnChange change = new ColumnChange(Arrays.asList(tweet(4L, "d", 4000L), tweet(5L, "a", 1000L)),
+				Collections.<Long> emptySet(), Collections.<String> emptySet());
+		assertEquals(Arrays.asList("d", "c", "b"), sids(change.applyTo(this.page, false, true)));
+		assertEquals(Arrays.asList("d", "c", "b", "a"), sids(change.applyTo(this.page, false, false)));
+	}
+
+	@Test
+	public void itRemovesTweets () throws Exception {
+		final ColumnChange change = new ColumnChange(Collections.<Tweet> emptyList(),
+				Collections.<Long> emptySet(), new HashSet<String>(Arrays.asList("c")));
+		assertEquals(Arrays.asList("b"), sids(change.applyTo(this.page, false, true)));
+	}
+
+	@Test
+	public void itLeavesOutHiddenTweetsWhenExcluding () throws Exception {
+		final ColumnChange change = new ColumnChange(Arrays.asList(tweet(5L, "e", 5000L), tweet(4L, "d", 4000L)),
+				Collections.singleton(Long.valueOf(5L)), Collections.<String> emptySet());
+		assertEquals(Arrays.asList("d", "c", "b"), sids(change.applyTo(this.page, true, true)));
+		assertEquals(Arrays.asList("e", "d", "c", "b"), sids(change.applyTo(this.page, false, true)));
+	}
+
+	@Test
+	public void itDoesNotDuplicateTweetsAlreadyLoaded () throws Exception {
+		final ColumnChange change = new ColumnChange(Arrays.asList(tweet(3L, "c", 3000L)),
+				Collections.<Long> emptySet(), Collections.<String> emptySet());
+		assertEquals(Arrays.asList("c", "b"), sids(change.applyTo(this.page, false, true)));
+	}
+
+	private static Tweet tweet (final long uid, final String sid, final long time) {
+		return new Tweet(uid, sid, "user", "User Name", "body", time, null, null, null);
+	}
+
+	private static List<String> sids (final List<Tweet> tweets) {
+		final List<String> ret = new ArrayList<String>();
+		for (final Tweet t : tweets) {
+			ret.add(t.getSid());
+		}
+		return ret;
+	}
+
+}
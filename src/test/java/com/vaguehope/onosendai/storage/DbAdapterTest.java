@@ -0,0 +1,1117 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.config.Column;
+import com.vaguehope.onosendai.config.Retention;
+import com.vaguehope.onosendai.model.Conversation;
+import com.vaguehope.onosendai.model.LazyTweetList;
+import com.vaguehope.onosendai.model.Meta;
+import com.vaguehope.onosendai.model.MetaType;
+import com.vaguehope.onosendai.model.ScrollState;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.storage.DbInterface.TwUpdateListener;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class DbAdapterTest {
+
+	private DbAdapter undertest;
+
+	@Before
+	public void before () throws Exception {
+		this.undertest = new DbAdapter(Robolectric.application);
+		this.undertest.open();
+	}
+
+	@After
+	public void after () throws Exception {
+		this.undertest.close();
+	}
+
+	@Test
+	public void itOpensWithWriteAheadLogging () throws Exception {
+		assertEquals("wal", DatabaseUtils.stringForQuery(this.undertest.getDb(), "PRAGMA journal_mode;", null));
+	}
+
+	/**
+	 * Android begins transactions, such as the one storeTweets() writes in,
+	 * EXCLUSIVE. Without WAL that would lock out this read until the writer
+	 * ended, and it would fail with database locked.
+	 */
+	@Test
+	public void itReadsOnASecondConnectionWhileAWriteIsOpen () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "a"), tweet("2", "b")));
+		final ShadowWalSQLiteDatabase shadow = Robolectric.shadowOf_(this.undertest.getDb());
+		final Connection reader = DriverManager.getConnection("jdbc:sqlite:" + shadow.getPath());
+		try {
+			final Statement writer = shadow.getConnection().createStatement();
+			try {
+				writer.execute("BEGIN EXCLUSIVE;");
+				try {
+					writer.execute("DELETE FROM tw;");
+					assertEquals("Expected last committed rows.", 2, countResultRows(reader, "SELECT * FROM tw;"));
+				}
+				finally {
+					writer.execute("ROLLBACK;");
+				}
+			}
+			finally {
+				writer.close();
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/*
+	 * Query plans for the hot reads, of the SQL DbAdapter runs.
+	 */
+
+	@Test
+	public void itReadsColumnUsingIndexOrder () throws Exception {
+		this.undertest.getTweets(1, 30);
+		final List<String> plan = explainLast("INNER JOIN tc");
+		assertUsesIndex(plan, "tw_coltime_idx");
+		assertNoFullScan(plan, "tc");
+		assertNoSort(plan);
+	}
+
+	@Test
+	public void itReadsColumnWithExcludesUsingIndexOrder () throws Exception {
+		this.undertest.getTweets(1, 30, Collections.singleton(2));
+		final List<String> plan = explainLast("INNER JOIN tc");
+		assertUsesIndex(plan, "tw_coltime_idx");
+		assertEquals(plan.toString(), 2, plan.size());
+		assertNoSort(plan);
+	}
+
+	@Test
+	public void itCountsUpWithExcludesUsingIndex () throws Exception {
+		this.undertest.getScrollUpCount(1, Collections.singleton(2), new ScrollState(0L, 0, 1000L, 1000L));
+		final List<String> plan = explainLast("SELECT time, hidden FROM tw");
+		assertUsesIndex(plan, "tw_coltime_idx");
+		assertEquals(plan.toString(), 1, plan.size());
+	}
+
+	@Test
+	public void itMarksNewTweetsHiddenUsingIndexes () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "a")));
+		final List<String> plan = explainLast("SET hidden=1");
+		assertUsesIndex(plan, "tw_idx");
+		assertNoFullScan(plan, "tw");
+	}
+
+	@Test
+	public void itReadsPageBeforeUsingIndexOrder () throws Exception {
+		this.undertest.getTweetsBefore(1, 1000L, 50L, 30);
+		final List<String> plan = explainLast("INNER JOIN tc");
+		assertUsesIndex(plan, "tw_coltime_idx");
+		assertNoSort(plan);
+	}
+
+	@Test
+	public void itReadsTweetsSinceTimeUsingIndexOrder () throws Exception {
+		this.undertest.getTweetsSinceTime(1, 1000L, 30);
+		final List<String> plan = explainLast("INNER JOIN tc");
+		assertUsesIndex(plan, "tw_coltime_idx");
+		assertNoSort(plan);
+	}
+
+	@Test
+	public void itCountsUpUsingIndex () throws Exception {
+		this.undertest.getScrollUpCount(1, null, new ScrollState(0L, 0, 1000L, 1000L));
+		assertUsesIndex(explainLast("SELECT time, hidden FROM tw"), "tw_coltime_idx");
+	}
+
+	@Test
+	public void itPrunesColumnUsingIndex () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L)));
+		this.undertest.pruneColumn(new Column(1, "c1", null, null, 0, null, null, false, false, new Retention(1, 0, 0)));
+		final List<String> plan = explainLast("DELETE FROM tw");
+		assertUsesIndex(plan, "tw_coltime_idx");
+		assertNoFullScan(plan, "tw");
+	}
+
+	@Test
+	public void itDeletesOrphanContentUsingIndex () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L)));
+		this.undertest.pruneColumn(new Column(1, "c1", null, null, 0, null, null, false, false, new Retention(1, 0, 0)));
+		final List<String> plan = explainLast("DELETE FROM tc");
+		assertUsesIndex(plan, "tw_idx");
+		assertNoFullScan(plan, "tc");
+	}
+
+	@Test
+	public void itReadsTweetDetailsUsingIndexes () throws Exception {
+		this.undertest.getTweetDetails("123");
+		assertUsesIndex(explainDetails(), "sqlite_autoindex_tc_1");
+		this.undertest.getTweetDetails(1, "123");
+		assertNoFullScan(explainDetails(), "tw");
+		this.undertest.getTweetDetails(1L);
+		assertNoFullScan(explainDetails(), "tw");
+		this.undertest.getTweetDetails(Arrays.asList(1L, 2L, 3L));
+		assertNoFullScan(explainDetails(), "tw");
+		this.undertest.getTweetDetailsSinceTime(1, 1000L, 10);
+		assertUsesIndex(explainDetails(), "tw_coltime_idx");
+	}
+
+	private List<String> explainDetails () {
+		final List<String> plan = explainLast("tc.metas");
+		assertNoFullScan(plan, "tc");
+		return plan;
+	}
+
+	@Test
+	public void itFindsTweetsWithMetaUsingIndex () throws Exception {
+		this.undertest.findTweetsWithMeta(MetaType.MENTION, "123", 30);
+		final List<String> plan = explainLast("INNER JOIN tm");
+		assertUsesIndex(plan, "tm_type_idx");
+		assertNoFullScan(plan, "tm");
+		assertNoFullScan(plan, "tw");
+	}
+
+	@Test
+	public void itFindsRepliesUsingIndex () throws Exception {
+		this.undertest.findTweetsWithMeta(MetaType.INREPLYTO, "123", 30);
+		final List<String> plan = explainLast("INNER JOIN tr");
+		assertUsesIndex(plan, "tr_parent_idx");
+		assertNoFullScan(plan, "tr");
+		assertNoFullScan(plan, "tw");
+	}
+
+	@Test
+	public void itReadsHashtagsUsingIndex () throws Exception {
+		this.undertest.getHashtags("abc", 10);
+		final List<String> plan = explainLast("FROM tm");
+		assertUsesIndex(plan, "tm_type_idx");
+		assertNoSort(plan);
+	}
+
+	@Test
+	public void itSearchesUsingFullTextIndex () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "foo bar")));
+		assertEquals(1, this.undertest.searchTweets("foo", 10).size());
+
+		final List<String> rankPlan = explainLast("MATCH");
+		assertTrue(rankPlan.toString(), rankPlan.get(0).contains("tf VIRTUAL TABLE"));
+		assertNoFullScan(rankPlan, "tc");
+
+		final List<String> readPlan = explainLast("max(t._id)");
+		assertNoFullScan(readPlan, "tw");
+		assertNoFullScan(readPlan, "tc");
+	}
+
+	@Test
+	public void itKeepsUidWhenStoringSameTweetAgain () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body", new Meta(MetaType.MENTION, "a"))));
+		final Tweet before = this.undertest.getTweetDetails(1, "1");
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body", new Meta(MetaType.MENTION, "a"))));
+		final Tweet after = this.undertest.getTweetDetails(1, "1");
+
+		assertEquals(before.getUid(), after.getUid());
+		assertEquals(Arrays.asList(new Meta(MetaType.MENTION, "a")), after.getMetas());
+	}
+
+	@Test
+	public void itUpdatesChangedTweetInPlace () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body", new Meta(MetaType.MENTION, "a"))));
+		final Tweet before = this.undertest.getTweetDetails(1, "1");
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "edited", new Meta(MetaType.MENTION, "b"))));
+		final Tweet after = this.undertest.getTweetDetails(1, "1");
+
+		assertEquals(before.getUid(), after.getUid());
+		assertEquals("edited", after.getBody());
+		assertEquals(Arrays.asList(new Meta(MetaType.MENTION, "b")), after.getMetas());
+	}
+
+	@Test
+	public void itDoesNotNotifyWhenNothingChanged () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body")));
+		this.undertest.flushNotifications();
+		final TwUpdateListener listener = mock(TwUpdateListener.class);
+		this.undertest.addTwUpdateListener(listener);
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body")));
+		this.undertest.flushNotifications();
+		verify(listener, never()).columnChanged(eq(1), any(ColumnChange.class));
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("2", "body")));
+		this.undertest.flushNotifications();
+		verify(listener).columnChanged(eq(1), any(ColumnChange.class));
+	}
+
+	@Test
+	public void itStoresQueuedTweetsOnFlush () throws Exception {
+		final Column col1 = new Column(1, "c1", null, null, 0, null, null, false, false, null);
+		final Column col2 = new Column(2, "c2", null, null, 0, null, null, false, false, null);
+		final TwUpdateListener listener = mock(TwUpdateListener.class);
+		this.undertest.addTwUpdateListener(listener);
+
+		this.undertest.queueTweets(col1, Collections.singletonList(tweet("1", "a")));
+		this.undertest.queueTweets(col2, Collections.singletonList(tweet("2", "b")));
+		this.undertest.queueTweets(col1, Collections.singletonList(tweet("3", "c")));
+		this.undertest.flushTweets();
+		this.undertest.flushNotifications();
+
+		assertEquals(Arrays.asList("1", "3"), sids(this.undertest.getTweets(1, 10)));
+		assertEquals(Arrays.asList("2"), sids(this.undertest.getTweets(2, 10)));
+		verify(listener, times(1)).columnChanged(eq(1), any(ColumnChange.class));
+		verify(listener, times(1)).columnChanged(eq(2), any(ColumnChange.class));
+	}
+
+	@Test
+	public void itStoresQueuedTweetsFromManyThreads () throws Exception {
+		final int threads = 5;
+		final List<Thread> fetchers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			final Column col = new Column(i, "c" + i, null, null, 0, null, null, false, false, null);
+			final Thread t = new Thread(new Runnable() {
+				@Override
+				public void run () {
+					for (int n = 0; n < 10; n++) {
+						DbAdapterTest.this.undertest.queueTweets(col, Collections.singletonList(tweet(col.getId() + "-" + n, "body")));
+					}
+				}
+			});
+			t.start();
+			fetchers.add(t);
+		}
+		for (final Thread t : fetchers) {
+			t.join();
+		}
+		this.undertest.flushTweets();
+
+		for (int i = 0; i < threads; i++) {
+			assertEquals(10, this.undertest.getTweets(i, 20).size());
+		}
+	}
+
+	@Test
+	public void itKeepsOneWriterWhenReopened () throws Exception {
+		final Set<Thread> writersBefore = liveThreads("TweetStore");
+		this.undertest.getDb().close();
+		assertEquals(0, this.undertest.getTweets(1, 10).size()); // Reopens.
+		assertEquals(writersBefore, liveThreads("TweetStore"));
+
+		final Column col = new Column(1, "c1", null, null, 0, null, null, false, false, null);
+		this.undertest.queueTweets(col, Collections.singletonList(tweet("1", "body")));
+		this.undertest.flushTweets();
+		this.undertest.flushNotifications();
+		assertEquals(1, this.undertest.getTweets(1, 10).size());
+	}
+
+	private static Set<Thread> liveThreads (final String name) {
+		final Set<Thread> ret = new HashSet<Thread>();
+		for (final Thread t : Thread.getAllStackTraces().keySet()) {
+			if (name.equals(t.getName()) && t.isAlive()) ret.add(t);
+		}
+		return ret;
+	}
+
+	@Test
+	public void itSharesContentBetweenColumns () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body", new Meta(MetaType.MENTION, "a"))));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "body", new Meta(MetaType.MENTION, "a"))));
+		setExcludes(1, 2);
+
+		assertEquals(1, countRows("tc"));
+		assertEquals(1, countRows("tm"));
+		assertEquals(2, countRows("tw"));
+		assertEquals(1, this.undertest.getTweets(1, 10).size());
+		assertEquals(0, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+	}
+
+	@Test
+	public void itKeepsColumnTimeSeparateFromPostTime () throws Exception {
+		final Tweet original = tweet("1", "body", new Meta(MetaType.MENTION, "a"));
+		this.undertest.storeTweets(1, Collections.singletonList(original));
+		final Tweet copy = this.undertest.getTweetDetails(1, "1").cloneWithCurrentTimestamp();
+		this.undertest.storeTweets(2, Collections.singletonList(copy));
+
+		final Tweet inCol1 = this.undertest.getTweetDetails(1, "1");
+		assertEquals(original.getTime(), inCol1.getTime());
+		assertNull(inCol1.getFirstMetaOfType(MetaType.POST_TIME));
+
+		final Tweet inCol2 = this.undertest.getTweetDetails(2, "1");
+		assertEquals(copy.getTime(), inCol2.getTime());
+		assertEquals(String.valueOf(original.getTime()), inCol2.getFirstMetaOfType(MetaType.POST_TIME).getData());
+		assertEquals(1, countRows("tc"));
+	}
+
+	@Test
+	public void itPacksMetasAndIndexesOnlyLookedUpTypes () throws Exception {
+		final Meta[] metas = new Meta[] {
+				new Meta(MetaType.ACCOUNT, "t0"),
+				new Meta(MetaType.URL, "http://example.com/a", "example.com/a"),
+				new Meta(MetaType.MENTION, "a", "A Name"),
+				new Meta(MetaType.MENTION, "a", "A Name"),
+				new Meta(MetaType.HASHTAG, "tag"),
+				new Meta(MetaType.INREPLYTO, "0") };
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body", metas)));
+
+		assertEquals(2, countRows("tm"));
+		assertEquals(1, countRows("tr"));
+		assertEquals(Arrays.asList(metas[0], metas[1], metas[2], metas[4], metas[5]), this.undertest.getTweetDetails(1, "1").getMetas());
+		assertEquals(1, this.undertest.findTweetsWithMeta(MetaType.INREPLYTO, "0", 10).size());
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body", metas[0], metas[1])));
+		assertEquals(0, countRows("tm"));
+		assertEquals(0, countRows("tr"));
+		assertEquals(Arrays.asList(metas[0], metas[1]), this.undertest.getTweetDetails(1, "1").getMetas());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void itDoesNotFindTweetsByMetasThatAreNotIndexed () throws Exception {
+		this.undertest.findTweetsWithMeta(MetaType.URL, "http://example.com/a", 10);
+	}
+
+	@Test
+	public void itReadsConversationRecursively () throws Exception {
+		assumeTrue(isRecursiveQueriesSupported());
+		assertReadsConversation(true);
+	}
+
+	@Test
+	public void itReadsConversationWithoutRecursiveQueries () throws Exception {
+		assertReadsConversation(false);
+	}
+
+	/**
+	 * 0 (not stored) <- 1 <- 2 <- 3 <- 4, 2 <- 5 and 6 on its own.
+	 */
+	private void assertReadsConversation (final boolean recursive) {
+		this.undertest.storeTweets(1, Arrays.asList(
+				replyAt("1", "0", 1000), replyAt("2", "1", 2000), replyAt("3", "2", 3000),
+				replyAt("5", "2", 3500), tweetAt("6", 3600)));
+		this.undertest.storeTweets(2, Collections.singletonList(replyAt("4", "3", 4000)));
+
+		final Conversation conv = this.undertest.getConversation("3", recursive);
+		assertEquals("3", conv.getTweet("3").getSid());
+		assertEquals(Arrays.asList("2", "1"), sidsInOrder(conv.getAncestors()));
+		assertEquals(Arrays.asList("4"), sidsInOrder(conv.getReplies()));
+		assertEquals(Collections.singleton("0"), conv.getMissingSids());
+		assertNull(conv.getTweet("5"));
+		assertNull(conv.getTweet("6"));
+
+		final Conversation fromTop = this.undertest.getConversation("1", recursive);
+		assertEquals(Arrays.asList("4", "5", "3", "2"), sidsInOrder(fromTop.getReplies()));
+
+		final Conversation missing = this.undertest.getConversation("0", recursive);
+		assertEquals(0, missing.getAncestors().size());
+		assertEquals(5, missing.getReplies().size());
+		assertEquals(Collections.singleton("0"), missing.getMissingSids());
+	}
+
+	@Test
+	public void itStopsAtReplyLoops () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(replyAt("1", "2", 1000), replyAt("2", "1", 2000)));
+		for (final boolean recursive : new boolean[] { true, false }) {
+			if (recursive && !isRecursiveQueriesSupported()) continue;
+			final Conversation conv = this.undertest.getConversation("1", recursive);
+			assertEquals(Arrays.asList("2"), sidsInOrder(conv.getAncestors()));
+			assertEquals(Arrays.asList("2"), sidsInOrder(conv.getReplies()));
+			assertEquals(0, conv.getMissingSids().size());
+		}
+	}
+
+	@Test
+	public void itReadsConversationsUsingIndexes () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), replyAt("2", "1", 2000L)));
+		this.undertest.getConversation("2", false);
+		final List<String> plan = explainLast("SELECT tr.parent");
+		assertNoFullScan(plan, "tc");
+		assertNoFullScan(plan, "tr");
+		assertUsesIndex(explainLast("SELECT DISTINCT tc.sid"), "tr_parent_idx");
+	}
+
+	@Test
+	public void itComparesSqliteVersions () throws Exception {
+		assertTrue(DbAdapter.isSqliteVersionAtLeast("3.8.3", 3, 8, 3));
+		assertTrue(DbAdapter.isSqliteVersionAtLeast("3.8.10.2", 3, 8, 3));
+		assertTrue(DbAdapter.isSqliteVersionAtLeast("3.9", 3, 8, 3));
+		assertFalse(DbAdapter.isSqliteVersionAtLeast("3.7.11", 3, 8, 3));
+		assertFalse(DbAdapter.isSqliteVersionAtLeast("3.8", 3, 8, 3));
+		assertFalse(DbAdapter.isSqliteVersionAtLeast("three", 3, 8, 3));
+		assertFalse(DbAdapter.isSqliteVersionAtLeast(null, 3, 8, 3));
+	}
+
+	@Test
+	public void itDoesNotPruneWhenStoring () throws Exception {
+		final List<Tweet> tweets = new ArrayList<Tweet>();
+		for (int i = 0; i < C.DATA_TW_MAX_COL_ENTRIES + 10; i++) {
+			tweets.add(tweetAt(String.valueOf(i), 1000L + i));
+		}
+		this.undertest.storeTweets(1, tweets);
+		this.undertest.storeTweets(1, Collections.singletonList(tweetAt("new", 5000L)));
+		assertEquals(C.DATA_TW_MAX_COL_ENTRIES + 11, countRows("tw"));
+
+		assertEquals(11, this.undertest.pruneColumn(new Column(1, "c1", null, null, 0, null, null, false, false, null)));
+		assertEquals(C.DATA_TW_MAX_COL_ENTRIES, countRows("tw"));
+		assertEquals(C.DATA_TW_MAX_COL_ENTRIES, countRows("tc"));
+	}
+
+	@Test
+	public void itPrunesColumnToItsMaxRows () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+		this.undertest.storeTweets(2, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+		this.undertest.flushNotifications();
+
+		final TwUpdateListener listener = mock(TwUpdateListener.class);
+		this.undertest.addTwUpdateListener(listener);
+		assertEquals(2, this.undertest.pruneColumn(new Column(1, "c1", null, null, 0, null, null, false, false, new Retention(1, 0, 0))));
+		this.undertest.flushNotifications();
+		verify(listener, times(1)).columnChanged(eq(1), any(ColumnChange.class));
+		verify(listener, never()).columnChanged(eq(2), any(ColumnChange.class));
+
+		assertEquals(Arrays.asList("3"), sids(this.undertest.getTweets(1, 10)));
+		assertEquals(Arrays.asList("1", "2", "3"), sids(this.undertest.getTweets(2, 10)));
+		assertEquals(0, this.undertest.pruneColumn(new Column(1, "c1", null, null, 0, null, null, false, false, new Retention(1, 0, 0))));
+	}
+
+	@Test
+	public void itInvalidatesEveryColumnSharingChangedContent () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "a"), tweet("2", "b")));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "a")));
+		this.undertest.storeTweets(3, Collections.singletonList(tweet("2", "b")));
+		this.undertest.flushNotifications();
+
+		final TwUpdateListener listener = mock(TwUpdateListener.class);
+		this.undertest.addTwUpdateListener(listener);
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "edited")));
+		this.undertest.flushNotifications();
+		verify(listener).columnChanged(1, null);
+		verify(listener).columnChanged(2, null);
+		verify(listener, never()).columnChanged(eq(3), any(ColumnChange.class));
+		assertEquals("edited", this.undertest.getTweets(2, 10).get(0).getBody());
+	}
+
+	@Test
+	public void itPrunesColumnToItsShareOfTheBudget () throws Exception {
+		final List<Tweet> tweets = new ArrayList<Tweet>();
+		for (int i = 0; i < 110; i++) {
+			tweets.add(tweetAt(String.valueOf(i), 1000L + i));
+		}
+		this.undertest.storeTweets(1, tweets);
+		final Retention retention = new Retention(0, 0, 1);
+		assertEquals(C.DATA_TW_STORAGE_BUDGET_ROWS / 100, retention.getRowLimit());
+		this.undertest.pruneColumn(new Column(1, "c1", null, null, 0, null, null, false, false, retention));
+		assertEquals(retention.getRowLimit(), countRows("tw"));
+	}
+
+	@Test
+	public void itPrunesColumnToItsMaxAge () throws Exception {
+		final long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+		this.undertest.storeTweets(1, Arrays.asList(
+				tweetAt("old", now - TimeUnit.HOURS.toSeconds(3)),
+				tweetAt("new", now - TimeUnit.MINUTES.toSeconds(30))));
+		assertEquals(1, this.undertest.pruneColumn(new Column(1, "c1", null, null, 0, null, null, false, false, new Retention(0, 120, 0))));
+		assertEquals(Arrays.asList("new"), sids(this.undertest.getTweets(1, 10)));
+	}
+
+	@Test
+	public void itReadsColumnLazily () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+		this.undertest.storeTweets(2, Collections.singletonList(tweetAt("2", 2000L)));
+		setExcludes(1, 2);
+		final List<Tweet> expected = this.undertest.getTweets(1, 10);
+
+		final LazyTweetList lazy = this.undertest.getLazyTweets(1, null);
+		assertEquals(3, lazy.count());
+		assertEquals(0, lazy.loadedCount());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getUid(), lazy.getUid(i));
+			assertEquals(expected.get(i).getTime(), lazy.getTime(i));
+			assertEquals(expected.get(i).getSid(), lazy.getTweet(i).getSid());
+			assertEquals(expected.get(i).getBody(), lazy.getTweet(i).getBody());
+		}
+
+		final LazyTweetList excluding = this.undertest.getLazyTweets(1, Collections.singleton(2));
+		assertEquals(2, excluding.count());
+		assertEquals("3", excluding.getTweet(0).getSid());
+		assertEquals("1", excluding.getTweet(1).getSid());
+	}
+
+	@Test
+	public void itRemovesContentWhenNoLongerInAnyColumn () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "body", new Meta(MetaType.MENTION, "a"))));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "body", new Meta(MetaType.MENTION, "a"))));
+
+		this.undertest.deleteTweets(new Column(1, "c1", null, null, 0, null, null, false, false, null));
+		assertEquals(1, countRows("tc"));
+
+		this.undertest.deleteTweets(new Column(2, "c2", null, null, 0, null, null, false, false, null));
+		assertEquals(0, countRows("tc"));
+		assertEquals(0, countRows("tm"));
+	}
+
+	@Test
+	public void itHidesTweetsInExcludedColumns () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "a"), tweet("2", "b"), tweet("3", "c")));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("2", "b")));
+		setExcludes(1, 2);
+
+		assertEquals(Arrays.asList("1", "3"), sids(this.undertest.getTweets(1, 10, Collections.singleton(2))));
+		assertEquals(3, this.undertest.getTweets(1, 10).size());
+	}
+
+	@Test
+	public void itHidesTweetsArrivingInExcludedColumnLater () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "a"), tweet("2", "b")));
+		setExcludes(1, 2);
+		assertEquals(2, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+		this.undertest.flushNotifications();
+
+		final TwUpdateListener listener = mock(TwUpdateListener.class);
+		this.undertest.addTwUpdateListener(listener);
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "a")));
+		this.undertest.flushNotifications();
+		verify(listener).columnChanged(1, null);
+		assertEquals(Arrays.asList("2"), sids(this.undertest.getTweets(1, 10, Collections.singleton(2))));
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("3", "c")));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("3", "c")));
+		assertEquals(Arrays.asList("2"), sids(this.undertest.getTweets(1, 10, Collections.singleton(2))));
+	}
+
+	@Test
+	public void itShowsTweetsAgainWhenExcludesChange () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "a"), tweet("2", "b")));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "a")));
+		setExcludes(1, 2);
+		assertEquals(1, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+
+		this.undertest.storeTweets(3, Collections.singletonList(tweet("2", "b")));
+		setExcludes(1, 3);
+		assertEquals(1, this.undertest.getTweets(1, 10, Collections.singleton(3)).size());
+		setExcludes(1, 2, 3);
+		assertEquals(0, this.undertest.getTweets(1, 10, new HashSet<Integer>(Arrays.asList(2, 3))).size());
+		setExcludes(1);
+		assertEquals(2, this.undertest.getTweets(1, 10, Collections.<Integer> emptySet()).size());
+		assertEquals(2, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+	}
+
+	@Test
+	public void itOnlyChangesExcludesFromConfig () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "a"), tweet("2", "b")));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "a")));
+		this.undertest.getTweets(1, 10, Collections.singleton(2));
+		assertEquals(0, countRows("cx"));
+		assertEquals(2, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+
+		setExcludes(1, 2);
+		this.undertest.flushNotifications();
+		final TwUpdateListener listener = mock(TwUpdateListener.class);
+		this.undertest.addTwUpdateListener(listener);
+		setExcludes(3);
+		this.undertest.flushNotifications();
+		verify(listener).columnChanged(1, null);
+		assertEquals(0, countRows("cx"));
+		assertEquals(2, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+	}
+
+	@Test
+	public void itShowsTweetsAgainWhenRemovedFromExcludedColumn () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "a"), tweet("2", "b")));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "a")));
+		setExcludes(1, 2);
+		assertEquals(1, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+
+		this.undertest.deleteTweets(new Column(2, "c2", null, null, 0, null, null, false, false, null));
+		assertEquals(2, this.undertest.getTweets(1, 10, Collections.singleton(2)).size());
+	}
+
+	@Test
+	public void itKeepsUnreadCountUpToDate () throws Exception {
+		final Column col = new Column(1, "c1", null, null, 0, null, null, false, false, null);
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+		this.undertest.storeScroll(1, new ScrollState(0L, 0, 1000L, 1000L));
+		assertEquals(2, this.undertest.getUnreadCount(col));
+
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("4", 4000L), tweetAt("0", 500L)));
+		assertEquals(3, this.undertest.getUnreadCount(col));
+
+		this.undertest.deleteTweet(col, tweetAt("3", 3000L));
+		assertEquals(2, this.undertest.getUnreadCount(col));
+
+		this.undertest.storeScroll(1, new ScrollState(0L, 0, 2000L, 2000L));
+		assertEquals(1, this.undertest.getUnreadCount(col));
+		assertEquals(Collections.singletonMap(1, 1), this.undertest.getUnreadCounts(Collections.singleton(col)));
+	}
+
+	@Test
+	public void itKeepsUnreadCountUpToDateWithExcludes () throws Exception {
+		final Set<Integer> excl = Collections.singleton(2);
+		setExcludes(1, 2);
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+		final ScrollState scroll = new ScrollState(0L, 0, 1000L, 1000L);
+		assertEquals(2, this.undertest.getUnreadCount(1, excl, scroll));
+
+		this.undertest.storeTweets(2, Collections.singletonList(tweetAt("2", 2000L)));
+		assertEquals(1, this.undertest.getUnreadCount(1, excl, scroll));
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweetAt("4", 4000L)));
+		this.undertest.storeTweets(2, Collections.singletonList(tweetAt("5", 5000L)));
+		this.undertest.storeTweets(1, Collections.singletonList(tweetAt("5", 5000L)));
+		assertEquals(2, this.undertest.getUnreadCount(1, excl, scroll));
+
+		this.undertest.deleteTweets(new Column(2, "c2", null, null, 0, null, null, false, false, null));
+		assertEquals(4, this.undertest.getUnreadCount(1, excl, scroll));
+	}
+
+	@Test
+	public void itReadsUnreadCountWithoutCountingRows () throws Exception {
+		final Column col = new Column(1, "c1", null, null, 0, null, null, false, false, null);
+		this.undertest.storeScroll(1, new ScrollState(0L, 0, 1000L, 1000L));
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 2000L), tweetAt("2", 3000L)));
+		assertEquals(2, this.undertest.getUnreadCount(col));
+
+		this.undertest.storeTweets(1, Collections.singletonList(tweetAt("3", 4000L)));
+		this.undertest.getDb().execSQL("DELETE FROM tw;"); // Behind its back, so only a recount would notice.
+		assertEquals(3, this.undertest.getUnreadCount(col));
+	}
+
+	@Test
+	public void itReadsUnreadCountAfterScrollingWithoutReadingRows () throws Exception {
+		final Column col = new Column(1, "c1", null, null, 0, null, null, false, false, null);
+		final ShadowWalSQLiteDatabase shadow = Robolectric.shadowOf_(this.undertest.getDb());
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+		this.undertest.storeScroll(1, new ScrollState(0L, 0, 1000L, 1000L));
+		shadow.clearExecutedSql();
+		assertEquals(2, this.undertest.getUnreadCount(col));
+		assertTrue("Expected first count to read tw.", readsTw(shadow.getExecutedSql()));
+
+		shadow.clearExecutedSql();
+		this.undertest.storeScroll(1, new ScrollState(0L, 0, 2000L, 2000L));
+		assertEquals(1, this.undertest.getUnreadCount(col));
+		this.undertest.storeScroll(1, new ScrollState(0L, 0, 500L, 3000L));
+		assertEquals(0, this.undertest.getUnreadCount(col));
+		assertEquals(3, this.undertest.getScrollUpCount(col));
+		assertFalse(shadow.getExecutedSql().toString(), readsTw(shadow.getExecutedSql()));
+	}
+
+	@Test
+	public void itReadsDetailsOfManyTweets () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(
+				tweet("1", "a", new Meta(MetaType.MENTION, "x"), new Meta(MetaType.HASHTAG, "y")),
+				tweet("2", "b"),
+				tweet("3", "c", new Meta(MetaType.MENTION, "z"))));
+		final long uid1 = this.undertest.getTweetDetails(1, "1").getUid();
+		final long uid2 = this.undertest.getTweetDetails(1, "2").getUid();
+		final long uid3 = this.undertest.getTweetDetails(1, "3").getUid();
+
+		final List<Tweet> res = this.undertest.getTweetDetails(Arrays.asList(uid3, uid1, 999L, uid2));
+		assertEquals(Arrays.asList("3", "1", "2"), Arrays.asList(res.get(0).getSid(), res.get(1).getSid(), res.get(2).getSid()));
+		assertEquals(Arrays.asList(new Meta(MetaType.MENTION, "z")), res.get(0).getMetas());
+		assertEquals(Arrays.asList(new Meta(MetaType.MENTION, "x"), new Meta(MetaType.HASHTAG, "y")), res.get(1).getMetas());
+		assertNull(res.get(2).getMetas());
+		assertEquals(0, this.undertest.getTweetDetails(Collections.<Long> emptyList()).size());
+	}
+
+	@Test
+	public void itReadsDetailsOfTweetsSinceTime () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(
+				new Tweet("1", "user", "User Name", "a", 1000L, null, null, Arrays.asList(new Meta(MetaType.MENTION, "x"))),
+				new Tweet("2", "user", "User Name", "b", 2000L, null, null, Arrays.asList(new Meta(MetaType.MENTION, "y"))),
+				new Tweet("3", "user", "User Name", "c", 3000L, null, null, Arrays.asList(new Meta(MetaType.MENTION, "z"))),
+				new Tweet("4", "user", "User Name", "d", 4000L, null, null, null)));
+
+		final List<Tweet> res = this.undertest.getTweetDetailsSinceTime(1, 1000L, 2);
+		assertEquals(2, res.size());
+		assertEquals("2", res.get(0).getSid());
+		assertEquals(Arrays.asList(new Meta(MetaType.MENTION, "y")), res.get(0).getMetas());
+		assertEquals("3", res.get(1).getSid());
+		assertEquals(Arrays.asList(new Meta(MetaType.MENTION, "z")), res.get(1).getMetas());
+	}
+
+	@Test
+	public void itSearchesStoredTweets () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "the quick brown fox"), tweet("2", "a lazy dog"), tweet("3", "quickly now")));
+		this.undertest.storeTweets(2, Collections.singletonList(tweet("1", "the quick brown fox")));
+
+		assertEquals(Arrays.asList("1", "3"), sids(this.undertest.searchTweets("quick", 10)));
+		assertEquals(Arrays.asList("1"), sids(this.undertest.searchTweets("QUICK fox", 10)));
+		assertEquals(Arrays.asList("1", "2", "3"), sids(this.undertest.searchTweets("user", 10)));
+		assertEquals(0, this.undertest.searchTweets("cat", 10).size());
+	}
+
+	@Test
+	public void itRanksSearchResultsByHits () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L, "cat"), tweetAt("2", 2000L, "cat cat cat"), tweetAt("3", 3000L, "cat cat")));
+		final List<Tweet> res = this.undertest.searchTweets("cat", 10);
+		assertEquals("2", res.get(0).getSid());
+		assertEquals("3", res.get(1).getSid());
+		assertEquals("1", res.get(2).getSid());
+	}
+
+	@Test
+	public void itLimitsSearchResultsInSql () throws Exception {
+		this.undertest.storeTweets(1, Arrays.asList(tweetAt("1", 1000L, "cat"), tweetAt("2", 2000L, "cat cat cat"),
+				tweetAt("3", 3000L, "cat cat"), tweetAt("4", 4000L, "cat")));
+		final ShadowWalSQLiteDatabase shadow = Robolectric.shadowOf_(this.undertest.getDb());
+		shadow.clearExecutedSql();
+		assertEquals(Arrays.asList("2", "3"), sidsInOrder(this.undertest.searchTweets("cat", 2)));
+		assertEquals(Arrays.asList("2", "3", "4", "1"), sidsInOrder(this.undertest.searchTweets("cat", 10)));
+		assertTrue(shadow.getExecutedSql().toString(), shadow.getExecutedSql().get(0).contains(" LIMIT 2)"));
+	}
+
+	@Test
+	public void itReturnsSearchResultsAsSnippets () throws Exception {
+		final String body = "one two three four five six seven eight nine ten eleven twelve thirteen fourteen fifteen"
+				+ " sixteen seventeen eighteen nineteen twenty cat twentyone twentytwo twentythree";
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", body)));
+		final Tweet res = this.undertest.searchTweets("cat", 10).get(0);
+		assertTrue(res.getBody(), res.getBody().startsWith("..."));
+		assertTrue(res.getBody(), res.getBody().contains(" cat "));
+		assertTrue(res.getBody(), res.getBody().length() < body.length());
+		assertEquals(body, this.undertest.getTweetDetails(res.getUid()).getBody());
+	}
+
+	@Test
+	public void itKeepsSearchIndexInStepWithContent () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "original")));
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "edited")));
+		assertEquals(0, this.undertest.searchTweets("original", 10).size());
+		assertEquals(1, this.undertest.searchTweets("edited", 10).size());
+
+		this.undertest.deleteTweets(new Column(1, "c1", null, null, 0, null, null, false, false, null));
+		assertEquals(0, this.undertest.searchTweets("edited", 10).size());
+		assertEquals(0, countRows("tf"));
+	}
+
+	@Test
+	public void itSearchesSafelyWithUserInput () throws Exception {
+		this.undertest.storeTweets(1, Collections.singletonList(tweet("1", "say \"hello\" (world) -x OR y*")));
+		assertEquals(1, this.undertest.searchTweets("\"hello", 10).size());
+		assertEquals(1, this.undertest.searchTweets("(world) OR -x", 10).size());
+		assertEquals(0, this.undertest.searchTweets("  ", 10).size());
+		assertEquals(0, this.undertest.searchTweets("***", 10).size());
+	}
+
+	@Test
+	public void itMakesMatchQueries () throws Exception {
+		assertEquals("\"foo*\" \"bar*\"", DbAdapter.toMatchQuery(" foo  bar"));
+		assertEquals("\"a-b*\"", DbAdapter.toMatchQuery("\"a-b*\""));
+		assertNull(DbAdapter.toMatchQuery(" \" "));
+		assertNull(DbAdapter.toMatchQuery(null));
+	}
+
+	@Test
+	public void itStoresAndReadsValues () throws Exception {
+		this.undertest.getDb().execSQL("INSERT INTO kv (key, val) VALUES ('a', '1');");
+		assertEquals("1", this.undertest.getValue("a"));
+
+		this.undertest.storeValue("b", "2");
+		this.undertest.storeValue("a", null);
+		assertNull(this.undertest.getValue("a"));
+		assertEquals("2", this.undertest.getValue("b"));
+		assertNull(readKvRow("a"));
+		assertEquals("2", readKvRow("b"));
+	}
+
+	@Test
+	public void itStoresManyValuesTogether () throws Exception {
+		this.undertest.storeValue("a", "1");
+		final Map<String, String> values = new HashMap<String, String>();
+		values.put("a", "3");
+		values.put("b", "2");
+		values.put("c", null);
+		this.undertest.storeValues(values);
+		assertEquals("3", this.undertest.getValue("a"));
+		assertEquals("2", this.undertest.getValue("b"));
+		assertNull(this.undertest.getValue("c"));
+		assertEquals("3", readKvRow("a"));
+		assertEquals("2", readKvRow("b"));
+	}
+
+	@Test
+	public void itDoesNotWriteUnchangedValues () throws Exception {
+		this.undertest.storeValue("a", "1");
+		this.undertest.getDb().execSQL("UPDATE kv SET val='x' WHERE key='a';");
+		this.undertest.storeValue("a", "1");
+		assertEquals("x", readKvRow("a"));
+		this.undertest.storeValue("a", "2");
+		assertEquals("2", readKvRow("a"));
+	}
+
+	@Test
+	public void itEnablesIncrementalVacuumOnceAndOutsideHousekeeping () throws Exception {
+		final SQLiteDatabase db = this.undertest.getDb();
+		int calls = 0;
+		while (!this.undertest.housekeep(0L).isComplete() && calls < 10) {
+			calls++;
+		}
+		assertTrue(calls < 10);
+		assertEquals(0L, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum;", null));
+
+		assertTrue(this.undertest.enableIncrementalVacuum());
+		assertEquals(2L, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum;", null));
+		assertFalse(this.undertest.enableIncrementalVacuum());
+	}
+
+	@Test
+	public void itHousekeepsInStepsThatResume () throws Exception {
+		this.undertest.enableIncrementalVacuum();
+		this.undertest.storeTweets(1, Arrays.asList(tweet("1", "keep"), tweet("2", "keep")));
+		final SQLiteDatabase db = this.undertest.getDb();
+		db.beginTransaction();
+		try {
+			for (int i = 0; i < 1200; i++) {
+				db.execSQL("INSERT INTO tc (sid, time, body) VALUES ('o" + i + "', 1000, '" + i + "');");
+			}
+			db.execSQL("INSERT INTO tm (tcid, type, data) SELECT _id, " + MetaType.MENTION.getId() + ", 'a' FROM tc;");
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+
+		int calls = 0;
+		int pruned = 0;
+		float progress = 0f;
+		HousekeepResult r;
+		do {
+			r = this.undertest.housekeep(0L);
+			assertTrue(r.getProgress() >= progress);
+			progress = r.getProgress();
+			pruned += r.getPrunedRows();
+			calls++;
+		}
+		while (!r.isComplete() && calls < 100);
+
+		assertTrue(r.isComplete());
+		assertEquals(1f, r.getProgress(), 0f);
+		assertTrue("calls=" + calls, calls > 3);
+		assertEquals(1200, pruned);
+		assertEquals(2, countRows("tc"));
+		assertEquals(2, countRows("tm"));
+		assertEquals(2, this.undertest.getTweets(1, 10).size());
+		assertNull(this.undertest.getValue("HOUSEKEEP_CURSOR"));
+	}
+
+	@Test
+	public void itMigratesToSharedContent () throws Exception {
+		final SQLiteDatabase db = this.undertest.getDb();
+		db.execSQL("PRAGMA foreign_keys=OFF;");
+		db.execSQL("DROP TABLE tr;");
+		db.execSQL("DROP TABLE tm;");
+		db.execSQL("DROP TABLE tw;");
+		db.execSQL("DROP TABLE tc;");
+		db.execSQL("DROP TABLE cx;");
+		db.execSQL("DROP TABLE tf;");
+		db.execSQL("create table tw (_id integer primary key autoincrement, colid integer, sid text, time integer,"
+				+ " uname text, fname text, body text, avatar text, imedia text, UNIQUE(colid, sid) ON CONFLICT REPLACE);");
+		db.execSQL("create table tm (_id integer primary key autoincrement, twid integer, type integer, data text, title text,"
+				+ " FOREIGN KEY (twid) REFERENCES tw (_id) ON DELETE CASCADE, UNIQUE(twid, type, data, title) ON CONFLICT IGNORE);");
+		db.execSQL("INSERT INTO tw (_id, colid, sid, time, uname, body) VALUES (10, 1, '1', 1000, 'user', 'body');");
+		db.execSQL("INSERT INTO tw (_id, colid, sid, time, uname, body) VALUES (11, 2, '1', 1000, 'user', 'body');");
+		db.execSQL("INSERT INTO tw (_id, colid, sid, time, uname, body) VALUES (12, 3, '1', 5000, 'user', 'body');");
+		for (final int twid : new int[] { 10, 11, 12 }) {
+			db.execSQL("INSERT INTO tm (twid, type, data) VALUES (" + twid + ", " + MetaType.ACCOUNT.getId() + ", 't0');");
+			db.execSQL("INSERT INTO tm (twid, type, data) VALUES (" + twid + ", " + MetaType.MENTION.getId() + ", 'a');");
+			db.execSQL("INSERT INTO tm (twid, type, data) VALUES (" + twid + ", " + MetaType.INREPLYTO.getId() + ", '0');");
+		}
+		db.execSQL("INSERT INTO tm (twid, type, data) VALUES (12, " + MetaType.POST_TIME.getId() + ", '1000');");
+
+		db.beginTransaction();
+		try {
+			DbAdapter.splitTweetContent(db);
+			DbAdapter.addTweetVisibility(db);
+			DbAdapter.addTweetSearch(db);
+			DbAdapter.packMetas(db);
+			DbAdapter.addReplyEdges(db);
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+		db.execSQL("PRAGMA foreign_keys=ON;");
+
+		assertEquals(1, countRows("tc"));
+		assertEquals(1, countRows("tm"));
+		assertEquals(1, countRows("tr"));
+		assertEquals(3, countRows("tw"));
+
+		final Tweet inCol1 = this.undertest.getTweetDetails(10L);
+		assertEquals("1", inCol1.getSid());
+		assertEquals(1000L, inCol1.getTime());
+		assertNull(inCol1.getFirstMetaOfType(MetaType.POST_TIME));
+		assertEquals("a", inCol1.getFirstMetaOfType(MetaType.MENTION).getData());
+		assertEquals("t0", inCol1.getFirstMetaOfType(MetaType.ACCOUNT).getData());
+		assertEquals(1, this.undertest.findTweetsWithMeta(MetaType.MENTION, "a", 10).size());
+		assertEquals(1, this.undertest.findTweetsWithMeta(MetaType.INREPLYTO, "0", 10).size());
+
+		final Tweet inCol3 = this.undertest.getTweetDetails(3, "1");
+		assertEquals(12L, inCol3.getUid());
+		assertEquals(5000L, inCol3.getTime());
+		assertEquals("1000", inCol3.getFirstMetaOfType(MetaType.POST_TIME).getData());
+		assertEquals(1, this.undertest.searchTweets("body", 10).size());
+	}
+
+	private static List<String> sids (final List<Tweet> tweets) {
+		final List<String> ret = new ArrayList<String>();
+		for (final Tweet t : tweets) {
+			ret.add(t.getSid());
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
+	/**
+	 * The sqlite-jdbc used for tests may be older than 3.8.3.
+	 */
+	private boolean isRecursiveQueriesSupported () {
+		return DbAdapter.isSqliteVersionAtLeast(DatabaseUtils.stringForQuery(this.undertest.getDb(), "SELECT sqlite_version()", null), 3, 8, 3);
+	}
+
+	private static List<String> sidsInOrder (final List<Tweet> tweets) {
+		final List<String> ret = new ArrayList<String>();
+		for (final Tweet t : tweets) {
+			ret.add(t.getSid());
+		}
+		return ret;
+	}
+
+	private String readKvRow (final String key) {
+		try {
+			return DatabaseUtils.stringForQuery(this.undertest.getDb(), "SELECT val FROM kv WHERE key=?", new String[] { key });
+		}
+		catch (final SQLiteDoneException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Config of one column, as it would be synced on startup.
+	 */
+	private void setExcludes (final int columnId, final Integer... excludeColumnIds) {
+		this.undertest.setColumnExcludes(Collections.singleton(new Column(columnId, "c" + columnId, null, null, 0,
+				new HashSet<Integer>(Arrays.asList(excludeColumnIds)), null, false, false, null)));
+	}
+
+	private long countRows (final String table) {
+		return DatabaseUtils.queryNumEntries(this.undertest.getDb(), table);
+	}
+
+	private static Tweet tweetAt (final String sid, final long time) {
+		return tweetAt(sid, time, "body " + sid);
+	}
+
+	private static Tweet tweetAt (final String sid, final long time, final String body) {
+		return new Tweet(sid, "user", "User Name", body, time, "http://example.com/avatar.png", null, null);
+	}
+
+	private static Tweet replyAt (final String sid, final String inReplyToSid, final long time) {
+		return new Tweet(sid, "user", "User Name", "body " + sid, time, "http://example.com/avatar.png", null,
+				Collections.singletonList(new Meta(MetaType.INREPLYTO, inReplyToSid)));
+	}
+
+	private static Tweet tweet (final String sid, final String body, final Meta... metas) {
+		return new Tweet(sid, "user", "User Name", body, 1234567890L, "http://example.com/avatar.png", null,
+				metas.length > 0 ? Arrays.asList(metas) : null);
+	}
+
+	private static int countResultRows (final Connection conn, final String sql) throws SQLException {
+		final Statement st = conn.createStatement();
+		try {
+			final ResultSet rs = st.executeQuery(sql);
+			int n = 0;
+			while (rs.next()) {
+				n++;
+			}
+			rs.close();
+			return n;
+		}
+		finally {
+			st.close();
+		}
+	}
+
+	private static boolean readsTw (final List<String> executedSql) {
+		for (final String sql : executedSql) {
+			if (sql.matches("(?s).*\\b(FROM|JOIN) tw\\b.*")) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Plan of the last SQL the DB ran that contains the fragment.
+	 */
+	private List<String> explainLast (final String fragment) {
+		final ShadowWalSQLiteDatabase shadow = Robolectric.shadowOf_(this.undertest.getDb());
+		final List<String> executed = shadow.getExecutedSql();
+		for (int i = executed.size() - 1; i >= 0; i--) {
+			if (executed.get(i).contains(fragment)) return shadow.explain(executed.get(i));
+		}
+		throw new AssertionError("Nothing containing '" + fragment + "' was run: " + executed);
+	}
+
+	private static void assertUsesIndex (final List<String> plan, final String index) {
+		for (final String line : plan) {
+			if (line.contains("INDEX " + index)) return;
+		}
+		throw new AssertionError("Index " + index + " not used: " + plan);
+	}
+
+	private static void assertNoFullScan (final List<String> plan, final String table) {
+		for (final String line : plan) {
+			assertFalse(plan.toString(), line.equals("TABLE " + table)
+					|| line.equals("SCAN TABLE " + table)
+					|| line.equals("SCAN " + table));
+		}
+	}
+
+	/**
+	 * Older SQLite marks a scan that satisfies the ORDER BY with a trailing
+	 * "ORDER BY", newer SQLite reports the temp b-tree instead.
+	 */
+	private static void assertNoSort (final List<String> plan) {
+		for (final String line : plan) {
+			assertFalse(plan.toString(), line.contains("TEMP B-TREE"));
+		}
+		final String first = plan.get(0);
+		if (first.startsWith("TABLE ")) assertTrue(plan.toString(), first.endsWith("ORDER BY"));
+	}
+
+}
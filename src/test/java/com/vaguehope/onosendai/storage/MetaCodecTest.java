@@ -0,0 +1,63 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vaguehope.onosendai.model.Meta;
+import com.vaguehope.onosendai.model.MetaType;
+
+public class MetaCodecTest {
+
+	@Test
+	public void itRoundTripsMetas () throws Exception {
+		final List<Meta> metas = Arrays.asList(
+				new Meta(MetaType.ACCOUNT, "t0"),
+				new Meta(MetaType.MENTION, "user", "Full Name"),
+				new Meta(MetaType.URL, "http://example.com/\u00e9", "example.com/\u00e9 \u2603"),
+				new Meta(MetaType.HASHTAG, ""),
+				new Meta(MetaType.MEDIA, null, null));
+		assertEquals(metas, MetaCodec.decode(MetaCodec.encode(metas)));
+	}
+
+	@Test
+	public void itRoundTripsLongStrings () throws Exception {
+		final StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			s.append("0123456789");
+		}
+		final List<Meta> metas = Collections.singletonList(new Meta(MetaType.URL, s.toString(), s.toString()));
+		assertEquals(metas, MetaCodec.decode(MetaCodec.encode(metas)));
+	}
+
+	@Test
+	public void itEncodesNoMetasAsNull () throws Exception {
+		assertNull(MetaCodec.encode(null));
+		assertNull(MetaCodec.encode(new ArrayList<Meta>()));
+		assertEquals(0, MetaCodec.decode(null).size());
+	}
+
+	@Test
+	public void itIsSmallerThanRowsPerMeta () throws Exception {
+		final byte[] b = MetaCodec.encode(Arrays.asList(new Meta(MetaType.ACCOUNT, "t0"), new Meta(MetaType.INREPLYTO, "123456789")));
+		assertEquals(1 + (1 + 1 + 2 + 1) + (1 + 1 + 9 + 1), b.length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void itRejectsTruncatedBlobs () throws Exception {
+		final byte[] b = MetaCodec.encode(Collections.singletonList(new Meta(MetaType.MENTION, "user", "Full Name")));
+		MetaCodec.decode(Arrays.copyOf(b, b.length - 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void itRejectsUnknownVersions () throws Exception {
+		MetaCodec.decode(new byte[] { 99, 1, 0, 0 });
+	}
+
+}
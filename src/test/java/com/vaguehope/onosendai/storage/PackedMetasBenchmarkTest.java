@@ -0,0 +1,245 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.vaguehope.onosendai.model.Meta;
+import com.vaguehope.onosendai.model.MetaType;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Compares a row per meta with metas packed into one blob per tweet, for
+ * size on disc, writes and reads. Reports to the log.
+ * <p>
+ * Takes many seconds, so is not part of the normal run. Remove the @Ignore to
+ * run it by hand.
+ */
+@Ignore("Benchmark, run by hand.")
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class PackedMetasBenchmarkTest {
+
+	private static final LogWrapper LOG = new LogWrapper("BM");
+
+	private static final int TWEET_COUNT = 5000;
+	private static final int READ_COUNT = 200;
+	private static final int READ_SIZE = 50;
+
+	private DbAdapter undertest;
+	private List<Tweet> tweets;
+
+	@Before
+	public void before () throws Exception {
+		this.undertest = new DbAdapter(Robolectric.application);
+		this.undertest.open();
+		this.tweets = BenchmarkTweets.makeTweets(200000, TWEET_COUNT);
+	}
+
+	@After
+	public void after () throws Exception {
+		this.undertest.close();
+	}
+
+	/**
+	 * The meta tables alone, in raw tables so both layouts are measured the
+	 * same way, then storeTweets() and getTweetDetails() as they are now.
+	 */
+	@Test
+	public void itComparesMetaRowsWithPackedMetas () throws Exception {
+		final SQLiteDatabase db = this.undertest.getDb();
+		db.execSQL("CREATE TABLE bm_rows (_id integer primary key autoincrement, tcid integer, type integer, data text, title text,"
+				+ " UNIQUE(tcid, type, data, title) ON CONFLICT IGNORE);");
+		db.execSQL("CREATE INDEX bm_rows_idx ON bm_rows(tcid);");
+		db.execSQL("CREATE INDEX bm_rows_type_idx ON bm_rows(type, data, tcid);");
+		db.execSQL("CREATE TABLE bm_packed (tcid integer primary key, metas blob);");
+		db.execSQL("CREATE TABLE bm_index (_id integer primary key, tcid integer NOT NULL, type integer, data text);");
+		db.execSQL("CREATE INDEX bm_index_idx ON bm_index(tcid);");
+		db.execSQL("CREATE INDEX bm_index_type_idx ON bm_index(type, data, tcid);");
+
+		long bytes = dbBytes();
+		final long rowsWriteNanos = BenchmarkTweets.time(new Runnable() {
+			@Override
+			public void run () {
+				writeMetaRows(db, PackedMetasBenchmarkTest.this.tweets);
+			}
+		});
+		final long rowsBytes = dbBytes() - bytes;
+
+		bytes = dbBytes();
+		final long packedWriteNanos = BenchmarkTweets.time(new Runnable() {
+			@Override
+			public void run () {
+				writePackedMetas(db, PackedMetasBenchmarkTest.this.tweets);
+			}
+		});
+		final long packedBytes = dbBytes() - bytes;
+
+		final long rowsReadNanos = BenchmarkTweets.time(new Runnable() {
+			@Override
+			public void run () {
+				for (int i = 0; i < READ_COUNT; i++) {
+					assertEquals(READ_SIZE, readMetaRows(db, (i * READ_SIZE) % TWEET_COUNT));
+				}
+			}
+		});
+		final long packedReadNanos = BenchmarkTweets.time(new Runnable() {
+			@Override
+			public void run () {
+				for (int i = 0; i < READ_COUNT; i++) {
+					assertEquals(READ_SIZE, readPackedMetas(db, (i * READ_SIZE) % TWEET_COUNT));
+				}
+			}
+		});
+
+		LOG.i("Metas as rows: %d KB, written in %d ms, %d reads of %d in %d ms.",
+				rowsBytes / 1024, TimeUnit.NANOSECONDS.toMillis(rowsWriteNanos),
+				READ_COUNT, READ_SIZE, TimeUnit.NANOSECONDS.toMillis(rowsReadNanos));
+		LOG.i("Metas packed: %d KB, written in %d ms, %d reads of %d in %d ms.",
+				packedBytes / 1024, TimeUnit.NANOSECONDS.toMillis(packedWriteNanos),
+				READ_COUNT, READ_SIZE, TimeUnit.NANOSECONDS.toMillis(packedReadNanos));
+		assertTrue(packedBytes < rowsBytes);
+
+		this.undertest.storeTweets(3, BenchmarkTweets.makeTweets(100000, READ_SIZE)); // Warm up.
+		bytes = dbBytes();
+		final long storeNanos = BenchmarkTweets.time(new Runnable() {
+			@Override
+			public void run () {
+				PackedMetasBenchmarkTest.this.undertest.storeTweets(1, PackedMetasBenchmarkTest.this.tweets);
+			}
+		});
+		final long storeBytes = dbBytes() - bytes;
+		final List<Tweet> stored = this.undertest.getTweets(1, TWEET_COUNT);
+		final long detailsNanos = BenchmarkTweets.time(new Runnable() {
+			@Override
+			public void run () {
+				for (int i = 0; i < READ_COUNT; i++) {
+					final int from = (i * READ_SIZE) % TWEET_COUNT;
+					final List<Long> uids = new ArrayList<Long>();
+					for (final Tweet t : stored.subList(from, from + READ_SIZE)) {
+						uids.add(t.getUid());
+					}
+					final List<Tweet> details = PackedMetasBenchmarkTest.this.undertest.getTweetDetails(uids);
+					assertEquals(BenchmarkTweets.METAS_PER_TWEET, details.get(0).getMetas().size());
+				}
+			}
+		});
+		LOG.i("storeTweets(): %d tweets, %d KB in %d ms. getTweetDetails(): %d reads of %d in %d ms.",
+				TWEET_COUNT, storeBytes / 1024, TimeUnit.NANOSECONDS.toMillis(storeNanos),
+				READ_COUNT, READ_SIZE, TimeUnit.NANOSECONDS.toMillis(detailsNanos));
+	}
+
+	private static void writeMetaRows (final SQLiteDatabase db, final List<Tweet> tweets) {
+		db.beginTransaction();
+		try {
+			final SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO bm_rows (tcid, type, data, title) VALUES (?,?,?,?)");
+			for (int i = 0; i < tweets.size(); i++) {
+				for (final Meta meta : tweets.get(i).getMetas()) {
+					insert.bindLong(1, i);
+					insert.bindLong(2, meta.getType().getId());
+					insert.bindString(3, meta.getData());
+					if (meta.getTitle() != null) {
+						insert.bindString(4, meta.getTitle());
+					}
+					else {
+						insert.bindNull(4);
+					}
+					insert.executeInsert();
+				}
+			}
+			insert.close();
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+
+	private static void writePackedMetas (final SQLiteDatabase db, final List<Tweet> tweets) {
+		db.beginTransaction();
+		try {
+			final SQLiteStatement insert = db.compileStatement("INSERT INTO bm_packed (tcid, metas) VALUES (?,?)");
+			final SQLiteStatement index = db.compileStatement("INSERT INTO bm_index (tcid, type, data) VALUES (?,?,?)");
+			for (int i = 0; i < tweets.size(); i++) {
+				insert.bindLong(1, i);
+				insert.bindBlob(2, MetaCodec.encode(tweets.get(i).getMetas()));
+				insert.executeInsert();
+				for (final Meta meta : tweets.get(i).getMetas()) {
+					if (meta.getType() != MetaType.MENTION && meta.getType() != MetaType.HASHTAG && meta.getType() != MetaType.INREPLYTO) continue;
+					index.bindLong(1, i);
+					index.bindLong(2, meta.getType().getId());
+					index.bindString(3, meta.getData());
+					index.executeInsert();
+				}
+			}
+			insert.close();
+			index.close();
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+
+	private static int readMetaRows (final SQLiteDatabase db, final int from) {
+		final Cursor c = db.rawQuery("SELECT tcid, type, data, title FROM bm_rows WHERE tcid>=? AND tcid<? ORDER BY tcid, _id",
+				new String[] { String.valueOf(from), String.valueOf(from + READ_SIZE) });
+		try {
+			int tweetCount = 0;
+			long tcid = -1;
+			List<Meta> metas = null;
+			while (c.moveToNext()) {
+				if (c.getLong(0) != tcid) {
+					tcid = c.getLong(0);
+					metas = new ArrayList<Meta>();
+					tweetCount++;
+				}
+				metas.add(new Meta(MetaType.parseId(c.getInt(1)), c.getString(2), c.getString(3)));
+			}
+			return tweetCount;
+		}
+		finally {
+			c.close();
+		}
+	}
+
+	private static int readPackedMetas (final SQLiteDatabase db, final int from) {
+		final Cursor c = db.rawQuery("SELECT tcid, metas FROM bm_packed WHERE tcid>=? AND tcid<?",
+				new String[] { String.valueOf(from), String.valueOf(from + READ_SIZE) });
+		try {
+			int tweetCount = 0;
+			while (c.moveToNext()) {
+				assertEquals(BenchmarkTweets.METAS_PER_TWEET, MetaCodec.decode(c.getBlob(1)).size());
+				tweetCount++;
+			}
+			return tweetCount;
+		}
+		finally {
+			c.close();
+		}
+	}
+
+	private long dbBytes () {
+		final SQLiteDatabase db = this.undertest.getDb();
+		return DatabaseUtils.longForQuery(db, "PRAGMA page_count;", null) * DatabaseUtils.longForQuery(db, "PRAGMA page_size;", null);
+	}
+
+}
@@ -0,0 +1,143 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Times reads on a connection of their own, as the UI's would be on a pooled
+ * read connection, while the main connection stores. Without WAL these reads
+ * would wait for each storeTweets() transaction to commit. Reports to the
+ * log.
+ * <p>
+ * Takes many seconds, so is not part of the normal run. Remove the @Ignore to
+ * run it by hand.
+ */
+@Ignore("Benchmark, run by hand.")
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class ReadWhileStoringBenchmarkTest {
+
+	private static final LogWrapper LOG = new LogWrapper("BM");
+
+	private static final int TWEET_COUNT = 5000;
+	private static final int READ_COUNT = 200;
+	private static final int READ_SIZE = 50;
+	private static final int WRITE_BATCH = 100;
+
+	private DbAdapter undertest;
+	private List<Tweet> tweets;
+
+	@Before
+	public void before () throws Exception {
+		this.undertest = new DbAdapter(Robolectric.application);
+		this.undertest.open();
+		this.undertest.storeTweets(1, BenchmarkTweets.makeTweets(100000, C.DATA_TW_MAX_COL_ENTRIES));
+		this.tweets = BenchmarkTweets.makeTweets(200000, TWEET_COUNT);
+	}
+
+	@After
+	public void after () throws Exception {
+		this.undertest.close();
+	}
+
+	@Test
+	public void itReadsWhileStoring () throws Exception {
+		final SQLiteDatabase db = this.undertest.getDb();
+		assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode;", null));
+
+		final ShadowWalSQLiteDatabase shadow = Robolectric.shadowOf_(db);
+		this.undertest.getTweets(1, READ_SIZE);
+		final String readSql = shadow.getExecutedSql().get(shadow.getExecutedSql().size() - 1); // Args are inlined.
+		final Connection reader = DriverManager.getConnection("jdbc:sqlite:" + shadow.getPath());
+		try {
+			assertEquals(READ_SIZE, countResultRows(reader, readSql)); // Warm up.
+
+			final AtomicBoolean stop = new AtomicBoolean(false);
+			final AtomicInteger batches = new AtomicInteger(0);
+			final AtomicReference<Throwable> writeError = new AtomicReference<Throwable>();
+			final Thread writer = new Thread(new Runnable() {
+				@Override
+				public void run () {
+					try {
+						while (!stop.get()) {
+							final int i = (batches.get() * WRITE_BATCH) % TWEET_COUNT;
+							ReadWhileStoringBenchmarkTest.this.undertest.storeTweets(2, ReadWhileStoringBenchmarkTest.this.tweets.subList(i, i + WRITE_BATCH));
+							batches.incrementAndGet();
+						}
+					}
+					catch (final Throwable t) { // NOSONAR reported by the test thread.
+						writeError.set(t);
+					}
+				}
+			});
+			writer.start();
+
+			final long[] readNanos = new long[READ_COUNT];
+			try {
+				for (int i = 0; i < READ_COUNT; i++) {
+					final long start = System.nanoTime();
+					assertEquals(READ_SIZE, countResultRows(reader, readSql));
+					readNanos[i] = System.nanoTime() - start;
+				}
+			}
+			finally {
+				stop.set(true);
+				writer.join();
+			}
+			if (writeError.get() != null) throw new AssertionError(writeError.get());
+			assertTrue(batches.get() > 0);
+
+			Arrays.sort(readNanos);
+			LOG.i("Read while storing: %d reads of %d tweets on a second connection during %d batches of %d, median %.2f ms, max %.2f ms.",
+					READ_COUNT, READ_SIZE, batches.get(), WRITE_BATCH,
+					readNanos[READ_COUNT / 2] / 1000000d, readNanos[READ_COUNT - 1] / 1000000d);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static int countResultRows (final Connection conn, final String sql) throws SQLException {
+		final Statement st = conn.createStatement();
+		try {
+			final ResultSet rs = st.executeQuery(sql);
+			int n = 0;
+			while (rs.next()) {
+				n++;
+			}
+			rs.close();
+			return n;
+		}
+		finally {
+			st.close();
+		}
+	}
+
+}
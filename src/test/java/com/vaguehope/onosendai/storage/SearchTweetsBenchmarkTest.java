@@ -0,0 +1,81 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Times searchTweets() over columns full of tweets, for queries that match
+ * a few, some and most of them. Reports to the log.
+ * <p>
+ * Takes many seconds, so is not part of the normal run. Remove the @Ignore to
+ * run it by hand.
+ */
+@Ignore("Benchmark, run by hand.")
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class SearchTweetsBenchmarkTest {
+
+	private static final LogWrapper LOG = new LogWrapper("BM");
+
+	private static final int COLUMNS = 10;
+	private static final int TWEETS_PER_SET = COLUMNS * C.DATA_TW_MAX_COL_ENTRIES;
+
+	private DbAdapter undertest;
+
+	@Before
+	public void before () throws Exception {
+		this.undertest = new DbAdapter(Robolectric.application);
+		this.undertest.open();
+		store(0, BenchmarkTweets.makeTweets(100000, TWEETS_PER_SET));
+		store(COLUMNS, BenchmarkTweets.makeTweets(200000, TWEETS_PER_SET));
+	}
+
+	private void store (final int firstColumn, final List<Tweet> tweets) {
+		for (int i = 0; i < COLUMNS; i++) {
+			this.undertest.storeTweets(firstColumn + i, tweets.subList(i * C.DATA_TW_MAX_COL_ENTRIES, (i + 1) * C.DATA_TW_MAX_COL_ENTRIES));
+		}
+	}
+
+	@After
+	public void after () throws Exception {
+		this.undertest.close();
+	}
+
+	@Test
+	public void itSearchesStoredTweets () throws Exception {
+		this.undertest.searchTweets("warm", 1); // Warm up.
+
+		final List<List<Tweet>> results = new ArrayList<List<Tweet>>();
+		final String[] queries = new String[] { "number 1234", "tag7", "user3", "body" };
+		final long nanos = BenchmarkTweets.time(new Runnable() {
+			@Override
+			public void run () {
+				for (final String q : queries) {
+					results.add(SearchTweetsBenchmarkTest.this.undertest.searchTweets(q, C.LOCAL_SEARCH_MAX_RESULTS));
+				}
+			}
+		});
+		assertEquals(2, results.get(0).size());
+		assertEquals(C.LOCAL_SEARCH_MAX_RESULTS, results.get(3).size());
+
+		LOG.i("Search: %d queries over %d tweets in %d ms.",
+				queries.length, TWEETS_PER_SET * 2, TimeUnit.NANOSECONDS.toMillis(nanos));
+	}
+
+}
@@ -0,0 +1,158 @@
+package com.vaguehope.onosendai.storage;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowSQLiteDatabase;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * The stock shadow does not implement enableWriteAheadLogging(), and the real
+ * method fails on a shadowed database. Robolectric has a single JDBC
+ * connection so there is no read pool, but the database is a file so this
+ * switches its journal mode as Android would. Other connections to the file,
+ * see getPath(), then read alongside writes as Android's pooled ones would.
+ * <p>
+ * The stock shadow also refuses to rawQuery() PRAGMA incremental_vacuum, which
+ * returns a row per page freed, and the JDBC driver only steps it once, so
+ * that is run once per page here.
+ * <p>
+ * SQL is recorded as it is run so tests can check the query plans of what
+ * DbAdapter actually runs. query() args are inlined, rawQuery() and compiled
+ * statements are recorded with their placeholders.
+ */
+@Implements(SQLiteDatabase.class)
+public class ShadowWalSQLiteDatabase extends ShadowSQLiteDatabase {
+
+	private static final Pattern INCREMENTAL_VACUUM = Pattern.compile("PRAGMA incremental_vacuum\\((\\d+)\\);");
+
+	private final List<String> executedSql = new ArrayList<String>();
+
+	@Implementation
+	public boolean enableWriteAheadLogging () {
+		return "wal".equals(journalMode("PRAGMA journal_mode=WAL;"));
+	}
+
+	@Implementation
+	public boolean isWriteAheadLoggingEnabled () {
+		return "wal".equals(journalMode("PRAGMA journal_mode;"));
+	}
+
+	private String journalMode (final String sql) {
+		try {
+			final Statement st = getConnection().createStatement();
+			try {
+				final ResultSet rs = st.executeQuery(sql);
+				final String mode = rs.getString(1);
+				rs.close();
+				return mode;
+			}
+			finally {
+				st.close();
+			}
+		}
+		catch (final SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	@Implementation
+	public Cursor query (final boolean distinct, final String table, final String[] columns, final String selection, final String[] selectionArgs,
+			final String groupBy, final String having, final String orderBy, final String limit) {
+		final Cursor c = super.query(distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+		final List<String> querySql = getQuerySql();
+		this.executedSql.add(querySql.get(querySql.size() - 1));
+		return c;
+	}
+
+	@Override
+	@Implementation
+	public int delete (final String table, final String whereClause, final String[] whereArgs) {
+		this.executedSql.add("DELETE FROM " + table + (whereClause != null ? " WHERE " + whereClause : ""));
+		return super.delete(table, whereClause, whereArgs);
+	}
+
+	@Override
+	@Implementation
+	public SQLiteStatement compileStatement (final String sql) throws SQLException {
+		this.executedSql.add(sql);
+		return super.compileStatement(sql);
+	}
+
+	@Override
+	@Implementation
+	public Cursor rawQuery (final String sql, final String[] selectionArgs) {
+		this.executedSql.add(sql);
+		final Matcher m = INCREMENTAL_VACUUM.matcher(sql);
+		if (!m.matches()) return super.rawQuery(sql, selectionArgs);
+		final MatrixCursor c = new MatrixCursor(new String[] { "freed" });
+		try {
+			final Statement st = getConnection().createStatement();
+			try {
+				for (int i = 0; i < Integer.parseInt(m.group(1)); i++) {
+					final ResultSet rs = st.executeQuery("PRAGMA freelist_count;");
+					final int free = rs.getInt(1);
+					rs.close();
+					if (free < 1) break;
+					st.executeUpdate("PRAGMA incremental_vacuum(1);"); // Only steps once.
+					c.addRow(new Object[] { i });
+				}
+			}
+			finally {
+				st.close();
+			}
+		}
+		catch (final SQLException e) {
+			throw new IllegalStateException(e);
+		}
+		return c;
+	}
+
+	public List<String> getExecutedSql () {
+		return Collections.unmodifiableList(this.executedSql);
+	}
+
+	public void clearExecutedSql () {
+		this.executedSql.clear();
+	}
+
+	/**
+	 * The detail column of EXPLAIN QUERY PLAN. Placeholders are left
+	 * unbound.
+	 */
+	public List<String> explain (final String sql) {
+		try {
+			final PreparedStatement st = getConnection().prepareStatement("EXPLAIN QUERY PLAN " + sql);
+			try {
+				final ResultSet rs = st.executeQuery();
+				final List<String> ret = new ArrayList<String>();
+				while (rs.next()) {
+					ret.add(rs.getString(rs.getMetaData().getColumnCount()));
+				}
+				rs.close();
+				return ret;
+			}
+			finally {
+				st.close();
+			}
+		}
+		catch (final SQLException e) {
+			throw new IllegalStateException("Failed to explain: " + sql, e);
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class SharedDbTest {
+
+	@Test
+	public void itOpensOnceAndHandsOutTheSameDb () throws Exception {
+		final CountDownLatch opened = new CountDownLatch(1);
+		SharedDb.whenOpen(Robolectric.application, new Runnable() {
+			@Override
+			public void run () {
+				opened.countDown();
+			}
+		});
+		final DbInterface db = SharedDb.await(Robolectric.application, 5, TimeUnit.SECONDS);
+		assertNotNull(db);
+		assertTrue(opened.await(5, TimeUnit.SECONDS));
+		assertSame(db, SharedDb.get());
+		assertSame(db, SharedDb.await(Robolectric.application, 0, TimeUnit.SECONDS));
+
+		final CountDownLatch alreadyOpen = new CountDownLatch(1);
+		SharedDb.whenOpen(Robolectric.application, new Runnable() {
+			@Override
+			public void run () {
+				alreadyOpen.countDown();
+			}
+		});
+		assertTrue(alreadyOpen.await(0, TimeUnit.SECONDS));
+	}
+
+}
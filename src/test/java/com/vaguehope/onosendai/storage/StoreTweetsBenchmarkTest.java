@@ -0,0 +1,237 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.vaguehope.onosendai.C;
+import com.vaguehope.onosendai.model.Meta;
+import com.vaguehope.onosendai.model.Tweet;
+import com.vaguehope.onosendai.util.HashHelper;
+import com.vaguehope.onosendai.util.IoHelper;
+import com.vaguehope.onosendai.util.LogWrapper;
+
+/**
+ * Compares storeTweets() with the storeTweets() it replaced, which looked up
+ * each tweet then wrote it through ContentValues. The old writer is copied
+ * below as it was, and writes the old schema (all content on tw, a tm row per
+ * meta) in old_ tables alongside the real ones. It is the whole old path
+ * against the whole new one, so the difference includes later schema changes
+ * such as the full text index and packed metas, not only the compiled
+ * statements. Reports to the log.
+ * <p>
+ * Takes many seconds, so is not part of the normal run. Remove the @Ignore to
+ * run it by hand.
+ */
+@Ignore("Benchmark, run by hand.")
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class StoreTweetsBenchmarkTest {
+
+	private static final LogWrapper LOG = new LogWrapper("BM");
+
+	private static final int COLUMNS = 10;
+	private static final int TWEET_COUNT = COLUMNS * C.DATA_TW_MAX_COL_ENTRIES; // So nothing is pruned.
+
+	private DbAdapter undertest;
+	private List<Tweet> tweets;
+
+	@Before
+	public void before () throws Exception {
+		this.undertest = new DbAdapter(Robolectric.application);
+		this.undertest.open();
+		this.tweets = BenchmarkTweets.makeTweets(200000, TWEET_COUNT);
+	}
+
+	@After
+	public void after () throws Exception {
+		this.undertest.close();
+	}
+
+	@Test
+	public void itComparesTheOldWriterWithCompiledStatements () throws Exception {
+		final SQLiteDatabase db = this.undertest.getDb();
+		db.execSQL(OLD_TW_CREATE);
+		db.execSQL(OLD_TW_CREATE_INDEX);
+		db.execSQL(OLD_TW_CREATE_COLTIME_INDEX);
+		db.execSQL(OLD_TM_CREATE);
+		db.execSQL(OLD_TM_CREATE_INDEX);
+		db.execSQL(OLD_TM_CREATE_TYPE_INDEX);
+
+		final Runnable oldWriter = new Runnable() {
+			@Override
+			public void run () {
+				for (int col = 0; col < COLUMNS; col++) {
+					oldStoreTweets(db, col, columnTweets(col));
+				}
+			}
+		};
+		final long oldInsertNanos = BenchmarkTweets.time(oldWriter);
+		assertEquals(TWEET_COUNT, countRows("old_tw"));
+		assertEquals(TWEET_COUNT * BenchmarkTweets.METAS_PER_TWEET, countRows("old_tm"));
+		final long oldUnchangedNanos = BenchmarkTweets.time(oldWriter);
+		assertEquals(TWEET_COUNT, countRows("old_tw"));
+
+		final Runnable newWriter = new Runnable() {
+			@Override
+			public void run () {
+				for (int col = 0; col < COLUMNS; col++) {
+					StoreTweetsBenchmarkTest.this.undertest.storeTweets(col, columnTweets(col));
+				}
+			}
+		};
+		final long insertNanos = BenchmarkTweets.time(newWriter);
+		assertEquals(TWEET_COUNT, countRows("tw"));
+		assertEquals(TWEET_COUNT, countRows("tc"));
+		final long unchangedNanos = BenchmarkTweets.time(newWriter);
+		assertEquals(TWEET_COUNT, countRows("tw"));
+
+		report("Old storeTweets(), old schema, insert", oldInsertNanos);
+		report("Old storeTweets(), old schema, unchanged", oldUnchangedNanos);
+		report("storeTweets(), insert", insertNanos);
+		report("storeTweets(), unchanged", unchangedNanos);
+	}
+
+	private List<Tweet> columnTweets (final int col) {
+		return this.tweets.subList(col * C.DATA_TW_MAX_COL_ENTRIES, (col + 1) * C.DATA_TW_MAX_COL_ENTRIES);
+	}
+
+	private long countRows (final String table) {
+		return DatabaseUtils.queryNumEntries(this.undertest.getDb(), table);
+	}
+
+	private static void report (final String name, final long nanos) {
+		LOG.i("%s: %d tweets in %d ms = %.0f tweets/s.",
+				name, TWEET_COUNT, TimeUnit.NANOSECONDS.toMillis(nanos), TWEET_COUNT / (nanos / 1000000000d));
+	}
+
+//	- - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
+
+	// The schema and storeTweets() from before compiled statements, with table
+	// names prefixed.
+
+	private static final String OLD_TW_CREATE = "create table old_tw (_id integer primary key autoincrement, colid integer, sid text,"
+			+ " time integer, uname text, fname text, body text, avatar text, imedia text, hash integer,"
+			+ " UNIQUE(colid, sid) ON CONFLICT REPLACE);";
+	private static final String OLD_TW_CREATE_INDEX = "CREATE INDEX old_tw_idx ON old_tw(sid,time);";
+	private static final String OLD_TW_CREATE_COLTIME_INDEX = "CREATE INDEX old_tw_coltime_idx ON old_tw(colid,time,_id);";
+	private static final String OLD_TM_CREATE = "create table old_tm (_id integer primary key autoincrement, twid integer,"
+			+ " type integer, data text, title text,"
+			+ " FOREIGN KEY (twid) REFERENCES old_tw (_id) ON DELETE CASCADE,"
+			+ " UNIQUE(twid, type,data,title) ON CONFLICT IGNORE);";
+	private static final String OLD_TM_CREATE_INDEX = "CREATE INDEX old_tm_idx ON old_tm(twid);";
+	private static final String OLD_TM_CREATE_TYPE_INDEX = "CREATE INDEX old_tm_type_idx ON old_tm(type,data,twid);";
+
+	private static final long UID_NOT_FOUND = -1L;
+	private static final long UID_UNCHANGED = -2L;
+
+	private static void oldStoreTweets (final SQLiteDatabase db, final int columnId, final List<Tweet> tweets) {
+		db.beginTransaction();
+		try {
+			db.delete("old_tw",
+					"colid=? AND _id NOT IN (SELECT _id FROM old_tw WHERE colid=? ORDER BY time DESC LIMIT " + C.DATA_TW_MAX_COL_ENTRIES + ")",
+					new String[] { String.valueOf(columnId), String.valueOf(columnId) });
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+
+		db.beginTransaction();
+		try {
+			final ContentValues values = new ContentValues();
+			for (final Tweet tweet : tweets) {
+				final long hash = oldTweetHash(tweet);
+				final long existingUid = oldFindTweetUid(db, columnId, tweet.getSid(), hash);
+				if (existingUid == UID_UNCHANGED) continue;
+
+				values.clear();
+				values.put("time", tweet.getTime());
+				values.put("uname", tweet.getUsername());
+				values.put("fname", tweet.getFullname());
+				values.put("body", tweet.getBody());
+				values.put("avatar", tweet.getAvatarUrl());
+				values.put("imedia", tweet.getInlineMediaUrl());
+				values.put("hash", hash);
+
+				final long uid;
+				if (existingUid == UID_NOT_FOUND) {
+					values.put("colid", columnId);
+					values.put("sid", tweet.getSid());
+					uid = db.insert("old_tw", null, values);
+				}
+				else {
+					uid = existingUid;
+					db.update("old_tw", values, "_id=?", new String[] { String.valueOf(uid) });
+					db.delete("old_tm", "twid=?", new String[] { String.valueOf(uid) });
+				}
+
+				final List<Meta> metas = tweet.getMetas();
+				if (metas != null) {
+					for (final Meta meta : metas) {
+						values.clear();
+						values.put("twid", uid);
+						values.put("type", meta.getType().getId());
+						values.put("data", meta.getData());
+						if (meta.getTitle() != null) values.put("title", meta.getTitle());
+						db.insertWithOnConflict("old_tm", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+					}
+				}
+			}
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+
+	private static long oldFindTweetUid (final SQLiteDatabase db, final int columnId, final String sid, final long hash) {
+		Cursor c = null;
+		try {
+			c = db.query("old_tw", new String[] { "_id", "hash" }, "colid=? AND sid=?",
+					new String[] { String.valueOf(columnId), sid }, null, null, null);
+			if (c == null || !c.moveToFirst()) return UID_NOT_FOUND;
+			if (!c.isNull(1) && c.getLong(1) == hash) return UID_UNCHANGED;
+			return c.getLong(0);
+		}
+		finally {
+			IoHelper.closeQuietly(c);
+		}
+	}
+
+	private static long oldTweetHash (final Tweet tweet) {
+		final StringBuilder s = new StringBuilder()
+				.append(tweet.getSid()).append('\0')
+				.append(tweet.getTime()).append('\0')
+				.append(tweet.getUsername()).append('\0')
+				.append(tweet.getFullname()).append('\0')
+				.append(tweet.getBody()).append('\0')
+				.append(tweet.getAvatarUrl()).append('\0')
+				.append(tweet.getInlineMediaUrl());
+		final List<Meta> metas = tweet.getMetas();
+		if (metas != null) {
+			for (final Meta meta : metas) {
+				s.append('\0').append(meta.getType().getId())
+						.append('\0').append(meta.getData())
+						.append('\0').append(meta.getTitle());
+			}
+		}
+		return HashHelper.md5Long(s.toString());
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.vaguehope.onosendai.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.vaguehope.onosendai.config.Column;
+import com.vaguehope.onosendai.model.Tweet;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = { ShadowWalSQLiteDatabase.class })
+public class TweetListCacheTest {
+
+	private DbAdapter db;
+	private TweetListCache undertest;
+
+	@Before
+	public void before () throws Exception {
+		this.db = new DbAdapter(Robolectric.application);
+		this.db.open();
+		this.undertest = new TweetListCache(this.db, 1024 * 1024);
+		this.db.addTweetWriteListener(this.undertest);
+	}
+
+	@After
+	public void after () throws Exception {
+		this.db.close();
+	}
+
+	@Test
+	public void itReturnsHotColumnsFromMemory () throws Exception {
+		this.db.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+
+		assertEquals(Arrays.asList("3", "2"), sids(this.undertest.getTweets(1, 2, null)));
+		assertEquals(Arrays.asList("3", "2"), sids(this.undertest.getTweets(1, 2, null)));
+		assertEquals(Arrays.asList("3"), sids(this.undertest.getTweets(1, 1, null)));
+		assertEquals(2, this.undertest.getHitCount());
+		assertEquals(1, this.undertest.getMissCount());
+
+		assertEquals(Arrays.asList("3", "2", "1"), sids(this.undertest.getTweets(1, 10, null)));
+		assertEquals(Arrays.asList("3", "2", "1"), sids(this.undertest.getTweets(1, 20, null)));
+		assertEquals(3, this.undertest.getHitCount());
+		assertEquals(2, this.undertest.getMissCount());
+	}
+
+	@Test
+	public void itPrependsNewTweets () throws Exception {
+		this.db.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L)));
+		this.undertest.getTweets(1, 10, null);
+
+		this.db.storeTweets(1, Arrays.asList(tweetAt("3", 3000L), tweetAt("4", 4000L)));
+		assertCachedMatchesDb(1, 10, null);
+		assertEquals(Arrays.asList("4", "3", "2", "1"), sids(this.undertest.getTweets(1, 10, null)));
+		assertEquals(1, this.undertest.getMissCount());
+	}
+
+	@Test
+	public void itDoesNotCacheOlderTweetsBeyondThePage () throws Exception {
+		this.db.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L), tweetAt("4", 4000L)));
+		this.undertest.getTweets(1, 2, null);
+
+		this.db.storeTweets(1, Arrays.asList(tweetAt("0", 500L), tweetAt("5", 5000L)));
+		assertEquals(Arrays.asList("5", "4"), sids(this.undertest.getTweets(1, 2, null)));
+		assertEquals(1, this.undertest.getMissCount());
+
+		assertCachedMatchesDb(1, 3, null);
+	}
+
+	@Test
+	public void itRemovesDeletedTweets () throws Exception {
+		this.db.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L), tweetAt("3", 3000L)));
+		this.undertest.getTweets(1, 10, null);
+
+		this.db.deleteTweet(column(1), tweetAt("2", 2000L));
+		assertEquals(Arrays.asList("3", "1"), sids(this.undertest.getTweets(1, 10, null)));
+		assertEquals(1, this.undertest.getMissCount());
+
+		this.db.deleteTweets(column(1));
+		assertEquals(0, this.undertest.getTweets(1, 10, null).size());
+	}
+
+	@Test
+	public void itDropsColumnsWhenContentChanges () throws Exception {
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("1", 1000L, "old")));
+		this.db.storeTweets(2, Collections.singletonList(tweetAt("1", 1000L, "old")));
+		this.undertest.getTweets(1, 10, null);
+		this.undertest.getTweets(2, 10, null);
+
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("1", 1000L, "new")));
+		assertEquals("new", this.undertest.getTweets(2, 10, null).get(0).getBody());
+		assertEquals(3, this.undertest.getMissCount());
+	}
+
+	@Test
+	public void itKeepsExcludesUpToDate () throws Exception {
+		final Set<Integer> excl = Collections.singleton(2);
+		this.db.setColumnExcludes(Collections.singleton(new Column(1, "c1", null, null, 0, excl, null, false, false, null)));
+		this.db.storeTweets(1, Arrays.asList(tweetAt("1", 1000L), tweetAt("2", 2000L)));
+		assertEquals(Arrays.asList("2", "1"), sids(this.undertest.getTweets(1, 10, excl)));
+
+		this.db.storeTweets(2, Collections.singletonList(tweetAt("2", 2000L)));
+		assertCachedMatchesDb(1, 10, excl);
+		assertEquals(Arrays.asList("1"), sids(this.undertest.getTweets(1, 10, excl)));
+
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("3", 3000L)));
+		this.db.storeTweets(2, Collections.singletonList(tweetAt("4", 4000L)));
+		this.db.storeTweets(1, Collections.singletonList(tweetAt("4", 4000L)));
+		assertCachedMatchesDb(1, 10, excl);
+
+		this.db.deleteTweets(column(2));
+		assertCachedMatchesDb(1, 10, excl);
+		assertEquals(Arrays.asList("4", "3", "2", "1"), sids(this.undertest.getTweets(1, 10, excl)));
+
+		assertEquals(Arrays.asList("4", "3", "2", "1"), sids(this.undertest.getTweets(1, 10, null)));
+	}
+
+	private void assertCachedMatchesDb (final int columnId, final int numberOf, final Set<Integer> excl) {
+		final List<String> cached = sids(this.undertest.getTweets(columnId, numberOf, excl));
+		assertEquals(sids(this.db.getTweets(columnId, numberOf, excl)), cached);
+	}
+
+	private static Column column (final int id) {
+		return new Column(id, "c" + id, null, null, 0, null, null, false, false, null);
+	}
+
+	private static List<String> sids (final List<Tweet> tweets) {
+		final List<String> ret = new ArrayList<String>();
+		for (final Tweet t : tweets) {
+			ret.add(t.getSid());
+		}
+		return ret;
+	}
+
+	private static Tweet tweetAt (final String sid, final long time) {
+		return tweetAt(sid, time, "body " + sid);
+	}
+
+	private static Tweet tweetAt (final String sid, final long time, final String body) {
+		return new Tweet(sid, "user", "User Name", body, time, "http://example.com/avatar.png", null, null);
+	}
+
+}
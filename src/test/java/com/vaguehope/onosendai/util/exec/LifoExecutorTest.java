@@ -0,0 +1,110 @@
+package com.vaguehope.onosendai.util.exec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LifoExecutorTest {
+
+	private ManualExecutor delegate;
+	private List<String> ran;
+	private LifoExecutor undertest;
+
+	@Before
+	public void before () throws Exception {
+		this.delegate = new ManualExecutor();
+		this.ran = new ArrayList<String>();
+		this.undertest = new LifoExecutor(this.delegate, 1);
+	}
+
+	@Test
+	public void itRunsNewestFirst () throws Exception {
+		this.undertest.execute(named("a"));
+		this.undertest.execute(named("b"));
+		this.undertest.execute(named("c"));
+		assertEquals(2, this.undertest.pendingCount());
+
+		this.delegate.runAll();
+		assertEquals(Arrays.asList("a", "c", "b"), this.ran);
+	}
+
+	@Test
+	public void itHandsOnNoMoreThanMaxInFlight () throws Exception {
+		this.undertest = new LifoExecutor(this.delegate, 2);
+		this.undertest.execute(named("a"));
+		this.undertest.execute(named("b"));
+		this.undertest.execute(named("c"));
+		assertEquals(2, this.delegate.queued.size());
+		assertEquals(1, this.undertest.pendingCount());
+	}
+
+	@Test
+	public void itHoldsWorkWhilePaused () throws Exception {
+		this.undertest.pause();
+		this.undertest.execute(named("a"));
+		this.undertest.execute(named("b"));
+		this.delegate.runAll();
+		assertEquals(0, this.ran.size());
+
+		this.undertest.resume();
+		this.delegate.runAll();
+		assertEquals(Arrays.asList("b", "a"), this.ran);
+	}
+
+	@Test
+	public void itCarriesOnAfterAFailure () throws Exception {
+		this.undertest.execute(new Runnable() {
+			@Override
+			public void run () {
+				throw new IllegalStateException("Expected.");
+			}
+		});
+		this.undertest.execute(named("a"));
+		try {
+			this.delegate.runNext();
+		}
+		catch (final IllegalStateException e) {/* Expected. */}
+		this.delegate.runAll();
+		assertEquals(Arrays.asList("a"), this.ran);
+	}
+
+	private Runnable named (final String name) {
+		return new Runnable() {
+			@Override
+			public void run () {
+				LifoExecutorTest.this.ran.add(name);
+			}
+		};
+	}
+
+	private static class ManualExecutor implements Executor {
+
+		final LinkedList<Runnable> queued = new LinkedList<Runnable>();
+
+		public ManualExecutor () {}
+
+		@Override
+		public void execute (final Runnable command) {
+			this.queued.add(command);
+		}
+
+		void runNext () {
+			this.queued.removeFirst().run();
+		}
+
+		void runAll () {
+			while (!this.queued.isEmpty()) {
+				runNext();
+			}
+		}
+
+	}
+
+}